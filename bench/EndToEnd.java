@@ -0,0 +1,221 @@
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * end to end throughput of the compiler on generated programs, checked against a saved baseline
+ *
+ * each size gets a program from ProgramGenerator, which Compiler.main then compiles with errors only
+ * tracing, as from the command line, a few times to warm up and then some more measured, a run that
+ * prints anything failed, since the programs are valid
+ *
+ * reports tokens and megabytes per second, the median of the measured runs, peak heap used and time
+ * spent in GC, with -save they become the baseline, otherwise they are compared against it and the
+ * exit status is 1 if throughput dropped or peak heap grew by more than the tolerance
+ *
+ * run from the project root with
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out EndToEnd [-sizes 1M,16M] [-wi 3] [-i 5] [-seed 1] [-p] [-tolerance 0.2]
+ *       [-baseline bench/baseline.properties] [-save]
+ * @author Mike, Ryan
+ */
+public class EndToEnd {
+
+	/**
+	 * table the compiler loads
+	 */
+	private static final String PARSE_TABLE_PATH = "resources/parse_table.tbl";
+
+	/**
+	 * where the baseline is kept when none is given
+	 */
+	private static final String DEFAULT_BASELINE_PATH = "bench/baseline.properties";
+
+	/**
+	 * what one size measured
+	 */
+	private static class Result {
+		long bytes;
+		long tokens;
+		double seconds;
+		long peak_heap;
+		long gc_millis;
+	}
+
+	/**
+	 * main entry point
+	 * @param args see the class comment
+	 */
+	public static void main(String[] args) throws Exception {
+		String[] sizes = { "1M", "16M" };
+		int warmup_runs = 3;
+		int measured_runs = 5;
+		long seed = 1;
+		boolean pipelined = false;
+		double tolerance = 0.2;
+		String baseline_path = DEFAULT_BASELINE_PATH;
+		boolean save = false;
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+				case "-sizes": sizes = args[++i].split(","); break;
+				case "-wi": warmup_runs = Integer.parseInt(args[++i]); break;
+				case "-i": measured_runs = Integer.parseInt(args[++i]); break;
+				case "-seed": seed = Long.parseLong(args[++i]); break;
+				case "-p": pipelined = true; break;
+				case "-tolerance": tolerance = Double.parseDouble(args[++i]); break;
+				case "-baseline": baseline_path = args[++i]; break;
+				case "-save": save = true; break;
+				default:
+					System.out.println("unknown option "+args[i]);
+					System.exit(2);
+			}
+		}
+
+		Properties baseline = new Properties();
+		if(!save && Files.exists(Paths.get(baseline_path))) {
+			try(FileInputStream in = new FileInputStream(baseline_path)) {
+				baseline.load(in);
+			}
+		}
+
+		NonTerminal.loadParseTable(PARSE_TABLE_PATH);
+		Path directory = Files.createTempDirectory("compiler-end-to-end");
+		boolean regressed = false;
+		System.out.printf("%-8s %12s %12s %14s %10s %12s %10s  %s%n", "(size)", "bytes", "tokens", "tokens/s", "MB/s", "peak heap", "gc ms", "baseline");
+		try {
+			for(String size : sizes) {
+				Path program = directory.resolve("program-"+size+".src");
+				ProgramGenerator generator = new ProgramGenerator(NonTerminal.dense_table, ProgramGenerator.DEFAULT_SPINE_TYPE, seed);
+				generator.setTargetBytes(ProgramGenerator.parseSize(size));
+				try(Writer out = Files.newBufferedWriter(program, StandardCharsets.ISO_8859_1)) {
+					generator.generate(out, "Program");
+				}
+
+				String[] compiler_args = pipelined ? new String[]{ "-t", "errors", "-p", program.toString() } : new String[]{ "-t", "errors", program.toString() };
+				for(int i = 0; i < warmup_runs; i++) {
+					measure(compiler_args);
+				}
+				double[] seconds = new double[measured_runs];
+				long peak_heap = 0;
+				long gc_millis = 0;
+				for(int i = 0; i < measured_runs; i++) {
+					Result run = measure(compiler_args);
+					seconds[i] = run.seconds;
+					peak_heap = Math.max(peak_heap, run.peak_heap);
+					gc_millis += run.gc_millis;
+				}
+				Arrays.sort(seconds);
+				Result result = new Result();
+				result.bytes = generator.getByteCount();
+				result.tokens = generator.getTokenCount();
+				result.seconds = seconds[seconds.length / 2];
+				result.peak_heap = peak_heap;
+				result.gc_millis = gc_millis / Math.max(1, measured_runs);
+				Files.delete(program);
+
+				String key = size + (pipelined ? ".pipelined" : "");
+				double tokens_per_second = result.tokens / result.seconds;
+				String verdict;
+				if(save) {
+					baseline.setProperty(key+".tokens_per_second", String.format("%.0f", tokens_per_second));
+					baseline.setProperty(key+".peak_heap_bytes", Long.toString(result.peak_heap));
+					verdict = "saved";
+				}
+				else if(baseline.getProperty(key+".tokens_per_second") == null) {
+					verdict = "none";
+				}
+				else {
+					List<String> problems = new ArrayList<String>();
+					double baseline_tokens = Double.parseDouble(baseline.getProperty(key+".tokens_per_second"));
+					long baseline_heap = Long.parseLong(baseline.getProperty(key+".peak_heap_bytes"));
+					if(tokens_per_second < baseline_tokens * (1 - tolerance)) {
+						problems.add(String.format("throughput %.1f%% below", 100 * (1 - tokens_per_second / baseline_tokens)));
+					}
+					if(result.peak_heap > baseline_heap * (1 + tolerance)) {
+						problems.add(String.format("peak heap %.1f%% above", 100 * ((double) result.peak_heap / baseline_heap - 1)));
+					}
+					regressed |= !problems.isEmpty();
+					verdict = problems.isEmpty() ? String.format("ok (%+.1f%%)", 100 * (tokens_per_second / baseline_tokens - 1)) : "REGRESSED: "+String.join(", ", problems);
+				}
+				System.out.printf("%-8s %12d %12d %14.0f %10.2f %10.1fMB %10d  %s%n", size, result.bytes, result.tokens, tokens_per_second,
+					result.bytes / result.seconds / (1 << 20), result.peak_heap / (double) (1 << 20), result.gc_millis, verdict);
+			}
+		} finally {
+			Files.deleteIfExists(directory);
+		}
+
+		if(save) {
+			try(FileOutputStream out = new FileOutputStream(baseline_path)) {
+				baseline.store(out, "EndToEnd baseline, tokens per second and peak heap bytes by program size");
+			}
+		}
+		if(regressed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * compiles once, as from the command line
+	 * @param compiler_args
+	 * @return how long it took, the peak heap and GC time, bytes and tokens are left for the caller
+	 * @throws IOException if the compiler printed anything
+	 */
+	private static Result measure(String[] compiler_args) throws IOException {
+		//a run starts from an empty heap, so peaks do not depend on the run before
+		System.gc();
+		List<MemoryPoolMXBean> heap_pools = new ArrayList<MemoryPoolMXBean>();
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				pool.resetPeakUsage();
+				heap_pools.add(pool);
+			}
+		}
+		long gc_millis = gcMillis();
+
+		PrintStream console = System.out;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(output, true));
+		long start = System.nanoTime();
+		try {
+			Compiler.main(compiler_args);
+		} finally {
+			System.setOut(console);
+		}
+		Result result = new Result();
+		result.seconds = (System.nanoTime() - start) / 1e9;
+		result.gc_millis = gcMillis() - gc_millis;
+		for(MemoryPoolMXBean pool : heap_pools) {
+			result.peak_heap += pool.getPeakUsage().getUsed();
+		}
+		if(output.size() > 0) {
+			throw new IOException("the compiler reported:\n"+output.toString(StandardCharsets.ISO_8859_1.name()));
+		}
+		return result;
+	}
+
+	/**
+	 * @return milliseconds every collector has spent so far
+	 */
+	private static long gcMillis() {
+		long millis = 0;
+		for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, collector.getCollectionTime());
+		}
+		return millis;
+	}
+}
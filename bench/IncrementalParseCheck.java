@@ -0,0 +1,205 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+/**
+ * checks that IncrementalParser ends up where a full scan and parse of the same text does, over random edits
+ *
+ * a generated program is edited at random places, small edits of lexemes, whitespace, newlines and comment
+ * braces, now and then a big one copying a piece of the text somewhere else, most edits are undone again right
+ * after and every so often the whole text is set back to the program, so the text keeps coming back to a valid
+ * program and reuse of the old parse is exercised
+ *
+ * after every edit the token rows, the scan error and the parse outcome are compared with scanning the whole
+ * text from the start and parsing it, the first difference is printed and the exit status is 1
+ *
+ * run from the project root with
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out IncrementalParseCheck [-size 16K] [-edits 5000] [-seed 1]
+ * @author Mike, Ryan
+ */
+public class IncrementalParseCheck {
+
+	/**
+	 * table the compiler loads
+	 */
+	private static final String PARSE_TABLE_PATH = "resources/parse_table.tbl";
+
+	/**
+	 * what small edits insert
+	 */
+	private static final String[] FRAGMENTS = {
+		"", " ", "\n", "\r\n", "\t", "{", "}", "{ note }", ":", "=", ":=", ";", ",", ".", "(", ")", "[", "]", "+", "-", "*",
+		"<", ">", "<=", "x", "count", "1", "42", "1.5", "2.0E3", "begin", "end", "if", "then", "else", "while", "do",
+		"var", "integer", "real", "program", "#", "@", "'", "e", "0"
+	};
+
+	/**
+	 * the text is set back to the generated program every this many edits
+	 */
+	private static final int RESTORE_INTERVAL = 50;
+
+	/**
+	 * entry point
+	 * @param args see the class comment
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		String size = "16K";
+		int edit_count = 5000;
+		long seed = 1;
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+				case "-size": size = args[++i]; break;
+				case "-edits": edit_count = Integer.parseInt(args[++i]); break;
+				case "-seed": seed = Long.parseLong(args[++i]); break;
+				default:
+					System.out.println("unknown option "+args[i]);
+					System.exit(2);
+			}
+		}
+
+		NonTerminal.loadParseTable(PARSE_TABLE_PATH);
+		ProgramGenerator generator = new ProgramGenerator(NonTerminal.dense_table, ProgramGenerator.DEFAULT_SPINE_TYPE, seed);
+		generator.setTargetBytes(ProgramGenerator.parseSize(size));
+		StringWriter program = new StringWriter();
+		generator.generate(program, "Program");
+
+		SymbolTable symbol_table = SymbolTable.initializeSymbolTable();
+		IncrementalParser incremental = new IncrementalParser(NonTerminal.dense_table, "Program", symbol_table);
+		String original = program.toString();
+		StringBuilder text = new StringBuilder(original);
+		incremental.setText(text);
+		String difference = compare(incremental, text, symbol_table);
+		if(difference != null) {
+			fail("the first setText", difference);
+		}
+
+		Random random = new Random(seed);
+		long relexed = 0;
+		long reparsed = 0;
+		int valid = 0;
+		for(int edit = 0; edit < edit_count; edit++) {
+			if(edit % RESTORE_INTERVAL == 0) {
+				incremental.setText(original);
+				text.replace(0, text.length(), original);
+				difference = compare(incremental, text, symbol_table);
+				if(difference != null) {
+					fail("setting the text back before edit "+edit, difference);
+				}
+			}
+			int offset = random.nextInt(text.length() + 1);
+			int removed_length = random.nextInt(Math.min(8, text.length() - offset) + 1);
+			String inserted;
+			if(random.nextInt(50) == 0) {
+				int from = random.nextInt(text.length() + 1);
+				inserted = text.substring(from, Math.min(text.length(), from + random.nextInt(3 * 4096)));
+			}
+			else {
+				inserted = FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+			}
+			String removed = text.substring(offset, offset + removed_length);
+			String description = "edit "+edit+", "+removed_length+" replaced at "+offset+" by "+quote(inserted);
+
+			incremental.edit(offset, removed_length, inserted);
+			text.replace(offset, offset + removed_length, inserted);
+			relexed += incremental.getRelexedCount();
+			reparsed += incremental.getReparsedCount();
+			difference = compare(incremental, text, symbol_table);
+			if(difference != null) {
+				fail(description, difference);
+			}
+			valid += incremental.isValid() ? 1 : 0;
+
+			if(random.nextInt(4) != 0) {
+				incremental.edit(offset, inserted.length(), removed);
+				text.replace(offset, offset + inserted.length(), removed);
+				difference = compare(incremental, text, symbol_table);
+				if(difference != null) {
+					fail("undoing "+description, difference);
+				}
+			}
+		}
+		System.out.printf("ok: %d edits on %d characters, %d left the text valid, %.1f tokens relexed and %.1f parsed per edit%n",
+			edit_count, text.length(), valid, (double) relexed / edit_count, (double) reparsed / edit_count);
+	}
+
+	/**
+	 * scans and parses the whole text from the start and compares that with the incremental parser
+	 * @param incremental
+	 * @param text what it should have
+	 * @param symbol_table the one it uses
+	 * @return the first difference, null if there is none
+	 */
+	private static String compare(IncrementalParser incremental, CharSequence text, SymbolTable symbol_table) throws IOException {
+		if(!incremental.getText().toString().contentEquals(text)) {
+			return "the text differs";
+		}
+
+		TokenBuffer tokens = new TokenBuffer();
+		Scanner scanner = new Scanner(text);
+		Exception scan_error = null;
+		try {
+			do {
+				scanner.scanToken(symbol_table, tokens);
+			}
+			while(tokens.getKind(tokens.size() - 1) != TerminalKind.EOF);
+		} catch (Scanner.ScannerException|Token.TokenException|LexemeTerminal.LexemeTerminalException e) {
+			scan_error = e;
+		}
+		if(incremental.getTokenCount() != tokens.size()) {
+			return incremental.getTokenCount()+" tokens instead of "+tokens.size();
+		}
+		for(int row = 0; row < tokens.size(); row++) {
+			if(incremental.getKind(row) != tokens.getKind(row) || incremental.getStart(row) != tokens.getStart(row)
+					|| incremental.getLength(row) != tokens.getLength(row) || incremental.getLine(row) != tokens.getLine(row)) {
+				return "token "+row+" is kind "+incremental.getKind(row)+" at "+incremental.getStart(row)+" length "+incremental.getLength(row)
+					+" line "+incremental.getLine(row)+" instead of kind "+tokens.getKind(row)+" at "+tokens.getStart(row)
+					+" length "+tokens.getLength(row)+" line "+tokens.getLine(row);
+			}
+		}
+
+		//the same outcome compiling the text has, the parse only looks as far as the token after the program
+		ParserEngine parser = new ParserEngine(NonTerminal.dense_table, "Program");
+		parser.reset();
+		Exception expected = scan_error;
+		for(int row = 0; row < tokens.size(); row++) {
+			if(parser.isDone()) {
+				expected = null;
+				break;
+			}
+			int result = parser.shift(tokens.getKind(row), null, null);
+			if(result == ParserEngine.REJECTED) {
+				expected = new Symbol.UnexpectedTokenException(tokens.getToken(row, symbol_table));
+				break;
+			}
+			if(result != ParserEngine.SHIFTED) {
+				expected = null;
+				break;
+			}
+		}
+		Exception found = incremental.getError();
+		String expected_error = expected == null ? "no error" : expected.toString();
+		String found_error = found == null ? "no error" : found.toString();
+		if(!expected_error.equals(found_error) || incremental.isValid() != (expected == null)) {
+			return found_error+" instead of "+expected_error;
+		}
+		return null;
+	}
+
+	/**
+	 * prints what went wrong and exits with status 1
+	 */
+	private static void fail(String edit, String difference) {
+		System.out.println("FAILED after "+edit+": "+difference);
+		System.exit(1);
+	}
+
+	/**
+	 * @return the text in quotes with line breaks and tabs made visible, shortened if it is long
+	 */
+	private static String quote(String text) {
+		String shown = text.length() > 40 ? text.substring(0, 40)+"... ("+text.length()+" characters)" : text;
+		return "\""+shown.replace("\r", "\\r").replace("\n", "\\n").replace("\t", "\\t")+"\"";
+	}
+}
@@ -0,0 +1,128 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * checks that scanning and parsing into a presized TokenBuffer allocates nothing per token
+ *
+ * a small and a large program come from ProgramGenerator, both are parsed once to warm up, which also
+ * interns every lexeme they use, then each is parsed again with no tree, listener, diagnostics or stats
+ * while the thread's allocated bytes are counted, the scanner, parser, symbol table and token buffer
+ * are the same for both so only what a parse allocates on its own is counted
+ *
+ * a parse may allocate a fixed amount, e.g. the scanner's window slices, but anything that grows with
+ * the input shows up as the large program allocating more than the small one, and then the exit status is 1
+ *
+ * run from the project root with
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out ParseAllocationCheck [-small 128K] [-large 12M] [-seed 1] [-slack 0.01]
+ * @author Mike, Ryan
+ */
+public class ParseAllocationCheck {
+
+	/**
+	 * table the compiler loads
+	 */
+	private static final String PARSE_TABLE_PATH = "resources/parse_table.tbl";
+
+	/**
+	 * entry point
+	 * @param args see the class comment
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		String small_size = "128K";
+		String large_size = "12M";
+		long seed = 1;
+		double slack = 0.01;
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+				case "-small": small_size = args[++i]; break;
+				case "-large": large_size = args[++i]; break;
+				case "-seed": seed = Long.parseLong(args[++i]); break;
+				case "-slack": slack = Double.parseDouble(args[++i]); break;
+				default:
+					System.out.println("unknown option "+args[i]);
+					System.exit(2);
+			}
+		}
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if(!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("this JVM can not count allocated bytes per thread");
+			System.exit(2);
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		NonTerminal.loadParseTable(PARSE_TABLE_PATH);
+		ByteBuffer small = generate(small_size, seed);
+		ByteBuffer large = generate(large_size, seed);
+
+		SymbolTable symbol_table = SymbolTable.initializeSymbolTable();
+		Scanner scanner = new Scanner(ByteBuffer.allocate(0));
+		ParserEngine parser = new ParserEngine(NonTerminal.dense_table, "Program");
+		//room for every token the large program has, so the buffer never grows while being counted
+		TokenBuffer tokens = new TokenBuffer(large.remaining() + 1, false);
+
+		for(int i = 0; i < 3; i++) {
+			parse(small, scanner, symbol_table, parser, tokens);
+			parse(large, scanner, symbol_table, parser, tokens);
+		}
+
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		parse(small, scanner, symbol_table, parser, tokens);
+		long small_allocated = threads.getThreadAllocatedBytes(thread) - before;
+		int small_tokens = tokens.size();
+
+		before = threads.getThreadAllocatedBytes(thread);
+		parse(large, scanner, symbol_table, parser, tokens);
+		long large_allocated = threads.getThreadAllocatedBytes(thread) - before;
+		int large_tokens = tokens.size();
+
+		double bytes_per_token = (double) (large_allocated - small_allocated) / (large_tokens - small_tokens);
+		System.out.printf("%-8s %12s %14s%n", "(size)", "tokens", "allocated");
+		System.out.printf("%-8s %12d %14d%n", small_size, small_tokens, small_allocated);
+		System.out.printf("%-8s %12d %14d%n", large_size, large_tokens, large_allocated);
+		if(bytes_per_token > slack) {
+			System.out.printf("FAILED: %.3f bytes allocated per extra token, allowed %.3f%n", bytes_per_token, slack);
+			System.exit(1);
+		}
+		System.out.printf("ok: %.3f bytes allocated per extra token%n", bytes_per_token);
+	}
+
+	/**
+	 * generates a valid program
+	 * @param size roughly how big, as ProgramGenerator.parseSize reads it
+	 * @param seed
+	 * @return the program's bytes
+	 * @throws Exception
+	 */
+	private static ByteBuffer generate(String size, long seed) throws Exception {
+		ProgramGenerator generator = new ProgramGenerator(NonTerminal.dense_table, ProgramGenerator.DEFAULT_SPINE_TYPE, seed);
+		generator.setTargetBytes(ProgramGenerator.parseSize(size));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(Writer out = new OutputStreamWriter(bytes, StandardCharsets.ISO_8859_1)) {
+			generator.generate(out, "Program");
+		}
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	/**
+	 * scans and parses one program from the start
+	 * @param program
+	 * @param scanner
+	 * @param symbol_table
+	 * @param parser
+	 * @param tokens emptied first
+	 * @throws Exception if the program did not parse
+	 */
+	private static void parse(ByteBuffer program, Scanner scanner, SymbolTable symbol_table, ParserEngine parser, TokenBuffer tokens) throws Exception {
+		scanner.reset(program);
+		tokens.clear();
+		parser.parse(scanner, symbol_table, tokens, null);
+	}
+}
@@ -0,0 +1,695 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * writes random programs that the parse table accepts, of about a requested size
+ *
+ * generation runs the LL(1) parse backwards, with the same stack of symbols: a nonterminal on top picks
+ * a production and narrows the kinds the next token can be to the ones the table picks that production on,
+ * and a terminal on top writes a lexeme of one of the kinds left, so every program comes out valid by
+ * construction
+ *
+ * a kind that only gets to a production through what follows it is checked against the rest of the stack
+ * first, and once the program is big enough, or the nesting deep enough, every nonterminal takes its
+ * shortest production so the program closes off
+ *
+ * nesting depth counts the symbols on the way down that are not the last of their production, i.e. what
+ * makes the parse stack grow, so long lists stay at one depth but nested statements and expressions do not,
+ * the shallowest list of spine type (the main program's statements), and whatever leads down to it, keeps going
+ * until the size is reached
+ *
+ * run from the project root with
+ *   java -cp out ProgramGenerator [-size 16M] [-depth 8] [-branching 1.0] [-comments 0.02] [-identifiers 64]
+ *       [-reals 0.25] [-exponents 0.05] [-seed 1] [-o file]
+ * @author Mike, Ryan
+ */
+public class ProgramGenerator {
+
+	/**
+	 * nonterminal whose shallowest list carries the size of the program
+	 */
+	public static final String DEFAULT_SPINE_TYPE = "StatementList`";
+
+	/**
+	 * production id ParseTable uses for none
+	 */
+	private static final int NO_PRODUCTION = ParseTable.NO_PRODUCTION;
+
+	/**
+	 * mask of every kind of token
+	 */
+	private static final long ALL_KINDS = (1L << TerminalKind.COUNT) - 1;
+
+	/**
+	 * words comments are made of
+	 */
+	private static final String[] COMMENT_WORDS = {
+		"note", "this", "loop", "should", "never", "overflow", "see", "above", "todo", "check", "bounds", "fast", "path"
+	};
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * the grammar
+	 */
+	private final ParseTable table;
+
+	/**
+	 * where the choices come from
+	 */
+	private final Random random;
+
+	/**
+	 * distinct productions of each nonterminal
+	 */
+	private final int[][] row_productions;
+
+	/**
+	 * for each production, the kinds its nonterminal picks it on
+	 */
+	private final long[] production_kinds;
+
+	/**
+	 * for each production, the kinds its first token can be
+	 */
+	private final long[] first_kinds;
+
+	/**
+	 * for each production, whether it can be empty
+	 */
+	private final boolean[] nullable;
+
+	/**
+	 * for each production, fewest tokens it can turn into
+	 */
+	private final long[] costs;
+
+	/**
+	 * for each terminal symbol id, the kinds it matches, 0 for nonterminals
+	 */
+	private final long[] terminal_kinds;
+
+	/**
+	 * lexemes of the grouped operator kinds, by kind
+	 */
+	private final String[][] operator_lexemes;
+
+	/**
+	 * shallowest depth the spine nonterminal can be at, -1 if there is none
+	 */
+	private final int spine_depth;
+
+	/**
+	 * for each nonterminal and depth up to spine_depth, whether it can derive the spine nonterminal at spine_depth
+	 */
+	private final boolean[][] spine_paths;
+
+	/**
+	 * symbols still to generate, top is stack[stack_size-1], and the depth of each
+	 */
+	private int[] stack;
+	private int[] depths;
+	private int stack_size;
+
+	/**
+	 * options, see the setters
+	 */
+	private long target_bytes = 16 * 1024;
+	private int max_depth = 8;
+	private double branching = 1.0;
+	private double comment_density = 0.02;
+	private String[] identifiers;
+	private double real_fraction = 0.25;
+	private double exponent_fraction = 0.05;
+
+	/**
+	 * what the last generate wrote
+	 */
+	private long byte_count;
+	private long token_count;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor
+	 * @param _table grammar to generate from
+	 * @param spine_type nonterminal whose shallowest list carries the size, may be null
+	 * @param seed
+	 */
+	public ProgramGenerator(ParseTable _table, String spine_type, long seed) {
+		table = _table;
+		random = new Random(seed);
+		int nonterminal_count = table.getNonterminalCount();
+		int production_count = table.getProductionCount();
+
+		terminal_kinds = new long[table.getSymbolCount()];
+		for(int symbol = nonterminal_count; symbol < terminal_kinds.length; symbol++) {
+			for(int kind = 0; kind < TerminalKind.COUNT; kind++) {
+				if(table.matches(symbol, kind)) {
+					terminal_kinds[symbol] |= 1L << kind;
+				}
+			}
+		}
+
+		row_productions = new int[nonterminal_count][];
+		production_kinds = new long[production_count];
+		for(int nonterminal = 0; nonterminal < nonterminal_count; nonterminal++) {
+			List<Integer> row = new ArrayList<Integer>();
+			for(int kind = 0; kind < TerminalKind.COUNT; kind++) {
+				int production = table.getProductionId(nonterminal, kind);
+				if(production != NO_PRODUCTION) {
+					if(!row.contains(production)) {
+						row.add(production);
+					}
+					production_kinds[production] |= 1L << kind;
+				}
+			}
+			row_productions[nonterminal] = row.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		//FIRST sets, nullability and shortest lengths all settle by going over the productions until nothing changes
+		first_kinds = new long[production_count];
+		nullable = new boolean[production_count];
+		costs = new long[production_count];
+		Arrays.fill(costs, Long.MAX_VALUE);
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int production = 0; production < production_count; production++) {
+				long first = 0;
+				boolean empty = true;
+				long cost = 0;
+				int[] symbols = table.getProduction(production);
+				//push order, so the first symbol of the production is the last one in the array
+				for(int i = symbols.length - 1; i >= 0; i--) {
+					int symbol = symbols[i];
+					if(empty) {
+						first |= table.isNonterminal(symbol) ? nonterminalFirst(symbol) : terminal_kinds[symbol];
+						empty = table.isNonterminal(symbol) && nonterminalNullable(symbol);
+					}
+					long symbol_cost = table.isNonterminal(symbol) ? nonterminalCost(symbol) : 1;
+					cost = symbol_cost == Long.MAX_VALUE || cost == Long.MAX_VALUE ? Long.MAX_VALUE : cost + symbol_cost;
+				}
+				if(first != first_kinds[production] || empty != nullable[production] || cost < costs[production]) {
+					first_kinds[production] = first;
+					nullable[production] = empty;
+					costs[production] = Math.min(cost, costs[production]);
+					changed = true;
+				}
+			}
+		}
+
+		operator_lexemes = new String[TerminalKind.FIRST_FIXED_LEXEME][];
+		SymbolTable symbol_table = SymbolTable.initializeSymbolTable();
+		for(int kind = 0; kind < TerminalKind.FIRST_FIXED_LEXEME; kind++) {
+			List<String> lexemes = new ArrayList<String>();
+			for(int id = 0; id < symbol_table.size(); id++) {
+				if(symbol_table.getSymbol(id).getKind() == kind) {
+					lexemes.add(symbol_table.getSymbol(id).getLexeme().toLowerCase());
+				}
+			}
+			operator_lexemes[kind] = lexemes.toArray(new String[0]);
+		}
+
+		int spine = spine_type == null ? -1 : table.getNonterminalId(spine_type);
+		spine_depth = spine == -1 ? -1 : shallowestDepth(spine);
+		spine_paths = new boolean[nonterminal_count][spine_depth + 1];
+		if(spine != -1) {
+			spine_paths[spine][spine_depth] = true;
+			changed = true;
+			while(changed) {
+				changed = false;
+				for(int nonterminal = 0; nonterminal < nonterminal_count; nonterminal++) {
+					for(int depth = 0; depth <= spine_depth; depth++) {
+						if(!spine_paths[nonterminal][depth]) {
+							for(int production : row_productions[nonterminal]) {
+								if(leadsToSpine(production, depth)) {
+									spine_paths[nonterminal][depth] = true;
+									changed = true;
+									break;
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		stack = new int[64];
+		depths = new int[64];
+		setIdentifierCount(64);
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * @param bytes roughly how big programs should be, they stop growing once they get there
+	 */
+	public void setTargetBytes(long bytes) {
+		target_bytes = bytes;
+	}
+
+	/**
+	 * @param depth nesting depth past which every nonterminal takes its shortest production
+	 */
+	public void setMaxDepth(int depth) {
+		max_depth = depth;
+	}
+
+	/**
+	 * @param weight how likely each longer production is next to the shortest one, which has weight 1
+	 */
+	public void setBranching(double weight) {
+		branching = weight;
+	}
+
+	/**
+	 * @param density chance of a comment in front of any token
+	 */
+	public void setCommentDensity(double density) {
+		comment_density = density;
+	}
+
+	/**
+	 * @param count number of distinct identifiers used
+	 */
+	public void setIdentifierCount(int count) {
+		identifiers = new String[count];
+		for(int i = 0; i < count; i++) {
+			//no keyword starts with x
+			identifiers[i] = "x"+Integer.toString(i, 36);
+		}
+	}
+
+	/**
+	 * @param fraction share of number literals that are reals, where the grammar takes either
+	 */
+	public void setRealFraction(double fraction) {
+		real_fraction = fraction;
+	}
+
+	/**
+	 * @param fraction share of number literals with an exponent
+	 */
+	public void setExponentFraction(double fraction) {
+		exponent_fraction = fraction;
+	}
+
+	/**
+	 * writes one program
+	 * @param out
+	 * @param start_type nonterminal the program derives from
+	 * @throws IOException
+	 */
+	public void generate(Writer out, String start_type) throws IOException {
+		byte_count = 0;
+		token_count = 0;
+		stack_size = 0;
+		push(table.getNonterminalId(start_type), 0);
+		long next_kinds = ALL_KINDS;
+		String previous = null;
+		while(stack_size > 0) {
+			stack_size--;
+			int symbol = stack[stack_size];
+			int depth = depths[stack_size];
+			if(table.isNonterminal(symbol)) {
+				int production = chooseProduction(symbol, depth, next_kinds);
+				//whatever kind the next token turns out to be, the table has to pick this same production on it
+				next_kinds &= feasibleKinds(production, next_kinds);
+				int[] symbols = table.getProduction(production);
+				for(int i = 0; i < symbols.length; i++) {
+					//the last symbol of a production takes its place on the stack, the others add to it
+					push(symbols[i], i == 0 ? depth : depth + 1);
+				}
+			}
+			else {
+				int next_kind = chooseKind(next_kinds & terminal_kinds[symbol]);
+				String lexeme = lexeme(next_kind);
+				if(previous != null) {
+					if(random.nextDouble() < comment_density) {
+						write(out, " {");
+						int words = 1 + random.nextInt(8);
+						for(int i = 0; i < words; i++) {
+							write(out, " ");
+							write(out, COMMENT_WORDS[random.nextInt(COMMENT_WORDS.length)]);
+						}
+						write(out, " }");
+					}
+					write(out, previous.equals(";") || previous.equals("begin") ? "\n" : " ");
+				}
+				write(out, lexeme);
+				token_count++;
+				previous = lexeme;
+				next_kinds = ALL_KINDS;
+			}
+		}
+	}
+
+	/**
+	 * @return characters the last program has
+	 */
+	public long getByteCount() {
+		return byte_count;
+	}
+
+	/**
+	 * @return tokens the last program has, not counting EOF
+	 */
+	public long getTokenCount() {
+		return token_count;
+	}
+
+	/**
+	 * main entry point, see the class comment
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		NonTerminal.loadParseTable("resources/parse_table.tbl");
+		ProgramGenerator generator = new ProgramGenerator(NonTerminal.dense_table, DEFAULT_SPINE_TYPE, 1);
+		String out_file_name = null;
+		long seed = 1;
+		for(int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i+1];
+			switch(args[i]) {
+				case "-size": generator.setTargetBytes(parseSize(value)); break;
+				case "-depth": generator.setMaxDepth(Integer.parseInt(value)); break;
+				case "-branching": generator.setBranching(Double.parseDouble(value)); break;
+				case "-comments": generator.setCommentDensity(Double.parseDouble(value)); break;
+				case "-identifiers": generator.setIdentifierCount(Integer.parseInt(value)); break;
+				case "-reals": generator.setRealFraction(Double.parseDouble(value)); break;
+				case "-exponents": generator.setExponentFraction(Double.parseDouble(value)); break;
+				case "-seed": seed = Long.parseLong(value); break;
+				case "-o": out_file_name = value; break;
+				default:
+					System.out.println("unknown option "+args[i]);
+					return;
+			}
+		}
+		generator.random.setSeed(seed);
+		Writer out = new BufferedWriter(out_file_name == null ? new java.io.OutputStreamWriter(System.out) : new FileWriter(out_file_name), 1 << 16);
+		generator.generate(out, "Program");
+		out.flush();
+		if(out_file_name != null) {
+			out.close();
+			System.out.println(out_file_name+": "+generator.getByteCount()+" bytes, "+generator.getTokenCount()+" tokens");
+		}
+	}
+
+	/**
+	 * @param size a number of bytes, optionally followed by K, M or G
+	 * @return the number of bytes
+	 */
+	public static long parseSize(String size) {
+		char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+		int shift = unit == 'K' ? 10 : unit == 'M' ? 20 : unit == 'G' ? 30 : 0;
+		String digits = shift == 0 ? size : size.substring(0, size.length() - 1);
+		return Long.parseLong(digits) << shift;
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * picks which production a nonterminal on top of the stack turns into, for some of the kinds the next token can still be
+	 */
+	private int chooseProduction(int nonterminal, int depth, long next_kinds) {
+		int[] productions = row_productions[nonterminal];
+		int shortest = -1;
+		double total = 0;
+		double[] weights = new double[productions.length];
+		for(int i = 0; i < productions.length; i++) {
+			if(feasibleKinds(productions[i], next_kinds) == 0) {
+				continue;
+			}
+			if(shortest == -1 || costs[productions[i]] < costs[productions[shortest]]) {
+				shortest = i;
+			}
+			weights[i] = branching;
+			total += branching;
+		}
+		if(shortest == -1) {
+			throw new IllegalStateException("no production of "+table.getSymbol(nonterminal).print()+" fits what follows it");
+		}
+		if(byte_count >= target_bytes) {
+			return productions[shortest];
+		}
+		total += 1 - weights[shortest];
+		weights[shortest] = 1;
+		if(depth <= spine_depth && spine_paths[nonterminal][depth]) {
+			//the way down to the main list, and the main list itself, keep going until the program is big enough
+			double spine_total = 0;
+			for(int i = 0; i < productions.length; i++) {
+				if(weights[i] > 0 && leadsToSpine(productions[i], depth)) {
+					spine_total += weights[i];
+				}
+			}
+			if(spine_total > 0) {
+				for(int i = 0; i < productions.length; i++) {
+					if(!leadsToSpine(productions[i], depth)) {
+						weights[i] = 0;
+					}
+				}
+				total = spine_total;
+			}
+		}
+		if(depth >= max_depth && !(depth <= spine_depth && spine_paths[nonterminal][depth])) {
+			return productions[shortest];
+		}
+		double pick = random.nextDouble() * total;
+		for(int i = 0; i < productions.length; i++) {
+			pick -= weights[i];
+			if(pick < 0 && weights[i] > 0) {
+				return productions[i];
+			}
+		}
+		return productions[shortest];
+	}
+
+	/**
+	 * @return whether a production of a nonterminal at this depth has a symbol that can derive the spine nonterminal at spine_depth
+	 */
+	private boolean leadsToSpine(int production, int depth) {
+		int[] symbols = table.getProduction(production);
+		for(int i = 0; i < symbols.length; i++) {
+			int symbol_depth = i == 0 ? depth : depth + 1;
+			if(table.isNonterminal(symbols[i]) && symbol_depth <= spine_depth && spine_paths[symbols[i]][symbol_depth]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return kinds of next token, out of the ones given, the production can be picked on here, given the rest of the stack
+	 */
+	private long feasibleKinds(int production, long next_kinds) {
+		long kinds = next_kinds & production_kinds[production] & first_kinds[production];
+		long follow_only = next_kinds & production_kinds[production] & ~first_kinds[production];
+		for(int kind = 0; follow_only != 0; kind++, follow_only >>>= 1) {
+			if((follow_only & 1) != 0 && consumesOnStack(kind)) {
+				kinds |= 1L << kind;
+			}
+		}
+		return kinds;
+	}
+
+	/**
+	 * @return whether parsing the rest of the stack with a token of this kind next would get to shift it
+	 */
+	private boolean consumesOnStack(int kind) {
+		for(int i = stack_size - 1; i >= 0; i--) {
+			int result = consumes(stack[i], kind, 0);
+			if(result != 0) {
+				return result > 0;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return 1 if the symbol shifts a token of this kind, -1 if it rejects it, 0 if it derives nothing for it
+	 */
+	private int consumes(int symbol, int kind, int level) {
+		if(!table.isNonterminal(symbol)) {
+			return (terminal_kinds[symbol] >>> kind & 1) != 0 ? 1 : -1;
+		}
+		int production = table.getProductionId(symbol, kind);
+		if(production == NO_PRODUCTION || level > 64) {
+			return -1;
+		}
+		int[] symbols = table.getProduction(production);
+		for(int i = symbols.length - 1; i >= 0; i--) {
+			int result = consumes(symbols[i], kind, level + 1);
+			if(result != 0) {
+				return result;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * picks a kind out of a set, numbers going by the literal mix
+	 */
+	private int chooseKind(long kinds) {
+		double total = 0;
+		for(int kind = 0; kind < TerminalKind.COUNT; kind++) {
+			if((kinds >>> kind & 1) != 0) {
+				total += kindWeight(kind);
+			}
+		}
+		double pick = random.nextDouble() * total;
+		int chosen = -1;
+		for(int kind = 0; kind < TerminalKind.COUNT; kind++) {
+			if((kinds >>> kind & 1) != 0) {
+				chosen = kind;
+				pick -= kindWeight(kind);
+				if(pick < 0) {
+					break;
+				}
+			}
+		}
+		if(chosen == -1) {
+			throw new IllegalStateException("no kind of token fits here");
+		}
+		return chosen;
+	}
+
+	/**
+	 * @return how likely a kind is picked out of a set of kinds
+	 */
+	private double kindWeight(int kind) {
+		if(kind == TerminalKind.REAL_LITERAL) {
+			return real_fraction;
+		}
+		if(kind == TerminalKind.INTEGER_LITERAL) {
+			return 1 - real_fraction;
+		}
+		return kind == TerminalKind.EOF ? 0 : 1;
+	}
+
+	/**
+	 * @return a random lexeme of the kind
+	 */
+	private String lexeme(int kind) {
+		switch(kind) {
+			case TerminalKind.IDENTIFIER:
+				return identifiers[random.nextInt(identifiers.length)];
+			case TerminalKind.INTEGER_LITERAL:
+				return random.nextInt(100000) + exponent();
+			case TerminalKind.REAL_LITERAL:
+				return random.nextInt(1000)+"."+random.nextInt(100) + exponent();
+			default:
+				if(kind < TerminalKind.FIRST_FIXED_LEXEME) {
+					String[] lexemes = operator_lexemes[kind];
+					return lexemes[random.nextInt(lexemes.length)];
+				}
+				return TerminalKind.name(kind).toLowerCase();
+		}
+	}
+
+	/**
+	 * @return an exponent for a number literal, usually none
+	 */
+	private String exponent() {
+		if(random.nextDouble() >= exponent_fraction) {
+			return "";
+		}
+		return "E"+(random.nextBoolean() ? "-" : "")+random.nextInt(10);
+	}
+
+	/**
+	 * writes and counts
+	 */
+	private void write(Writer out, String text) throws IOException {
+		out.write(text);
+		byte_count += text.length();
+	}
+
+	/**
+	 * pushes a symbol with its depth
+	 */
+	private void push(int symbol, int depth) {
+		if(stack_size == stack.length) {
+			stack = Arrays.copyOf(stack, stack_size * 2);
+			depths = Arrays.copyOf(depths, stack_size * 2);
+		}
+		stack[stack_size] = symbol;
+		depths[stack_size] = depth;
+		stack_size++;
+	}
+
+	/**
+	 * @return union of the first kinds of a nonterminal's productions
+	 */
+	private long nonterminalFirst(int nonterminal) {
+		long first = 0;
+		for(int production : row_productions[nonterminal]) {
+			first |= first_kinds[production];
+		}
+		return first;
+	}
+
+	/**
+	 * @return whether any of a nonterminal's productions can be empty
+	 */
+	private boolean nonterminalNullable(int nonterminal) {
+		for(int production : row_productions[nonterminal]) {
+			if(nullable[production]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return fewest tokens a nonterminal can turn into
+	 */
+	private long nonterminalCost(int nonterminal) {
+		long cost = Long.MAX_VALUE;
+		for(int production : row_productions[nonterminal]) {
+			cost = Math.min(cost, costs[production]);
+		}
+		return cost;
+	}
+
+	/**
+	 * @return shallowest depth a nonterminal can be derived at from any other, measured from the first nonterminal
+	 */
+	private int shallowestDepth(int target) {
+		int[] best = new int[table.getNonterminalCount()];
+		Arrays.fill(best, Integer.MAX_VALUE);
+		best[0] = 0;
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int nonterminal = 0; nonterminal < best.length; nonterminal++) {
+				if(best[nonterminal] == Integer.MAX_VALUE) {
+					continue;
+				}
+				for(int production : row_productions[nonterminal]) {
+					int[] symbols = table.getProduction(production);
+					for(int i = 0; i < symbols.length; i++) {
+						int depth = best[nonterminal] + (i == 0 ? 0 : 1);
+						if(table.isNonterminal(symbols[i]) && depth < best[symbols[i]]) {
+							best[symbols[i]] = depth;
+							changed = true;
+						}
+					}
+				}
+			}
+		}
+		return best[target];
+	}
+}
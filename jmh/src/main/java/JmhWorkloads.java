@@ -0,0 +1,348 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * what the JMH benchmarks time, kept in the default package next to the compiler
+ *
+ * the benchmarks live in a package of their own, which JMH insists on, and get these by name through
+ * reflection once per trial, after that every call is a plain LongSupplier call
+ *
+ * an input is one of the bundled resources/test_input_*.src by name, e.g. test_input_1, or else the size of
+ * a generated program as ProgramGenerator.parseSize reads it, e.g. 4K, the bundled inputs need not be valid
+ * programs, the workloads then stop at the error and answer what came before it
+ * @author Mike, Ryan
+ */
+public class JmhWorkloads {
+
+	/**
+	 * table every workload parses with
+	 */
+	private static final String PARSE_TABLE_PATH = "resources/parse_table.tbl";
+
+	/**
+	 * what a bundled input is named by
+	 */
+	private static final String TEST_INPUT_PREFIX = "test_input_";
+
+	/**
+	 * everything the per input workloads feed in, taken from a real scan and parse of the input
+	 */
+	private static class Input {
+		final ByteBuffer program;
+		final SymbolTable symbol_table = SymbolTable.initializeSymbolTable();
+
+		/**
+		 * every lexeme scanned, in order
+		 */
+		final List<String> lexemes = new ArrayList<String>();
+
+		/**
+		 * the identifier and number lexemes, the ones LexemeTerminal makes terminals for
+		 */
+		final List<String> new_lexemes = new ArrayList<String>();
+
+		/**
+		 * every nonterminal expanded while parsing, with the token it was expanded on
+		 */
+		final List<NonTerminal> nonterminals = new ArrayList<NonTerminal>();
+		final List<Terminal> lookaheads = new ArrayList<Terminal>();
+
+		Input(String text) throws IOException {
+			program = ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+			TokenBuffer tokens = new TokenBuffer();
+			Scanner scanner = new Scanner(program);
+			try {
+				do {
+					scanner.scanToken(symbol_table, tokens);
+				}
+				while(tokens.getKind(tokens.size() - 1) != TerminalKind.EOF);
+			} catch (Scanner.ScannerException|Token.TokenException|LexemeTerminal.LexemeTerminalException e) {
+				//the tokens in front of the error are still worth timing
+			}
+			for(int i = 0; i < tokens.size(); i++) {
+				if(tokens.getKind(i) == TerminalKind.EOF) {
+					continue;
+				}
+				String lexeme = text.substring((int) tokens.getStart(i), (int) tokens.getStart(i) + tokens.getLength(i));
+				lexemes.add(lexeme);
+				int kind = tokens.getKind(i);
+				if(kind == TerminalKind.IDENTIFIER || kind == TerminalKind.INTEGER_LITERAL || kind == TerminalKind.REAL_LITERAL) {
+					new_lexemes.add(lexeme);
+				}
+			}
+
+			ParserEngine parser = new ParserEngine(NonTerminal.dense_table, "Program");
+			try {
+				scanner.reset(program);
+				parser.parse(scanner, symbol_table, new TokenBuffer(), (symbol, found) -> {
+					if(symbol instanceof NonTerminal) {
+						nonterminals.add((NonTerminal) symbol);
+						lookaheads.add(found);
+					}
+				});
+			} catch (Scanner.ScannerException|Token.TokenException|LexemeTerminal.LexemeTerminalException|Symbol.UnexpectedTokenException e) {
+				//the rejected step is left out, getProduction would only throw on it
+				if(e instanceof Symbol.UnexpectedTokenException && !nonterminals.isEmpty()) {
+					nonterminals.remove(nonterminals.size() - 1);
+					lookaheads.remove(lookaheads.size() - 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * scans a whole program into a presized TokenBuffer, the scanner is reset over the same bytes every time
+	 */
+	private static class ScanWorkload implements LongSupplier {
+		final Input input;
+		final Scanner scanner;
+		final TokenBuffer tokens;
+
+		ScanWorkload(Input _input) {
+			input = _input;
+			scanner = new Scanner(input.program);
+			tokens = new TokenBuffer(input.program.remaining() + 1, false);
+		}
+
+		@Override
+		public long getAsLong() {
+			scanner.reset(input.program);
+			tokens.clear();
+			try {
+				do {
+					scanner.scanToken(input.symbol_table, tokens);
+				}
+				while(tokens.getKind(tokens.size() - 1) != TerminalKind.EOF);
+			} catch (Scanner.ScannerException|Token.TokenException|LexemeTerminal.LexemeTerminalException e) {
+				//stopped at the error, the same every time
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return tokens.size();
+		}
+	}
+
+	/**
+	 * scans and parses a whole program with no tree or listener, reusing the scanner, parser and TokenBuffer
+	 */
+	private static class ParseWorkload extends ScanWorkload {
+		final ParserEngine parser;
+
+		ParseWorkload(Input _input) {
+			super(_input);
+			parser = new ParserEngine(NonTerminal.dense_table, "Program");
+		}
+
+		@Override
+		public long getAsLong() {
+			scanner.reset(input.program);
+			tokens.clear();
+			try {
+				parser.parse(scanner, input.symbol_table, tokens, null);
+			} catch (Scanner.ScannerException|Token.TokenException|LexemeTerminal.LexemeTerminalException|Symbol.UnexpectedTokenException e) {
+				//stopped at the error, the same every time
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return parser.getTokenCount();
+		}
+	}
+
+	/**
+	 * inputs already read or generated, by name, a trial per benchmark would otherwise redo them
+	 */
+	private static final Map<String, Input> inputs = new HashMap<String, Input>();
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * static only
+	 */
+	private JmhWorkloads() {
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * @param input see the class comment
+	 * @return scans the input once per call and answers the token count
+	 * @throws Exception if the input or the parse table can not be read
+	 */
+	public static LongSupplier scan(String input) throws Exception {
+		return new ScanWorkload(input(input));
+	}
+
+	/**
+	 * @param input see the class comment
+	 * @return scans and parses the input once per call and answers the token count
+	 * @throws Exception if the input or the parse table can not be read
+	 */
+	public static LongSupplier parse(String input) throws Exception {
+		return new ParseWorkload(input(input));
+	}
+
+	/**
+	 * @param input see the class comment
+	 * @return gets every token of the input one at a time with Scanner.getNextToken, answers the count
+	 * @throws Exception if the input or the parse table can not be read
+	 */
+	public static LongSupplier getNextToken(String input) throws Exception {
+		Input prepared = input(input);
+		Scanner scanner = new Scanner(prepared.program);
+		return () -> {
+			scanner.reset(prepared.program);
+			long count = 0;
+			try {
+				while(!scanner.getNextToken(prepared.symbol_table).isEofToken()) {
+					count++;
+				}
+			} catch (Scanner.ScannerException|Token.TokenException|LexemeTerminal.LexemeTerminalException e) {
+				count--;
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return count;
+		};
+	}
+
+	/**
+	 * @param input see the class comment
+	 * @return makes a Token of every lexeme of the input
+	 * @throws Exception if the input or the parse table can not be read
+	 */
+	public static LongSupplier makeToken(String input) throws Exception {
+		Input prepared = input(input);
+		return () -> {
+			long count = 0;
+			try {
+				for(String lexeme : prepared.lexemes) {
+					count += Token.makeToken(lexeme, 0, 1, prepared.symbol_table).getLineNumber();
+				}
+			} catch (Token.TokenException|LexemeTerminal.LexemeTerminalException e) {
+				throw new IllegalStateException(e);
+			}
+			return count;
+		};
+	}
+
+	/**
+	 * @param input see the class comment
+	 * @return looks up every lexeme of the input in the symbol table
+	 * @throws Exception if the input or the parse table can not be read
+	 */
+	public static LongSupplier getSymbol(String input) throws Exception {
+		Input prepared = input(input);
+		return () -> {
+			long count = 0;
+			try {
+				for(String lexeme : prepared.lexemes) {
+					count += prepared.symbol_table.getSymbol(lexeme).getKind();
+				}
+			} catch (LexemeTerminal.LexemeTerminalException e) {
+				throw new IllegalStateException(e);
+			}
+			return count;
+		};
+	}
+
+	/**
+	 * @param input see the class comment
+	 * @return makes a terminal of every identifier and number of the input
+	 * @throws Exception if the input or the parse table can not be read
+	 */
+	public static LongSupplier makeLexemeTerminal(String input) throws Exception {
+		Input prepared = input(input);
+		return () -> {
+			long count = 0;
+			try {
+				for(String lexeme : prepared.new_lexemes) {
+					count += LexemeTerminal.makeLexemeTerminal(lexeme).getKind();
+				}
+			} catch (LexemeTerminal.LexemeTerminalException e) {
+				throw new IllegalStateException(e);
+			}
+			return count;
+		};
+	}
+
+	/**
+	 * @param input see the class comment
+	 * @return looks up the production of every step parsing the input took
+	 * @throws Exception if the input or the parse table can not be read
+	 */
+	public static LongSupplier getProduction(String input) throws Exception {
+		Input prepared = input(input);
+		return () -> {
+			long count = 0;
+			try {
+				for(int i = 0; i < prepared.nonterminals.size(); i++) {
+					count += prepared.nonterminals.get(i).getProduction(prepared.lookaheads.get(i), 1).size();
+				}
+			} catch (Symbol.UnexpectedTokenException e) {
+				throw new IllegalStateException(e);
+			}
+			return count;
+		};
+	}
+
+	/**
+	 * @return reads the text parse table into a map, answers its size
+	 */
+	public static LongSupplier generateHashMap() {
+		return () -> {
+			try {
+				return ParseTableGenerator.generateHashMap(PARSE_TABLE_PATH).size();
+			} catch (ParseTableGenerator.ParseTableException|IOException e) {
+				throw new IllegalStateException(e);
+			}
+		};
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * loads the parse table if need be, then reads or generates an input, a generated one is the same for
+	 * a size every time
+	 * @param name see the class comment
+	 * @return the input, prepared
+	 * @throws Exception if the input or the parse table can not be read
+	 */
+	private static synchronized Input input(String name) throws Exception {
+		Input input = inputs.get(name);
+		if(input != null) {
+			return input;
+		}
+		if(NonTerminal.dense_table == null) {
+			NonTerminal.loadParseTable(PARSE_TABLE_PATH);
+		}
+		String text;
+		if(name.startsWith(TEST_INPUT_PREFIX)) {
+			text = new String(Files.readAllBytes(Paths.get("resources", name+".src")), StandardCharsets.ISO_8859_1);
+		}
+		else {
+			ProgramGenerator generator = new ProgramGenerator(NonTerminal.dense_table, ProgramGenerator.DEFAULT_SPINE_TYPE, 42);
+			generator.setTargetBytes(ProgramGenerator.parseSize(name));
+			StringWriter program = new StringWriter();
+			generator.generate(program, "Program");
+			text = program.toString();
+		}
+		input = new Input(text);
+		inputs.put(name, input);
+		return input;
+	}
+}
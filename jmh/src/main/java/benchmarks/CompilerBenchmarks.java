@@ -0,0 +1,134 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the compiler's hot paths, on the bundled test inputs and on generated programs, the
+ * scanner reads a ByteBuffer and is reset between calls the way a mapped file is scanned
+ *
+ * run from the project root with
+ *   mvn -B package
+ *   java -jar jmh/target/benchmarks.jar [-prof gc] [-p input=test_input_2,4K] [getSymbol]
+ * @author Mike, Ryan
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmarks {
+
+	/**
+	 * the workloads for one input, they are in the default package so can only be found by name
+	 */
+	@State(Scope.Benchmark)
+	public static class Input {
+
+		/**
+		 * a bundled resources/test_input_*.src by name, or the size of a generated program
+		 */
+		@Param({ "test_input_1", "test_input_2", "test_input_3", "test_input_4", "4K", "256K" })
+		public String input;
+
+		LongSupplier scan;
+		LongSupplier parse;
+		LongSupplier get_next_token;
+		LongSupplier make_token;
+		LongSupplier get_symbol;
+		LongSupplier make_lexeme_terminal;
+		LongSupplier get_production;
+
+		/**
+		 * @throws Exception
+		 */
+		@Setup
+		public void setUp() throws Exception {
+			scan = workload("scan", input);
+			parse = workload("parse", input);
+			get_next_token = workload("getNextToken", input);
+			make_token = workload("makeToken", input);
+			get_symbol = workload("getSymbol", input);
+			make_lexeme_terminal = workload("makeLexemeTerminal", input);
+			get_production = workload("getProduction", input);
+		}
+	}
+
+	/**
+	 * the workload that reads the parse table, the same whatever the input so it is not run once per input
+	 */
+	@State(Scope.Benchmark)
+	public static class Table {
+		LongSupplier generate_hash_map;
+
+		/**
+		 * @throws Exception
+		 */
+		@Setup
+		public void setUp() throws Exception {
+			generate_hash_map = (LongSupplier) Class.forName("JmhWorkloads").getMethod("generateHashMap").invoke(null);
+		}
+	}
+
+	@Benchmark
+	public long scanner(Input input) {
+		return input.scan.getAsLong();
+	}
+
+	@Benchmark
+	public long parser(Input input) {
+		return input.parse.getAsLong();
+	}
+
+	@Benchmark
+	public long getNextToken(Input input) {
+		return input.get_next_token.getAsLong();
+	}
+
+	@Benchmark
+	public long makeToken(Input input) {
+		return input.make_token.getAsLong();
+	}
+
+	@Benchmark
+	public long getSymbol(Input input) {
+		return input.get_symbol.getAsLong();
+	}
+
+	@Benchmark
+	public long makeLexemeTerminal(Input input) {
+		return input.make_lexeme_terminal.getAsLong();
+	}
+
+	@Benchmark
+	public long getProduction(Input input) {
+		return input.get_production.getAsLong();
+	}
+
+	@Benchmark
+	public long generateHashMap(Table table) {
+		return table.generate_hash_map.getAsLong();
+	}
+
+	/**
+	 * @param name of the JmhWorkloads factory
+	 * @param input
+	 * @return the workload it makes for the input
+	 * @throws Exception
+	 */
+	private static LongSupplier workload(String name, String input) throws Exception {
+		return (LongSupplier) Class.forName("JmhWorkloads").getMethod(name, String.class).invoke(null, input);
+	}
+}
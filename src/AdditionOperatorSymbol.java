@@ -6,7 +6,7 @@
 public class AdditionOperatorSymbol extends LexemeTerminal {
 
 	public AdditionOperatorSymbol(String _lexeme) {
-		super(_lexeme);
+		super(_lexeme, TerminalKind.ADDITION_OPERATOR);
 	}
 
 }
@@ -1,4 +1,4 @@
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -16,10 +16,15 @@ public class AnySymbolOfClass extends Symbol {
 	 */
 	private Class<? extends Symbol> base_class;
 	
+	/**
+	 * a bit per TerminalKind whose terminals are of base_class, worked out once so matching is a bit test
+	 */
+	private long kind_mask;
+	
 	/**
 	 * used to print info about this symbol mainly for the main output of the applicaiton
 	 */
-	public String print(Token found) {
+	public String print(Terminal found) {
 		//30 column aligned for prettification
 		return base_class.getName()+": '"+found.print()+"'";
 	}
@@ -30,20 +35,28 @@ public class AnySymbolOfClass extends Symbol {
 	 */
 	public AnySymbolOfClass(Class<? extends Symbol> _base_class) {
 		base_class = _base_class;
+		kind_mask = TerminalKind.maskOfClass(base_class);
+	}
+	
+	/**
+	 * @return the class this symbol matches against
+	 */
+	public Class<? extends Symbol> getBaseClass() {
+		return base_class;
 	}
 
 	/**
-	 * checks the passed Token and throw an error if it is not what we expected
+	 * checks the passed Terminal and throw an error if it is not what we expected
 	 * returns a list of Symbols to replace it's self in the stack with, which is always for this class an empty list
 	 */
 	@Override
-	public List<Symbol> getProduction(Token next_token)
+	public List<Symbol> getProduction(Terminal next_terminal, int line_number)
 			throws UnexpectedTokenException
 	{
-		if(!base_class.isAssignableFrom(next_token.getTerminalClass())){
-			throw new UnexpectedTokenException(next_token);
+		if((kind_mask >>> next_terminal.getKind() & 1) == 0){
+			throw new UnexpectedTokenException(new Token(next_terminal, line_number));
 		}
-		return new LinkedList<Symbol>();
+		return Collections.emptyList();
 	}
 
 	/**
@@ -6,7 +6,7 @@
 public class AssignmentOperatorSymbol extends LexemeTerminal {
 
 	public AssignmentOperatorSymbol(String _lexeme) {
-		super(_lexeme);
+		super(_lexeme, TerminalKind.ASSIGNMENT_OPERATOR);
 	}
 
 }
@@ -0,0 +1,408 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * precompiled form of a parse table file
+ *
+ * the text table is parsed once by the build step (ParseTableGenerator.main) and written out with every
+ * symbol interned, so loading is just mapping the file and decoding. the rows of a nonterminal are only
+ * decoded the first time that nonterminal is looked up.
+ *
+ * file layout (big endian):
+ * header:      magic, version, size and modified time of the text table it was built from, CRC32 of that
+ *              text table, CRC32 of the payload
+ * symbols:     count, then the text of each symbol as written in the text table
+ * productions: count, then for each: length, symbol ids (already in stack order)
+ * types:       count, then for each: name, offset of its rows
+ * rows:        for each type: entry count, then for each entry: lookahead symbol id, production id
+ *
+ * the table is rejected if either checksum does not match, so a binary that is older than its text table is never used,
+ * the text table is only read to be checksummed when its size or modified time is not the one it was built from
+ */
+public class BinaryParseTable extends AbstractMap<String, Map<Symbol, List<Symbol>>> {
+
+	/**
+	 * "PTBL"
+	 */
+	private static final int MAGIC = 0x5054424C;
+
+	/**
+	 * bumped whenever the layout changes
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * bytes before the payload: magic, version, size and time of the text table, two checksums
+	 */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 8;
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * the mapped payload
+	 */
+	private final ByteBuffer payload;
+
+	/**
+	 * every symbol, by id
+	 */
+	private final Symbol[] symbols;
+
+	/**
+	 * offset in the payload of each production, by id
+	 */
+	private final int[] production_offsets;
+
+	/**
+	 * productions decoded so far, by id
+	 */
+	private final List<Symbol>[] productions;
+
+	/**
+	 * offset in the payload of each type's rows
+	 */
+	private final Map<String, Integer> row_offsets;
+
+	/**
+	 * rows decoded so far
+	 */
+	private final ConcurrentHashMap<String, Map<Symbol, List<Symbol>>> rows;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * decodes everything but the rows and productions
+	 * @param _payload
+	 * @throws ClassNotFoundException
+	 * @throws ParseTableGenerator.ParseTableException
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private BinaryParseTable(ByteBuffer _payload) throws ClassNotFoundException, ParseTableGenerator.ParseTableException {
+		payload = _payload;
+		ParseTableGenerator.SymbolPool pool = new ParseTableGenerator.SymbolPool();
+		ByteBuffer reader = payload.duplicate();
+
+		symbols = new Symbol[reader.getInt()];
+		for(int i = 0; i < symbols.length; i++) {
+			symbols[i] = pool.get(readString(reader));
+			if(symbols[i] == null) {
+				throw new ParseTableGenerator.ParseTableException("Bad symbol "+i+" in binary parse table");
+			}
+		}
+
+		production_offsets = new int[reader.getInt()];
+		productions = new List[production_offsets.length];
+		for(int i = 0; i < production_offsets.length; i++) {
+			production_offsets[i] = reader.position();
+			reader.position(reader.position() + 4 + 4 * reader.getInt(reader.position()));
+		}
+
+		int type_count = reader.getInt();
+		row_offsets = new HashMap<String, Integer>();
+		for(int i = 0; i < type_count; i++) {
+			String type = readString(reader);
+			row_offsets.put(type, reader.getInt());
+		}
+		rows = new ConcurrentHashMap<String, Map<Symbol, List<Symbol>>>();
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * maps a binary table and checks it
+	 * @param binary_path the binary table
+	 * @param text_path the text table it must have been built from
+	 * @return
+	 * @throws IOException
+	 * @throws ParseTableGenerator.ParseTableException if the binary is corrupt, or stale compared to the text table
+	 * @throws ClassNotFoundException
+	 */
+	public static BinaryParseTable open(String binary_path, String text_path) throws IOException, ParseTableGenerator.ParseTableException, ClassNotFoundException {
+		ByteBuffer file;
+		try(FileChannel channel = FileChannel.open(Paths.get(binary_path), StandardOpenOption.READ)) {
+			file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if(file.remaining() < HEADER_SIZE || file.getInt() != MAGIC || file.getInt() != VERSION) {
+			throw new ParseTableGenerator.ParseTableException("Not a binary parse table (or an old version): "+binary_path);
+		}
+		long source_size = file.getLong();
+		long source_time = file.getLong();
+		long source_checksum = file.getLong();
+		long payload_checksum = file.getLong();
+		//an unchanged size and time is taken as an unchanged table, anything else has to match by content
+		Path text = Paths.get(text_path);
+		if((Files.size(text) != source_size || Files.getLastModifiedTime(text).toMillis() != source_time)
+				&& source_checksum != checksum(ByteBuffer.wrap(Files.readAllBytes(text)))) {
+			throw new ParseTableGenerator.ParseTableException("Binary parse table "+binary_path+" is stale, rebuild it from "+text_path);
+		}
+		ByteBuffer payload = file.slice();
+		if(payload_checksum != checksum(payload.duplicate())) {
+			throw new ParseTableGenerator.ParseTableException("Binary parse table "+binary_path+" is corrupt");
+		}
+		try {
+			return new BinaryParseTable(payload);
+		} catch (BufferUnderflowException|IndexOutOfBoundsException e) {
+			throw new ParseTableGenerator.ParseTableException("Binary parse table "+binary_path+" is truncated");
+		}
+	}
+
+	/**
+	 * compiles a text table into a binary one
+	 * @param text_path
+	 * @param binary_path
+	 * @throws IOException
+	 * @throws ParseTableGenerator.ParseTableException
+	 */
+	public static void write(String text_path, String binary_path) throws IOException, ParseTableGenerator.ParseTableException {
+		ParseTableGenerator.SymbolPool pool = new ParseTableGenerator.SymbolPool();
+		Map<String, Map<Symbol, List<Symbol>>> table = ParseTableGenerator.generateHashMap(text_path, pool);
+
+		//symbols are numbered in the order the pool first saw them
+		List<String> descriptors = pool.descriptors();
+		IdentityHashMap<Symbol, Integer> symbol_ids = new IdentityHashMap<Symbol, Integer>();
+		for(String descriptor : descriptors) {
+			try {
+				symbol_ids.put(pool.get(descriptor), symbol_ids.size());
+			} catch (ClassNotFoundException e) {
+				//cannot happen, the pool already made this symbol
+				throw new ParseTableGenerator.ParseTableException("Bad Class in "+descriptor);
+			}
+		}
+		//productions are shared between every entry of the line they came from
+		IdentityHashMap<List<Symbol>, Integer> production_ids = new IdentityHashMap<List<Symbol>, Integer>();
+		for(Map<Symbol, List<Symbol>> type_rows : table.values()) {
+			for(List<Symbol> production : type_rows.values()) {
+				if(!production_ids.containsKey(production)) {
+					production_ids.put(production, production_ids.size());
+				}
+			}
+		}
+
+		ByteArrayOutputStream payload_bytes = new ByteArrayOutputStream();
+		DataOutputStream payload = new DataOutputStream(payload_bytes);
+		payload.writeInt(descriptors.size());
+		for(String descriptor : descriptors) {
+			payload.writeUTF(descriptor);
+		}
+		List<Symbol>[] ordered_productions = orderById(production_ids);
+		payload.writeInt(ordered_productions.length);
+		for(List<Symbol> production : ordered_productions) {
+			payload.writeInt(production.size());
+			for(Symbol symbol : production) {
+				payload.writeInt(symbol_ids.get(symbol));
+			}
+		}
+		//rows go after the type index, so their offsets are the index size plus where they land in rows_bytes
+		ByteArrayOutputStream rows_bytes = new ByteArrayOutputStream();
+		DataOutputStream rows = new DataOutputStream(rows_bytes);
+		Map<String, Integer> row_offsets = new HashMap<String, Integer>();
+		for(Map.Entry<String, Map<Symbol, List<Symbol>>> type : table.entrySet()) {
+			row_offsets.put(type.getKey(), rows.size());
+			rows.writeInt(type.getValue().size());
+			for(Map.Entry<Symbol, List<Symbol>> entry : type.getValue().entrySet()) {
+				rows.writeInt(symbol_ids.get(entry.getKey()));
+				rows.writeInt(production_ids.get(entry.getValue()));
+			}
+		}
+		ByteArrayOutputStream index_bytes = new ByteArrayOutputStream();
+		DataOutputStream index = new DataOutputStream(index_bytes);
+		index.writeInt(table.size());
+		for(String type : table.keySet()) {
+			index.writeUTF(type);
+			index.writeInt(0);
+		}
+		int rows_start = payload.size() + index.size();
+		payload.writeInt(table.size());
+		for(String type : table.keySet()) {
+			payload.writeUTF(type);
+			payload.writeInt(rows_start + row_offsets.get(type));
+		}
+		rows_bytes.writeTo(payload);
+		payload.flush();
+		byte[] payload_array = payload_bytes.toByteArray();
+
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(binary_path)))) {
+			Path text = Paths.get(text_path);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(Files.size(text));
+			out.writeLong(Files.getLastModifiedTime(text).toMillis());
+			out.writeLong(checksum(ByteBuffer.wrap(Files.readAllBytes(text))));
+			out.writeLong(checksum(ByteBuffer.wrap(payload_array)));
+			out.write(payload_array);
+		}
+	}
+
+	/**
+	 * the binary table for a text table lives next to it with a .bin extension
+	 * @param text_path
+	 * @return
+	 */
+	public static String binaryPathFor(String text_path) {
+		return text_path.replaceFirst("\\.tbl$", "") + ".bin";
+	}
+
+	/**
+	 * gets the rows of a type, decoding them on first use
+	 */
+	@Override
+	public Map<Symbol, List<Symbol>> get(Object type) {
+		Integer offset = row_offsets.get(type);
+		if(offset == null) {
+			return null;
+		}
+		return rows.computeIfAbsent((String) type, this::decodeRows);
+	}
+
+	@Override
+	public boolean containsKey(Object type) {
+		return row_offsets.containsKey(type);
+	}
+
+	/**
+	 * decodes every row, only meant for tools that walk the whole table
+	 */
+	@Override
+	public Set<Map.Entry<String, Map<Symbol, List<Symbol>>>> entrySet() {
+		Map<String, Map<Symbol, List<Symbol>>> all_rows = new HashMap<String, Map<Symbol, List<Symbol>>>();
+		for(String type : row_offsets.keySet()) {
+			all_rows.put(type, get(type));
+		}
+		return Collections.unmodifiableMap(all_rows).entrySet();
+	}
+
+	/**
+	 * reads every row straight from the payload, the rows are not decoded into maps, for ParseTable to be built from
+	 * @return
+	 */
+	ParseTable.Rows rows() {
+		ParseTable.Rows table_rows = new ParseTable.Rows(row_offsets.size());
+		ByteBuffer reader = payload.duplicate();
+		int row = 0;
+		for(Map.Entry<String, Integer> type : row_offsets.entrySet()) {
+			reader.position(type.getValue());
+			int entry_count = reader.getInt();
+			table_rows.types[row] = type.getKey();
+			table_rows.lookaheads[row] = new Symbol[entry_count];
+			table_rows.entry_productions[row] = new int[entry_count];
+			for(int i = 0; i < entry_count; i++) {
+				table_rows.lookaheads[row][i] = symbols[reader.getInt()];
+				table_rows.entry_productions[row][i] = reader.getInt();
+			}
+			row++;
+		}
+		table_rows.productions = new Symbol[production_offsets.length][];
+		for(int id = 0; id < production_offsets.length; id++) {
+			table_rows.productions[id] = productionSymbols(id);
+		}
+		return table_rows;
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * decodes the rows of one type
+	 * @param type
+	 * @return
+	 */
+	private Map<Symbol, List<Symbol>> decodeRows(String type) {
+		ByteBuffer reader = payload.duplicate();
+		reader.position(row_offsets.get(type));
+		int entry_count = reader.getInt();
+		Map<Symbol, List<Symbol>> type_rows = new HashMap<Symbol, List<Symbol>>();
+		for(int i = 0; i < entry_count; i++) {
+			Symbol lookahead = symbols[reader.getInt()];
+			type_rows.put(lookahead, getProduction(reader.getInt()));
+		}
+		return Collections.unmodifiableMap(type_rows);
+	}
+
+	/**
+	 * gets a production, decoding it on first use
+	 * racing threads may both decode it, either result is equally good
+	 * @param id
+	 * @return
+	 */
+	private List<Symbol> getProduction(int id) {
+		List<Symbol> production = productions[id];
+		if(production == null) {
+			production = Collections.unmodifiableList(Arrays.asList(productionSymbols(id)));
+			productions[id] = production;
+		}
+		return production;
+	}
+
+	/**
+	 * reads the symbols of a production from the payload
+	 * @param id
+	 * @return
+	 */
+	private Symbol[] productionSymbols(int id) {
+		int offset = production_offsets[id];
+		Symbol[] production_symbols = new Symbol[payload.getInt(offset)];
+		for(int i = 0; i < production_symbols.length; i++) {
+			production_symbols[i] = symbols[payload.getInt(offset + 4 + 4 * i)];
+		}
+		return production_symbols;
+	}
+
+	/**
+	 * reads a string written by DataOutputStream.writeUTF
+	 * the table only holds ASCII so modified UTF-8 is plain bytes here
+	 */
+	private static String readString(ByteBuffer reader) {
+		byte[] bytes = new byte[reader.getShort() & 0xFFFF];
+		reader.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * CRC32 of the remaining bytes of a buffer
+	 */
+	private static long checksum(ByteBuffer bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return crc.getValue();
+	}
+
+	/**
+	 * flips an id map into an array
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static List<Symbol>[] orderById(IdentityHashMap<List<Symbol>, Integer> ids) {
+		List<Symbol>[] ordered = new List[ids.size()];
+		for(Map.Entry<List<Symbol>, Integer> entry : ids.entrySet()) {
+			ordered[entry.getValue()] = entry.getKey();
+		}
+		return ordered;
+	}
+}
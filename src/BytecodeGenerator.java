@@ -0,0 +1,801 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * turns an analyzed syntax tree into a JVM class that runs the program
+ *
+ * the class is named after the program, its variables are public static fields and each function or procedure
+ * is a public static method taking its parameters in order, so HotSpot JIT compiles the program like any
+ * other java code, main runs the program's body and then prints every one of its variables
+ *
+ * integers are ints and reals are doubles, an array of lo .. hi is a java array of hi - lo + 1 elements,
+ * passing an array passes a copy of it, like any other value, the language has no booleans, so a comparison
+ * is 1 when it holds and 0 when not, NOT gives 1 for 0 and 0 for anything else, and an IF or WHILE condition
+ * holds for anything but 0, comparisons are turned straight into conditional jumps where they are conditions
+ *
+ * the tree is walked by hand rather than with walk, since code for an expression depends on the types of its
+ * operands, the right recursive tails the grammar has for lists are followed in a loop, so only expressions
+ * and statements that are actually nested make the walk go deeper
+ *
+ * the types of the expressions are the ones the analyzer worked out, it has already reported anything that does not
+ * fit, like a real assigned to an integer, so the tree is taken to have no such mistakes, only a program that can
+ * not be made into a class is reported to the Diagnostics, a generator can be reused, but only by one thread at a time
+ * @author Mike, Ryan
+ */
+public class BytecodeGenerator {
+
+	/**
+	 * kind of the IF keyword
+	 */
+	private static final int IF_KIND = TerminalKind.ofFixedLexeme("IF");
+
+	/**
+	 * kind of the WHILE keyword
+	 */
+	private static final int WHILE_KIND = TerminalKind.ofFixedLexeme("WHILE");
+
+	/**
+	 * kind of the NOT keyword
+	 */
+	private static final int NOT_KIND = TerminalKind.ofFixedLexeme("NOT");
+
+	/**
+	 * kind of the [ that starts an array element being assigned
+	 */
+	private static final int BRACKET_KIND = TerminalKind.ofFixedLexeme("[");
+
+	/**
+	 * comparisons in the order of their jump instructions, each one's opposite is next to it
+	 */
+	private static final String[] COMPARISONS = {"=", "<>", "<", ">=", ">", "<="};
+
+	/**
+	 * what the generated classes extend
+	 */
+	private static final String SUPER_CLASS = "java/lang/Object";
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * symbol ids of the nonterminals code is generated for
+	 */
+	private final int id_statement, compound_statement, variable_statement, term, sign;
+
+	/**
+	 * name of the last class generated
+	 */
+	private String class_name;
+
+	/**
+	 * where errors go, null to not report any
+	 */
+	private Diagnostics diagnostics;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor
+	 * @param table the grammar the trees are parsed with
+	 */
+	public BytecodeGenerator(ParseTable table) {
+		id_statement = table.getNonterminalId("IdStatement");
+		compound_statement = table.getNonterminalId("CompoundStatement");
+		variable_statement = table.getNonterminalId("VariableStatement");
+		term = table.getNonterminalId("Term");
+		sign = table.getNonterminalId("Sign");
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * report errors from now on
+	 * @param _diagnostics where to, null to stop
+	 */
+	public void setDiagnostics(Diagnostics _diagnostics) {
+		diagnostics = _diagnostics;
+	}
+
+	/**
+	 * generates the class for a program
+	 * @param tree a complete parse
+	 * @param tokens the parse's tokens
+	 * @param symbol_table the table the tokens were scanned with
+	 * @param analyzer what analyzed the tree, without errors
+	 * @param source_name path of the source, stack traces name its file
+	 * @return the class file, null if there were errors
+	 */
+	public byte[] generate(SyntaxTree tree, TokenBuffer tokens, SymbolTable symbol_table, SemanticAnalyzer analyzer, String source_name) {
+		Generation generation = new Generation(tree, tokens, symbol_table, analyzer);
+		Path file_name = Paths.get(source_name).getFileName();
+		return generation.program(file_name == null ? source_name : file_name.toString());
+	}
+
+	/**
+	 * @return name of the last class generated, the program's name, the class file is this plus .class
+	 */
+	public String getClassName() {
+		return class_name;
+	}
+
+	/**
+	 * @param type TYPE_ constant of a variable
+	 * @return its field descriptor
+	 */
+	static String descriptor(int type) {
+		switch(type) {
+		case ScopedSymbolTable.TYPE_INTEGER:
+			return "I";
+		case ScopedSymbolTable.TYPE_REAL:
+			return "D";
+		case ScopedSymbolTable.TYPE_INTEGER_ARRAY:
+			return "[I";
+		case ScopedSymbolTable.TYPE_REAL_ARRAY:
+			return "[D";
+		default:
+			throw new IllegalArgumentException("no descriptor for type "+type);
+		}
+	}
+
+	/*****************\
+	|* inner classes *|
+	\*****************/
+
+	/**
+	 * generating one class, the state of the walk
+	 */
+	private class Generation {
+
+		/**
+		 * the parse
+		 */
+		private final SyntaxTree tree;
+
+		/**
+		 * the parse's tokens
+		 */
+		private final TokenBuffer tokens;
+
+		/**
+		 * the table the tokens were scanned with
+		 */
+		private final SymbolTable symbol_table;
+
+		/**
+		 * what each identifier refers to
+		 */
+		private final SemanticAnalyzer analyzer;
+
+		/**
+		 * the declarations
+		 */
+		private final ScopedSymbolTable scopes;
+
+		/**
+		 * per declaration: its local in the method being generated, for the subprogram's parameters and variables
+		 */
+		private final int[] locals;
+
+		/**
+		 * the class
+		 */
+		private ClassFileWriter writer;
+
+		/**
+		 * code of the method being generated
+		 */
+		private ClassFileWriter.Code code;
+
+		/**
+		 * the subprogram whose method is being generated, NONE for main
+		 */
+		private int subprogram = ScopedSymbolTable.NONE;
+
+		/**
+		 * local that holds a function's result
+		 */
+		private int result_local;
+
+		/**
+		 * line of the statement being generated
+		 */
+		private int line;
+
+		/**
+		 * errors found so far
+		 */
+		private int error_count = 0;
+
+		Generation(SyntaxTree _tree, TokenBuffer _tokens, SymbolTable _symbol_table, SemanticAnalyzer _analyzer) {
+			tree = _tree;
+			tokens = _tokens;
+			symbol_table = _symbol_table;
+			analyzer = _analyzer;
+			scopes = analyzer.getScopes();
+			locals = new int[scopes.getDeclarationCount()];
+		}
+
+		/**
+		 * generates the whole class
+		 * @return the class file, null if there were errors
+		 */
+		byte[] program(String file_name) {
+			int root = tree.getRoot();
+			int name_token = tree.getToken(child(root, 1));
+			class_name = lexeme(name_token);
+			writer = new ClassFileWriter(class_name, SUPER_CLASS);
+			writer.setSourceFile(file_name);
+			try {
+				globals();
+				for(int list = child(root, 7); tree.getFirstChild(list) != SyntaxTree.NONE; list = child(list, 2)) {
+					subprogram(child(list, 0));
+				}
+				subprogram = ScopedSymbolTable.NONE;
+				code = writer.addMethod(ClassFileWriter.ACC_PUBLIC, "main", "([Ljava/lang/String;)V");
+				compoundStatement(child(root, 8));
+				printGlobals();
+				code.instruction(ClassFileWriter.RETURN, 0);
+				code.finish(1);
+				return error_count == 0 ? writer.toByteArray() : null;
+			} catch (ClassFileWriter.ClassFileException e) {
+				error("Program '"+class_name+"' can not be made into a class: "+e.getMessage());
+				return null;
+			}
+		}
+
+		/**
+		 * adds a field for each of the program's variables, and makes its arrays in the static initializer
+		 */
+		private void globals() {
+			ClassFileWriter.Code initializer = null;
+			for(int declaration = 0; declaration < scopes.getDeclarationCount(); declaration++) {
+				if(!isGlobal(declaration)) {
+					continue;
+				}
+				int type = scopes.getType(declaration);
+				String name = lexemeOf(scopes.getName(declaration));
+				writer.addField(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, name, descriptor(type));
+				if(ScopedSymbolTable.isArray(type)) {
+					if(initializer == null) {
+						initializer = writer.addMethod(0, "<clinit>", "()V");
+					}
+					newArray(initializer, declaration);
+					initializer.field(ClassFileWriter.PUTSTATIC, class_name, name, descriptor(type));
+				}
+			}
+			if(initializer != null) {
+				initializer.instruction(ClassFileWriter.RETURN, 0);
+				initializer.finish(0);
+			}
+		}
+
+		/**
+		 * prints every variable of the program, as NAME = value, an array as its elements in order
+		 */
+		private void printGlobals() {
+			for(int declaration = 0; declaration < scopes.getDeclarationCount(); declaration++) {
+				if(!isGlobal(declaration)) {
+					continue;
+				}
+				int type = scopes.getType(declaration);
+				String name = lexemeOf(scopes.getName(declaration));
+				code.field(ClassFileWriter.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+				code.pushString(name+" = ");
+				code.invoke(ClassFileWriter.INVOKEVIRTUAL, "java/io/PrintStream", "print", "(Ljava/lang/String;)V");
+				code.field(ClassFileWriter.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+				code.field(ClassFileWriter.GETSTATIC, class_name, name, descriptor(type));
+				String printed = descriptor(type);
+				if(ScopedSymbolTable.isArray(type)) {
+					code.invoke(ClassFileWriter.INVOKESTATIC, "java/util/Arrays", "toString", "("+printed+")Ljava/lang/String;");
+					printed = "Ljava/lang/String;";
+				}
+				code.invoke(ClassFileWriter.INVOKEVIRTUAL, "java/io/PrintStream", "println", "("+printed+")V");
+			}
+		}
+
+		/**
+		 * generates the method for a SubprogramDeclaration
+		 */
+		private void subprogram(int node) {
+			int head = child(node, 0);
+			subprogram = analyzer.getDeclaration(tree.getToken(child(head, 1)));
+			boolean function = scopes.getKind(subprogram) == ScopedSymbolTable.KIND_FUNCTION;
+			int parameter_count = scopes.getParameterCount(subprogram);
+
+			//parameters then variables, a real takes two locals
+			int next_local = 0;
+			int last = subprogram + 1;
+			for(; last < scopes.getDeclarationCount() && scopes.getDepth(last) > 1; last++) {
+				locals[last] = next_local;
+				next_local += scopes.getType(last) == ScopedSymbolTable.TYPE_REAL ? 2 : 1;
+			}
+			result_local = next_local;
+			if(function) {
+				next_local += scopes.getType(subprogram) == ScopedSymbolTable.TYPE_REAL ? 2 : 1;
+			}
+
+			code = writer.addMethod(ClassFileWriter.ACC_PUBLIC, lexemeOf(scopes.getName(subprogram)), methodDescriptor(subprogram));
+			code.lineNumber(tokens.getLine(tree.getToken(child(head, 1))));
+			for(int declaration = subprogram + 1; declaration < last; declaration++) {
+				int type = scopes.getType(declaration);
+				boolean parameter = declaration <= subprogram + parameter_count;
+				if(parameter && ScopedSymbolTable.isArray(type)) {
+					//arrays are passed by value, the caller's is left alone
+					code.local(ClassFileWriter.ALOAD, locals[declaration], 1);
+					code.invoke(ClassFileWriter.INVOKEVIRTUAL, descriptor(type), "clone", "()Ljava/lang/Object;");
+					code.checkCast(descriptor(type));
+					code.local(ClassFileWriter.ASTORE, locals[declaration], -1);
+				}
+				else if(!parameter) {
+					initialize(declaration, locals[declaration]);
+				}
+			}
+			if(function) {
+				//a function that never sets its result returns 0
+				zero(scopes.getType(subprogram), result_local);
+			}
+
+			compoundStatement(child(node, 2));
+
+			if(function) {
+				boolean real = scopes.getType(subprogram) == ScopedSymbolTable.TYPE_REAL;
+				code.local(real ? ClassFileWriter.DLOAD : ClassFileWriter.ILOAD, result_local, real ? 2 : 1);
+				code.instruction(real ? ClassFileWriter.DRETURN : ClassFileWriter.IRETURN, real ? -2 : -1);
+			}
+			else {
+				code.instruction(ClassFileWriter.RETURN, 0);
+			}
+			code.finish(next_local);
+		}
+
+		/**
+		 * gives a local variable its starting value, 0 or a new array
+		 */
+		private void initialize(int declaration, int local) {
+			int type = scopes.getType(declaration);
+			if(ScopedSymbolTable.isArray(type)) {
+				newArray(code, declaration);
+				code.local(ClassFileWriter.ASTORE, local, -1);
+			}
+			else {
+				zero(type, local);
+			}
+		}
+
+		/**
+		 * sets a scalar local to 0
+		 */
+		private void zero(int type, int local) {
+			if(type == ScopedSymbolTable.TYPE_REAL) {
+				code.pushDouble(0);
+				code.local(ClassFileWriter.DSTORE, local, -2);
+			}
+			else {
+				code.pushInt(0);
+				code.local(ClassFileWriter.ISTORE, local, -1);
+			}
+		}
+
+		/**
+		 * pushes a new array the size of an array variable's bounds
+		 */
+		private void newArray(ClassFileWriter.Code target, int declaration) {
+			target.pushInt(scopes.getHigh(declaration) - scopes.getLow(declaration) + 1);
+			target.newArray(scopes.getType(declaration) == ScopedSymbolTable.TYPE_REAL_ARRAY ? ClassFileWriter.T_DOUBLE : ClassFileWriter.T_INT);
+		}
+
+		/**
+		 * generates the statements of a CompoundStatement
+		 */
+		private void compoundStatement(int node) {
+			int optional = child(node, 1);
+			int list = tree.getFirstChild(optional);
+			if(list == SyntaxTree.NONE) {
+				return;
+			}
+			statement(child(list, 0));
+			for(int tail = child(list, 1); tree.getFirstChild(tail) != SyntaxTree.NONE; tail = child(tail, 2)) {
+				statement(child(tail, 1));
+			}
+		}
+
+		/**
+		 * generates a Statement
+		 */
+		private void statement(int node) {
+			int first = tree.getFirstChild(node);
+			int symbol = tree.getSymbol(first);
+			if(symbol == id_statement) {
+				idStatement(first);
+			}
+			else if(symbol == compound_statement) {
+				compoundStatement(first);
+			}
+			else if(tokens.getKind(tree.getToken(first)) == IF_KIND) {
+				line = tokens.getLine(tree.getToken(first));
+				code.lineNumber(line);
+				int otherwise = code.newLabel();
+				int end = code.newLabel();
+				condition(child(node, 1), otherwise, false);
+				statement(child(node, 3));
+				code.jump(ClassFileWriter.GOTO, end, 0);
+				code.placeLabel(otherwise);
+				statement(child(node, 5));
+				code.placeLabel(end);
+			}
+			else if(tokens.getKind(tree.getToken(first)) == WHILE_KIND) {
+				//the test is at the bottom, so each time around takes one jump
+				int while_line = tokens.getLine(tree.getToken(first));
+				int body = code.newLabel();
+				int test = code.newLabel();
+				code.lineNumber(while_line);
+				code.jump(ClassFileWriter.GOTO, test, 0);
+				code.placeLabel(body);
+				statement(child(node, 3));
+				code.placeLabel(test);
+				line = while_line;
+				code.lineNumber(line);
+				condition(child(node, 1), body, true);
+			}
+		}
+
+		/**
+		 * generates an assignment or procedure call
+		 */
+		private void idStatement(int node) {
+			int token = tree.getToken(child(node, 0));
+			line = tokens.getLine(token);
+			code.lineNumber(line);
+			int declaration = analyzer.getDeclaration(token);
+			int type = scopes.getType(declaration);
+			int rest = tree.getFirstChild(child(node, 1));
+			if(tree.getSymbol(rest) != variable_statement) {
+				//ProcedureStatement, ( ExpressionList ) or nothing
+				call(declaration, token, tree.getFirstChild(rest) == SyntaxTree.NONE ? SyntaxTree.NONE : child(rest, 1));
+				if(scopes.getKind(declaration) == ScopedSymbolTable.KIND_FUNCTION) {
+					//a function called for what it does, its result is dropped
+					code.instruction(type == ScopedSymbolTable.TYPE_REAL ? ClassFileWriter.POP2 : ClassFileWriter.POP, type == ScopedSymbolTable.TYPE_REAL ? -2 : -1);
+				}
+				return;
+			}
+
+			if(tokens.getKind(tree.getToken(child(rest, 0))) == BRACKET_KIND) {
+				loadVariable(declaration);
+				index(declaration, child(rest, 1));
+				int element_type = ScopedSymbolTable.elementType(type);
+				value(child(rest, 4), element_type);
+				code.instruction(element_type == ScopedSymbolTable.TYPE_REAL ? ClassFileWriter.DASTORE : ClassFileWriter.IASTORE, element_type == ScopedSymbolTable.TYPE_REAL ? -4 : -3);
+			}
+			else if(declaration == subprogram) {
+				//a function's result is set by assigning to its name
+				value(child(rest, 1), type);
+				store(type, result_local);
+			}
+			else {
+				value(child(rest, 1), type);
+				if(isGlobal(declaration)) {
+					code.field(ClassFileWriter.PUTSTATIC, class_name, lexeme(token), descriptor(type));
+				}
+				else {
+					store(type, locals[declaration]);
+				}
+			}
+		}
+
+		/**
+		 * pushes the value of an expression as the type it is assigned to
+		 */
+		private void value(int node, int type) {
+			expression(node);
+			operand(analyzer.getType(node), type == ScopedSymbolTable.TYPE_REAL);
+		}
+
+		/**
+		 * stores into a scalar local
+		 */
+		private void store(int type, int local) {
+			if(type == ScopedSymbolTable.TYPE_REAL) {
+				code.local(ClassFileWriter.DSTORE, local, -2);
+			}
+			else {
+				code.local(ClassFileWriter.ISTORE, local, -1);
+			}
+		}
+
+		/**
+		 * pushes a variable's value, or its array
+		 */
+		private void loadVariable(int declaration) {
+			int type = scopes.getType(declaration);
+			if(isGlobal(declaration)) {
+				code.field(ClassFileWriter.GETSTATIC, class_name, lexemeOf(scopes.getName(declaration)), descriptor(type));
+			}
+			else if(type == ScopedSymbolTable.TYPE_REAL) {
+				code.local(ClassFileWriter.DLOAD, locals[declaration], 2);
+			}
+			else {
+				code.local(ScopedSymbolTable.isArray(type) ? ClassFileWriter.ALOAD : ClassFileWriter.ILOAD, locals[declaration], 1);
+			}
+		}
+
+		/**
+		 * pushes an index into an array's elements, the array is already on the stack
+		 */
+		private void index(int declaration, int node) {
+			expression(node);
+			int low = scopes.getLow(declaration);
+			if(low != 0) {
+				code.pushInt(low);
+				code.instruction(ClassFileWriter.ISUB, -1);
+			}
+		}
+
+		/**
+		 * calls a function or procedure, leaving a function's result on the stack
+		 * @param arguments ExpressionList, NONE for no arguments
+		 */
+		private void call(int declaration, int token, int arguments) {
+			if(arguments != SyntaxTree.NONE) {
+				int position = 0;
+				argument(declaration, position++, child(arguments, 0));
+				for(int tail = child(arguments, 1); tree.getFirstChild(tail) != SyntaxTree.NONE; tail = child(tail, 2)) {
+					argument(declaration, position++, child(tail, 1));
+				}
+			}
+			code.invoke(ClassFileWriter.INVOKESTATIC, class_name, lexeme(token), methodDescriptor(declaration));
+		}
+
+		/**
+		 * pushes one argument of a call as its parameter's type
+		 */
+		private void argument(int declaration, int position, int node) {
+			expression(node);
+			operand(analyzer.getType(node), scopes.getType(declaration + 1 + position) == ScopedSymbolTable.TYPE_REAL);
+		}
+
+		/**
+		 * pushes the value of an Expression
+		 */
+		private void expression(int node) {
+			if(tree.getFirstChild(child(node, 1)) == SyntaxTree.NONE) {
+				simpleExpression(child(node, 0));
+				return;
+			}
+			//a comparison is made into 0 or 1
+			int holds = code.newLabel();
+			int end = code.newLabel();
+			condition(node, holds, true);
+			code.pushInt(0);
+			code.jump(ClassFileWriter.GOTO, end, 0);
+			code.placeLabel(holds);
+			code.pushInt(1);
+			code.placeLabel(end);
+		}
+
+		/**
+		 * jumps if an Expression holds, or if it does not
+		 * @param label where to
+		 * @param when whether to jump when it holds
+		 */
+		private void condition(int node, int label, boolean when) {
+			int tail = child(node, 1);
+			if(tree.getFirstChild(tail) == SyntaxTree.NONE) {
+				simpleExpression(child(node, 0));
+				code.jump(when ? ClassFileWriter.IFNE : ClassFileWriter.IFEQ, label, -1);
+				return;
+			}
+			int left = child(node, 0);
+			int right = child(tail, 1);
+			int comparison = Arrays.asList(COMPARISONS).indexOf(lexeme(tree.getToken(child(tail, 0))));
+			boolean real = analyzer.getType(left) == ScopedSymbolTable.TYPE_REAL || analyzer.getType(right) == ScopedSymbolTable.TYPE_REAL;
+			simpleExpression(left);
+			operand(analyzer.getType(left), real);
+			simpleExpression(right);
+			operand(analyzer.getType(right), real);
+			//the opposite comparison is the one next to it
+			int jump_comparison = when ? comparison : comparison ^ 1;
+			if(real) {
+				//NaN compares so that < and <= do not hold, like > and >= do not
+				boolean less = COMPARISONS[comparison].startsWith("<") && comparison != 1;
+				code.instruction(less ? ClassFileWriter.DCMPG : ClassFileWriter.DCMPL, -3);
+				code.jump(ClassFileWriter.IFEQ + jump_comparison, label, -1);
+			}
+			else {
+				code.jump(ClassFileWriter.IF_ICMPEQ + jump_comparison, label, -2);
+			}
+		}
+
+		/**
+		 * pushes the value of a SimpleExpression
+		 */
+		private void simpleExpression(int node) {
+			int at = tree.getFirstChild(node);
+			boolean negated = false;
+			if(tree.getSymbol(at) == sign) {
+				negated = lexeme(tree.getToken(tree.getFirstChild(at))).equals("-");
+				at = tree.getNextSibling(at);
+			}
+			term(at);
+			int type = analyzer.getType(at);
+			if(negated) {
+				code.instruction(type == ScopedSymbolTable.TYPE_REAL ? ClassFileWriter.DNEG : ClassFileWriter.INEG, 0);
+			}
+			for(int tail = tree.getNextSibling(at); tree.getFirstChild(tail) != SyntaxTree.NONE; tail = child(tail, 2)) {
+				operation(type, tail);
+				type = analyzer.getType(tail);
+			}
+		}
+
+		/**
+		 * pushes the value of a Term
+		 */
+		private void term(int node) {
+			int at = child(node, 0);
+			factor(at);
+			int type = analyzer.getType(at);
+			for(int tail = child(node, 1); tree.getFirstChild(tail) != SyntaxTree.NONE; tail = child(tail, 2)) {
+				operation(type, tail);
+				type = analyzer.getType(tail);
+			}
+		}
+
+		/**
+		 * applies the operator of a SimpleExpression or Term tail to what is on the stack and the tail's right side
+		 * @param left TYPE_ constant of what is on the stack
+		 */
+		private void operation(int left, int tail) {
+			String text = lexeme(tree.getToken(child(tail, 0)));
+			int right = child(tail, 1);
+			boolean real = analyzer.getType(tail) == ScopedSymbolTable.TYPE_REAL;
+			operand(left, real);
+			if(tree.getSymbol(right) == term) {
+				term(right);
+			}
+			else {
+				factor(right);
+			}
+			operand(analyzer.getType(right), real);
+			int opcode;
+			switch(text) {
+			case "+":
+				opcode = real ? ClassFileWriter.DADD : ClassFileWriter.IADD;
+				break;
+			case "-":
+				opcode = real ? ClassFileWriter.DSUB : ClassFileWriter.ISUB;
+				break;
+			case "*":
+				opcode = real ? ClassFileWriter.DMUL : ClassFileWriter.IMUL;
+				break;
+			case "DIV":
+				opcode = ClassFileWriter.IDIV;
+				break;
+			case "MOD":
+				opcode = ClassFileWriter.IREM;
+				break;
+			default:
+				opcode = ClassFileWriter.DDIV;
+				break;
+			}
+			code.instruction(opcode, real ? -2 : -1);
+		}
+
+		/**
+		 * makes what was just pushed a double if it has to be
+		 */
+		private void operand(int type, boolean real) {
+			if(real && type == ScopedSymbolTable.TYPE_INTEGER) {
+				code.instruction(ClassFileWriter.I2D, 1);
+			}
+		}
+
+		/**
+		 * pushes the value of a Factor
+		 */
+		private void factor(int node) {
+			int token = tree.getToken(tree.getFirstChild(node));
+			int kind = tokens.getKind(token);
+			if(kind == TerminalKind.INTEGER_LITERAL) {
+				code.pushInt(((NumberSymbol) symbol_table.getSymbol(tokens.getSymbolIndex(token))).value.intValue());
+				return;
+			}
+			if(kind == TerminalKind.REAL_LITERAL) {
+				code.pushDouble(((NumberSymbol) symbol_table.getSymbol(tokens.getSymbolIndex(token))).value.doubleValue());
+				return;
+			}
+			if(kind == NOT_KIND) {
+				factor(child(node, 1));
+				int zero = code.newLabel();
+				int end = code.newLabel();
+				code.jump(ClassFileWriter.IFEQ, zero, -1);
+				code.pushInt(0);
+				code.jump(ClassFileWriter.GOTO, end, 0);
+				code.placeLabel(zero);
+				code.pushInt(1);
+				code.placeLabel(end);
+				return;
+			}
+			if(kind != TerminalKind.IDENTIFIER) {
+				//( Expression )
+				expression(child(node, 1));
+				return;
+			}
+
+			int declaration = analyzer.getDeclaration(token);
+			int rest = child(node, 1);
+			int arguments = tree.getFirstChild(rest) == SyntaxTree.NONE ? SyntaxTree.NONE : child(rest, 1);
+			if(scopes.getKind(declaration) == ScopedSymbolTable.KIND_FUNCTION) {
+				//in its own body too, where the name alone calls it again
+				call(declaration, token, arguments);
+				return;
+			}
+			loadVariable(declaration);
+			if(arguments != SyntaxTree.NONE) {
+				index(declaration, child(arguments, 0));
+				boolean real = scopes.getType(declaration) == ScopedSymbolTable.TYPE_REAL_ARRAY;
+				code.instruction(real ? ClassFileWriter.DALOAD : ClassFileWriter.IALOAD, real ? 0 : -1);
+			}
+		}
+
+		/**
+		 * @return the method descriptor of a function or procedure
+		 */
+		private String methodDescriptor(int declaration) {
+			StringBuilder descriptor = new StringBuilder("(");
+			int parameter_count = scopes.getParameterCount(declaration);
+			for(int i = 1; i <= parameter_count; i++) {
+				descriptor.append(descriptor(scopes.getType(declaration + i)));
+			}
+			descriptor.append(')');
+			descriptor.append(scopes.getKind(declaration) == ScopedSymbolTable.KIND_FUNCTION ? descriptor(scopes.getType(declaration)) : "V");
+			return descriptor.toString();
+		}
+
+		/**
+		 * @return whether a declaration is one of the program's variables, i.e. a field
+		 */
+		private boolean isGlobal(int declaration) {
+			return scopes.getDepth(declaration) == 1 && scopes.getKind(declaration) == ScopedSymbolTable.KIND_VARIABLE;
+		}
+
+		/**
+		 * @return a node's child by position
+		 */
+		private int child(int node, int position) {
+			int at = tree.getFirstChild(node);
+			for(int i = 0; i < position; i++) {
+				at = tree.getNextSibling(at);
+			}
+			return at;
+		}
+
+		/**
+		 * @return the text of a token
+		 */
+		private String lexeme(int token) {
+			return lexemeOf(tokens.getSymbolIndex(token));
+		}
+
+		/**
+		 * @return the text of a symbol table entry
+		 */
+		private String lexemeOf(int symbol) {
+			return symbol_table.getSymbol(symbol).getLexeme();
+		}
+
+		/**
+		 * reports an error
+		 */
+		private void error(String message) {
+			error_count++;
+			if(diagnostics != null) {
+				diagnostics.report(new SemanticAnalyzer.SemanticException(message));
+			}
+		}
+	}
+}
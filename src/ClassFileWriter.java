@@ -0,0 +1,739 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * writes a JVM class file, just the parts code generation needs: a constant pool, static fields, and methods
+ * with code, line numbers and a source file
+ *
+ * the class file version is 49, the last one verified by type inference, so the code needs no stack map frames,
+ * which would take a full data flow analysis to work out, HotSpot loads and JIT compiles it like any other
+ *
+ * each method's code is written through a Code, which works out how deep the operand stack gets as
+ * instructions are added, and patches jumps once their labels are placed
+ * @author Mike, Ryan
+ */
+public class ClassFileWriter {
+
+	/*********************\
+	|* custom exceptions *|
+	\*********************/
+
+	/**
+	 * the class goes past a limit of the class file format
+	 */
+	public static class ClassFileException extends RuntimeException {
+		private static final long serialVersionUID = -6630893101617624203L;
+
+		public ClassFileException(String message){
+			super(message);
+		}
+	}
+
+	public static final int ACC_PUBLIC = 0x0001;
+	public static final int ACC_PRIVATE = 0x0002;
+	public static final int ACC_STATIC = 0x0008;
+	public static final int ACC_FINAL = 0x0010;
+	public static final int ACC_SUPER = 0x0020;
+
+	public static final int ICONST_0 = 0x03;
+	public static final int DCONST_0 = 0x0e;
+	public static final int ILOAD = 0x15;
+	public static final int DLOAD = 0x18;
+	public static final int ALOAD = 0x19;
+	public static final int IALOAD = 0x2e;
+	public static final int DALOAD = 0x31;
+	public static final int ISTORE = 0x36;
+	public static final int DSTORE = 0x39;
+	public static final int ASTORE = 0x3a;
+	public static final int IASTORE = 0x4f;
+	public static final int DASTORE = 0x52;
+	public static final int POP = 0x57;
+	public static final int POP2 = 0x58;
+	public static final int IADD = 0x60;
+	public static final int DADD = 0x63;
+	public static final int ISUB = 0x64;
+	public static final int DSUB = 0x67;
+	public static final int IMUL = 0x68;
+	public static final int DMUL = 0x6b;
+	public static final int IDIV = 0x6c;
+	public static final int DDIV = 0x6f;
+	public static final int IREM = 0x70;
+	public static final int INEG = 0x74;
+	public static final int DNEG = 0x77;
+	public static final int I2D = 0x87;
+	public static final int DCMPL = 0x97;
+	public static final int DCMPG = 0x98;
+	public static final int IFEQ = 0x99;
+	public static final int IFNE = 0x9a;
+	public static final int IF_ICMPEQ = 0x9f;
+	public static final int GOTO = 0xa7;
+	public static final int IRETURN = 0xac;
+	public static final int DRETURN = 0xaf;
+	public static final int RETURN = 0xb1;
+	public static final int GETSTATIC = 0xb2;
+	public static final int PUTSTATIC = 0xb3;
+	public static final int INVOKEVIRTUAL = 0xb6;
+	public static final int INVOKESTATIC = 0xb8;
+	public static final int CHECKCAST = 0xc0;
+
+	/**
+	 * newarray element types
+	 */
+	public static final int T_DOUBLE = 7;
+	public static final int T_INT = 10;
+
+	/**
+	 * version of the class files written
+	 */
+	private static final int MAJOR_VERSION = 49;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	private static final int NEWARRAY = 0xbc;
+	private static final int WIDE = 0xc4;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC = 0x12;
+	private static final int LDC_W = 0x13;
+	private static final int LDC2_W = 0x14;
+
+	/**
+	 * most entries, and bytes of code in a method, the format allows
+	 */
+	private static final int MAX_U2 = 0xffff;
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * the constant pool as it will be written, entry 0 is unused
+	 */
+	private final DataOutputStream pool;
+
+	/**
+	 * bytes behind pool
+	 */
+	private final ByteArrayOutputStream pool_bytes;
+
+	/**
+	 * index of every constant in the pool, keyed by its tag and contents
+	 */
+	private final Map<String, Integer> constants;
+
+	/**
+	 * number of pool entries, counting the unused one, doubles take two
+	 */
+	private int pool_count;
+
+	/**
+	 * class constant of the class being written
+	 */
+	private final int this_class;
+
+	/**
+	 * class constant of its superclass
+	 */
+	private final int super_class;
+
+	/**
+	 * fields, each already in its class file form
+	 */
+	private final List<byte[]> fields;
+
+	/**
+	 * methods, each already in its class file form
+	 */
+	private final List<byte[]> methods;
+
+	/**
+	 * utf8 constant of the source file name, 0 for none
+	 */
+	private int source_file;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor
+	 * @param class_name internal name of the class, i.e. with / between packages
+	 * @param super_name internal name of its superclass
+	 */
+	public ClassFileWriter(String class_name, String super_name) {
+		pool_bytes = new ByteArrayOutputStream();
+		pool = new DataOutputStream(pool_bytes);
+		constants = new HashMap<String, Integer>();
+		pool_count = 1;
+		fields = new ArrayList<byte[]>();
+		methods = new ArrayList<byte[]>();
+		this_class = classConstant(class_name);
+		super_class = classConstant(super_name);
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * names the source file stack traces point at
+	 * @param file_name
+	 */
+	public void setSourceFile(String file_name) {
+		//the pool is written before the attributes, so the attribute's name has to be in it already
+		utf8Constant("SourceFile");
+		source_file = utf8Constant(file_name);
+	}
+
+	/**
+	 * adds a field
+	 * @param access ACC_ flags
+	 * @param name
+	 * @param descriptor
+	 */
+	public void addField(int access, String name, String descriptor) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(utf8Constant(name));
+			out.writeShort(utf8Constant(descriptor));
+			out.writeShort(0);
+		} catch (IOException e) {
+			//a byte array does not fail
+			throw new IllegalStateException(e);
+		}
+		fields.add(bytes.toByteArray());
+	}
+
+	/**
+	 * starts a method, it is added to the class once its code is finished
+	 * @param access ACC_ flags, ACC_STATIC is the only kind of method there is
+	 * @param name
+	 * @param descriptor
+	 * @return where its code is written
+	 */
+	public Code addMethod(int access, String name, String descriptor) {
+		return new Code(access | ACC_STATIC, name, descriptor);
+	}
+
+	/**
+	 * @return the whole class file
+	 */
+	public byte[] toByteArray() {
+		if(pool_count > MAX_U2) {
+			throw new ClassFileException("too many constants for one class");
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xcafebabe);
+			out.writeShort(0);
+			out.writeShort(MAJOR_VERSION);
+			out.writeShort(pool_count);
+			pool_bytes.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(this_class);
+			out.writeShort(super_class);
+			out.writeShort(0);
+			out.writeShort(fields.size());
+			for(byte[] field : fields) {
+				out.write(field);
+			}
+			out.writeShort(methods.size());
+			for(byte[] method : methods) {
+				out.write(method);
+			}
+			if(source_file == 0) {
+				out.writeShort(0);
+			}
+			else {
+				out.writeShort(1);
+				out.writeShort(utf8Constant("SourceFile"));
+				out.writeInt(2);
+				out.writeShort(source_file);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param descriptor of a field or a method's return type
+	 * @return operand stack slots a value of it takes
+	 */
+	public static int slots(String descriptor) {
+		switch(descriptor.charAt(0)) {
+		case 'V':
+			return 0;
+		case 'D':
+		case 'J':
+			return 2;
+		default:
+			return 1;
+		}
+	}
+
+	/**
+	 * @param descriptor of a method
+	 * @return operand stack slots its arguments take
+	 */
+	public static int argumentSlots(String descriptor) {
+		int slots = 0;
+		int i = 1;
+		while(descriptor.charAt(i) != ')') {
+			char c = descriptor.charAt(i);
+			slots += c == 'D' || c == 'J' ? 2 : 1;
+			while(descriptor.charAt(i) == '[') {
+				i++;
+			}
+			i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+		}
+		return slots;
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	private int utf8Constant(String text) {
+		Integer index = constants.get("U"+text);
+		if(index != null) {
+			return index;
+		}
+		try {
+			pool.writeByte(CONSTANT_UTF8);
+			pool.writeUTF(text);
+		} catch (IOException e) {
+			//writeUTF only fails on text too long for the format
+			throw new ClassFileException("constant too long: "+text.substring(0, 32)+"...");
+		}
+		return add("U"+text, 1);
+	}
+
+	private int classConstant(String internal_name) {
+		return reference("C"+internal_name, CONSTANT_CLASS, utf8Constant(internal_name), -1);
+	}
+
+	private int nameAndTypeConstant(String name, String descriptor) {
+		return reference("N"+name+' '+descriptor, CONSTANT_NAME_AND_TYPE, utf8Constant(name), utf8Constant(descriptor));
+	}
+
+	private int fieldConstant(String owner, String name, String descriptor) {
+		return reference("F"+owner+'.'+name+' '+descriptor, CONSTANT_FIELDREF, classConstant(owner), nameAndTypeConstant(name, descriptor));
+	}
+
+	private int methodConstant(String owner, String name, String descriptor) {
+		return reference("M"+owner+'.'+name+descriptor, CONSTANT_METHODREF, classConstant(owner), nameAndTypeConstant(name, descriptor));
+	}
+
+	private int stringConstant(String text) {
+		return reference("S"+text, CONSTANT_STRING, utf8Constant(text), -1);
+	}
+
+	private int integerConstant(int value) {
+		Integer index = constants.get("I"+value);
+		if(index != null) {
+			return index;
+		}
+		try {
+			pool.writeByte(CONSTANT_INTEGER);
+			pool.writeInt(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return add("I"+value, 1);
+	}
+
+	private int doubleConstant(double value) {
+		//keyed by bits, so 0.0 and -0.0 are different constants
+		String key = "D"+Double.doubleToRawLongBits(value);
+		Integer index = constants.get(key);
+		if(index != null) {
+			return index;
+		}
+		try {
+			pool.writeByte(CONSTANT_DOUBLE);
+			pool.writeDouble(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return add(key, 2);
+	}
+
+	/**
+	 * adds a constant made of one or two references to others, unless it is already there
+	 * @param second -1 for constants with just one
+	 */
+	private int reference(String key, int tag, int first, int second) {
+		Integer index = constants.get(key);
+		if(index != null) {
+			return index;
+		}
+		try {
+			pool.writeByte(tag);
+			pool.writeShort(first);
+			if(second != -1) {
+				pool.writeShort(second);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return add(key, 1);
+	}
+
+	/**
+	 * records the constant just written to the pool
+	 * @param size entries it takes
+	 */
+	private int add(String key, int size) {
+		int index = pool_count;
+		pool_count += size;
+		constants.put(key, index);
+		return index;
+	}
+
+	/*****************\
+	|* inner classes *|
+	\*****************/
+
+	/**
+	 * code of one method, instructions are appended in order, finish adds the method to the class
+	 */
+	public class Code {
+
+		private final int access;
+		private final int name;
+		private final int descriptor;
+
+		/**
+		 * the instructions so far
+		 */
+		private byte[] code = new byte[256];
+
+		/**
+		 * bytes of code
+		 */
+		private int length = 0;
+
+		/**
+		 * operand stack slots in use after the last instruction
+		 */
+		private int stack = 0;
+
+		/**
+		 * most operand stack slots in use so far
+		 */
+		private int max_stack = 0;
+
+		/**
+		 * per label: where it was placed, -1 until it is
+		 */
+		private int[] label_offsets = new int[16];
+
+		/**
+		 * per label: stack depth where it is jumped to from, -1 until something does
+		 */
+		private int[] label_stacks = new int[16];
+
+		/**
+		 * number of labels
+		 */
+		private int label_count = 0;
+
+		/**
+		 * per jump: offset of the instruction, then its label
+		 */
+		private int[] jumps = new int[32];
+
+		/**
+		 * numbers in jumps
+		 */
+		private int jump_count = 0;
+
+		/**
+		 * pairs of code offset and source line
+		 */
+		private int[] lines = new int[32];
+
+		/**
+		 * numbers in lines
+		 */
+		private int line_count = 0;
+
+		Code(int _access, String _name, String _descriptor) {
+			access = _access;
+			name = utf8Constant(_name);
+			descriptor = utf8Constant(_descriptor);
+		}
+
+		/**
+		 * adds an instruction with no operands
+		 * @param opcode
+		 * @param stack_change slots it pushes less slots it pops
+		 */
+		public void instruction(int opcode, int stack_change) {
+			u1(opcode);
+			adjust(stack_change);
+		}
+
+		/**
+		 * pushes an int constant the shortest way there is
+		 */
+		public void pushInt(int value) {
+			if(value >= -1 && value <= 5) {
+				u1(ICONST_0 + value);
+			}
+			else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				u1(BIPUSH);
+				u1(value);
+			}
+			else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				u1(SIPUSH);
+				u2(value);
+			}
+			else {
+				loadConstant(integerConstant(value));
+			}
+			adjust(1);
+		}
+
+		/**
+		 * pushes a double constant
+		 */
+		public void pushDouble(double value) {
+			if(Double.doubleToRawLongBits(value) == 0) {
+				u1(DCONST_0);
+			}
+			else if(value == 1.0) {
+				u1(DCONST_0 + 1);
+			}
+			else {
+				u1(LDC2_W);
+				u2(doubleConstant(value));
+			}
+			adjust(2);
+		}
+
+		/**
+		 * pushes a string constant
+		 */
+		public void pushString(String text) {
+			loadConstant(stringConstant(text));
+			adjust(1);
+		}
+
+		/**
+		 * loads or stores a local
+		 * @param opcode one of the ILOAD family or ISTORE family
+		 * @param index the local's
+		 * @param stack_change
+		 */
+		public void local(int opcode, int index, int stack_change) {
+			if(index > MAX_U2) {
+				throw new ClassFileException("too many locals in one method");
+			}
+			if(index > 0xff) {
+				u1(WIDE);
+				u1(opcode);
+				u2(index);
+			}
+			else {
+				u1(opcode);
+				u1(index);
+			}
+			adjust(stack_change);
+		}
+
+		/**
+		 * gets or puts a static field
+		 * @param opcode GETSTATIC or PUTSTATIC
+		 */
+		public void field(int opcode, String owner, String field_name, String field_descriptor) {
+			u1(opcode);
+			u2(fieldConstant(owner, field_name, field_descriptor));
+			adjust(opcode == GETSTATIC ? slots(field_descriptor) : -slots(field_descriptor));
+		}
+
+		/**
+		 * calls a method
+		 * @param opcode INVOKESTATIC or INVOKEVIRTUAL
+		 */
+		public void invoke(int opcode, String owner, String method_name, String method_descriptor) {
+			u1(opcode);
+			u2(methodConstant(owner, method_name, method_descriptor));
+			int returned = slots(method_descriptor.substring(method_descriptor.indexOf(')') + 1));
+			adjust(returned - argumentSlots(method_descriptor) - (opcode == INVOKESTATIC ? 0 : 1));
+		}
+
+		/**
+		 * casts the reference on top of the stack
+		 * @param class_name internal name, or the descriptor of an array type
+		 */
+		public void checkCast(String class_name) {
+			u1(CHECKCAST);
+			u2(classConstant(class_name));
+		}
+
+		/**
+		 * makes an array of a length on the stack
+		 * @param element_type T_INT or T_DOUBLE
+		 */
+		public void newArray(int element_type) {
+			u1(NEWARRAY);
+			u1(element_type);
+		}
+
+		/**
+		 * @return a label to jump to, placed later with placeLabel
+		 */
+		public int newLabel() {
+			if(label_count == label_offsets.length) {
+				label_offsets = Arrays.copyOf(label_offsets, label_count * 2);
+				label_stacks = Arrays.copyOf(label_stacks, label_count * 2);
+			}
+			label_offsets[label_count] = -1;
+			label_stacks[label_count] = -1;
+			return label_count++;
+		}
+
+		/**
+		 * places a label at the next instruction
+		 */
+		public void placeLabel(int label) {
+			label_offsets[label] = length;
+			//code after a goto is only reached through its labels
+			if(label_stacks[label] != -1) {
+				stack = label_stacks[label];
+			}
+		}
+
+		/**
+		 * adds a jump
+		 * @param opcode an IF or GOTO
+		 * @param label where to
+		 * @param stack_change what the test pops, negative
+		 */
+		public void jump(int opcode, int label, int stack_change) {
+			if(jump_count + 2 > jumps.length) {
+				jumps = Arrays.copyOf(jumps, jumps.length * 2);
+			}
+			jumps[jump_count++] = length;
+			jumps[jump_count++] = label;
+			u1(opcode);
+			u2(0);
+			adjust(stack_change);
+			label_stacks[label] = stack;
+		}
+
+		/**
+		 * marks the next instruction as the start of a source line
+		 */
+		public void lineNumber(int line) {
+			if(line_count > 0 && lines[line_count-1] == line) {
+				return;
+			}
+			if(line_count + 2 > lines.length) {
+				lines = Arrays.copyOf(lines, lines.length * 2);
+			}
+			lines[line_count++] = length;
+			lines[line_count++] = line;
+		}
+
+		/**
+		 * patches the jumps and adds the method to the class
+		 * @param max_locals local slots the method uses, its arguments included
+		 */
+		public void finish(int max_locals) {
+			if(length > MAX_U2) {
+				throw new ClassFileException("method too large");
+			}
+			for(int i = 0; i < jump_count; i += 2) {
+				int at = jumps[i];
+				int target = label_offsets[jumps[i+1]];
+				if(target == -1) {
+					throw new IllegalStateException("jump to a label that was never placed");
+				}
+				int offset = target - at;
+				if(offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+					throw new ClassFileException("method too large");
+				}
+				code[at+1] = (byte) (offset >> 8);
+				code[at+2] = (byte) offset;
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(length + 64);
+			DataOutputStream out = new DataOutputStream(bytes);
+			try {
+				out.writeShort(access);
+				out.writeShort(name);
+				out.writeShort(descriptor);
+				out.writeShort(1);
+				int line_table_length = 2 + line_count * 2;
+				out.writeShort(utf8Constant("Code"));
+				out.writeInt(12 + length + (line_count == 0 ? 0 : 6 + line_table_length));
+				out.writeShort(max_stack);
+				out.writeShort(max_locals);
+				out.writeInt(length);
+				out.write(code, 0, length);
+				out.writeShort(0);
+				if(line_count == 0) {
+					out.writeShort(0);
+				}
+				else {
+					out.writeShort(1);
+					out.writeShort(utf8Constant("LineNumberTable"));
+					out.writeInt(line_table_length);
+					out.writeShort(line_count / 2);
+					for(int i = 0; i < line_count; i++) {
+						out.writeShort(lines[i]);
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			methods.add(bytes.toByteArray());
+		}
+
+		private void loadConstant(int index) {
+			if(index <= 0xff) {
+				u1(LDC);
+				u1(index);
+			}
+			else {
+				u1(LDC_W);
+				u2(index);
+			}
+		}
+
+		private void adjust(int stack_change) {
+			stack += stack_change;
+			max_stack = Math.max(max_stack, stack);
+		}
+
+		private void u1(int value) {
+			if(length == code.length) {
+				code = Arrays.copyOf(code, length * 2);
+			}
+			code[length++] = (byte) value;
+		}
+
+		private void u2(int value) {
+			u1(value >> 8);
+			u1(value);
+		}
+	}
+}
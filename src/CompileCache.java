@@ -0,0 +1,440 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * on disk cache of compile results, so a file that has not changed since it was last compiled is not
+ * scanned or parsed again
+ *
+ * an entry is keyed by a hash of the source, its name, how it was compiled, and a fingerprint of the
+ * parse table and of the compiler's own class files, so anything that could change the output misses, even a
+ * rebuilt compiler nobody remembered to give a new version, it holds everything
+ * the compile printed, the derivation written to the output file and whether there were errors
+ *
+ * entries are written to a temporary file and moved into place, so a reader, even another process sharing
+ * the directory, sees a whole entry or none, reading an entry touches it, and evict removes the least recently
+ * used ones once the directory is bigger than its limit
+ *
+ * the hash is SHA-256, hardware accelerated where there is support for it, and still far faster than the compile
+ * it saves, a cheaper non cryptographic hash would make a collision, i.e. wrong output, a real possibility
+ * @author Mike, Ryan
+ */
+public class CompileCache {
+
+	/**
+	 * size limit when none is given, in bytes
+	 */
+	public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+	/**
+	 * first int of every entry
+	 */
+	private static final int MAGIC = 0x43434531;
+
+	/**
+	 * ends the name of every entry
+	 */
+	private static final String ENTRY_SUFFIX = ".entry";
+
+	/**
+	 * ends the name of entries still being written
+	 */
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * a temporary file this old was left by a writer that died, in milliseconds
+	 */
+	private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+	/**
+	 * how much of the source is hashed at a time
+	 */
+	private static final int HASH_CHUNK = 1 << 20;
+
+	/**
+	 * hash of the class files of the compiler, by the class it was worked out for, they do not change while it runs
+	 */
+	private static final Map<Class<?>, byte[]> code_hashes = new ConcurrentHashMap<Class<?>, byte[]>();
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * where the entries are
+	 */
+	private final Path directory;
+
+	/**
+	 * evict keeps the entries under this many bytes
+	 */
+	private final long max_bytes;
+
+	/**
+	 * fingerprint of the parse table and compiler, part of every key
+	 */
+	private final byte[] fingerprint;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor, makes the directory if there is none
+	 * @param _directory where the entries are
+	 * @param _max_bytes size the entries are evicted down to
+	 * @param _fingerprint of the parse table and compiler the results come from, see fingerprint
+	 * @throws IOException if the directory can not be made
+	 */
+	public CompileCache(Path _directory, long _max_bytes, byte[] _fingerprint) throws IOException {
+		directory = Files.createDirectories(_directory);
+		max_bytes = _max_bytes;
+		fingerprint = _fingerprint.clone();
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * fingerprints a parse table and the compiler, a change to either changes every key
+	 * the compiler is the jar, or the class files in the directory, a class of it was loaded from, the classes
+	 * are in the default package so those are the directory's own class files
+	 * @param table_path the text parse table
+	 * @param compiler any class of the compiler
+	 * @return the fingerprint
+	 * @throws IOException if the table or the compiler's class files can not be read
+	 */
+	public static byte[] fingerprint(Path table_path, Class<?> compiler) throws IOException {
+		MessageDigest digest = newDigest();
+		digest.update(Files.readAllBytes(table_path));
+		byte[] code_hash = code_hashes.get(compiler);
+		if(code_hash == null) {
+			code_hash = hashClasses(compiler);
+			code_hashes.put(compiler, code_hash);
+		}
+		digest.update(code_hash);
+		return digest.digest();
+	}
+
+	/**
+	 * works out the key of a file's entry
+	 * @param name what the source is called, it is in the output
+	 * @param source text of the source, null to hash the file called name
+	 * @param trace_level how much the compile reports
+	 * @param max_errors most syntax errors the compile reports
+	 * @param analyzed whether the compile checks the declarations
+	 * @return the key
+	 * @throws IOException if the file can not be read
+	 */
+	public String key(String name, CharSequence source, TraceLevel trace_level, int max_errors, boolean analyzed) throws IOException {
+		MessageDigest digest = newDigest();
+		digest.update(fingerprint);
+		update(digest, name+'\0'+trace_level.name()+'\0'+max_errors+'\0'+analyzed+'\0');
+		if(source == null) {
+			update(digest, Paths.get(name));
+		}
+		else {
+			update(digest, source);
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * looks an entry up, marking it as just used
+	 * @param key
+	 * @return the entry, null if there is none or it can not be read
+	 */
+	public Entry get(String key) {
+		Path path = directory.resolve(key+ENTRY_SUFFIX);
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(path);
+		} catch (IOException e) {
+			//missing, or evicted by another process while we were at it
+			return null;
+		}
+		Entry entry;
+		try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("not a cache entry");
+			}
+			boolean succeeded = in.readBoolean();
+			String output = new String(readBytes(in), StandardCharsets.UTF_8);
+			byte[] derivation = in.readBoolean() ? readBytes(in) : null;
+			entry = new Entry(succeeded, output, derivation);
+		} catch (IOException e) {
+			//a bad entry is only a miss, the compile puts a good one in its place
+			delete(path);
+			return null;
+		}
+		try {
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			//evicted since it was read, what was read is still good
+		}
+		return entry;
+	}
+
+	/**
+	 * stores an entry, replacing any there was, the entry only shows up once it is all written
+	 * @param key
+	 * @param entry
+	 * @throws IOException
+	 */
+	public void put(String key, Entry entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeBoolean(entry.succeeded);
+			writeBytes(out, entry.output.getBytes(StandardCharsets.UTF_8));
+			out.writeBoolean(entry.derivation != null);
+			if(entry.derivation != null) {
+				writeBytes(out, entry.derivation);
+			}
+		}
+		Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+		try {
+			Files.write(temp, bytes.toByteArray());
+			try {
+				Files.move(temp, directory.resolve(key+ENTRY_SUFFIX), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, directory.resolve(key+ENTRY_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			delete(temp);
+		}
+	}
+
+	/**
+	 * removes the least recently used entries until the rest fit the limit, and any temporary files
+	 * left by writers that did not get to finish
+	 * @throws IOException if the directory can not be listed
+	 */
+	public void evict() throws IOException {
+		List<Path> entries = new ArrayList<Path>();
+		List<FileTime> used = new ArrayList<FileTime>();
+		List<Long> sizes = new ArrayList<Long>();
+		long total = 0;
+		long now = System.currentTimeMillis();
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for(Path file : files) {
+				String file_name = file.getFileName().toString();
+				try {
+					if(file_name.endsWith(ENTRY_SUFFIX)) {
+						long size = Files.size(file);
+						entries.add(file);
+						used.add(Files.getLastModifiedTime(file));
+						sizes.add(size);
+						total += size;
+					}
+					else if(file_name.endsWith(TEMP_SUFFIX) && now - Files.getLastModifiedTime(file).toMillis() > STALE_TEMP_MILLIS) {
+						delete(file);
+					}
+				} catch (IOException e) {
+					//gone already
+				}
+			}
+		}
+		if(total <= max_bytes) {
+			return;
+		}
+		List<Integer> order = new ArrayList<Integer>(entries.size());
+		for(int i = 0; i < entries.size(); i++) {
+			order.add(i);
+		}
+		order.sort(Comparator.comparing(used::get));
+		for(int i = 0; i < order.size() && total > max_bytes; i++) {
+			delete(entries.get(order.get(i)));
+			total -= sizes.get(order.get(i));
+		}
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * @return a new SHA-256 digest
+	 */
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			//every java platform has to have it
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * hashes the jar or class files a class was loaded from
+	 * @return the hash
+	 * @throws IOException if they can not be found or read
+	 */
+	private static byte[] hashClasses(Class<?> compiler) throws IOException {
+		CodeSource code_source = compiler.getProtectionDomain().getCodeSource();
+		if(code_source == null) {
+			throw new IOException("can not tell where "+compiler.getName()+" was loaded from");
+		}
+		Path code;
+		try {
+			code = Paths.get(code_source.getLocation().toURI());
+		} catch (URISyntaxException|IllegalArgumentException e) {
+			throw new IOException("can not read the classes at "+code_source.getLocation(), e);
+		}
+		MessageDigest digest = newDigest();
+		if(!Files.isDirectory(code)) {
+			update(digest, code);
+			return digest.digest();
+		}
+		List<Path> class_files = new ArrayList<Path>();
+		try(DirectoryStream<Path> listing = Files.newDirectoryStream(code, "*.class")) {
+			for(Path class_file : listing) {
+				class_files.add(class_file);
+			}
+		}
+		//in name order, so the hash does not depend on the order the directory lists them in
+		class_files.sort(Comparator.naturalOrder());
+		for(Path class_file : class_files) {
+			update(digest, class_file.getFileName().toString()+'\0');
+			update(digest, class_file);
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * hashes a file's bytes
+	 */
+	private static void update(MessageDigest digest, Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer chunk = ByteBuffer.allocate(HASH_CHUNK);
+			while(channel.read(chunk) != -1) {
+				chunk.flip();
+				digest.update(chunk);
+				chunk.clear();
+			}
+		}
+	}
+
+	/**
+	 * hashes text as UTF-8
+	 */
+	private static void update(MessageDigest digest, CharSequence text) {
+		digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(text)));
+	}
+
+	/**
+	 * reads a length prefixed run of bytes
+	 */
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if(length < 0 || length > in.available()) {
+			throw new EOFException("entry cut short");
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * writes a length prefixed run of bytes
+	 */
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * deletes a file if it is still there
+	 */
+	private static void delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			//someone else's to clean up then
+		}
+	}
+
+	/*****************\
+	|* inner classes *|
+	\*****************/
+
+	/**
+	 * what a compile came to
+	 */
+	public static class Entry {
+
+		/**
+		 * whether the file compiled without errors
+		 */
+		private final boolean succeeded;
+
+		/**
+		 * everything the compile printed
+		 */
+		private final String output;
+
+		/**
+		 * what it wrote to the output file, null if it wrote none
+		 */
+		private final byte[] derivation;
+
+		/**
+		 * constructor
+		 * @param _succeeded
+		 * @param _output
+		 * @param _derivation
+		 */
+		public Entry(boolean _succeeded, String _output, byte[] _derivation) {
+			succeeded = _succeeded;
+			output = _output;
+			derivation = _derivation;
+		}
+
+		/**
+		 * @return whether the file compiled without errors
+		 */
+		public boolean succeeded() {
+			return succeeded;
+		}
+
+		/**
+		 * @return everything the compile printed
+		 */
+		public String getOutput() {
+			return output;
+		}
+
+		/**
+		 * @return what the compile wrote to the output file, null if it wrote none
+		 */
+		public byte[] getDerivation() {
+			return derivation;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * sends a compile request to a CompileDaemon and prints the output as it comes back
+ *
+ * takes the same arguments as Compiler, paths are made absolute here since the daemon has a working directory
+ * of its own, and - compiles what is read from stdin, the exit status is the daemon's
+ * @author Mike, Ryan
+ */
+public class CompileClient {
+
+	/**
+	 * name the text read from stdin is compiled under
+	 */
+	private static final String STDIN_NAME = "stdin";
+
+	/**
+	 * exit status when the daemon could not be reached
+	 */
+	private static final int STATUS_NO_DAEMON = 3;
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * @param args optionally -socket <path> and -shutdown, then the arguments Compiler takes
+	 */
+	public static void main(String[] args) {
+		Path socket_path = CompileDaemon.defaultSocketPath();
+		boolean shutdown = false;
+		List<String> compiler_args = new ArrayList<String>();
+		byte[] stdin_text = null;
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-socket") && i+1 < args.length){
+				socket_path = Paths.get(args[++i]);
+			}
+			else if(args[i].equals("-shutdown")){
+				shutdown = true;
+			}
+			else if((args[i].equals("-c") || args[i].equals("-g")) && i+1 < args.length){
+				compiler_args.add(args[i]);
+				compiler_args.add(Paths.get(args[++i]).toAbsolutePath().toString());
+			}
+			else if((args[i].equals("-j") || args[i].equals("-e") || args[i].equals("-s") || args[i].equals("-t") || args[i].equals("-m")) && i+1 < args.length){
+				compiler_args.add(args[i]);
+				compiler_args.add(args[++i]);
+			}
+			else if(args[i].equals("-p") || args[i].equals("-a") || args[i].equals("-r")){
+				compiler_args.add(args[i]);
+			}
+			else if(args[i].equals("-")){
+				compiler_args.add(STDIN_NAME);
+				try {
+					stdin_text = System.in.readAllBytes();
+				} catch (IOException e) {
+					System.out.println("could not read stdin");
+					System.out.println(e.toString());
+					System.exit(STATUS_NO_DAEMON);
+				}
+			}
+			else{
+				compiler_args.add(Paths.get(args[i]).toAbsolutePath().toString());
+			}
+		}
+
+		int status;
+		try(SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket_path))) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			if(shutdown){
+				out.writeByte(CompileDaemon.REQUEST_SHUTDOWN);
+			}
+			else{
+				out.writeByte(CompileDaemon.REQUEST_COMPILE);
+				out.writeInt(compiler_args.size());
+				for(String arg : compiler_args){
+					out.writeUTF(arg);
+				}
+				out.writeInt(stdin_text == null ? 0 : 1);
+				if(stdin_text != null){
+					out.writeUTF(STDIN_NAME);
+					out.writeInt(stdin_text.length);
+					out.write(stdin_text);
+				}
+			}
+			out.flush();
+			status = readResponse(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel))), System.out);
+		} catch (IOException e) {
+			System.out.println("could not reach the compile daemon on "+socket_path);
+			System.out.println(e.toString());
+			status = STATUS_NO_DAEMON;
+		}
+		System.out.flush();
+		System.exit(status);
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * prints output frames until the done frame
+	 * @param in the daemon's answer
+	 * @param out where the output is printed
+	 * @return the status the daemon answered with
+	 * @throws IOException if the daemon went away before it was done
+	 */
+	private static int readResponse(DataInputStream in, PrintStream out) throws IOException {
+		while(true){
+			byte frame = in.readByte();
+			if(frame == CompileDaemon.RESPONSE_DONE){
+				return in.readInt();
+			}
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			out.write(bytes);
+			out.flush();
+		}
+	}
+}
@@ -0,0 +1,440 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * long lived compiler that takes compile requests over a unix domain socket
+ *
+ * the parse table is loaded once and the keywords are shared by every symbol table, so a request only pays
+ * for its own compile, and after the first few requests that compile runs on code the JIT has already warmed up
+ *
+ * each connection carries one request and is handled on a thread of its own, the files of a request are
+ * compiled on a pool shared by every request, CompileClient is the other end
+ *
+ * a request is a command byte, for a compile followed by the command line arguments Compiler.main takes, with
+ * the paths already made absolute, then the sources given as text, each as a name that is also one of the
+ * arguments and its UTF-8 bytes, the answer is any number of output frames, then a done frame with the status,
+ * a count or length past the MAX_ limits is answered as a bad request before anything that big is made
+ * @author Mike, Ryan
+ */
+public class CompileDaemon {
+
+	/**
+	 * request to compile files
+	 */
+	static final byte REQUEST_COMPILE = 1;
+
+	/**
+	 * request to stop the daemon
+	 */
+	static final byte REQUEST_SHUTDOWN = 2;
+
+	/**
+	 * answer frame holding a chunk of the output as UTF-8
+	 */
+	static final byte RESPONSE_OUTPUT = 1;
+
+	/**
+	 * last answer frame, holding the status
+	 */
+	static final byte RESPONSE_DONE = 2;
+
+	/**
+	 * status when every file compiled without errors
+	 */
+	static final int STATUS_OK = 0;
+
+	/**
+	 * status when any file had errors
+	 */
+	static final int STATUS_ERRORS = 1;
+
+	/**
+	 * status when the request could not be carried out at all
+	 */
+	static final int STATUS_BAD_REQUEST = 2;
+
+	/**
+	 * most command line arguments a request can have
+	 */
+	static final int MAX_ARGUMENTS = 1 << 16;
+
+	/**
+	 * most sources a request can send
+	 */
+	static final int MAX_SOURCES = 1 << 10;
+
+	/**
+	 * most bytes of source a request can send, all of its sources together
+	 */
+	static final int MAX_SOURCE_BYTES = 1 << 28;
+
+	/**
+	 * output is sent once this many chars are waiting, or when the compile flushes
+	 */
+	private static final int FRAME_CHARS = 8192;
+
+	/**
+	 * how long requests still being handled get to finish once the daemon is stopped
+	 */
+	private static final long SHUTDOWN_WAIT_SECONDS = 60;
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * path of the socket file
+	 */
+	private final Path socket_path;
+
+	/**
+	 * where the files of every request are compiled
+	 */
+	private final ExecutorService compile_pool;
+
+	/**
+	 * where each connection is handled
+	 */
+	private final ExecutorService request_pool;
+
+	/**
+	 * the listening socket, null until run
+	 */
+	private volatile ServerSocketChannel server;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor, the parse table has to be loaded before run
+	 * @param _socket_path path of the socket file
+	 * @param thread_count threads the files of every request are compiled on
+	 */
+	public CompileDaemon(Path _socket_path, int thread_count) {
+		socket_path = _socket_path;
+		compile_pool = new ForkJoinPool(thread_count);
+		final AtomicInteger request_count = new AtomicInteger();
+		request_pool = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "compile-request-"+request_count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * starts the daemon, which runs until a client asks it to shut down
+	 * @param args optionally -socket <path>, where to listen, and -j <thread count>
+	 */
+	public static void main(String[] args) {
+		Path socket_path = defaultSocketPath();
+		int thread_count = Runtime.getRuntime().availableProcessors();
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-socket") && i+1 < args.length){
+				socket_path = Paths.get(args[++i]);
+			}
+			else if(args[i].equals("-j") && i+1 < args.length){
+				thread_count = Math.max(1, Integer.parseInt(args[++i]));
+			}
+			else{
+				System.out.println("usage: java CompileDaemon [-socket <path>] [-j <thread count>]");
+				return;
+			}
+		}
+
+		PrintWriter out = new PrintWriter(System.out, true);
+		if(!Compiler.loadParseTable(out)){
+			return;
+		}
+		CompileDaemon daemon = new CompileDaemon(socket_path, thread_count);
+		try {
+			daemon.run();
+		} catch (IOException e) {
+			out.println("could not listen on "+socket_path);
+			out.println(e.toString());
+		}
+	}
+
+	/**
+	 * @return where the daemon listens when no socket is given, shared by the client
+	 */
+	static Path defaultSocketPath() {
+		return Paths.get(System.getProperty("java.io.tmpdir"), "compiler-"+System.getProperty("user.name")+".sock");
+	}
+
+	/**
+	 * listens for requests until one asks to shut down
+	 * @throws IOException if the socket could not be set up
+	 */
+	public void run() throws IOException {
+		if(Files.exists(socket_path)){
+			//a socket file nobody answers on is left over from a daemon that did not get to clean up
+			if(isListening(socket_path)){
+				throw new IOException("a daemon is already listening on "+socket_path);
+			}
+			Files.delete(socket_path);
+		}
+		server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(UnixDomainSocketAddress.of(socket_path));
+		Thread cleanup = new Thread(this::deleteSocket);
+		Runtime.getRuntime().addShutdownHook(cleanup);
+		System.out.println("listening on "+socket_path);
+		try {
+			while(true){
+				final SocketChannel channel = server.accept();
+				request_pool.execute(() -> handle(channel));
+			}
+		} catch (AsynchronousCloseException e) {
+			//shutdown closed the server
+		} finally {
+			stop();
+			Runtime.getRuntime().removeShutdownHook(cleanup);
+			deleteSocket();
+			request_pool.shutdown();
+			try {
+				request_pool.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			compile_pool.shutdown();
+		}
+	}
+
+	/**
+	 * stops accepting requests, the ones being handled still get their answers
+	 */
+	public void stop() {
+		ServerSocketChannel listening = server;
+		if(listening != null){
+			try {
+				listening.close();
+			} catch (IOException e) {
+				//closing is all there is to do with it
+			}
+		}
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * reads one request from the connection, carries it out and answers it
+	 * @param channel
+	 */
+	private void handle(SocketChannel channel) {
+		try(SocketChannel connection = channel) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+			byte command = in.readByte();
+			int status;
+			if(command == REQUEST_SHUTDOWN){
+				status = STATUS_OK;
+			}
+			else if(command == REQUEST_COMPILE){
+				status = compile(in, out);
+			}
+			else{
+				status = STATUS_BAD_REQUEST;
+			}
+			out.writeByte(RESPONSE_DONE);
+			out.writeInt(status);
+			out.flush();
+			//answered first, the process can end as soon as the server is closed
+			if(command == REQUEST_SHUTDOWN){
+				stop();
+			}
+		} catch (IOException e) {
+			//the client went away, there is nobody left to tell
+		}
+	}
+
+	/**
+	 * reads a compile request and compiles it, streaming the output back as it is printed
+	 * @param in the rest of the request
+	 * @param out where the output frames go
+	 * @return the status, bad request too if the compiler threw
+	 * @throws IOException
+	 */
+	private int compile(DataInputStream in, DataOutputStream out) throws IOException {
+		PrintWriter console = new PrintWriter(new FrameWriter(out));
+		int status;
+		try {
+			//sizes come from the client, they are checked before anything is made that big
+			int arg_count = in.readInt();
+			if(arg_count < 0 || arg_count > MAX_ARGUMENTS){
+				return badRequest(console, arg_count+" arguments, expected at most "+MAX_ARGUMENTS);
+			}
+			String[] args = new String[arg_count];
+			for(int i = 0; i < args.length; i++){
+				args[i] = in.readUTF();
+			}
+			int source_count = in.readInt();
+			if(source_count < 0 || source_count > MAX_SOURCES){
+				return badRequest(console, source_count+" sources, expected at most "+MAX_SOURCES);
+			}
+			Map<String, CharSequence> sources = new HashMap<String, CharSequence>();
+			int source_bytes = 0;
+			for(int i = 0; i < source_count; i++){
+				String name = in.readUTF();
+				int length = in.readInt();
+				if(length < 0 || length > MAX_SOURCE_BYTES - source_bytes){
+					return badRequest(console, "source "+name+" of "+length+" bytes, expected at most "+MAX_SOURCE_BYTES+" bytes of source in all");
+				}
+				source_bytes += length;
+				byte[] text = new byte[length];
+				in.readFully(text);
+				sources.put(name, new String(text, StandardCharsets.UTF_8));
+			}
+
+			Compiler.Options options = Compiler.Options.parse(args, console);
+			if(options == null){
+				status = STATUS_BAD_REQUEST;
+			}
+			else{
+				status = Compiler.compileAll(options, sources, compile_pool, console) ? STATUS_OK : STATUS_ERRORS;
+			}
+		} catch (RuntimeException e) {
+			//the client gets told, instead of the handler thread dying and the client finding nobody to answer
+			console.println("could not compile the request");
+			console.println(e.toString());
+			status = STATUS_BAD_REQUEST;
+		}
+		console.flush();
+		return status;
+	}
+
+	/**
+	 * tells the client its request could not be read
+	 * @param console where the output frames go
+	 * @param problem what was wrong with it
+	 * @return STATUS_BAD_REQUEST
+	 */
+	private static int badRequest(PrintWriter console, String problem) {
+		console.println("bad request, "+problem);
+		console.flush();
+		return STATUS_BAD_REQUEST;
+	}
+
+	/**
+	 * removes the socket file, if it is still there
+	 */
+	private void deleteSocket() {
+		try {
+			Files.deleteIfExists(socket_path);
+		} catch (IOException e) {
+			//nothing else to do on the way out
+		}
+	}
+
+	/**
+	 * @return whether something answers on the socket file
+	 */
+	private static boolean isListening(Path socket_path) {
+		SocketChannel probe;
+		try {
+			probe = SocketChannel.open(UnixDomainSocketAddress.of(socket_path));
+		} catch (IOException e) {
+			return false;
+		}
+		try {
+			probe.close();
+		} catch (IOException e) {
+			//it answered, which is all the probe was for
+		}
+		return true;
+	}
+
+	/*****************\
+	|* inner classes *|
+	\*****************/
+
+	/**
+	 * sends what is written to it as output frames, a frame each time it is flushed or fills up
+	 */
+	private static class FrameWriter extends Writer {
+
+		/**
+		 * where the frames go
+		 */
+		private final DataOutputStream out;
+
+		/**
+		 * output not yet sent
+		 */
+		private final StringBuilder pending;
+
+		/**
+		 * constructor
+		 * @param _out
+		 */
+		FrameWriter(DataOutputStream _out) {
+			out = _out;
+			pending = new StringBuilder(FRAME_CHARS);
+		}
+
+		@Override
+		public void write(char[] chars, int offset, int length) throws IOException {
+			synchronized(lock) {
+				pending.append(chars, offset, length);
+				if(pending.length() >= FRAME_CHARS){
+					sendFrame();
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			synchronized(lock) {
+				sendFrame();
+				out.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+
+		/**
+		 * sends what is pending as one frame
+		 * @throws IOException
+		 */
+		private void sendFrame() throws IOException {
+			if(pending.length() == 0){
+				return;
+			}
+			byte[] bytes = pending.toString().getBytes(StandardCharsets.UTF_8);
+			pending.setLength(0);
+			out.writeByte(RESPONSE_OUTPUT);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+}
@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * compiles sources held in memory and hands back what came of them, for callers that have text rather than files
+ *
+ * a session keeps one scanner, symbol table, parser, token buffer and syntax tree and resets them for each
+ * source, so once they have grown to fit the sources a compile only allocates its result, i.e. the
+ * diagnostics, the derivation if one was asked for, and the symbols new to that source
+ *
+ * the parse table has to be loaded first, see Compiler.loadParseTable, a session is only for one thread
+ * at a time, forCurrentThread gives each thread one of its own
+ * @author Mike, Ryan
+ */
+public class CompileSession {
+
+	/**
+	 * the session of each thread that has asked for one
+	 */
+	private static final ThreadLocal<CompileSession> SESSIONS = ThreadLocal.withInitial(CompileSession::new);
+
+	/**
+	 * ends every line of the derivation
+	 */
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * reset onto each source
+	 */
+	private final Scanner scanner;
+
+	/**
+	 * reset for each source, the fixed symbols are shared by every table anyway
+	 */
+	private final SymbolTable symbol_table;
+
+	/**
+	 * reset by every parse
+	 */
+	private final ParserEngine parser;
+
+	/**
+	 * tokens of the last source
+	 */
+	private final TokenBuffer tokens;
+
+	/**
+	 * syntax tree of the last source
+	 */
+	private final SyntaxTree syntax_tree;
+
+	/**
+	 * the derivation of the source being compiled, emptied for each one
+	 */
+	private final StringBuilder derivation;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor
+	 * @throws IllegalStateException if the parse table has not been loaded
+	 */
+	public CompileSession() {
+		if(NonTerminal.dense_table == null) {
+			throw new IllegalStateException("the parse table has to be loaded before compiling");
+		}
+		scanner = new Scanner(ByteBuffer.allocate(0));
+		symbol_table = SymbolTable.initializeSymbolTable();
+		parser = new ParserEngine(NonTerminal.dense_table, "Program");
+		tokens = new TokenBuffer();
+		syntax_tree = new SyntaxTree(NonTerminal.dense_table);
+		parser.setTree(syntax_tree);
+		derivation = new StringBuilder();
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * @return the calling thread's session, made the first time it asks
+	 */
+	public static CompileSession forCurrentThread() {
+		return SESSIONS.get();
+	}
+
+	/**
+	 * compiles every source on a pool, each worker with the session of its own thread
+	 * @param sources texts to compile, named source 0, source 1 and so on
+	 * @param trace_level how much of each derivation to keep
+	 * @param max_errors most syntax errors to report per source
+	 * @param pool where to compile them
+	 * @return the results, in the order of the sources
+	 * @throws InterruptedException
+	 */
+	public static List<Result> compileAll(List<? extends CharSequence> sources, TraceLevel trace_level, int max_errors, ExecutorService pool) throws InterruptedException {
+		List<Future<Result>> futures = new ArrayList<Future<Result>>(sources.size());
+		for(int i = 0; i < sources.size(); i++) {
+			final String name = "source "+i;
+			final CharSequence source = sources.get(i);
+			futures.add(pool.submit(() -> forCurrentThread().compile(name, source, trace_level, max_errors)));
+		}
+		List<Result> results = new ArrayList<Result>(futures.size());
+		for(Future<Result> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				//compile reports everything it can in the result, anything else is a bug
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * compiles source text
+	 * @param name what the source is called in events, and in the result
+	 * @param source text to compile
+	 * @param trace_level how much of the derivation to keep
+	 * @param max_errors most syntax errors to report before giving up
+	 * @return what came of it
+	 */
+	public Result compile(String name, CharSequence source, TraceLevel trace_level, int max_errors) {
+		scanner.reset(source);
+		return compile(name, trace_level, max_errors);
+	}
+
+	/**
+	 * compiles source bytes, from the buffer's position to its limit, without copying them
+	 * @param name what the source is called in events, and in the result
+	 * @param source bytes to compile
+	 * @param trace_level how much of the derivation to keep
+	 * @param max_errors most syntax errors to report before giving up
+	 * @return what came of it
+	 */
+	public Result compile(String name, ByteBuffer source, TraceLevel trace_level, int max_errors) {
+		scanner.reset(source);
+		return compile(name, trace_level, max_errors);
+	}
+
+	/**
+	 * @return syntax tree of the last source, until the next compile
+	 */
+	public SyntaxTree getSyntaxTree() {
+		return syntax_tree;
+	}
+
+	/**
+	 * @return tokens of the last source, which the tree's terminals index, until the next compile
+	 */
+	public TokenBuffer getTokens() {
+		return tokens;
+	}
+
+	/**
+	 * @return symbol table of the last source, until the next compile
+	 */
+	public SymbolTable getSymbolTable() {
+		return symbol_table;
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * compiles whatever the scanner was just reset onto
+	 */
+	private Result compile(String name, TraceLevel trace_level, int max_errors) {
+		CompilerEvents.CompileEvent event = new CompilerEvents.CompileEvent();
+		event.begin();
+		symbol_table.reset();
+		tokens.clear();
+		derivation.setLength(0);
+		Diagnostics diagnostics = new Diagnostics(max_errors);
+		parser.setDiagnostics(diagnostics);
+		ParserEngine.DerivationListener listener = null;
+		if(trace_level.tracesDerivation()) {
+			listener = (symbol, terminal) -> {
+				if(trace_level.traces(symbol)) {
+					derivation.append(symbol.print(terminal)).append(LINE_SEPARATOR);
+				}
+			};
+		}
+
+		try {
+			parser.parse(scanner, symbol_table, tokens, listener);
+		} catch (IOException|Scanner.ScannerException|Token.TokenException|LexemeTerminal.LexemeTerminalException|Symbol.UnexpectedTokenException e) {
+			//only what recovery can not carry on from gets this far, it is still just one more error
+			diagnostics.report(e);
+		}
+		for(Exception error : diagnostics.getErrors()) {
+			CompilerEvents.syntaxError(name, error);
+		}
+
+		event.end();
+		if(event.shouldCommit()) {
+			event.file = name;
+			event.bytes = scanner.getOffset();
+			event.tokens = parser.getTokenCount();
+			event.pipelined = false;
+			event.succeeded = !diagnostics.hasErrors();
+			event.commit();
+		}
+		return new Result(name, diagnostics, trace_level.tracesDerivation() ? derivation.toString() : null, parser.getTokenCount());
+	}
+
+	/*****************\
+	|* inner classes *|
+	\*****************/
+
+	/**
+	 * what came of compiling one source
+	 */
+	public static class Result {
+
+		/**
+		 * what the source was called
+		 */
+		private final String name;
+
+		/**
+		 * its errors
+		 */
+		private final Diagnostics diagnostics;
+
+		/**
+		 * the derivation, as far as the trace level asked for, null if it asked for none
+		 */
+		private final String derivation;
+
+		/**
+		 * number of tokens parsed
+		 */
+		private final long token_count;
+
+		/**
+		 * constructor
+		 * @param _name
+		 * @param _diagnostics
+		 * @param _derivation
+		 * @param _token_count
+		 */
+		Result(String _name, Diagnostics _diagnostics, String _derivation, long _token_count) {
+			name = _name;
+			diagnostics = _diagnostics;
+			derivation = _derivation;
+			token_count = _token_count;
+		}
+
+		/**
+		 * @return what the source was called
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return whether it compiled without errors
+		 */
+		public boolean succeeded() {
+			return !diagnostics.hasErrors();
+		}
+
+		/**
+		 * @return its errors, none if it compiled cleanly
+		 */
+		public Diagnostics getDiagnostics() {
+			return diagnostics;
+		}
+
+		/**
+		 * @return the derivation, one symbol per line, null if the trace level asked for none
+		 */
+		public String getDerivation() {
+			return derivation;
+		}
+
+		/**
+		 * @return number of tokens parsed
+		 */
+		public long getTokenCount() {
+			return token_count;
+		}
+	}
+}
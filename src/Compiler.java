@@ -1,14 +1,20 @@
-import java.io.PushbackReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 
 /**
@@ -17,10 +23,25 @@ import java.util.List;
  */
 public class Compiler {
 	
+	/**
+	 * hardcoded location of table file
+	 */
+	private static final String PARSE_TABLE_PATH = "resources/parse_table.tbl";
+	
+	/**
+	 * fingerprint of the loaded parse table and the compiler's class files, null until the table is loaded
+	 */
+	private static byte[] table_fingerprint;
+	
 	/**********************\
 	|* private properties *|
 	\**********************/
 	
+	/**
+	 * path of the file being compiled
+	 */
+	private String file_name;
+	
 	/**
 	 * Yanks lexemes from file and converts to tokens
 	 */
@@ -31,23 +52,99 @@ public class Compiler {
 	 */
 	private SymbolTable symbol_table;
 	
+	/**
+	 * where the derivation trace and messages for this file go
+	 */
+	private PrintWriter console;
+	
+	/**
+	 * how much of the derivation gets reported
+	 */
+	private TraceLevel trace_level;
+	
+	/**
+	 * whether the scanner runs on a thread of its own
+	 */
+	private boolean pipelined;
+	
+	/**
+	 * whether the declarations are checked once the file has parsed
+	 */
+	private boolean analyzed;
+	
+	/**
+	 * directory the program's class is written to, null to not generate one
+	 */
+	private String class_directory;
+	
+	/**
+	 * whether the program is run on a RegisterMachine once it has compiled
+	 */
+	private boolean run;
+	
+	/**
+	 * where this file's compile is counted and timed, null if it is not
+	 */
+	private CompilerStats stats;
+	
+	/**
+	 * tokens of the file, rows of the TokenBuffer the tree's terminals point at
+	 */
+	private TokenBuffer tokens;
+	
+	/**
+	 * syntax tree of the file, complete once compile has parsed it without errors
+	 */
+	private SyntaxTree syntax_tree;
+	
+	/**
+	 * the file's syntax errors, the compile recovers from each one and carries on
+	 */
+	private Diagnostics diagnostics;
+	
+	/**
+	 * what the file's identifiers refer to, null unless it was analyzed
+	 */
+	private SemanticAnalyzer analyzer;
+	
 	/****************\
 	|* constructors *| 
 	\****************/
 	
 	/**
 	 * constructor
-	 * @param in_file_name source file path
+	 * @param in_file_name source file path, or just a name for the source when it is given as text
+	 * @param source text of the source, null to read it from in_file_name
+	 * @param _console where to print the trace and messages
+	 * @param _trace_level how much of the derivation to report
+	 * @param _pipelined whether to scan on a thread of its own while parsing
+	 * @param _analyzed whether to check the declarations and types once the file has parsed
+	 * @param _class_directory where to write the program's class, null to not generate one
+	 * @param _run whether to run the program on a RegisterMachine once it has compiled
+	 * @param _stats where to count and time the compile, may be null
+	 * @param max_errors most syntax errors to report before giving up on the file
 	 * @throws IOException
 	 */
-	Compiler(String in_file_name) throws IOException{
-		Path file_path = Paths.get(in_file_name);
-		Charset charset = Charset.forName("UTF-8");
-		//PushbackReader allows us to unread characters easily and semantically
-		PushbackReader reader = new PushbackReader(Files.newBufferedReader(file_path,charset));
-		
-		scanner = new Scanner(reader);
+	Compiler(String in_file_name, CharSequence source, PrintWriter _console, TraceLevel _trace_level, boolean _pipelined, boolean _analyzed, String _class_directory, boolean _run, CompilerStats _stats, int max_errors) throws IOException{
+		file_name = in_file_name;
+		if(source == null) {
+			Path file_path = Paths.get(in_file_name);
+			//the file is memory mapped and scanned by offset, backing out is just stepping back
+			scanner = new Scanner(file_path);
+		}
+		else {
+			scanner = new Scanner(source);
+		}
 		symbol_table = SymbolTable.initializeSymbolTable();
+		console = _console;
+		trace_level = _trace_level;
+		pipelined = _pipelined;
+		analyzed = _analyzed;
+		class_directory = _class_directory;
+		run = _run;
+		stats = _stats;
+		scanner.setStats(stats);
+		diagnostics = new Diagnostics(max_errors);
 	}
 
 	
@@ -57,83 +154,592 @@ public class Compiler {
 	
 	/**
 	 * main entry point of the application
-	 * @param String args - Paths to files to be scanned
+	 * files are compiled in parallel, but their output is printed in the order they were given
+	 * @param String args - Paths to files to be scanned, optionally preceded by -j <thread count>
+	 * and -t <none|errors|terminals|full> for how much to report, full by default,
+	 * and -p to scan each file on a thread of its own while it is parsed,
+	 * and -a to check that every identifier is declared, once per scope, and that the types fit, after a file has parsed,
+	 * and -g <directory> to also generate a class for each program there, run it with java -cp <directory> <program name>,
+	 * and -r to run each program that compiles, without a class, and print what the run cost,
+	 * and -s <text|json> to print where each file's compile spent its time, and the total for the run,
+	 * and -e <count> for the most syntax errors reported per file, 100 by default, 1 stops at the first,
+	 * and -c <directory> to keep results there and not compile files that have not changed, unless stats are printed, classes generated or programs run,
+	 * and -m <megabytes> for how big that directory can get, 256 by default
+	 * the exit status is the same as CompileClient's, 0 if every file compiled, 1 if any had errors and 2 if the
+	 * arguments or the parse table were no good
 	 */
 	public static void main(String[] args) {
-		for(String file_name : args){
+		PrintWriter out = new PrintWriter(System.out);
+		Options options = Options.parse(args, out);
+		int status = CompileDaemon.STATUS_BAD_REQUEST;
+		if(options != null && loadParseTable(out)) {
+			ForkJoinPool pool = new ForkJoinPool(options.thread_count);
+			status = compileAll(options, Collections.<String, CharSequence>emptyMap(), pool, out) ? CompileDaemon.STATUS_OK : CompileDaemon.STATUS_ERRORS;
+			pool.shutdown();
+		}
+		out.flush();
+		if(status != CompileDaemon.STATUS_OK) {
+			System.exit(status);
+		}
+	}
+	
+	/**
+	 * @return syntax tree of the file, complete if compile parsed it without errors, null before compile or
+	 * when nothing after the parse needed it, i.e. without -a, -g or -r
+	 */
+	public SyntaxTree getSyntaxTree() {
+		return syntax_tree;
+	}
+	
+	/**
+	 * @return the file's tokens, which the tree's terminals index, null before compile or when a pipelined
+	 * compile built no tree
+	 */
+	public TokenBuffer getTokens() {
+		return tokens;
+	}
+	
+	/**
+	 * @return the file's syntax errors, none if it compiled cleanly
+	 */
+	public Diagnostics getDiagnostics() {
+		return diagnostics;
+	}
+	
+	/**
+	 * @return the symbol table the tokens were scanned with
+	 */
+	public SymbolTable getSymbolTable() {
+		return symbol_table;
+	}
+	
+	/**
+	 * @return what the file's identifiers refer to, null unless it was analyzed without syntax errors
+	 */
+	public SemanticAnalyzer getAnalyzer() {
+		return analyzer;
+	}
+	
+	/*******************\
+	|* package methods *| 
+	\*******************/
+	
+	/**
+	 * loads the parse table, once per process
+	 * the table is only read after this, so every compile can share it
+	 * @param out where to say why it could not be loaded
+	 * @return whether it was loaded
+	 */
+	static boolean loadParseTable(PrintWriter out) {
+		try {
+			//taken first, so a table changed while it is loaded can only make cached results miss
+			table_fingerprint = CompileCache.fingerprint(Paths.get(PARSE_TABLE_PATH), Compiler.class);
+			NonTerminal.loadParseTable(PARSE_TABLE_PATH);
+			return true;
+		} catch (IOException|ClassNotFoundException|ParseTableGenerator.ParseTableException e) {
+			out.println("could not load parse table "+PARSE_TABLE_PATH);
+			out.println(e.toString());
+			return false;
+		}
+	}
+	
+	/**
+	 * compiles every file the options name, printing each file's output in the order they were given
+	 * the parse table has to be loaded first
+	 * @param options what to compile and how
+	 * @param sources text of the files that are not read from disk, by name, these get no output file
+	 * @param pool where the files are compiled when there is more than one
+	 * @param out where everything the compiles print goes, flushed after each file
+	 * @return whether every file compiled without errors
+	 */
+	static boolean compileAll(Options options, Map<String, CharSequence> sources, ExecutorService pool, PrintWriter out) {
+		//each file counts into stats of its own, which are added to the run's once the file is done
+		final CompilerStats run_stats = options.stats_format == null ? null : new CompilerStats(NonTerminal.dense_table, "run");
+		//a file's stats are what its compile cost, so there is nothing to take from the cache then,
+		//a cached result has no class to write, and a run's timing is not worth keeping
+		final CompileCache cache = run_stats == null && options.class_directory == null && !options.run ? openCache(options, out) : null;
+		boolean all_succeeded;
+		
+		//with one file there is no order to keep, so it can go straight out
+		if(options.file_names.size() == 1){
+			String file_name = options.file_names.get(0);
+			all_succeeded = compileFile(file_name, sources.get(file_name), out, options, run_stats, cache);
+			out.flush();
+		}
+		else{
+			all_succeeded = compileInOrder(options, sources, pool, out, run_stats, cache);
+		}
+		if(cache != null){
 			try {
-				Compiler compiler = new Compiler(file_name);
-				compiler.compile(file_name+"-compiled");
-				//we can come up with something better than this I think
+				cache.evict();
 			} catch (IOException e) {
-				System.out.println("could not open file "+file_name+" for reading");
-				System.out.println(e.toString());
-			} catch (Token.TokenException|LexemeTerminal.LexemeTerminalException e) {
-				System.out.println("error in "+file_name);
-				System.out.println(e.toString());
-			} catch (Symbol.UnexpectedTokenException e) {
-				System.out.println("error in "+file_name);
-				System.out.println(e.toString());
-			} catch (ClassNotFoundException e) {
-				System.out.println("error in "+file_name);
-				System.out.println(e.toString());
-			} catch (ParseTableGenerator.ParseTableException e) {
-				System.out.println("error in "+file_name);
-				System.out.println(e.toString());
+				out.println("could not evict from cache "+options.cache_directory);
+				out.println(e.toString());
+				out.flush();
 			}
 		}
+		return all_succeeded;
+	}
+	
+	/*******************\
+	|* private methods *| 
+	\*******************/
+	
+	/**
+	 * compiles more than one file in parallel, printing each file's output once it and every file before it is done
+	 * @return whether every file compiled without errors
+	 */
+	private static boolean compileInOrder(Options options, Map<String, CharSequence> sources, ExecutorService pool, PrintWriter out, CompilerStats run_stats, CompileCache cache) {
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		final boolean[] succeeded = new boolean[options.file_names.size()];
+		for(int i = 0; i < succeeded.length; i++){
+			final int index = i;
+			final String file_name = options.file_names.get(i);
+			results.add(pool.submit(() -> {
+				StringWriter output = new StringWriter();
+				PrintWriter console = new PrintWriter(output);
+				succeeded[index] = compileFile(file_name, sources.get(file_name), console, options, run_stats, cache);
+				console.flush();
+				return output.toString();
+			}));
+		}
+		//print each file's output once it and every file before it is done
+		boolean all_succeeded = true;
+		for(int i = 0; i < results.size(); i++){
+			try {
+				out.print(results.get(i).get());
+				all_succeeded &= succeeded[i];
+			} catch (InterruptedException|ExecutionException e) {
+				out.println("error in "+options.file_names.get(i));
+				out.println(e.toString());
+				all_succeeded = false;
+			}
+			out.flush();
+		}
+		if(run_stats != null){
+			printStats(run_stats, out, options.json());
+		}
+		return all_succeeded;
+	}
+	
+	/**
+	 * opens the cache the options ask for
+	 * @return the cache, null if none was asked for or it can not be used
+	 */
+	private static CompileCache openCache(Options options, PrintWriter out) {
+		if(options.cache_directory == null){
+			return null;
+		}
+		try {
+			return new CompileCache(Paths.get(options.cache_directory), options.cache_max_bytes, table_fingerprint);
+		} catch (IOException e) {
+			//everything still gets compiled, just not cached
+			out.println("could not use cache "+options.cache_directory);
+			out.println(e.toString());
+			return null;
+		}
+	}
+	
+	/**
+	 * compiles a single file, any failure is reported in the output rather than thrown
+	 * @param file_name path of the file to compile, or the name of the source
+	 * @param source text of the file, null to read it from file_name
+	 * @param output where everything the compile prints goes
+	 * @param options how much to report, whether to pipeline, how many errors to allow
+	 * @param run_stats where the file's stats are added, null to not keep any
+	 * @param cache where the file's result is looked up and kept, null to always compile
+	 * @return whether the file compiled without errors
+	 */
+	private static boolean compileFile(String file_name, CharSequence source, PrintWriter output, Options options, CompilerStats run_stats, CompileCache cache) {
+		if(cache == null){
+			return compileUncached(file_name, source, output, options, run_stats);
+		}
+		String out_file_name = source == null ? file_name+"-compiled" : null;
+		String key = null;
+		try {
+			key = cache.key(file_name, source, options.trace_level, options.max_errors, options.analyzed);
+		} catch (IOException e) {
+			//the compile says why the file can not be read
+		}
+		CompileCache.Entry entry = key == null ? null : cache.get(key);
+		if(entry != null){
+			try {
+				if(entry.getDerivation() != null && out_file_name != null){
+					Files.write(Paths.get(out_file_name), entry.getDerivation());
+				}
+				output.print(entry.getOutput());
+				output.flush();
+				return entry.succeeded();
+			} catch (IOException e) {
+				//compiling again says why the output file can not be written
+			}
+		}
+		
+		StringWriter captured = new StringWriter();
+		PrintWriter console = new PrintWriter(captured);
+		boolean succeeded = compileUncached(file_name, source, console, options, null);
+		console.flush();
+		output.print(captured.toString());
+		output.flush();
+		if(key != null){
+			try {
+				//the output file was just written, so reading it back is cheaper than keeping a copy of the trace
+				byte[] derivation = out_file_name != null && options.trace_level.tracesDerivation() ? Files.readAllBytes(Paths.get(out_file_name)) : null;
+				cache.put(key, new CompileCache.Entry(succeeded, captured.toString(), derivation));
+			} catch (IOException e) {
+				//not caching it is always safe
+			}
+		}
+		return succeeded;
+	}
+	
+	/**
+	 * compiles a single file, any failure is reported in the output rather than thrown
+	 * @param file_name path of the file to compile, or the name of the source
+	 * @param source text of the file, null to read it from file_name
+	 * @param output where everything the compile prints goes
+	 * @param options how much to report, whether to pipeline, how many errors to allow
+	 * @param run_stats where the file's stats are added, null to not keep any
+	 * @return whether the file compiled without errors
+	 */
+	private static boolean compileUncached(String file_name, CharSequence source, PrintWriter output, Options options, CompilerStats run_stats) {
+		CompilerStats stats = run_stats == null ? null : new CompilerStats(NonTerminal.dense_table, file_name);
+		boolean succeeded = false;
+		try {
+			Compiler compiler = new Compiler(file_name, source, output, options.trace_level, options.pipelined, options.analyzed, options.class_directory, options.run, stats, options.max_errors);
+			//text that was handed over has nowhere of its own to write the derivation to
+			succeeded = compiler.compile(source == null ? file_name+"-compiled" : null);
+			//we can come up with something better than this I think
+		} catch (IOException e) {
+			output.println("could not open file "+file_name+" for reading");
+			output.println(e.toString());
+		} catch (Token.TokenException|LexemeTerminal.LexemeTerminalException e) {
+			CompilerEvents.syntaxError(file_name, e);
+			output.println("error in "+file_name);
+			output.println(e.toString());
+		} catch (Symbol.UnexpectedTokenException e) {
+			CompilerEvents.syntaxError(file_name, e);
+			output.println("error in "+file_name);
+			output.println(e.toString());
+		} catch (RuntimeException e) {
+			//one broken file should not take the others down with it
+			output.println("error in "+file_name);
+			output.println(e.toString());
+		}
+		output.flush();
+		if(stats != null){
+			printStats(stats, output, options.json());
+			run_stats.merge(stats);
+		}
+		return succeeded;
+	}
+	
+	/**
+	 * prints stats in the format asked for
+	 */
+	private static void printStats(CompilerStats stats, PrintWriter output, boolean json) {
+		if(json){
+			stats.printJson(output);
+		}
+		else{
+			stats.printText(output);
+		}
+		output.flush();
 	}
 	
 	/**
 	 * process a file and output the result to the file identified in the parameter
-	 * @param out_file_name destination path of output file
+	 * the output file is only written when the trace level includes the derivation
+	 * @param out_file_name destination path of output file, null to only trace to the console
+	 * @return whether the file compiled without errors
 	 * @throws IOException
 	 * @throws Token.TokenException 
 	 * @throws LexemeTerminal.LexemeTerminalException 
-	 * @throws ParseTableGenerator.:wParseTableException 
-	 * @throws ClassNotFoundException 
 	 */
-	private void compile(String out_file_name) throws IOException, Token.TokenException, LexemeTerminal.LexemeTerminalException, Symbol.UnexpectedTokenException, ClassNotFoundException, ParseTableGenerator.ParseTableException {
-		File file = new File(out_file_name);
+	private boolean compile(String out_file_name) throws IOException, Token.TokenException, LexemeTerminal.LexemeTerminalException, Symbol.UnexpectedTokenException {
+		long start = System.nanoTime();
+		CompilerEvents.CompileEvent event = new CompilerEvents.CompileEvent();
+		event.begin();
 		BufferedWriter writer = null;
+		boolean succeeded = false;
+		RegisterProgram program = null;
 
 	    try {
-		    file.createNewFile();
-			writer = new BufferedWriter(new FileWriter(file));
-			//hardcoded location of table file
-			NonTerminal.loadParseTable("resources/parse_table.tbl");
+			TraceWriter trace = null;
+			ParserEngine.DerivationListener listener = null;
+			if(trace_level.tracesDerivation()) {
+				//the lines are written on a background thread so the parse never waits on the console
+				if(out_file_name != null) {
+					File file = new File(out_file_name);
+				    file.createNewFile();
+					writer = new BufferedWriter(new FileWriter(file));
+					trace = new TraceWriter(console, writer);
+				}
+				else {
+					trace = new TraceWriter(console);
+				}
+				final TraceWriter trace_writer = trace;
+				listener = (symbol, terminal) -> {
+					if(trace_level.traces(symbol)) {
+						trace_writer.println(symbol.print(terminal));
+					}
+				};
+			}
 
 			/**Parse through the program
-			 * Note there is no parser class, the functionality is small enough to put here
-			 * and at this point our "compiler" is really just a parser
+			 * at this point our "compiler" is really just a parser, the derivation is our output
 			 */
-			Token token;
-			Symbol symbol;
-			List<Symbol> production;
-			Stack<Symbol> stack = new Stack<Symbol>();
-			stack.push(new NonTerminal("Program")); //initial symbol
-			token = scanner.getNextToken(symbol_table);	
-			while(!stack.empty()) {
-				symbol = stack.pop();
-				System.out.println(symbol.print(token));
-				writer.write(symbol.print(token));
-				writer.newLine();
-				production = symbol.getProduction(token);
-				for(Symbol production_sym : production) {
-					stack.push(production_sym);
-				}
-				if(symbol.shouldGetToken() ) { 
-					token = scanner.getNextToken(symbol_table);
+			//only analysis and the passes after it read the tree, a plain parse is faster and smaller without one
+			boolean builds_tree = analyzed || class_directory != null || run;
+			//tokens are kept as rows in a buffer instead of as Token objects, the pipeline only needs them for the tree
+			tokens = builds_tree || !pipelined ? new TokenBuffer() : null;
+			syntax_tree = builds_tree ? SyntaxTree.forSource(NonTerminal.dense_table, scanner.getSourceLength()) : null;
+			ParserEngine parser = new ParserEngine(NonTerminal.dense_table, "Program"); //initial symbol
+			parser.setStats(stats);
+			//the tree is built as productions are applied, so later passes never have to parse again
+			parser.setTree(syntax_tree);
+			//errors are collected rather than thrown, so one compile finds as many as it can
+			parser.setDiagnostics(diagnostics);
+			try {
+				if(pipelined) {
+					try(ScannerPipeline pipeline = new ScannerPipeline(scanner, symbol_table)) {
+						pipeline.setDiagnostics(diagnostics);
+						pipeline.start();
+						parser.parse(pipeline, tokens, listener);
+					}
+				}
+				else {
+					parser.parse(scanner, symbol_table, tokens, listener);
+				}
+				//only a complete tree can be analyzed, and code is only generated from one that was
+				if(builds_tree && !diagnostics.hasErrors()) {
+					analyzer = new SemanticAnalyzer(NonTerminal.dense_table);
+					analyzer.setDiagnostics(diagnostics);
+					analyzer.analyze(syntax_tree, tokens, symbol_table);
+				}
+				succeeded = !diagnostics.hasErrors();
+				if(class_directory != null && succeeded) {
+					succeeded = generateClass();
+				}
+				if(run && succeeded) {
+					program = lowerProgram();
+				}
+			} finally {
+				//everything traced so far has to be out before any error gets printed after it
+				if(trace != null) {
+					trace.close();
+				}
+				if(stats != null) {
+					stats.finish(symbol_table.size(), parser.getMaxStackDepth(), System.nanoTime() - start);
+				}
+				event.end();
+				if(event.shouldCommit()) {
+					event.file = file_name;
+					event.bytes = scanner.getOffset();
+					event.tokens = parser.getTokenCount();
+					event.pipelined = pipelined;
+					event.succeeded = succeeded;
+					event.commit();
+				}
+			}
+			if(diagnostics.hasErrors()) {
+				console.println("error in "+file_name);
+				for(Exception error : diagnostics.getErrors()) {
+					CompilerEvents.syntaxError(file_name, error);
 				}
+				diagnostics.print(console);
+			}
+			//run once the trace is out, the run is not part of the compile
+			if(program != null) {
+				succeeded = new RegisterMachine(program).run(console);
 			}
 		} catch (IOException e) {
-			System.out.println("could not open file "+out_file_name+" for writing");
-			System.out.println(e.toString());
+			console.println("could not open file "+out_file_name+" for writing");
+			console.println(e.toString());
 		}  catch (Scanner.ScannerException e) {
-			System.out.println("Syntax Error");
-			System.out.println(e.toString());
+			CompilerEvents.syntaxError(file_name, e);
+			console.println("Syntax Error");
+			console.println(e.toString());
 		} finally {
-			writer.close();
+			if(writer != null) {
+				writer.close();
+			}
+		}
+		return succeeded;
+	}
+	
+	/**
+	 * generates the program's class and writes it to the class directory
+	 * @return whether it was written, if not the errors are in the diagnostics or have been printed
+	 */
+	private boolean generateClass() {
+		BytecodeGenerator generator = new BytecodeGenerator(NonTerminal.dense_table);
+		generator.setDiagnostics(diagnostics);
+		byte[] class_file = generator.generate(syntax_tree, tokens, symbol_table, analyzer, file_name);
+		if(class_file == null) {
+			return false;
+		}
+		Path class_path = Paths.get(class_directory, generator.getClassName()+".class");
+		try {
+			Files.createDirectories(class_path.getParent());
+			Files.write(class_path, class_file);
+			return true;
+		} catch (IOException e) {
+			console.println("could not write class "+class_path);
+			console.println(e.toString());
+			return false;
+		}
+	}
+	
+	/**
+	 * lowers the program for a RegisterMachine
+	 * @return the program
+	 */
+	private RegisterProgram lowerProgram() {
+		RegisterCodeGenerator generator = new RegisterCodeGenerator(NonTerminal.dense_table);
+		return generator.generate(syntax_tree, tokens, symbol_table, analyzer);
+	}
+	
+	/*****************\
+	|* inner classes *| 
+	\*****************/
+	
+	/**
+	 * what to compile and how, as given on the command line
+	 */
+	static class Options {
+		
+		/**
+		 * threads the files are compiled on
+		 */
+		int thread_count = Runtime.getRuntime().availableProcessors();
+		
+		/**
+		 * how much of the derivation gets reported
+		 */
+		TraceLevel trace_level = TraceLevel.FULL;
+		
+		/**
+		 * whether each file is scanned on a thread of its own
+		 */
+		boolean pipelined = false;
+		
+		/**
+		 * whether declarations and types are checked once a file has parsed
+		 */
+		boolean analyzed = false;
+		
+		/**
+		 * directory each program's class is written to, null to not generate classes
+		 */
+		String class_directory = null;
+		
+		/**
+		 * whether each program is run once it has compiled
+		 */
+		boolean run = false;
+		
+		/**
+		 * text or json, null to not print stats
+		 */
+		String stats_format = null;
+		
+		/**
+		 * most syntax errors reported per file
+		 */
+		int max_errors = Diagnostics.DEFAULT_MAX_ERRORS;
+		
+		/**
+		 * directory results are cached in, null to not cache them
+		 */
+		String cache_directory = null;
+		
+		/**
+		 * the cache is kept under this many bytes
+		 */
+		long cache_max_bytes = CompileCache.DEFAULT_MAX_BYTES;
+		
+		/**
+		 * files to compile, in the order their output is printed
+		 */
+		List<String> file_names = new ArrayList<String>();
+		
+		/**
+		 * reads the options from command line arguments, see main
+		 * @param args
+		 * @param out where to say what is wrong with them
+		 * @return the options, null if they could not be read
+		 */
+		static Options parse(String[] args, PrintWriter out) {
+			Options options = new Options();
+			for(int i = 0; i < args.length; i++){
+				if(args[i].equals("-j") && i+1 < args.length){
+					try {
+						options.thread_count = Math.max(1, Integer.parseInt(args[++i]));
+					} catch (NumberFormatException e) {
+						out.println("unknown thread count "+args[i]+", expected a number");
+						return null;
+					}
+				}
+				else if(args[i].equals("-e") && i+1 < args.length){
+					try {
+						options.max_errors = Math.max(1, Integer.parseInt(args[++i]));
+					} catch (NumberFormatException e) {
+						out.println("unknown error count "+args[i]+", expected a number");
+						return null;
+					}
+				}
+				else if(args[i].equals("-p")){
+					options.pipelined = true;
+				}
+				else if(args[i].equals("-a")){
+					options.analyzed = true;
+				}
+				else if(args[i].equals("-r")){
+					options.run = true;
+				}
+				else if(args[i].equals("-g") && i+1 < args.length){
+					options.class_directory = args[++i];
+				}
+				else if(args[i].equals("-c") && i+1 < args.length){
+					options.cache_directory = args[++i];
+				}
+				else if(args[i].equals("-m") && i+1 < args.length){
+					try {
+						//a size too big to count in bytes is no limit at all, rather than wrapping around to a negative one
+						options.cache_max_bytes = Math.min(Math.max(0, Long.parseLong(args[++i])), Long.MAX_VALUE >> 20) << 20;
+					} catch (NumberFormatException e) {
+						out.println("unknown cache size "+args[i]+", expected a number of megabytes");
+						return null;
+					}
+				}
+				else if(args[i].equals("-s") && i+1 < args.length){
+					options.stats_format = args[++i];
+					if(!options.stats_format.equals("text") && !options.stats_format.equals("json")){
+						out.println("unknown stats format "+options.stats_format+", expected text or json");
+						return null;
+					}
+				}
+				else if(args[i].equals("-t") && i+1 < args.length){
+					try {
+						options.trace_level = TraceLevel.fromName(args[++i]);
+					} catch (IllegalArgumentException e) {
+						out.println("unknown trace level "+args[i]+", expected none, errors, terminals or full");
+						return null;
+					}
+				}
+				else{
+					options.file_names.add(args[i]);
+				}
+			}
+			return options;
+		}
+		
+		/**
+		 * @return whether stats are printed as JSON rather than text
+		 */
+		boolean json() {
+			return "json".equals(stats_format);
 		}
 	}
 }
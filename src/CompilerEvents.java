@@ -0,0 +1,169 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the compiler, to see in a recording why a compile was slow
+ *
+ * every event is disabled by default, a recording has to turn them on, resources/compiler.jfc does, e.g.
+ *   java -XX:StartFlightRecording:settings=resources/compiler.jfc,filename=compile.jfr Compiler ...
+ * while they are off an event costs a check of a flag the JIT folds away, so they can stay in production code
+ * @author Mike, Ryan
+ */
+public class CompilerEvents {
+
+	/**
+	 * blocks of at least this many characters get a LongBlockEvent
+	 */
+	public static final int LONG_BLOCK_LENGTH = 4096;
+
+	/**
+	 * loading the parse table, see NonTerminal.loadParseTable
+	 */
+	@Name("compiler.TableLoad")
+	@Label("Parse Table Load")
+	@Category("Compiler")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class TableLoadEvent extends Event {
+
+		@Label("Path")
+		public String path;
+
+		@Label("Binary")
+		@Description("whether the precompiled binary table was used")
+		public boolean binary;
+
+		@Label("Nonterminals")
+		public int nonterminals;
+
+		@Label("Productions")
+		public int productions;
+	}
+
+	/**
+	 * scanning and parsing one file
+	 */
+	@Name("compiler.Compile")
+	@Label("Compile")
+	@Category("Compiler")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class CompileEvent extends Event {
+
+		@Label("File")
+		public String file;
+
+		@Label("Bytes")
+		@DataAmount
+		public long bytes;
+
+		@Label("Tokens")
+		public long tokens;
+
+		@Label("Pipelined")
+		public boolean pipelined;
+
+		@Label("Succeeded")
+		public boolean succeeded;
+	}
+
+	/**
+	 * a file that did not scan or parse
+	 */
+	@Name("compiler.SyntaxError")
+	@Label("Syntax Error")
+	@Category("Compiler")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class SyntaxErrorEvent extends Event {
+
+		@Label("File")
+		public String file;
+
+		@Label("Error")
+		@Description("class of the exception")
+		public String error;
+
+		@Label("Message")
+		public String message;
+	}
+
+	/**
+	 * a comment, run of whitespace or lexeme block of at least LONG_BLOCK_LENGTH characters
+	 */
+	@Name("compiler.LongBlock")
+	@Label("Long Block")
+	@Category("Compiler")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class LongBlockEvent extends Event {
+
+		@Label("Comment")
+		@Description("true for comments and whitespace, false for a lexeme block")
+		public boolean comment;
+
+		@Label("Line")
+		@Description("line the block ends on")
+		public int line;
+
+		@Label("Offset")
+		public long offset;
+
+		@Label("Length")
+		@DataAmount
+		public long length;
+	}
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * only the events are used
+	 */
+	private CompilerEvents() {
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * records a syntax error, if the event is on
+	 * @param file
+	 * @param error
+	 */
+	public static void syntaxError(String file, Exception error) {
+		SyntaxErrorEvent event = new SyntaxErrorEvent();
+		if(event.isEnabled()) {
+			event.file = file;
+			event.error = error.getClass().getSimpleName();
+			event.message = error.getMessage();
+			event.commit();
+		}
+	}
+
+	/**
+	 * records a long block, if the event is on
+	 * @param comment whether it was comments and whitespace rather than lexemes
+	 * @param line
+	 * @param offset where the block starts
+	 * @param length
+	 */
+	public static void longBlock(boolean comment, int line, long offset, long length) {
+		LongBlockEvent event = new LongBlockEvent();
+		if(event.isEnabled()) {
+			event.comment = comment;
+			event.line = line;
+			event.offset = offset;
+			event.length = length;
+			event.commit();
+		}
+	}
+}
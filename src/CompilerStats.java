@@ -0,0 +1,350 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * counters for where a compile spends its time, printed per file and summed up per run, as text or JSON
+ *
+ * each file gets its own stats, only touched by the threads compiling it, so the counters are plain
+ * fields with nothing shared to contend on, with the pipelined scanner the scanner thread only touches
+ * the scanning counters and is joined before anything is read, a run's total is merged from the files'
+ * stats once each file is done
+ *
+ * reading the clock on every token would cost more than some of the phases it measures, so phase times
+ * are sampled, every call is counted but only one in SAMPLE_INTERVAL is timed, and the time of all the
+ * calls is estimated from the timed ones
+ * @author Mike, Ryan
+ */
+public class CompilerStats {
+
+	/**
+	 * phase, moving past whitespace, newlines and comments
+	 */
+	public static final int SKIP_NONLEXEME = 0;
+
+	/**
+	 * phase, finding how long the next lexeme is
+	 */
+	public static final int RECOGNIZE_LEXEME = 1;
+
+	/**
+	 * phase, finding or adding the lexeme's symbol
+	 */
+	public static final int LOOKUP_SYMBOL = 2;
+
+	/**
+	 * phase, running the parse stack for one token
+	 */
+	public static final int PARSE = 3;
+
+	/**
+	 * how often a phase call is timed, a power of two
+	 */
+	public static final int SAMPLE_INTERVAL = 64;
+
+	/**
+	 * a timed call is counted as taking at most this long, anything longer was a GC pause or the thread
+	 * being descheduled, which multiplied by the sample interval would swamp the estimate
+	 */
+	private static final long MAX_SAMPLE_NANOS = 50_000;
+
+	/**
+	 * names of the phases, for printing
+	 */
+	private static final String[] PHASE_NAMES = { "skipNonlexeme", "lexeme recognition", "symbol table lookup", "parse loop" };
+
+	/**
+	 * table cells printed as text, JSON gets them all
+	 */
+	private static final int TEXT_CELL_LIMIT = 20;
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * grammar the cells are in
+	 */
+	private final ParseTable table;
+
+	/**
+	 * what the stats are for, a file name or a description of the run
+	 */
+	private final String name;
+
+	/**
+	 * number of files that went into these stats
+	 */
+	private int file_count;
+
+	/**
+	 * per phase, calls, calls timed and nanoseconds the timed calls took
+	 */
+	private final long[] phase_calls;
+	private final long[] sampled_calls;
+	private final long[] sampled_nanos;
+
+	/**
+	 * tokens scanned, by TerminalKind
+	 */
+	private final long[] token_counts;
+
+	/**
+	 * times each cell of the table was used, by nonterminal * TerminalKind.COUNT + kind
+	 */
+	private final long[] cell_hits;
+
+	/**
+	 * symbols in the symbol table at the end, summed over files
+	 */
+	private long symbol_table_size;
+
+	/**
+	 * deepest the parse stack got
+	 */
+	private int max_stack_depth;
+
+	/**
+	 * nanoseconds the whole compile took, summed over files
+	 */
+	private long compile_nanos;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor
+	 * @param _table grammar the files are parsed with
+	 * @param _name what the stats are for
+	 */
+	public CompilerStats(ParseTable _table, String _name) {
+		table = _table;
+		name = _name;
+		phase_calls = new long[PHASE_NAMES.length];
+		sampled_calls = new long[PHASE_NAMES.length];
+		sampled_nanos = new long[PHASE_NAMES.length];
+		token_counts = new long[TerminalKind.COUNT];
+		cell_hits = new long[table.getNonterminalCount() * TerminalKind.COUNT];
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * counts a call of a phase
+	 * @param phase
+	 * @return whether this call should be timed, if so its time goes to addSample
+	 */
+	public boolean count(int phase) {
+		return (++phase_calls[phase] & (SAMPLE_INTERVAL - 1)) == 0;
+	}
+
+	/**
+	 * adds the time of a timed call
+	 * @param phase
+	 * @param nanos
+	 */
+	public void addSample(int phase, long nanos) {
+		sampled_calls[phase]++;
+		sampled_nanos[phase] += Math.min(nanos, MAX_SAMPLE_NANOS);
+	}
+
+	/**
+	 * counts a scanned token
+	 * @param kind TerminalKind of the token
+	 */
+	public void countToken(int kind) {
+		token_counts[kind]++;
+	}
+
+	/**
+	 * the counters for table cells, the parser adds to them directly
+	 * @return hits by nonterminal * TerminalKind.COUNT + kind
+	 */
+	public long[] getCellHits() {
+		return cell_hits;
+	}
+
+	/**
+	 * records what a compile ended with
+	 * @param _symbol_table_size symbols in the file's symbol table
+	 * @param stack_depth deepest the parse stack got
+	 * @param nanos how long the compile took
+	 */
+	public void finish(int _symbol_table_size, int stack_depth, long nanos) {
+		file_count = 1;
+		symbol_table_size = _symbol_table_size;
+		max_stack_depth = stack_depth;
+		compile_nanos = nanos;
+	}
+
+	/**
+	 * adds a file's stats into these
+	 * @param other stats no thread is adding to anymore
+	 */
+	public synchronized void merge(CompilerStats other) {
+		file_count += other.file_count;
+		for(int phase = 0; phase < PHASE_NAMES.length; phase++) {
+			phase_calls[phase] += other.phase_calls[phase];
+			sampled_calls[phase] += other.sampled_calls[phase];
+			sampled_nanos[phase] += other.sampled_nanos[phase];
+		}
+		for(int kind = 0; kind < TerminalKind.COUNT; kind++) {
+			token_counts[kind] += other.token_counts[kind];
+		}
+		for(int cell = 0; cell < cell_hits.length; cell++) {
+			cell_hits[cell] += other.cell_hits[cell];
+		}
+		symbol_table_size += other.symbol_table_size;
+		max_stack_depth = Math.max(max_stack_depth, other.max_stack_depth);
+		compile_nanos += other.compile_nanos;
+	}
+
+	/**
+	 * @param phase
+	 * @return estimated nanoseconds spent in the phase, from its timed calls
+	 */
+	public long getPhaseNanos(int phase) {
+		if(sampled_calls[phase] == 0) {
+			return 0;
+		}
+		return (long) ((double) sampled_nanos[phase] / sampled_calls[phase] * phase_calls[phase]);
+	}
+
+	/**
+	 * @param phase
+	 * @return number of times the phase ran
+	 */
+	public long getPhaseCalls(int phase) {
+		return phase_calls[phase];
+	}
+
+	/**
+	 * @return tokens scanned, EOF included
+	 */
+	public long getTokenCount() {
+		long count = 0;
+		for(long kind_count : token_counts) {
+			count += kind_count;
+		}
+		return count;
+	}
+
+	/**
+	 * @return deepest the parse stack got
+	 */
+	public int getMaxStackDepth() {
+		return max_stack_depth;
+	}
+
+	/**
+	 * prints the stats for people
+	 * @param out
+	 */
+	public synchronized void printText(PrintWriter out) {
+		out.println("stats for "+name+(file_count == 1 ? "" : " ("+file_count+" files)"));
+		out.printf("  compile time %.3f ms%n", compile_nanos / 1e6);
+		out.println("  phase times, estimated from 1 in "+SAMPLE_INTERVAL+" calls");
+		for(int phase = 0; phase < PHASE_NAMES.length; phase++) {
+			out.printf("    %-22s %12d calls %12.3f ms%n", PHASE_NAMES[phase], phase_calls[phase], getPhaseNanos(phase) / 1e6);
+		}
+		out.println("  tokens "+getTokenCount());
+		for(int kind = 0; kind < TerminalKind.COUNT; kind++) {
+			if(token_counts[kind] > 0) {
+				out.printf("    %-22s %12d%n", TerminalKind.name(kind), token_counts[kind]);
+			}
+		}
+		out.println("  symbol table size "+symbol_table_size);
+		out.println("  max parse stack depth "+max_stack_depth);
+		List<Integer> cells = usedCells();
+		out.println("  table cells used "+cells.size()+(cells.size() > TEXT_CELL_LIMIT ? ", top "+TEXT_CELL_LIMIT : ""));
+		for(int i = 0; i < cells.size() && i < TEXT_CELL_LIMIT; i++) {
+			int cell = cells.get(i);
+			out.printf("    %-40s %12d%n", cellNonterminal(cell)+", "+TerminalKind.name(cell % TerminalKind.COUNT), cell_hits[cell]);
+		}
+	}
+
+	/**
+	 * prints the stats as one line of JSON
+	 * @param out
+	 */
+	public synchronized void printJson(PrintWriter out) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"name\":").append(quote(name));
+		json.append(",\"files\":").append(file_count);
+		json.append(",\"compile_nanos\":").append(compile_nanos);
+		json.append(",\"sample_interval\":").append(SAMPLE_INTERVAL);
+		json.append(",\"phases\":{");
+		for(int phase = 0; phase < PHASE_NAMES.length; phase++) {
+			json.append(phase == 0 ? "" : ",").append(quote(PHASE_NAMES[phase]));
+			json.append(":{\"calls\":").append(phase_calls[phase]).append(",\"nanos\":").append(getPhaseNanos(phase)).append('}');
+		}
+		json.append("},\"tokens\":{");
+		String separator = "";
+		for(int kind = 0; kind < TerminalKind.COUNT; kind++) {
+			if(token_counts[kind] > 0) {
+				json.append(separator).append(quote(TerminalKind.name(kind))).append(':').append(token_counts[kind]);
+				separator = ",";
+			}
+		}
+		json.append("},\"symbol_table_size\":").append(symbol_table_size);
+		json.append(",\"max_stack_depth\":").append(max_stack_depth);
+		json.append(",\"table_cells\":[");
+		separator = "";
+		for(int cell : usedCells()) {
+			json.append(separator).append("{\"nonterminal\":").append(quote(cellNonterminal(cell)));
+			json.append(",\"lookahead\":").append(quote(TerminalKind.name(cell % TerminalKind.COUNT)));
+			json.append(",\"hits\":").append(cell_hits[cell]).append('}');
+			separator = ",";
+		}
+		json.append("]}");
+		out.println(json);
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * @return cells hit at least once, most hits first
+	 */
+	private List<Integer> usedCells() {
+		List<Integer> cells = new ArrayList<Integer>();
+		for(int cell = 0; cell < cell_hits.length; cell++) {
+			if(cell_hits[cell] > 0) {
+				cells.add(cell);
+			}
+		}
+		cells.sort((a, b) -> Long.compare(cell_hits[b], cell_hits[a]));
+		return cells;
+	}
+
+	/**
+	 * @return name of the nonterminal of a cell
+	 */
+	private String cellNonterminal(int cell) {
+		return ((NonTerminal) table.getSymbol(cell / TerminalKind.COUNT)).getType();
+	}
+
+	/**
+	 * @return the text as a JSON string
+	 */
+	private static String quote(String text) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			}
+			else if(c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+}
@@ -0,0 +1,118 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * errors found while compiling a file, in the order they were found
+ *
+ * with diagnostics to report to, the scanner and parser recover from an error instead of stopping at it,
+ * so one compile finds every error it can, at most max_errors are kept, after that the compile gives up
+ * so a file that is nothing but errors does not take forever
+ * @author Mike, Ryan
+ */
+public class Diagnostics {
+
+	/**
+	 * limit used when none is given
+	 */
+	public static final int DEFAULT_MAX_ERRORS = 100;
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * the errors, each one what the compile would have thrown without recovery
+	 */
+	private final List<Exception> errors;
+
+	/**
+	 * most errors kept before the compile should stop
+	 */
+	private final int max_errors;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor
+	 * @param _max_errors most errors to keep, at least 1
+	 */
+	public Diagnostics(int _max_errors) {
+		errors = new ArrayList<Exception>();
+		max_errors = Math.max(1, _max_errors);
+	}
+
+	/**
+	 * constructor with the default limit
+	 */
+	public Diagnostics() {
+		this(DEFAULT_MAX_ERRORS);
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * adds an error, ignored once the limit is reached
+	 * @param error
+	 * @return false if the limit has been reached, i.e. it is time to stop
+	 */
+	public boolean report(Exception error) {
+		if(errors.size() < max_errors) {
+			errors.add(error);
+		}
+		return !isFull();
+	}
+
+	/**
+	 * @return true once max_errors errors have been reported
+	 */
+	public boolean isFull() {
+		return errors.size() >= max_errors;
+	}
+
+	/**
+	 * @return whether there were any errors
+	 */
+	public boolean hasErrors() {
+		return !errors.isEmpty();
+	}
+
+	/**
+	 * @return number of errors kept
+	 */
+	public int getErrorCount() {
+		return errors.size();
+	}
+
+	/**
+	 * @return the errors, oldest first
+	 */
+	public List<Exception> getErrors() {
+		return Collections.unmodifiableList(errors);
+	}
+
+	/**
+	 * forgets every error
+	 */
+	public void clear() {
+		errors.clear();
+	}
+
+	/**
+	 * prints the errors, one per line, and whether the compile gave up early
+	 * @param out
+	 */
+	public void print(PrintWriter out) {
+		for(Exception error : errors) {
+			out.println(error.toString());
+		}
+		if(isFull()) {
+			out.println("too many errors, stopped after "+max_errors);
+		}
+	}
+}
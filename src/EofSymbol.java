@@ -5,6 +5,11 @@
  *
  */
 public class EofSymbol extends Terminal {
+	
+	/**
+	 * every EOF is the same, so there only needs to be one of these
+	 */
+	public static final EofSymbol EOF = new EofSymbol();
 
 	/**
 	 * simple constructor
@@ -24,10 +29,18 @@ public class EofSymbol extends Terminal {
 		return "";
 	}
 	
+	/**
+	 * @return TerminalKind.EOF
+	 */
+	@Override
+	public int getKind() {
+		return TerminalKind.EOF;
+	}
+	
 	/**
 	 * Print
 	 */
-	public String print(Token found){
+	public String print(Terminal found){
 		return "End Of File";
 	}
 
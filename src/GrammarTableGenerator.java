@@ -0,0 +1,762 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * builds the LL(1) parse table from a BNF grammar, instead of writing every Symbol: line by hand
+ *
+ * grammar file format, one rule per line, alternatives can go on lines of their own starting with |
+ *   # comment
+ *   Statement ::= IdStatement | "while" Expression "do" Statement
+ *     | %empty
+ * a bare name is a nonterminal, "text" a LexemeTerminal, <ClassName> an AnySymbolOfClass, and an empty
+ * alternative or %empty is the empty production, the left side of the first rule is the start symbol
+ *
+ * symbols get dense ids, nonterminals and terminals each from 0, and FIRST and FOLLOW are bitsets over the
+ * terminal ids, one long[] row per nonterminal, so each step of the fixpoints is a few word ORs. every
+ * conflicting cell is reported, not just the first, and the table is written in the text format
+ * ParseTableGenerator reads, and optionally the binary one, e.g.
+ *   java GrammarTableGenerator resources/grammar.bnf resources/parse_table.tbl [resources/parse_table.bin]
+ * @author Mike, Ryan
+ */
+public class GrammarTableGenerator {
+
+	/**
+	 * separates a rule's left side from its alternatives
+	 */
+	private static final String DEFINES = "::=";
+
+	/**
+	 * how an empty alternative can be spelled out, as in bison
+	 */
+	private static final String EPSILON = "%empty";
+
+	/**
+	 * terminal at the end of the input, id 0, it follows the start symbol
+	 */
+	private static final String END_TERMINAL = "<EofSymbol>";
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * nonterminal names by id, in the order they are first seen
+	 */
+	private final List<String> nonterminals;
+	private final Map<String, Integer> nonterminal_ids;
+
+	/**
+	 * line each nonterminal was first defined on, 0 if it never was
+	 */
+	private final List<Integer> defined_on;
+
+	/**
+	 * terminals as written in the grammar, "text" or <ClassName>, by id
+	 */
+	private final List<String> terminals;
+	private final Map<String, Integer> terminal_ids;
+
+	/**
+	 * by production id, the nonterminal it is for and its symbols in order, a nonterminal as its id and a
+	 * terminal as ~id, i.e. negative
+	 */
+	private final List<Integer> production_owners;
+	private final List<int[]> productions;
+
+	/**
+	 * by nonterminal, the ids of its productions
+	 */
+	private int[][] owned;
+
+	/**
+	 * results of analyze
+	 */
+	private boolean[] nullable;
+	private long[][] first;
+	private long[][] follow;
+
+	/**
+	 * by production id, the terminals it is chosen on
+	 */
+	private long[][] lookaheads;
+
+	/**
+	 * every LL(1) conflict, one per cell
+	 */
+	private final List<String> conflicts;
+
+	/**
+	 * things that are allowed but probably mistakes, e.g. unreachable nonterminals
+	 */
+	private final List<String> warnings;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * reads a grammar, it is analyzed straight away
+	 * @param source the grammar text
+	 * @throws IOException
+	 * @throws ParseTableGenerator.ParseTableException if the grammar does not parse or uses undefined nonterminals
+	 */
+	public GrammarTableGenerator(Reader source) throws IOException, ParseTableGenerator.ParseTableException {
+		nonterminals = new ArrayList<String>();
+		nonterminal_ids = new HashMap<String, Integer>();
+		defined_on = new ArrayList<Integer>();
+		terminals = new ArrayList<String>();
+		terminal_ids = new HashMap<String, Integer>();
+		production_owners = new ArrayList<Integer>();
+		productions = new ArrayList<int[]>();
+		conflicts = new ArrayList<String>();
+		warnings = new ArrayList<String>();
+		terminalId(END_TERMINAL);
+		read(new BufferedReader(source));
+		analyze();
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * command line tool, prints the conflicts and warnings, and only writes the table if there are no conflicts
+	 * @param args grammar path, text table path, optionally binary table path
+	 */
+	public static void main(String[] args) {
+		if(args.length != 2 && args.length != 3) {
+			System.out.println("usage: java GrammarTableGenerator <grammar.bnf> <table.tbl> [<table.bin>]");
+			return;
+		}
+		try {
+			long start = System.nanoTime();
+			GrammarTableGenerator generator;
+			try(Reader source = new FileReader(args[0])) {
+				generator = new GrammarTableGenerator(source);
+			}
+			long analyzed = System.nanoTime();
+			for(String warning : generator.getWarnings()) {
+				System.out.println("warning: "+warning);
+			}
+			for(String conflict : generator.getConflicts()) {
+				System.out.println(conflict);
+			}
+			System.out.printf("%d nonterminals, %d terminals, %d productions, analyzed in %.3f ms%n",
+					generator.getNonterminalCount(), generator.getTerminalCount(), generator.getProductionCount(), (analyzed - start) / 1e6);
+			if(!generator.getConflicts().isEmpty()) {
+				System.out.println(generator.getConflicts().size()+" conflicts, no table written");
+				System.exit(1);
+			}
+			try(Writer out = new BufferedWriter(new FileWriter(args[1]))) {
+				generator.writeTable(out);
+			}
+			//the dense table checks the cells again by TerminalKind, which catches classes that overlap, e.g. NumberSymbol and IntegerLiteralSymbol
+			new ParseTable(ParseTableGenerator.generateHashMap(args[1]));
+			if(args.length == 3) {
+				BinaryParseTable.write(args[1], args[2]);
+			}
+		} catch (IOException|ParseTableGenerator.ParseTableException e) {
+			System.out.println("could not generate a parse table from "+args[0]);
+			System.out.println(e.toString());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * writes the table in the text format ParseTableGenerator reads, rows in grammar order
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTable(Writer out) throws IOException {
+		for(int nonterminal = 0; nonterminal < nonterminals.size(); nonterminal++) {
+			out.write("Type:"+nonterminals.get(nonterminal)+"\n");
+			for(int production : owned[nonterminal]) {
+				if(isEmpty(lookaheads[production])) {
+					continue;
+				}
+				StringBuilder line = new StringBuilder("Production:");
+				String separator = "";
+				for(int symbol : productions.get(production)) {
+					line.append(separator).append(symbol >= 0 ? "NonTerminal("+nonterminals.get(symbol)+")" : tableTerminal(~symbol));
+					separator = "|";
+				}
+				out.write(line.append('\n').toString());
+				line = new StringBuilder("Symbol:");
+				separator = "";
+				for(int terminal = 0; terminal < terminals.size(); terminal++) {
+					if(contains(lookaheads[production], terminal)) {
+						line.append(separator).append(tableTerminal(terminal));
+						separator = "|";
+					}
+				}
+				out.write(line.append('\n').toString());
+			}
+			out.write("\n");
+		}
+	}
+
+	/**
+	 * @return every LL(1) conflict, empty if the grammar is LL(1)
+	 */
+	public List<String> getConflicts() {
+		return conflicts;
+	}
+
+	/**
+	 * @return unreachable nonterminals and productions that can never be chosen
+	 */
+	public List<String> getWarnings() {
+		return warnings;
+	}
+
+	public int getNonterminalCount() {
+		return nonterminals.size();
+	}
+
+	public int getTerminalCount() {
+		return terminals.size();
+	}
+
+	public int getProductionCount() {
+		return productions.size();
+	}
+
+	/**
+	 * @param nonterminal name of a nonterminal
+	 * @return whether it can derive the empty string
+	 */
+	public boolean isNullable(String nonterminal) {
+		return nullable[nonterminal_ids.get(nonterminal)];
+	}
+
+	/**
+	 * @param nonterminal name of a nonterminal
+	 * @return its FIRST set, terminals as written in the grammar
+	 */
+	public List<String> getFirst(String nonterminal) {
+		return terminalList(first[nonterminal_ids.get(nonterminal)]);
+	}
+
+	/**
+	 * @param nonterminal name of a nonterminal
+	 * @return its FOLLOW set, terminals as written in the grammar
+	 */
+	public List<String> getFollow(String nonterminal) {
+		return terminalList(follow[nonterminal_ids.get(nonterminal)]);
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * reads the rules into productions
+	 */
+	private void read(BufferedReader reader) throws IOException, ParseTableGenerator.ParseTableException {
+		String line;
+		int line_number = 0;
+		int current = -1;
+		while((line = reader.readLine()) != null) {
+			line_number++;
+			String text = stripComment(line).trim();
+			if(text.isEmpty()) {
+				continue;
+			}
+			String alternatives;
+			if(text.startsWith("|")) {
+				if(current == -1) {
+					throw new ParseTableGenerator.ParseTableException("alternative before any rule on line "+line_number+": "+line);
+				}
+				alternatives = text.substring(1);
+			}
+			else {
+				int defines = text.indexOf(DEFINES);
+				if(defines == -1) {
+					throw new ParseTableGenerator.ParseTableException("expected "+DEFINES+" on line "+line_number+": "+line);
+				}
+				String name = text.substring(0, defines).trim();
+				if(!isName(name)) {
+					throw new ParseTableGenerator.ParseTableException("bad nonterminal name on line "+line_number+": "+name);
+				}
+				current = nonterminalId(name);
+				if(defined_on.get(current) == 0) {
+					defined_on.set(current, line_number);
+				}
+				alternatives = text.substring(defines + DEFINES.length());
+			}
+			for(String alternative : splitAlternatives(alternatives, line_number)) {
+				production_owners.add(current);
+				productions.add(parseAlternative(alternative, line_number));
+			}
+		}
+		if(nonterminals.isEmpty()) {
+			throw new ParseTableGenerator.ParseTableException("the grammar has no rules");
+		}
+		for(int nonterminal = 0; nonterminal < nonterminals.size(); nonterminal++) {
+			if(defined_on.get(nonterminal) == 0) {
+				throw new ParseTableGenerator.ParseTableException("nonterminal "+nonterminals.get(nonterminal)+" is used but never defined");
+			}
+		}
+	}
+
+	/**
+	 * splits the right side of a rule on the | that are not inside quotes
+	 */
+	private static List<String> splitAlternatives(String text, int line_number) throws ParseTableGenerator.ParseTableException {
+		List<String> alternatives = new ArrayList<String>();
+		int start = 0;
+		boolean quoted = false;
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(c == '"') {
+				quoted = !quoted;
+			}
+			else if(c == '|' && !quoted) {
+				alternatives.add(text.substring(start, i));
+				start = i + 1;
+			}
+		}
+		if(quoted) {
+			throw new ParseTableGenerator.ParseTableException("unclosed quote on line "+line_number);
+		}
+		alternatives.add(text.substring(start));
+		return alternatives;
+	}
+
+	/**
+	 * turns one alternative into symbol ids
+	 */
+	private int[] parseAlternative(String text, int line_number) throws ParseTableGenerator.ParseTableException {
+		List<Integer> symbols = new ArrayList<Integer>();
+		int i = 0;
+		while(i < text.length()) {
+			char c = text.charAt(i);
+			if(Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+			int end;
+			if(c == '"') {
+				end = text.indexOf('"', i + 1) + 1;
+				if(end == i + 2) {
+					throw new ParseTableGenerator.ParseTableException("empty terminal on line "+line_number);
+				}
+				if(text.substring(i + 1, end - 1).indexOf('|') != -1) {
+					//the table format splits on | and has no way to escape it
+					throw new ParseTableGenerator.ParseTableException("terminal with a | on line "+line_number);
+				}
+				symbols.add(~terminalId(text.substring(i, end)));
+			}
+			else if(c == '<') {
+				end = text.indexOf('>', i) + 1;
+				if(end == 0 || !isName(text.substring(i + 1, end - 1))) {
+					throw new ParseTableGenerator.ParseTableException("bad terminal class on line "+line_number+": "+text.substring(i));
+				}
+				symbols.add(~terminalId(text.substring(i, end)));
+			}
+			else {
+				end = i;
+				while(end < text.length() && !Character.isWhitespace(text.charAt(end)) && text.charAt(end) != '"' && text.charAt(end) != '<') {
+					end++;
+				}
+				String name = text.substring(i, end);
+				if(name.equals(EPSILON)) {
+					i = end;
+					continue;
+				}
+				if(!isName(name)) {
+					throw new ParseTableGenerator.ParseTableException("bad symbol on line "+line_number+": "+name);
+				}
+				symbols.add(nonterminalId(name));
+			}
+			i = end;
+		}
+		int[] production = new int[symbols.size()];
+		for(int j = 0; j < production.length; j++) {
+			production[j] = symbols.get(j);
+		}
+		return production;
+	}
+
+	/**
+	 * works out nullable, FIRST, FOLLOW and the lookaheads of every production, and finds the conflicts
+	 *
+	 * the fixpoints run off worklists, a production is only looked at again when a set it reads from changed,
+	 * so a long chain of nonterminals costs one visit per link instead of one pass over the grammar per link
+	 */
+	private void analyze() {
+		int nonterminal_count = nonterminals.size();
+		int production_count = productions.size();
+		int words = (terminals.size() + 63) >>> 6;
+		nullable = new boolean[nonterminal_count];
+		first = new long[nonterminal_count][words];
+		follow = new long[nonterminal_count][words];
+		long[] scratch = new long[words];
+		owned = byOwner();
+		int[][] users = byUse();
+
+		//nullable and FIRST, a production is redone when FIRST or nullable of a symbol in it changes
+		ProductionQueue queue = new ProductionQueue(production_count);
+		for(int production = 0; production < production_count; production++) {
+			queue.add(production);
+		}
+		while(!queue.isEmpty()) {
+			int production = queue.remove();
+			int owner = production_owners.get(production);
+			Arrays.fill(scratch, 0);
+			boolean rule_nullable = firstOf(productions.get(production), 0, scratch);
+			boolean changed = or(first[owner], scratch);
+			if(rule_nullable && !nullable[owner]) {
+				nullable[owner] = true;
+				changed = true;
+			}
+			if(changed) {
+				queue.addAll(users[owner]);
+			}
+		}
+
+		//FOLLOW, the start symbol is followed by the end of the input, a production is redone when FOLLOW of its owner changes
+		follow[0][0] |= 1L;
+		for(int production = 0; production < production_count; production++) {
+			queue.add(production);
+		}
+		while(!queue.isEmpty()) {
+			int production = queue.remove();
+			int owner = production_owners.get(production);
+			int[] symbols = productions.get(production);
+			//going from the end, trailer is what can follow the symbol we are at
+			System.arraycopy(follow[owner], 0, scratch, 0, words);
+			for(int i = symbols.length - 1; i >= 0; i--) {
+				int symbol = symbols[i];
+				if(symbol < 0) {
+					Arrays.fill(scratch, 0);
+					set(scratch, ~symbol);
+					continue;
+				}
+				if(or(follow[symbol], scratch)) {
+					queue.addAll(owned[symbol]);
+				}
+				if(!nullable[symbol]) {
+					Arrays.fill(scratch, 0);
+				}
+				or(scratch, first[symbol]);
+			}
+		}
+
+		//each production is chosen on FIRST of its symbols, and on FOLLOW of its owner if they can all be empty
+		lookaheads = new long[production_count][];
+		int[] cells = new int[nonterminal_count * terminals.size()];
+		Arrays.fill(cells, -1);
+		for(int production = 0; production < production_count; production++) {
+			int owner = production_owners.get(production);
+			long[] lookahead = new long[words];
+			if(firstOf(productions.get(production), 0, lookahead)) {
+				or(lookahead, follow[owner]);
+			}
+			lookaheads[production] = lookahead;
+			for(int word = 0; word < words; word++) {
+				for(long bits = lookahead[word]; bits != 0; bits &= bits - 1) {
+					int terminal = (word << 6) + Long.numberOfTrailingZeros(bits);
+					int cell = owner * terminals.size() + terminal;
+					if(cells[cell] == -1) {
+						cells[cell] = production;
+					}
+					else {
+						conflicts.add("LL(1) conflict for "+nonterminals.get(owner)+" on "+terminals.get(terminal)+": "
+								+describe(cells[cell])+" and "+describe(production));
+					}
+				}
+			}
+			if(isEmpty(lookahead)) {
+				warnings.add(describe(production)+" can never be chosen");
+			}
+		}
+		findUnreachable();
+	}
+
+	/**
+	 * @return by nonterminal, the ids of its productions
+	 */
+	private int[][] byOwner() {
+		int[] counts = new int[nonterminals.size()];
+		for(int owner : production_owners) {
+			counts[owner]++;
+		}
+		int[][] owned = new int[counts.length][];
+		for(int nonterminal = 0; nonterminal < counts.length; nonterminal++) {
+			owned[nonterminal] = new int[counts[nonterminal]];
+			counts[nonterminal] = 0;
+		}
+		for(int production = 0; production < productions.size(); production++) {
+			int owner = production_owners.get(production);
+			owned[owner][counts[owner]++] = production;
+		}
+		return owned;
+	}
+
+	/**
+	 * @return by nonterminal, the ids of the productions it is used in, each once
+	 */
+	private int[][] byUse() {
+		List<List<Integer>> uses = new ArrayList<List<Integer>>();
+		for(int nonterminal = 0; nonterminal < nonterminals.size(); nonterminal++) {
+			uses.add(new ArrayList<Integer>());
+		}
+		for(int production = 0; production < productions.size(); production++) {
+			for(int symbol : productions.get(production)) {
+				List<Integer> list = symbol < 0 ? null : uses.get(symbol);
+				if(list != null && (list.isEmpty() || list.get(list.size() - 1) != production)) {
+					list.add(production);
+				}
+			}
+		}
+		int[][] users = new int[uses.size()][];
+		for(int nonterminal = 0; nonterminal < users.length; nonterminal++) {
+			users[nonterminal] = uses.get(nonterminal).stream().mapToInt(Integer::intValue).toArray();
+		}
+		return users;
+	}
+
+	/**
+	 * adds FIRST of symbols[start..] to the set
+	 * @return whether they can all be empty
+	 */
+	private boolean firstOf(int[] symbols, int start, long[] set) {
+		for(int i = start; i < symbols.length; i++) {
+			int symbol = symbols[i];
+			if(symbol < 0) {
+				set(set, ~symbol);
+				return false;
+			}
+			or(set, first[symbol]);
+			if(!nullable[symbol]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * warns about nonterminals that cannot be reached from the start symbol
+	 */
+	private void findUnreachable() {
+		boolean[] reached = new boolean[nonterminals.size()];
+		int[] pending = new int[nonterminals.size()];
+		int pending_count = 0;
+		reached[0] = true;
+		pending[pending_count++] = 0;
+		while(pending_count > 0) {
+			int nonterminal = pending[--pending_count];
+			for(int production : owned[nonterminal]) {
+				for(int symbol : productions.get(production)) {
+					if(symbol >= 0 && !reached[symbol]) {
+						reached[symbol] = true;
+						pending[pending_count++] = symbol;
+					}
+				}
+			}
+		}
+		for(int nonterminal = 0; nonterminal < reached.length; nonterminal++) {
+			if(!reached[nonterminal]) {
+				warnings.add(nonterminals.get(nonterminal)+" cannot be reached from "+nonterminals.get(0));
+			}
+		}
+	}
+
+	/**
+	 * @return the production as it was written, for messages
+	 */
+	private String describe(int production) {
+		StringBuilder text = new StringBuilder(nonterminals.get(production_owners.get(production))).append(" ::=");
+		int[] symbols = productions.get(production);
+		if(symbols.length == 0) {
+			text.append(' ').append(EPSILON);
+		}
+		for(int symbol : symbols) {
+			text.append(' ').append(symbol >= 0 ? nonterminals.get(symbol) : terminals.get(~symbol));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @return a terminal the way the table file writes it
+	 */
+	private String tableTerminal(int terminal) {
+		String text = terminals.get(terminal);
+		if(text.startsWith("\"")) {
+			return "LexemeTerminal("+text+")";
+		}
+		return "AnySymbolOfClass("+text.substring(1, text.length() - 1)+")";
+	}
+
+	/**
+	 * @return the terminals in a set, as written in the grammar
+	 */
+	private List<String> terminalList(long[] set) {
+		List<String> list = new ArrayList<String>();
+		for(int terminal = 0; terminal < terminals.size(); terminal++) {
+			if(contains(set, terminal)) {
+				list.add(terminals.get(terminal));
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * finds or adds a nonterminal
+	 */
+	private int nonterminalId(String name) {
+		Integer id = nonterminal_ids.get(name);
+		if(id == null) {
+			id = nonterminals.size();
+			nonterminal_ids.put(name, id);
+			nonterminals.add(name);
+			defined_on.add(0);
+		}
+		return id;
+	}
+
+	/**
+	 * finds or adds a terminal
+	 */
+	private int terminalId(String text) {
+		Integer id = terminal_ids.get(text);
+		if(id == null) {
+			id = terminals.size();
+			terminal_ids.put(text, id);
+			terminals.add(text);
+		}
+		return id;
+	}
+
+	/**
+	 * @return the line without a # comment, a # inside quotes does not count
+	 */
+	private static String stripComment(String line) {
+		boolean quoted = false;
+		for(int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if(c == '"') {
+				quoted = !quoted;
+			}
+			else if(c == '#' && !quoted) {
+				return line.substring(0, i);
+			}
+		}
+		return line;
+	}
+
+	/**
+	 * names are what the table file allows in NonTerminal(...), letters, digits, _ and the ` of a tail rule
+	 */
+	private static boolean isName(String name) {
+		if(name.isEmpty()) {
+			return false;
+		}
+		for(int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if(!Character.isLetterOrDigit(c) && c != '_' && c != '`') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * ORs a set into another
+	 * @return whether the target changed
+	 */
+	private static boolean or(long[] target, long[] source) {
+		boolean changed = false;
+		for(int i = 0; i < target.length; i++) {
+			long merged = target[i] | source[i];
+			if(merged != target[i]) {
+				target[i] = merged;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	private static void set(long[] set, int bit) {
+		set[bit >>> 6] |= 1L << bit;
+	}
+
+	private static boolean contains(long[] set, int bit) {
+		return (set[bit >>> 6] >>> bit & 1) != 0;
+	}
+
+	private static boolean isEmpty(long[] set) {
+		for(long word : set) {
+			if(word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*****************\
+	|* inner classes *|
+	\*****************/
+
+	/**
+	 * FIFO of production ids with no duplicates, a ring as big as the number of productions
+	 */
+	private static class ProductionQueue {
+
+		private final int[] ring;
+		private final boolean[] queued;
+		private int head;
+		private int size;
+
+		/**
+		 * constructor
+		 * @param production_count
+		 */
+		public ProductionQueue(int production_count) {
+			ring = new int[Math.max(1, production_count)];
+			queued = new boolean[production_count];
+		}
+
+		/**
+		 * adds a production, unless it is already waiting
+		 */
+		public void add(int production) {
+			if(!queued[production]) {
+				queued[production] = true;
+				ring[(head + size++) % ring.length] = production;
+			}
+		}
+
+		public void addAll(int[] productions) {
+			for(int production : productions) {
+				add(production);
+			}
+		}
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		/**
+		 * @return the production that has waited longest
+		 */
+		public int remove() {
+			int production = ring[head];
+			head = (head + 1) % ring.length;
+			size--;
+			queued[production] = false;
+			return production;
+		}
+	}
+}
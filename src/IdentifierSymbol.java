@@ -7,7 +7,7 @@
 public class IdentifierSymbol extends LexemeTerminal {
 
 	public IdentifierSymbol(String _lexeme) {
-		super(_lexeme);
+		super(_lexeme, TerminalKind.IDENTIFIER);
 	}
 
 }
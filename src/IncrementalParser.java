@@ -0,0 +1,728 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * keeps a source text lexed and parsed while it is being edited, for editor integration
+ *
+ * an edit re-lexes from the start of the lexeme block in front of it until the new tokens line up with the old
+ * ones again, i.e. a new token starts a block at the same place an old one did, everything after that is reused
+ *
+ * the parse keeps a copy of its stack every so many tokens, an edit re-parses from the last copy in front of the
+ * first changed token until the stack matches a copy on an old token again, everything after that is reused too
+ *
+ * text and token rows are both gap buffers with the gap at the last edit, rows after the gap keep their offset and
+ * line relative to a shift that an edit just adjusts, so the work per edit depends on the size of the edit and the
+ * distance from the last one, not on the size of the file
+ *
+ * lexing goes over a window of the text copied out as bytes, the same way a mapped file is scanned, a window
+ * starts a little past the edit and is made twice as big whenever a block or comment runs into its end
+ *
+ * the outcome is the same as compiling the text, including that nothing after the token following the end of the
+ * program matters, only lexing does not stop there so a scan error anywhere is still reported
+ * @author Mike, Ryan
+ */
+public class IncrementalParser {
+
+	/**
+	 * the parse stack is saved at least once every this many tokens
+	 */
+	private static final int SNAPSHOT_INTERVAL = 64;
+
+	/**
+	 * number of characters past the edit the first lexing window takes in
+	 */
+	private static final int RELEX_WINDOW = 4096;
+
+	/**
+	 * number of token rows room is made for at first
+	 */
+	private static final int INITIAL_ROWS = 1024;
+
+	/**
+	 * outcome, the program parsed
+	 */
+	private static final int ACCEPTED = 0;
+
+	/**
+	 * outcome, a token did not fit the grammar
+	 */
+	private static final int SYNTAX_ERROR = 1;
+
+	/**
+	 * outcome, the tokens stop at a scan error before the parse was done
+	 */
+	private static final int SCAN_ERROR = 2;
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * parses the token rows
+	 */
+	private final ParserEngine engine;
+
+	/**
+	 * interns the lexemes of every text this parser has seen
+	 */
+	private final SymbolTable symbol_table;
+
+	/**
+	 * the source being edited
+	 */
+	private final GapText text;
+
+	/**
+	 * the scanner writes each token here before it is made a row
+	 */
+	private final TokenBuffer scanned;
+
+	/**
+	 * lexes the window, reset for every one
+	 */
+	private final Scanner scanner;
+
+	/**
+	 * the window being lexed, a copy of part of the text, reused while it is big enough
+	 */
+	private ByteBuffer window;
+
+	/**
+	 * token row columns, rows [0, gap_start) are in front of the gap and rows [gap_end, capacity) after it
+	 */
+	private int[] kinds;
+	private int[] starts;
+	private int[] lengths;
+	private int[] lines;
+	private int[] symbols;
+
+	/**
+	 * whether each row was the first token in its lexeme block
+	 */
+	private boolean[] block_starts;
+
+	/**
+	 * parse stack from just before each row was parsed, mostly null
+	 */
+	private int[][] snapshots;
+
+	/**
+	 * first row position of the gap
+	 */
+	private int gap_start;
+
+	/**
+	 * first row position after the gap
+	 */
+	private int gap_end;
+
+	/**
+	 * added to the stored start of rows after the gap
+	 */
+	private int suffix_start_shift;
+
+	/**
+	 * added to the stored line of rows after the gap
+	 */
+	private int suffix_line_shift;
+
+	/**
+	 * error that stopped the token rows short, null if they end with EOF
+	 */
+	private Exception scan_error;
+
+	/**
+	 * ACCEPTED, SYNTAX_ERROR or SCAN_ERROR
+	 */
+	private int outcome;
+
+	/**
+	 * for ACCEPTED the row after the end of the program, for SYNTAX_ERROR the row that did not fit,
+	 * for SCAN_ERROR the number of rows
+	 */
+	private int outcome_row;
+
+	/**
+	 * last row whose snapshot, if it has one, came from the current parse
+	 */
+	private int snapshot_limit;
+
+	/**
+	 * number of rows the last edit lexed
+	 */
+	private int relexed_count;
+
+	/**
+	 * number of rows the last edit parsed
+	 */
+	private int reparsed_count;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor, starts out with an empty text
+	 * @param table grammar to parse with
+	 * @param start_type name of the nonterminal to start from
+	 * @param _symbol_table for the lexemes, it is only ever added to
+	 */
+	public IncrementalParser(ParseTable table, String start_type, SymbolTable _symbol_table) {
+		if(table.getNonterminalId(start_type) == -1) {
+			throw new IllegalArgumentException("the grammar has no nonterminal "+start_type);
+		}
+		engine = new ParserEngine(table, start_type);
+		symbol_table = _symbol_table;
+		text = new GapText();
+		scanned = new TokenBuffer(1, false);
+		window = ByteBuffer.allocate(RELEX_WINDOW);
+		scanner = new Scanner(window);
+		kinds = new int[INITIAL_ROWS];
+		starts = new int[INITIAL_ROWS];
+		lengths = new int[INITIAL_ROWS];
+		lines = new int[INITIAL_ROWS];
+		symbols = new int[INITIAL_ROWS];
+		block_starts = new boolean[INITIAL_ROWS];
+		snapshots = new int[INITIAL_ROWS][];
+		gap_start = 0;
+		gap_end = INITIAL_ROWS;
+		outcome = SCAN_ERROR;
+		outcome_row = 0;
+		snapshot_limit = -1;
+		edit(0, 0, "");
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * replaces the whole text
+	 * @param new_text
+	 */
+	public void setText(CharSequence new_text) {
+		edit(0, text.length(), new_text);
+	}
+
+	/**
+	 * applies an edit to the text and brings the tokens and parse up to date
+	 * @param offset where the edit starts
+	 * @param removed_length number of characters removed from offset
+	 * @param inserted text put in their place
+	 */
+	public void edit(int offset, int removed_length, CharSequence inserted) {
+		if(offset < 0 || removed_length < 0 || offset + removed_length > text.length()) {
+			throw new IndexOutOfBoundsException("edit of "+removed_length+" at "+offset+" is outside the text of length "+text.length());
+		}
+		int old_row_count = getTokenCount();
+		int old_outcome = outcome;
+		int old_outcome_row = outcome_row;
+		int old_snapshot_limit = snapshot_limit;
+
+		//tokens in the block in front of the edit can change too, e.g. typing = after : makes :=
+		int restart = findRowBefore(offset);
+		while(restart > 0 && !block_starts[physical(restart)]) {
+			restart--;
+		}
+		int scan_start = 0;
+		int scan_line = 1;
+		if(restart >= 0) {
+			scan_start = getStart(restart);
+			scan_line = getLine(restart);
+		}
+		else {
+			//the edit is in front of the first token
+			restart = 0;
+		}
+
+		text.replace(offset, removed_length, inserted);
+		moveGap(restart);
+		suffix_start_shift += inserted.length() - removed_length;
+		boolean resynced = relex(scan_start, scan_line, offset + inserted.length());
+
+		//the parse only has to look at rows up to its outcome, if those are all in front of the edit nothing changed
+		if(old_outcome != SCAN_ERROR && old_outcome_row < restart) {
+			reparsed_count = 0;
+			return;
+		}
+		int row_delta = getTokenCount() - old_row_count;
+		int first_reused = resynced ? gap_start : getTokenCount();
+		int reuse_limit = -1;
+		if(resynced && old_snapshot_limit + row_delta >= first_reused) {
+			reuse_limit = old_snapshot_limit + row_delta;
+		}
+		reparse(Math.min(restart - 1, old_snapshot_limit), first_reused, reuse_limit, old_outcome, old_outcome_row + row_delta);
+	}
+
+	/**
+	 * @return the current text, a live view that changes with the next edit
+	 */
+	public CharSequence getText() {
+		return text;
+	}
+
+	/**
+	 * @return whether the text compiles
+	 */
+	public boolean isValid() {
+		return outcome == ACCEPTED;
+	}
+
+	/**
+	 * @return the error compiling the text would report, null if there is none
+	 */
+	public Exception getError() {
+		if(outcome == SCAN_ERROR) {
+			return scan_error;
+		}
+		if(outcome == SYNTAX_ERROR) {
+			return new Symbol.UnexpectedTokenException(new Token(getTerminal(outcome_row), getLine(outcome_row)));
+		}
+		return null;
+	}
+
+	/**
+	 * @return number of token rows, the last is EOF unless there was a scan error
+	 */
+	public int getTokenCount() {
+		return gap_start + kinds.length - gap_end;
+	}
+
+	public int getKind(int row) {
+		return kinds[physical(row)];
+	}
+
+	public int getStart(int row) {
+		return row < gap_start ? starts[row] : starts[physical(row)] + suffix_start_shift;
+	}
+
+	public int getLength(int row) {
+		return lengths[physical(row)];
+	}
+
+	public int getLine(int row) {
+		return row < gap_start ? lines[row] : lines[physical(row)] + suffix_line_shift;
+	}
+
+	/**
+	 * @param row
+	 * @return the terminal the row stands for
+	 */
+	public Terminal getTerminal(int row) {
+		int symbol = symbols[physical(row)];
+		if(symbol == TokenBuffer.NO_SYMBOL) {
+			return EofSymbol.EOF;
+		}
+		return symbol_table.getSymbol(symbol);
+	}
+
+	/**
+	 * @return number of tokens the last edit had to lex
+	 */
+	public int getRelexedCount() {
+		return relexed_count;
+	}
+
+	/**
+	 * @return number of tokens the last edit had to parse
+	 */
+	public int getReparsedCount() {
+		return reparsed_count;
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * lexes new rows into the gap, dropping the old rows after it they replace
+	 * @param scan_start offset to start lexing at
+	 * @param scan_line line at scan_start
+	 * @param unchanged_start offset where the text after the edit starts
+	 * @return whether the new rows lined up with the old ones, if not every old row after the gap is gone
+	 */
+	private boolean relex(int scan_start, int scan_line, int unchanged_start) {
+		//a scan error's message has line numbers in it, so the rows after one are never reused
+		boolean can_resync = scan_error == null;
+		scan_error = null;
+		relexed_count = 0;
+		int window_start = scan_start;
+		int window_end = Math.min(text.length(), Math.max(scan_start, unchanged_start) + RELEX_WINDOW);
+		loadWindow(window_start, window_end, scan_line);
+		while(true) {
+			scanned.clear();
+			try {
+				scanner.scanToken(symbol_table, scanned);
+			} catch (IOException|Scanner.ScannerException|Token.TokenException|LexemeTerminal.LexemeTerminalException e) {
+				if(!isCut(window_start, window_end)) {
+					scan_error = e;
+					break;
+				}
+			}
+			if(isCut(window_start, window_end)) {
+				//the window ended inside a block or comment, lex it again from the end of the last row in a bigger one
+				int restart_line = scan_line;
+				if(relexed_count > 0) {
+					window_start = getStart(gap_start - 1) + getLength(gap_start - 1);
+					restart_line = getLine(gap_start - 1);
+				}
+				window_end = Math.min(text.length(), window_end + Math.max(window_end - window_start, RELEX_WINDOW));
+				loadWindow(window_start, window_end, restart_line);
+				continue;
+			}
+			int start = window_start + (int) scanned.getStart(0);
+			int line = scanned.getLine(0);
+			boolean block_start = scanner.startedBlock();
+			//old rows the new ones have got past are replaced
+			while(gap_end < kinds.length && starts[gap_end] + suffix_start_shift < start) {
+				removeSuffixRow();
+			}
+			//from a block start in the unchanged text on, the old rows are what we would lex anyway
+			if(can_resync && block_start && start >= unchanged_start && gap_end < kinds.length
+					&& block_starts[gap_end] && starts[gap_end] + suffix_start_shift == start) {
+				suffix_line_shift = line - lines[gap_end];
+				return true;
+			}
+			addRow(scanned.getKind(0), start, scanned.getLength(0), line, scanned.getSymbolIndex(0), block_start);
+			relexed_count++;
+			if(scanned.getKind(0) == TerminalKind.EOF) {
+				break;
+			}
+		}
+		while(gap_end < kinds.length) {
+			removeSuffixRow();
+		}
+		return false;
+	}
+
+	/**
+	 * copies part of the text into the window and starts the scanner on it
+	 * @param start offset of the first character
+	 * @param end offset after the last character
+	 * @param line line at start
+	 */
+	private void loadWindow(int start, int end, int line) {
+		if(window.capacity() < end - start) {
+			window = ByteBuffer.allocate(Math.max(end - start, window.capacity() * 2));
+		}
+		window.clear();
+		text.copyBytes(start, end, window);
+		window.flip();
+		scanner.reset(window, line);
+	}
+
+	/**
+	 * a block or comment the scanner reached the end of the window in may go on past it, an EOF there is not one
+	 * @param window_start
+	 * @param window_end
+	 * @return whether the scanner's last token or error could be cut short by the window
+	 */
+	private boolean isCut(int window_start, int window_end) {
+		return window_end < text.length() && scanner.getOffset() >= window_end - window_start;
+	}
+
+	/**
+	 * parses from the last snapshot in front of the edit until the outcome or a matching old snapshot
+	 * @param latest last row a snapshot can be resumed from
+	 * @param first_reused first row the last relex did not replace
+	 * @param reuse_limit last reused row whose snapshot is still from the old parse
+	 * @param old_outcome outcome of the old parse
+	 * @param old_outcome_row outcome_row of the old parse, moved to the new row numbers
+	 */
+	private void reparse(int latest, int first_reused, int reuse_limit, int old_outcome, int old_outcome_row) {
+		int row = latest;
+		while(row >= 0 && snapshots[physical(row)] == null) {
+			row--;
+		}
+		if(row < 0) {
+			row = 0;
+			engine.reset();
+		}
+		else {
+			engine.restore(snapshots[physical(row)]);
+		}
+
+		int row_count = getTokenCount();
+		int since_snapshot = SNAPSHOT_INTERVAL;
+		reparsed_count = 0;
+		while(true) {
+			if(row >= row_count) {
+				//only a scan error leaves us without an EOF row
+				outcome = SCAN_ERROR;
+				outcome_row = row_count;
+				snapshot_limit = row_count - 1;
+				return;
+			}
+			if(engine.isDone()) {
+				outcome = ACCEPTED;
+				outcome_row = row;
+				snapshot_limit = row - 1;
+				return;
+			}
+			int physical_row = physical(row);
+			if(snapshots[physical_row] != null) {
+				if(row >= first_reused && row <= reuse_limit && engine.isAt(snapshots[physical_row])) {
+					//same stack, same tokens from here on, so the rest of the old parse still holds
+					outcome = old_outcome;
+					outcome_row = old_outcome_row;
+					snapshot_limit = reuse_limit;
+					return;
+				}
+				snapshots[physical_row] = engine.snapshot();
+				since_snapshot = 0;
+			}
+			else if(since_snapshot >= SNAPSHOT_INTERVAL) {
+				snapshots[physical_row] = engine.snapshot();
+				since_snapshot = 0;
+			}
+			since_snapshot++;
+			reparsed_count++;
+
+			int result;
+			try {
+				result = engine.shift(kinds[physical_row], null, null);
+			} catch (IOException e) {
+				//there is no listener to throw it
+				throw new UncheckedIOException(e);
+			}
+			if(result != ParserEngine.SHIFTED) {
+				outcome = result == ParserEngine.REJECTED ? SYNTAX_ERROR : ACCEPTED;
+				outcome_row = row;
+				snapshot_limit = row;
+				return;
+			}
+			row++;
+		}
+	}
+
+	/**
+	 * @param offset
+	 * @return last row starting before offset, -1 if there is none
+	 */
+	private int findRowBefore(int offset) {
+		int low = 0;
+		int high = getTokenCount() - 1;
+		int found = -1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			if(getStart(middle) < offset) {
+				found = middle;
+				low = middle + 1;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @param row
+	 * @return index of the row in the column arrays
+	 */
+	private int physical(int row) {
+		return row < gap_start ? row : row + gap_end - gap_start;
+	}
+
+	/**
+	 * moves the gap so the given row is the first one after it
+	 * @param row
+	 */
+	private void moveGap(int row) {
+		while(gap_start > row) {
+			gap_start--;
+			gap_end--;
+			moveRow(gap_start, gap_end, -suffix_start_shift, -suffix_line_shift);
+		}
+		while(gap_start < row) {
+			moveRow(gap_end, gap_start, suffix_start_shift, suffix_line_shift);
+			gap_start++;
+			gap_end++;
+		}
+	}
+
+	/**
+	 * copies a row from one side of the gap to the other
+	 */
+	private void moveRow(int from, int to, int start_shift, int line_shift) {
+		kinds[to] = kinds[from];
+		starts[to] = starts[from] + start_shift;
+		lengths[to] = lengths[from];
+		lines[to] = lines[from] + line_shift;
+		symbols[to] = symbols[from];
+		block_starts[to] = block_starts[from];
+		snapshots[to] = snapshots[from];
+		snapshots[from] = null;
+	}
+
+	/**
+	 * drops the first row after the gap
+	 */
+	private void removeSuffixRow() {
+		snapshots[gap_end] = null;
+		gap_end++;
+	}
+
+	/**
+	 * adds a row in front of the gap
+	 */
+	private void addRow(int kind, int start, int length, int line, int symbol, boolean block_start) {
+		if(gap_start == gap_end) {
+			growRows();
+		}
+		kinds[gap_start] = kind;
+		starts[gap_start] = start;
+		lengths[gap_start] = length;
+		lines[gap_start] = line;
+		symbols[gap_start] = symbol;
+		block_starts[gap_start] = block_start;
+		snapshots[gap_start] = null;
+		gap_start++;
+	}
+
+	/**
+	 * doubles the row capacity, keeping the rows after the gap at the end
+	 */
+	private void growRows() {
+		int capacity = kinds.length * 2;
+		int suffix = kinds.length - gap_end;
+		kinds = growColumn(kinds, capacity, suffix);
+		starts = growColumn(starts, capacity, suffix);
+		lengths = growColumn(lengths, capacity, suffix);
+		lines = growColumn(lines, capacity, suffix);
+		symbols = growColumn(symbols, capacity, suffix);
+		boolean[] new_block_starts = new boolean[capacity];
+		System.arraycopy(block_starts, 0, new_block_starts, 0, gap_start);
+		System.arraycopy(block_starts, gap_end, new_block_starts, capacity - suffix, suffix);
+		block_starts = new_block_starts;
+		int[][] new_snapshots = new int[capacity][];
+		System.arraycopy(snapshots, 0, new_snapshots, 0, gap_start);
+		System.arraycopy(snapshots, gap_end, new_snapshots, capacity - suffix, suffix);
+		snapshots = new_snapshots;
+		gap_end = capacity - suffix;
+	}
+
+	/**
+	 * @return the column copied into a bigger array with its suffix rows at the end
+	 */
+	private int[] growColumn(int[] column, int capacity, int suffix) {
+		int[] grown = Arrays.copyOf(column, capacity);
+		System.arraycopy(column, gap_end, grown, capacity - suffix, suffix);
+		return grown;
+	}
+
+
+	/*****************\
+	|* inner classes *|
+	\*****************/
+
+	/**
+	 * text in a gap buffer, edits near the last one only move the characters in between
+	 */
+	private static class GapText implements CharSequence {
+
+		/**
+		 * characters, with the gap in [gap_start, gap_end)
+		 */
+		private char[] chars;
+
+		/**
+		 * offset of the gap
+		 */
+		private int gap_start;
+
+		/**
+		 * index in chars of the first character after the gap
+		 */
+		private int gap_end;
+
+		/**
+		 * constructor, starts out empty
+		 */
+		public GapText() {
+			chars = new char[4096];
+			gap_start = 0;
+			gap_end = chars.length;
+		}
+
+		/**
+		 * replaces a range of the text
+		 * @param offset
+		 * @param removed_length
+		 * @param inserted
+		 */
+		public void replace(int offset, int removed_length, CharSequence inserted) {
+			moveGap(offset);
+			gap_end += removed_length;
+			int inserted_length = inserted.length();
+			if(gap_end - gap_start < inserted_length) {
+				int suffix = chars.length - gap_end;
+				char[] grown = new char[Math.max(chars.length * 2, gap_start + inserted_length + suffix)];
+				System.arraycopy(chars, 0, grown, 0, gap_start);
+				System.arraycopy(chars, gap_end, grown, grown.length - suffix, suffix);
+				gap_end = grown.length - suffix;
+				chars = grown;
+			}
+			for(int i = 0; i < inserted_length; i++) {
+				chars[gap_start++] = inserted.charAt(i);
+			}
+		}
+
+		/**
+		 * moves the gap to the given offset
+		 */
+		private void moveGap(int offset) {
+			if(offset < gap_start) {
+				int count = gap_start - offset;
+				System.arraycopy(chars, offset, chars, gap_end - count, count);
+				gap_start -= count;
+				gap_end -= count;
+			}
+			else if(offset > gap_start) {
+				int count = offset - gap_start;
+				System.arraycopy(chars, gap_end, chars, gap_start, count);
+				gap_start += count;
+				gap_end += count;
+			}
+		}
+
+		/**
+		 * copies a range of the text as bytes, the language is pure ASCII, chars past 0xFF become 0xFF the same as
+		 * when a scanner is reset on text
+		 * @param begin
+		 * @param end
+		 * @param bytes where they go, from its position on
+		 */
+		public void copyBytes(int begin, int end, ByteBuffer bytes) {
+			for(int i = begin; i < end; i++) {
+				bytes.put((byte) Math.min(charAt(i), 0xFF));
+			}
+		}
+
+		@Override
+		public int length() {
+			return chars.length - (gap_end - gap_start);
+		}
+
+		@Override
+		public char charAt(int index) {
+			return chars[index < gap_start ? index : index + gap_end - gap_start];
+		}
+
+		@Override
+		public CharSequence subSequence(int begin, int end) {
+			StringBuilder sub_sequence = new StringBuilder(end - begin);
+			for(int i = begin; i < end; i++) {
+				sub_sequence.append(charAt(i));
+			}
+			return sub_sequence.toString();
+		}
+
+		@Override
+		public String toString() {
+			return subSequence(0, length()).toString();
+		}
+	}
+}
@@ -4,7 +4,7 @@
 public class IntegerLiteralSymbol extends NumberSymbol{
 
 	public IntegerLiteralSymbol(String _lexeme, Integer _value) {
-		super(_lexeme, _value);
+		super(_lexeme, _value, TerminalKind.INTEGER_LITERAL);
 	}
 
 }
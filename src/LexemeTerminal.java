@@ -1,4 +1,3 @@
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -49,14 +48,29 @@ public class LexemeTerminal extends Terminal {
 	 * the lexeme for this symbol
 	 */
 	private String lexeme;
+	
+	/**
+	 * the TerminalKind of this symbol
+	 */
+	private final int kind;
 
 	/**
-	 * constructor
+	 * constructor for keywords and punctuation, the kind is looked up from the lexeme
 	 * @param _lexeme
-	 * @param _type
 	 */
 	public LexemeTerminal(String _lexeme) {
 		lexeme = _lexeme.toUpperCase();
+		kind = TerminalKind.ofFixedLexeme(lexeme);
+	}
+	
+	/**
+	 * constructor for subclasses, which know their own kind
+	 * @param _lexeme
+	 * @param _kind the TerminalKind
+	 */
+	protected LexemeTerminal(String _lexeme, int _kind) {
+		lexeme = _lexeme.toUpperCase();
+		kind = _kind;
 	}
 	
 	/**
@@ -68,16 +82,14 @@ public class LexemeTerminal extends Terminal {
 	 * @throws UnexpectedSymbolException 
 	 */
 	public static LexemeTerminal makeLexemeTerminal(String lexeme) throws UnexpectedSymbolException {
-		Matcher identifier_matcher = IDENTIFIER_PATTERN.matcher(lexeme);
-		Matcher integer_matcher = INTEGER_PATTERN.matcher(lexeme);
-		Matcher real_matcher = REAL_PATTERN.matcher(lexeme);
-		if(identifier_matcher.matches()){
+		//matchers are only made as far as they are needed, most new lexemes are identifiers
+		if(IDENTIFIER_PATTERN.matcher(lexeme).matches()){
 			return new IdentifierSymbol(lexeme);
 		}
-		else if (real_matcher.matches()) {
+		else if (REAL_PATTERN.matcher(lexeme).matches()) {
 			return new RealLiteralSymbol(lexeme, Double.valueOf(lexeme));
 		}
-		else if (integer_matcher.matches()) {
+		else if (INTEGER_PATTERN.matcher(lexeme).matches()) {
 			//Going through double because Integer does not like scientific notation (e.g. 2342e2)
 			return new IntegerLiteralSymbol(lexeme, Double.valueOf(lexeme).intValue());
 		}
@@ -93,4 +105,12 @@ public class LexemeTerminal extends Terminal {
 		return lexeme;
 	}
 	
+	/**
+	 * @return the TerminalKind
+	 */
+	@Override
+	public int getKind() {
+		return kind;
+	}
+	
 }
@@ -6,7 +6,7 @@
 public class MultiplicationOperatorSymbol extends LexemeTerminal {
 
 	public MultiplicationOperatorSymbol(String _lexeme) {
-		super(_lexeme);
+		super(_lexeme, TerminalKind.MULTIPLICATION_OPERATOR);
 	}
 
 }
@@ -1,4 +1,6 @@
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,21 +17,50 @@ public class NonTerminal extends Symbol {
 	 */
 	static Map<String ,Map<Symbol, List<Symbol>>> parse_table = new HashMap<String, Map<Symbol, List<Symbol>>>();
 	
+	/**
+	 * dense form of parse_table that productions are actually looked up in
+	 */
+	static ParseTable dense_table;
+	
 	/**
 	 * name / type of this nonterminal
 	 */
 	private String type;
 	
+	/**
+	 * symbol id of this nonterminal in the ParseTable that made it, -1 if it was made some other way
+	 */
+	private final int id;
+	
 	/**
 	 * constructor
 	 * @param type
 	 */
 	public NonTerminal(String type) {
+		this(type, -1);
+	}
+	
+	/**
+	 * constructor for the nonterminals of a ParseTable, which already know their id
+	 * @param type
+	 * @param id symbol id in the table
+	 */
+	NonTerminal(String type, int id) {
 		this.type = type;
+		this.id = id;
+	}
+	
+	/**
+	 * @return name / type of this nonterminal
+	 */
+	public String getType() {
+		return type;
 	}
 	
 	/**
 	 * Load in the parse table;
+	 * the loaded table is read only so it can be shared by compiles running at the same time
+	 * if a precompiled binary table exists next to the text one it is used instead, see BinaryParseTable
 	 * @param file
 	 * @throws IOException 
 	 * @throws ParseTableException 
@@ -37,29 +68,57 @@ public class NonTerminal extends Symbol {
 	 * @throws Exception
 	 */
 	public static void loadParseTable(String file) throws ClassNotFoundException, ParseTableGenerator.ParseTableException, IOException {
-		parse_table = ParseTableGenerator.generateHashMap(file);
+		CompilerEvents.TableLoadEvent event = new CompilerEvents.TableLoadEvent();
+		event.begin();
+		String binary_file = BinaryParseTable.binaryPathFor(file);
+		Map<String, Map<Symbol, List<Symbol>>> loaded_table;
+		boolean binary = new File(binary_file).exists();
+		if(binary) {
+			//already read only, and the dense table is built from its pools so its rows stay undecoded
+			BinaryParseTable binary_table = BinaryParseTable.open(binary_file, file);
+			dense_table = new ParseTable(binary_table);
+			loaded_table = binary_table;
+		}
+		else {
+			loaded_table = ParseTableGenerator.generateHashMap(file);
+			for(Map.Entry<String, Map<Symbol, List<Symbol>>> entry : loaded_table.entrySet()) {
+				entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+			}
+			loaded_table = Collections.unmodifiableMap(loaded_table);
+			dense_table = new ParseTable(loaded_table);
+		}
+		parse_table = loaded_table;
+		event.end();
+		if(event.shouldCommit()) {
+			event.path = file;
+			event.binary = binary;
+			event.nonterminals = dense_table.getNonterminalCount();
+			event.productions = dense_table.getProductionCount();
+			event.commit();
+		}
 	}
 
 	/**
 	 * Returns a list of symbols representing a production
-	 * @param next_token
+	 * @param next_terminal
+	 * @param line_number
 	 * @return
 	 * @throws UnexpectedTokenException
 	 */
-	public List<Symbol> getProduction(Token next_token) throws UnexpectedTokenException {
-		if(!parse_table.containsKey(this.type)) {
-			throw new UnexpectedTokenException(next_token);
-		}
-		if(!parse_table.get(this.type).containsKey(next_token.getTerminal())) {
-			throw new UnexpectedTokenException(next_token);
+	public List<Symbol> getProduction(Terminal next_terminal, int line_number) throws UnexpectedTokenException {
+		ParseTable table = dense_table;
+		int nonterminal = id != -1 ? id : table.getNonterminalId(type);
+		int production = nonterminal == -1 ? ParseTable.NO_PRODUCTION : table.getProductionId(nonterminal, next_terminal.getKind());
+		if(production == ParseTable.NO_PRODUCTION) {
+			throw new UnexpectedTokenException(new Token(next_terminal, line_number));
 		}
-		return parse_table.get(this.type).get(next_token.getTerminal());
+		return table.getProductionList(production);
 	}
 	
 	/**
 	 * prints terminal type
 	 */
-	public String print(Token found) {
+	public String print(Terminal found) {
 		//30 column aligned for prettification
 		return "NonTerminal: \""+type+"\"";
 	}
@@ -10,10 +10,11 @@ public abstract class NumberSymbol extends LexemeTerminal {
 
 	/**
 	 * @param _lexeme
-	 * @param _type
+	 * @param _value
+	 * @param _kind the TerminalKind of the concrete literal
 	 */
-	public NumberSymbol(String _lexeme, Number _value) {
-		super(_lexeme);
+	public NumberSymbol(String _lexeme, Number _value, int _kind) {
+		super(_lexeme, _kind);
 		value = _value;
 	}
 
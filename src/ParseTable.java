@@ -0,0 +1,457 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * dense integer form of the LL(1) parse table
+ * 
+ * every grammar symbol gets an id: nonterminals are [0, getNonterminalCount()), terminals (things that
+ * match a token) come after. productions are int arrays of symbol ids in the order they get pushed on the stack.
+ * the table its self is one int array indexed by [nonterminal][TerminalKind] holding a production id,
+ * so finding a production is two array loads no matter how big the grammar gets.
+ * 
+ * immutable once built, so it can be shared by compiles running at the same time
+ */
+public class ParseTable {
+	
+	/**
+	 * cell value when there is no production for a nonterminal and token kind
+	 */
+	public static final int NO_PRODUCTION = -1;
+	
+	/**
+	 * every empty production shares this
+	 */
+	private static final int[] EMPTY_PRODUCTION = new int[0];
+	
+	/**********************\
+	|* private properties *|
+	\**********************/
+	
+	/**
+	 * number of nonterminals, they are the first symbol ids
+	 */
+	private final int nonterminal_count;
+	
+	/**
+	 * ids of the nonterminals by name
+	 */
+	private final Map<String, Integer> nonterminal_ids;
+	
+	/**
+	 * the Symbol object for every symbol id, used for printing
+	 */
+	private final Symbol[] symbols;
+	
+	/**
+	 * for terminal symbol ids, a bit per TerminalKind the symbol matches; 0 for nonterminals
+	 */
+	private final long[] terminal_masks;
+	
+	/**
+	 * [nonterminal * TerminalKind.COUNT + kind] to production id
+	 */
+	private final int[] cells;
+	
+	/**
+	 * every production as symbol ids in push order, by production id
+	 */
+	private final int[][] productions;
+	
+	/**
+	 * every production as the original symbol list, by production id
+	 */
+	private final List<List<Symbol>> production_lists;
+	
+	/**
+	 * FOLLOW set of each nonterminal, a bit per TerminalKind that can come right after it
+	 */
+	private final long[] follow_masks;
+	
+	/****************\
+	|* constructors *|
+	\****************/
+	
+	/**
+	 * builds the dense table from the object form of the table
+	 * @param table as made by ParseTableGenerator
+	 * @throws ParseTableGenerator.ParseTableException if two productions want the same cell
+	 */
+	public ParseTable(Map<String, Map<Symbol, List<Symbol>>> table) throws ParseTableGenerator.ParseTableException {
+		this(rowsOf(table));
+	}
+	
+	/**
+	 * builds the dense table straight from a binary table's pools, none of its rows get decoded into maps
+	 * @param table
+	 * @throws ParseTableGenerator.ParseTableException if two productions want the same cell
+	 */
+	public ParseTable(BinaryParseTable table) throws ParseTableGenerator.ParseTableException {
+		this(table.rows());
+	}
+	
+	/**
+	 * builds the dense table from the rows of either form of the table
+	 * @param table
+	 * @throws ParseTableGenerator.ParseTableException if two productions want the same cell
+	 */
+	private ParseTable(Rows table) throws ParseTableGenerator.ParseTableException {
+		nonterminal_ids = new HashMap<String, Integer>();
+		List<Symbol> symbol_list = new ArrayList<Symbol>();
+		//nonterminals first, so they come out as [0, nonterminal_count)
+		for(String type : table.types) {
+			nonterminal_ids.put(type, symbol_list.size());
+			symbol_list.add(new NonTerminal(type, symbol_list.size()));
+		}
+		for(Symbol[] production : table.productions) {
+			for(Symbol symbol : production) {
+				String type = symbol instanceof NonTerminal ? ((NonTerminal) symbol).getType() : null;
+				if(type != null && !nonterminal_ids.containsKey(type)) {
+					//used but never defined, it gets an empty row so using it is a syntax error
+					nonterminal_ids.put(type, symbol_list.size());
+					symbol_list.add(new NonTerminal(type, symbol_list.size()));
+				}
+			}
+		}
+		nonterminal_count = symbol_list.size();
+		
+		//then every distinct terminal used in a production
+		Map<String, Integer> terminal_ids = new HashMap<String, Integer>();
+		List<Long> mask_list = new ArrayList<Long>();
+		//production ids of the rows to dense production ids, which are handed out as they are first used
+		int[] production_ids = new int[table.productions.length];
+		Arrays.fill(production_ids, NO_PRODUCTION);
+		production_lists = new ArrayList<List<Symbol>>();
+		List<int[]> production_arrays = new ArrayList<int[]>();
+		cells = new int[nonterminal_count * TerminalKind.COUNT];
+		Arrays.fill(cells, NO_PRODUCTION);
+		
+		for(int row = 0; row < table.types.length; row++) {
+			int nonterminal = nonterminal_ids.get(table.types[row]);
+			for(int entry = 0; entry < table.lookaheads[row].length; entry++) {
+				int row_production = table.entry_productions[row][entry];
+				int production_id = production_ids[row_production];
+				if(production_id == NO_PRODUCTION) {
+					Symbol[] production = table.productions[row_production];
+					int[] production_array = new int[production.length];
+					Symbol[] production_symbols = new Symbol[production_array.length];
+					for(int i = 0; i < production_array.length; i++) {
+						Symbol symbol = production[i];
+						if(symbol instanceof NonTerminal) {
+							production_array[i] = nonterminal_ids.get(((NonTerminal) symbol).getType());
+							//swap in the table's own nonterminal, which knows its id
+							symbol = symbol_list.get(production_array[i]);
+						}
+						else {
+							String key = terminalKey(symbol);
+							Integer terminal_id = terminal_ids.get(key);
+							if(terminal_id == null) {
+								terminal_id = symbol_list.size();
+								terminal_ids.put(key, terminal_id);
+								symbol_list.add(symbol);
+								mask_list.add(kindMask(symbol));
+							}
+							production_array[i] = terminal_id;
+						}
+						production_symbols[i] = symbol;
+					}
+					production_id = production_arrays.size();
+					production_ids[row_production] = production_id;
+					production_arrays.add(production_array.length == 0 ? EMPTY_PRODUCTION : production_array);
+					production_lists.add(Collections.unmodifiableList(Arrays.asList(production_symbols)));
+				}
+				
+				long lookahead = kindMask(table.lookaheads[row][entry]);
+				for(int kind = 0; kind < TerminalKind.COUNT; kind++) {
+					if((lookahead >>> kind & 1) == 0) {
+						continue;
+					}
+					int cell = nonterminal * TerminalKind.COUNT + kind;
+					if(cells[cell] != NO_PRODUCTION && cells[cell] != production_id) {
+						throw new ParseTableGenerator.ParseTableException("LL(1) conflict for "+table.types[row]+" on "+TerminalKind.name(kind));
+					}
+					cells[cell] = production_id;
+				}
+			}
+		}
+		
+		symbols = symbol_list.toArray(new Symbol[0]);
+		terminal_masks = new long[symbols.length];
+		for(int i = nonterminal_count; i < symbols.length; i++) {
+			terminal_masks[i] = mask_list.get(i - nonterminal_count);
+		}
+		productions = production_arrays.toArray(new int[0][]);
+		follow_masks = followMasks();
+	}
+	
+	/******************\
+	|* public methods *|
+	\******************/
+	
+	/**
+	 * finds the production for a nonterminal given the kind of the next token
+	 * @param nonterminal symbol id of the nonterminal
+	 * @param kind TerminalKind of the next token
+	 * @return production id, or NO_PRODUCTION
+	 */
+	public int getProductionId(int nonterminal, int kind) {
+		return cells[nonterminal * TerminalKind.COUNT + kind];
+	}
+	
+	/**
+	 * @param production_id
+	 * @return symbol ids of the production in the order they should be pushed
+	 */
+	public int[] getProduction(int production_id) {
+		return productions[production_id];
+	}
+	
+	/**
+	 * @param production_id
+	 * @return the production as Symbols in the order they should be pushed
+	 */
+	public List<Symbol> getProductionList(int production_id) {
+		return production_lists.get(production_id);
+	}
+	
+	/**
+	 * @param type name of a nonterminal
+	 * @return its symbol id, or -1 if the grammar has no such nonterminal
+	 */
+	public int getNonterminalId(String type) {
+		Integer id = nonterminal_ids.get(type);
+		return id == null ? -1 : id;
+	}
+	
+	/**
+	 * @return number of nonterminals, which are symbol ids [0, count)
+	 */
+	public int getNonterminalCount() {
+		return nonterminal_count;
+	}
+	
+	/**
+	 * @return number of symbol ids
+	 */
+	public int getSymbolCount() {
+		return symbols.length;
+	}
+	
+	/**
+	 * @return number of production ids
+	 */
+	public int getProductionCount() {
+		return productions.length;
+	}
+	
+	/**
+	 * @param symbol symbol id
+	 * @return true if the symbol is a nonterminal
+	 */
+	public boolean isNonterminal(int symbol) {
+		return symbol < nonterminal_count;
+	}
+	
+	/**
+	 * @param symbol terminal symbol id
+	 * @param kind TerminalKind of a token
+	 * @return true if the token matches the terminal
+	 */
+	public boolean matches(int symbol, int kind) {
+		return (terminal_masks[symbol] >>> kind & 1) != 0;
+	}
+	
+	/**
+	 * @param symbol symbol id
+	 * @return the Symbol object, for printing
+	 */
+	public Symbol getSymbol(int symbol) {
+		return symbols[symbol];
+	}
+	
+	/**
+	 * @param nonterminal symbol id of a nonterminal
+	 * @return a bit per TerminalKind in the nonterminal's FOLLOW set, EOF is only in it if the grammar puts it there
+	 */
+	public long getFollowMask(int nonterminal) {
+		return follow_masks[nonterminal];
+	}
+	
+	/*******************\
+	|* private methods *|
+	\*******************/
+	
+	/**
+	 * works out the FOLLOW sets from the productions in the table, which is all that is left of the grammar
+	 * a production belongs to every nonterminal whose row uses it, FIRST and nullable are found first, then
+	 * FOLLOW, each by going over the productions until nothing changes
+	 */
+	private long[] followMasks() {
+		//every distinct (nonterminal, production) pair in the table
+		List<int[]> rules = new ArrayList<int[]>();
+		for(int nonterminal = 0; nonterminal < nonterminal_count; nonterminal++) {
+			boolean[] seen = new boolean[productions.length];
+			for(int kind = 0; kind < TerminalKind.COUNT; kind++) {
+				int production = cells[nonterminal * TerminalKind.COUNT + kind];
+				if(production != NO_PRODUCTION && !seen[production]) {
+					seen[production] = true;
+					rules.add(new int[] { nonterminal, production });
+				}
+			}
+		}
+		
+		long[] first = new long[nonterminal_count];
+		boolean[] nullable = new boolean[nonterminal_count];
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int[] rule : rules) {
+				int nonterminal = rule[0];
+				int[] production = productions[rule[1]];
+				long rule_first = 0;
+				boolean rule_nullable = true;
+				//push order is last symbol first, so the production reads from the end
+				for(int i = production.length - 1; i >= 0 && rule_nullable; i--) {
+					rule_first |= firstMask(production[i], first);
+					rule_nullable = isNonterminal(production[i]) && nullable[production[i]];
+				}
+				if((first[nonterminal] | rule_first) != first[nonterminal] || (rule_nullable && !nullable[nonterminal])) {
+					first[nonterminal] |= rule_first;
+					nullable[nonterminal] |= rule_nullable;
+					changed = true;
+				}
+			}
+		}
+		
+		long[] follow = new long[nonterminal_count];
+		changed = true;
+		while(changed) {
+			changed = false;
+			for(int[] rule : rules) {
+				int[] production = productions[rule[1]];
+				//going from the last symbol back, trailer is what can follow the symbol we are at
+				long trailer = follow[rule[0]];
+				for(int symbol : production) {
+					if(!isNonterminal(symbol)) {
+						trailer = terminal_masks[symbol];
+						continue;
+					}
+					if((follow[symbol] | trailer) != follow[symbol]) {
+						follow[symbol] |= trailer;
+						changed = true;
+					}
+					trailer = nullable[symbol] ? trailer | first[symbol] : first[symbol];
+				}
+			}
+		}
+		return follow;
+	}
+	
+	/**
+	 * @return the kinds a symbol can start with, given the FIRST sets found so far
+	 */
+	private long firstMask(int symbol, long[] first) {
+		return isNonterminal(symbol) ? first[symbol] : terminal_masks[symbol];
+	}
+	
+	/**
+	 * brings the object form of the table to rows, equal productions share an id
+	 */
+	private static Rows rowsOf(Map<String, Map<Symbol, List<Symbol>>> table) {
+		Rows rows = new Rows(table.size());
+		Map<List<Symbol>, Integer> production_ids = new HashMap<List<Symbol>, Integer>();
+		List<Symbol[]> productions = new ArrayList<Symbol[]>();
+		int row = 0;
+		for(Map.Entry<String, Map<Symbol, List<Symbol>>> type : table.entrySet()) {
+			rows.types[row] = type.getKey();
+			rows.lookaheads[row] = new Symbol[type.getValue().size()];
+			rows.entry_productions[row] = new int[type.getValue().size()];
+			int entry = 0;
+			for(Map.Entry<Symbol, List<Symbol>> cell : type.getValue().entrySet()) {
+				Integer production_id = production_ids.get(cell.getValue());
+				if(production_id == null) {
+					production_id = productions.size();
+					production_ids.put(cell.getValue(), production_id);
+					productions.add(cell.getValue().toArray(new Symbol[0]));
+				}
+				rows.lookaheads[row][entry] = cell.getKey();
+				rows.entry_productions[row][entry] = production_id;
+				entry++;
+			}
+			row++;
+		}
+		rows.productions = productions.toArray(new Symbol[0][]);
+		return rows;
+	}
+	
+	/**
+	 * identifies terminals that mean the same thing
+	 */
+	private static String terminalKey(Symbol symbol) throws ParseTableGenerator.ParseTableException {
+		if(symbol instanceof AnySymbolOfClass) {
+			return "AnySymbolOfClass:"+((AnySymbolOfClass) symbol).getBaseClass().getName();
+		}
+		if(symbol instanceof LexemeTerminal) {
+			return symbol.getClass().getName()+":"+((LexemeTerminal) symbol).getLexeme();
+		}
+		throw new ParseTableGenerator.ParseTableException("Cannot use "+symbol.print()+" as a terminal");
+	}
+	
+	/**
+	 * works out which TerminalKinds a table symbol matches
+	 * a LexemeTerminal matches the kind of its lexeme only if it is a plain LexemeTerminal, since matching requires the same class
+	 */
+	private static long kindMask(Symbol symbol) throws ParseTableGenerator.ParseTableException {
+		if(symbol instanceof AnySymbolOfClass) {
+			return TerminalKind.maskOfClass(((AnySymbolOfClass) symbol).getBaseClass());
+		}
+		if(symbol instanceof LexemeTerminal) {
+			int kind = ((LexemeTerminal) symbol).getKind();
+			return kind == TerminalKind.UNKNOWN || symbol.getClass() != LexemeTerminal.class ? 0 : 1L << kind;
+		}
+		throw new ParseTableGenerator.ParseTableException("Cannot use "+symbol.print()+" as a terminal");
+	}
+	
+	/*****************\
+	|* inner classes *|
+	\*****************/
+	
+	/**
+	 * the rows of a table as arrays, what either form of the table is brought to before the dense table is built
+	 */
+	static class Rows {
+		
+		/**
+		 * name of the nonterminal of each row
+		 */
+		final String[] types;
+		
+		/**
+		 * per row: the lookahead of each entry
+		 */
+		final Symbol[][] lookaheads;
+		
+		/**
+		 * per row: the production of each entry, an index into productions
+		 */
+		final int[][] entry_productions;
+		
+		/**
+		 * every production's symbols in the order they get pushed
+		 */
+		Symbol[][] productions;
+		
+		/**
+		 * constructor
+		 * @param row_count
+		 */
+		Rows(int row_count) {
+			types = new String[row_count];
+			lookaheads = new Symbol[row_count][];
+			entry_productions = new int[row_count][];
+		}
+	}
+}
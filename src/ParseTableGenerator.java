@@ -1,5 +1,6 @@
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.List;
@@ -8,6 +9,9 @@ import java.io.*;
 /**
  * Reads simple parse table in from file and generates 
  * a hashmap from it
+ * 
+ * run as a program to precompile the text table into the binary format BinaryParseTable loads:
+ * java ParseTableGenerator resources/parse_table.tbl resources/parse_table.bin
  */
 public class ParseTableGenerator {
 	
@@ -23,6 +27,69 @@ public class ParseTableGenerator {
 		}
 	}
 	
+	/**
+	 * interns the symbols of one parse table by their text in the file
+	 * so every occurrence of the same symbol is the same object, and each class is only looked up once
+	 */
+	static class SymbolPool {
+		
+		/**
+		 * every symbol seen so far by its text, in the order they were first seen
+		 */
+		private final LinkedHashMap<String, Symbol> symbols = new LinkedHashMap<String, Symbol>();
+		
+		/**
+		 * finds or creates the symbol for the text of a table entry
+		 * @param str e.g. LexemeTerminal("var"), NonTerminal(IdList) or AnySymbolOfClass(IdentifierSymbol)
+		 * @return the symbol, or null if the text is not any kind of symbol
+		 * @throws ClassNotFoundException if an AnySymbolOfClass names a class that does not exist
+		 */
+		@SuppressWarnings("unchecked")
+		Symbol get(String str) throws ClassNotFoundException {
+			Symbol symbol = symbols.get(str);
+			if(symbol == null) {
+				if(str.startsWith("LexemeTerminal")) {
+					symbol = createLexemeTerminal(extractArg(str));
+				}
+				else if(str.startsWith("NonTerminal")) {
+					symbol = createNonTerminal(extractArg(str));
+				}
+				else if(str.startsWith("AnySymbolOfClass")) {
+					symbol = createAnySymbolOfClass((Class<? extends Symbol>)Class.forName(extractArg(str)));
+				}
+				else {
+					return null;
+				}
+				symbols.put(str, symbol);
+			}
+			return symbol;
+		}
+		
+		/**
+		 * @return the text of every symbol, in the order they were first seen
+		 */
+		List<String> descriptors() {
+			return new LinkedList<String>(symbols.keySet());
+		}
+	}
+	
+	/**
+	 * build step, writes the binary form of a text parse table
+	 * @param args text table path, binary table path
+	 */
+	public static void main(String[] args) {
+		if(args.length != 2) {
+			System.out.println("usage: java ParseTableGenerator <table.tbl> <table.bin>");
+			return;
+		}
+		try {
+			BinaryParseTable.write(args[0], args[1]);
+		} catch (IOException|ParseTableException e) {
+			System.out.println("could not compile parse table "+args[0]);
+			System.out.println(e.toString());
+		}
+	}
+	
 	/**
 	 * Creates a hash map from the provided file
 	 * It's a map that maps...
@@ -37,6 +104,18 @@ public class ParseTableGenerator {
 	 * @throws ClassNotFoundException 
 	 */
 	public static Map<String, Map<Symbol, List<Symbol>>> generateHashMap(String file_path) throws ParseTableException, IOException {
+		return generateHashMap(file_path, new SymbolPool());
+	}
+	
+	/**
+	 * Creates a hash map from the provided file, interning symbols in the passed pool
+	 * @param file_path
+	 * @param pool
+	 * @return
+	 * @throws ParseTableException
+	 * @throws IOException 
+	 */
+	static Map<String, Map<Symbol, List<Symbol>>> generateHashMap(String file_path, SymbolPool pool) throws ParseTableException, IOException {
 
 		File file = new File(file_path);
 		BufferedReader reader = new BufferedReader(new FileReader(file));
@@ -58,10 +137,10 @@ public class ParseTableGenerator {
 				type = split_line[1];
 			}
 			else if(split_line[0].equals("Production")) { //Set the current production
-				production = loadProduction(reader, line_number, split_line[1]);
+				production = loadProduction(reader, pool, line_number, split_line[1]);
 			}
 			else if(split_line[0].equals("Symbol")) { //load an entry with the given tokens
-				loadSymbol(reader, parse_table, line_number, type, split_line[1], production);
+				loadSymbol(reader, pool, parse_table, line_number, type, split_line[1], production);
 			}
 			else {
 				reader.close();
@@ -75,6 +154,7 @@ public class ParseTableGenerator {
 	/**
 	 * loads the Symbol portion of the Parse Table file
 	 * @param reader source of the parse table file
+	 * @param pool symbols already created for this table
 	 * @param parse_table output table to load into
 	 * @param line_number what line of the parse table file are we on
 	 * @param type the production name we are on
@@ -83,7 +163,7 @@ public class ParseTableGenerator {
 	 * @throws IOException
 	 * @throws ParseTableException
 	 */
-	private static void loadSymbol(BufferedReader reader, Map<String, Map<Symbol, List<Symbol>>> parse_table, int line_number, String type, String line_symbols, List<Symbol> production)
+	private static void loadSymbol(BufferedReader reader, SymbolPool pool, Map<String, Map<Symbol, List<Symbol>>> parse_table, int line_number, String type, String line_symbols, List<Symbol> production)
 		throws IOException, ParseTableException
 	{
 		String[] symbol_strings;
@@ -98,12 +178,9 @@ public class ParseTableGenerator {
 		value_map = parse_table.get(type);
 		symbol_strings = line_symbols.split("\\|");
 		for(String str : symbol_strings) {
-			if(str.startsWith("LexemeTerminal")) {
-				working_sym = createLexemeTerminal(extractArg(str));
-			}
-			else if(str.startsWith("AnySymbolOfClass")) {
+			if(str.startsWith("LexemeTerminal") || str.startsWith("AnySymbolOfClass")) {
 				try {
-					working_sym = createAnySymbolOfClass((Class<? extends Symbol>)Class.forName(extractArg(str)));
+					working_sym = pool.get(str);
 				} catch (ClassNotFoundException e) {
 					reader.close();
 					throw new ParseTableException("Bad Class '"+extractArg(str)+"' on line "+line_number+": "+str);
@@ -121,13 +198,14 @@ public class ParseTableGenerator {
 	/**
 	 * loads the production from the parse table definition file
 	 * @param reader source of the parse table file
+	 * @param pool symbols already created for this table
 	 * @param line_number what line of the parse table file are we on
 	 * @param line_symbols the text of all of the different Symbols to break on for the current production
 	 * @return an array of symbols to replace the current non-terminal type with
 	 * @throws IOException
 	 * @throws ParseTableException
 	 */
-	private static List<Symbol> loadProduction(BufferedReader reader, int line_number, String line_symbols)
+	private static List<Symbol> loadProduction(BufferedReader reader, SymbolPool pool, int line_number, String line_symbols)
 		throws IOException, ParseTableException
 	{
 		List<Symbol> production;
@@ -136,15 +214,9 @@ public class ParseTableGenerator {
 		production = new LinkedList<Symbol>();
 		production_strings = line_symbols.split("\\|");
 		for(String str : production_strings) {
-			if(str.startsWith("LexemeTerminal")) {
-				working_sym = createLexemeTerminal(extractArg(str));
-			}
-			else if(str.startsWith("NonTerminal")) {
-				working_sym = createNonTerminal(extractArg(str));
-			}
-			else if(str.startsWith("AnySymbolOfClass")) {
+			if(str.startsWith("LexemeTerminal") || str.startsWith("NonTerminal") || str.startsWith("AnySymbolOfClass")) {
 				try {
-					working_sym = createAnySymbolOfClass((Class<? extends Symbol>)Class.forName(extractArg(str)));
+					working_sym = pool.get(str);
 				} catch (ClassNotFoundException e) {
 					reader.close();
 					throw new ParseTableException("Bad Class '"+extractArg(str)+"' on line "+line_number+": "+str);
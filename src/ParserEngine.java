@@ -0,0 +1,580 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * table driven LL(1) parser over the dense ParseTable
+ * 
+ * the parse stack is a growable int array of symbol ids and productions are pushed straight out of the
+ * table's arrays, tokens go through a TokenBuffer, so once the stack and buffers have grown to fit
+ * the input a parse step allocates nothing
+ * 
+ * besides parsing a whole scanner's worth of tokens, the engine can be fed one token at a time with shift,
+ * and its stack can be saved and restored, which is what the incremental parser builds on
+ * 
+ * given a SyntaxTree, parse also builds the tree, every node popped off the stack gets the children of the
+ * production it is expanded with, and every terminal the index of the token it matched
+ * 
+ * given Diagnostics, parse recovers from syntax errors in panic mode instead of throwing, see recover
+ * 
+ * an engine can be reused for any number of parses, but only by one thread at a time
+ * @author Mike, Ryan
+ */
+public class ParserEngine {
+	
+	/**
+	 * gets told about every symbol as it comes off the stack, e.g. to print the derivation
+	 */
+	public interface DerivationListener {
+		
+		/**
+		 * @param symbol the symbol that was just popped
+		 * @param found the terminal of the current token
+		 * @throws IOException
+		 */
+		void derive(Symbol symbol, Terminal found) throws IOException;
+	}
+	
+	/**
+	 * shift result, a terminal on the stack matched the token
+	 */
+	public static final int SHIFTED = 0;
+	
+	/**
+	 * shift result, the token does not fit the grammar here
+	 */
+	public static final int REJECTED = 1;
+	
+	/**
+	 * shift result, the stack ran out before anything matched the token
+	 */
+	public static final int EMPTIED = 2;
+	
+	/**
+	 * recovery action, the symbol on top of the stack was dropped, try the token again
+	 */
+	private static final int POPPED = 3;
+	
+	/**
+	 * recovery action, the token was dropped, move on to the next one
+	 */
+	private static final int SKIPPED = 4;
+	
+	/**
+	 * recovery action, too many errors or nothing left to sync on, stop parsing
+	 */
+	private static final int GAVE_UP = 5;
+	
+	/**
+	 * kinds that end a statement or a block, which every nonterminal syncs on besides its FOLLOW set
+	 */
+	private static final long SYNC_KINDS = 1L << TerminalKind.EOF
+			| 1L << TerminalKind.ofFixedLexeme(";")
+			| 1L << TerminalKind.ofFixedLexeme("END")
+			| 1L << TerminalKind.ofFixedLexeme(".");
+	
+	/**
+	 * stack size a new engine starts with
+	 */
+	private static final int INITIAL_STACK = 64;
+	
+	/**********************\
+	|* private properties *|
+	\**********************/
+	
+	/**
+	 * the grammar
+	 */
+	private final ParseTable table;
+	
+	/**
+	 * symbol id the parse starts from, -1 if the grammar does not have it
+	 */
+	private final int start_symbol;
+	
+	/**
+	 * parse stack of symbol ids, top is stack[stack_size-1]
+	 */
+	private int[] stack;
+	
+	/**
+	 * number of symbols on the stack
+	 */
+	private int stack_size;
+	
+	/**
+	 * tree node of each symbol on the stack, only kept up to date while building a tree
+	 */
+	private int[] nodes;
+	
+	/**
+	 * tree being built, null if there is none
+	 */
+	private SyntaxTree tree;
+	
+	/**
+	 * tokens read by the last parse, EOF included
+	 */
+	private long token_count;
+	
+	/**
+	 * deepest the stack has been since the last reset
+	 */
+	private int max_stack_size;
+	
+	/**
+	 * where parsing is counted and timed, null if it is not
+	 */
+	private CompilerStats stats;
+	
+	/**
+	 * the stats' table cell counters, null without stats
+	 */
+	private long[] cell_hits;
+	
+	/**
+	 * where syntax errors are reported, null to throw the first one
+	 */
+	private Diagnostics diagnostics;
+	
+	/**
+	 * by nonterminal, the token kinds recovery stops skipping at, FOLLOW plus SYNC_KINDS
+	 */
+	private final long[] sync_masks;
+	
+	/**
+	 * set from an error until the next token is matched, errors in between are not reported
+	 */
+	private boolean recovering;
+	
+	/**
+	 * token_count and stack depth at the last symbol recovery dropped, see recover
+	 */
+	private long error_token;
+	private int error_depth;
+	
+	/**
+	 * stack index of a rejected symbol the listener has already been told about, -1 if there is none
+	 */
+	private int reported_index;
+	
+	/****************\
+	|* constructors *|
+	\****************/
+	
+	/**
+	 * constructor
+	 * @param _table grammar to parse with
+	 * @param start_type name of the nonterminal to start from
+	 */
+	public ParserEngine(ParseTable _table, String start_type) {
+		table = _table;
+		start_symbol = table.getNonterminalId(start_type);
+		stack = new int[INITIAL_STACK];
+		nodes = new int[INITIAL_STACK];
+		stack_size = 0;
+		sync_masks = new long[table.getNonterminalCount()];
+		for(int nonterminal = 0; nonterminal < sync_masks.length; nonterminal++) {
+			sync_masks[nonterminal] = table.getFollowMask(nonterminal) | SYNC_KINDS;
+		}
+	}
+	
+	/******************\
+	|* public methods *|
+	\******************/
+	
+	/**
+	 * parses everything the scanner has left
+	 * @param scanner where the tokens come from
+	 * @param symbol_table the scanner's symbol table
+	 * @param tokens buffer the scanned tokens are added to
+	 * @param listener told about every derivation step, may be null
+	 * @throws IOException
+	 * @throws Scanner.ScannerException
+	 * @throws Token.TokenException
+	 * @throws LexemeTerminal.LexemeTerminalException
+	 * @throws Symbol.UnexpectedTokenException if the tokens do not fit the grammar
+	 */
+	public void parse(Scanner scanner, SymbolTable symbol_table, TokenBuffer tokens, DerivationListener listener) 
+			throws IOException, Scanner.ScannerException, Token.TokenException, LexemeTerminal.LexemeTerminalException, Symbol.UnexpectedTokenException 
+	{
+		scan(scanner, symbol_table, tokens);
+		int token = tokens.size() - 1;
+		token_count = 1;
+		if(start_symbol == -1) {
+			throw new Symbol.UnexpectedTokenException(tokens.getToken(token, symbol_table));
+		}
+		reset();
+		
+		while(stack_size > 0) {
+			Terminal found = listener == null ? null : tokens.getTerminal(token, symbol_table);
+			int result = stats == null ? shift(tokens.getKind(token), listener, found) : countedShift(tokens.getKind(token), listener, found);
+			if(result == REJECTED) {
+				if(diagnostics == null) {
+					throw new Symbol.UnexpectedTokenException(tokens.getToken(token, symbol_table));
+				}
+				result = recover(tokens.getKind(token), tokens.getToken(token, symbol_table));
+				if(result == GAVE_UP) {
+					break;
+				}
+			}
+			else if(result == SHIFTED) {
+				recovering = false;
+			}
+			if(result == SHIFTED || result == SKIPPED) {
+				//a matched terminal always moves us on to the next token
+				scan(scanner, symbol_table, tokens);
+				token = tokens.size() - 1;
+				token_count++;
+				if(diagnostics != null && diagnostics.isFull()) {
+					break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * parses the tokens coming out of a scanner pipeline, same as parsing straight from its scanner
+	 * @param tokens started pipeline, this becomes its reader
+	 * @param listener told about every derivation step, may be null
+	 * @throws IOException
+	 * @throws Scanner.ScannerException
+	 * @throws Token.TokenException
+	 * @throws LexemeTerminal.LexemeTerminalException
+	 * @throws Symbol.UnexpectedTokenException if the tokens do not fit the grammar
+	 */
+	public void parse(ScannerPipeline tokens, DerivationListener listener) 
+			throws IOException, Scanner.ScannerException, Token.TokenException, LexemeTerminal.LexemeTerminalException, Symbol.UnexpectedTokenException 
+	{
+		parse(tokens, null, listener);
+	}
+	
+	/**
+	 * parses the tokens coming out of a scanner pipeline, keeping them in a TokenBuffer as they are read
+	 * @param tokens started pipeline, this becomes its reader
+	 * @param token_buffer where the tokens read are added, may be null
+	 * @param listener told about every derivation step, may be null
+	 * @throws IOException
+	 * @throws Scanner.ScannerException
+	 * @throws Token.TokenException
+	 * @throws LexemeTerminal.LexemeTerminalException
+	 * @throws Symbol.UnexpectedTokenException if the tokens do not fit the grammar
+	 */
+	public void parse(ScannerPipeline tokens, TokenBuffer token_buffer, DerivationListener listener) 
+			throws IOException, Scanner.ScannerException, Token.TokenException, LexemeTerminal.LexemeTerminalException, Symbol.UnexpectedTokenException 
+	{
+		tokens.advance();
+		if(token_buffer != null) {
+			tokens.addTo(token_buffer);
+		}
+		token_count = 1;
+		if(start_symbol == -1) {
+			throw new Symbol.UnexpectedTokenException(tokens.getToken());
+		}
+		reset();
+		
+		while(stack_size > 0) {
+			int result = stats == null ? shift(tokens.getKind(), listener, tokens.getTerminal()) : countedShift(tokens.getKind(), listener, tokens.getTerminal());
+			if(result == REJECTED) {
+				if(diagnostics == null) {
+					throw new Symbol.UnexpectedTokenException(tokens.getToken());
+				}
+				result = recover(tokens.getKind(), tokens.getToken());
+				if(result == GAVE_UP) {
+					break;
+				}
+			}
+			else if(result == SHIFTED) {
+				recovering = false;
+			}
+			if(result == SHIFTED || result == SKIPPED) {
+				tokens.advance();
+				if(token_buffer != null) {
+					tokens.addTo(token_buffer);
+				}
+				token_count++;
+				if(diagnostics != null && diagnostics.isFull()) {
+					break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * empties the stack and puts the start symbol on it
+	 */
+	public void reset() {
+		stack_size = 0;
+		max_stack_size = 0;
+		recovering = false;
+		error_token = -1;
+		reported_index = -1;
+		if(start_symbol != -1) {
+			push(start_symbol);
+			if(tree != null) {
+				tree.clear();
+				nodes[0] = tree.addNode(start_symbol);
+			}
+		}
+	}
+	
+	/**
+	 * builds a syntax tree in every parse from now on, only parse builds it, shifting tokens in by hand or
+	 * restoring a snapshot does not
+	 * @param _tree emptied at the start of each parse, null to stop building one
+	 */
+	public void setTree(SyntaxTree _tree) {
+		tree = _tree;
+	}
+	
+	/**
+	 * recover from syntax errors and report them in every parse from now on, instead of throwing the first one
+	 * @param _diagnostics where to report them, null to throw again
+	 */
+	public void setDiagnostics(Diagnostics _diagnostics) {
+		diagnostics = _diagnostics;
+	}
+	
+	/**
+	 * counts and times parsing from now on, including which table cells are used
+	 * @param _stats where to, null to stop
+	 */
+	public void setStats(CompilerStats _stats) {
+		stats = _stats;
+		cell_hits = stats == null ? null : stats.getCellHits();
+	}
+	
+	/**
+	 * pops symbols, expanding nonterminals, until a terminal is popped for the token
+	 * @param kind TerminalKind of the token
+	 * @param listener told about every symbol popped, may be null
+	 * @param found terminal of the token for the listener, may be null without a listener
+	 * @return SHIFTED, REJECTED or EMPTIED, after REJECTED the symbol that did not fit is left on top of the stack
+	 * @throws IOException if the listener throws it
+	 */
+	public int shift(int kind, DerivationListener listener, Terminal found) throws IOException {
+		while(stack_size > 0) {
+			int symbol = stack[--stack_size];
+			if(listener != null) {
+				//a symbol tried again after its token was dropped is only reported the first time
+				if(stack_size != reported_index) {
+					listener.derive(table.getSymbol(symbol), found);
+				}
+				reported_index = -1;
+			}
+			if(table.isNonterminal(symbol)) {
+				int production = table.getProductionId(symbol, kind);
+				if(production == ParseTable.NO_PRODUCTION) {
+					stack_size++;
+					return REJECTED;
+				}
+				if(cell_hits != null) {
+					cell_hits[symbol * TerminalKind.COUNT + kind]++;
+				}
+				int[] symbols = table.getProduction(production);
+				int parent = nodes[stack_size];
+				push(symbols);
+				if(tree != null) {
+					//children are consecutive nodes in order, the stack has them the other way around
+					int first = tree.addChildren(parent, symbols);
+					for(int i = 0; i < symbols.length; i++) {
+						nodes[stack_size - 1 - i] = first + i;
+					}
+				}
+			}
+			else {
+				if(!table.matches(symbol, kind)) {
+					stack_size++;
+					return REJECTED;
+				}
+				if(tree != null) {
+					tree.setToken(nodes[stack_size], (int) (token_count - 1));
+				}
+				return SHIFTED;
+			}
+		}
+		return EMPTIED;
+	}
+	
+	/**
+	 * @return whether the stack is empty, i.e. the parse is over
+	 */
+	public boolean isDone() {
+		return stack_size == 0;
+	}
+	
+	/**
+	 * @return a copy of the stack, bottom first
+	 */
+	public int[] snapshot() {
+		return Arrays.copyOf(stack, stack_size);
+	}
+	
+	/**
+	 * puts the stack back the way it was
+	 * @param snapshot taken from this engine or one with the same table
+	 */
+	public void restore(int[] snapshot) {
+		stack_size = 0;
+		push(snapshot);
+	}
+	
+	/**
+	 * @param snapshot taken from this engine or one with the same table
+	 * @return whether the stack is exactly the same as it was
+	 */
+	public boolean isAt(int[] snapshot) {
+		return Arrays.equals(stack, 0, stack_size, snapshot, 0, snapshot.length);
+	}
+	
+	/**
+	 * @return the current depth of the stack
+	 */
+	public int getStackDepth() {
+		return stack_size;
+	}
+	
+	/**
+	 * @return tokens read by the last parse, EOF included
+	 */
+	public long getTokenCount() {
+		return token_count;
+	}
+	
+	/**
+	 * @return deepest the stack has been since the last reset
+	 */
+	public int getMaxStackDepth() {
+		return max_stack_size;
+	}
+	
+	/*******************\
+	|* private methods *|
+	\*******************/
+	
+	/**
+	 * panic mode recovery from a token that the symbol on top of the stack rejected
+	 * 
+	 * if the token is in the symbol's sync set, i.e. could come after it or ends a statement or block, or the
+	 * symbol is a terminal, as if it had been left out, symbols are dropped down to the nearest one the token
+	 * fits, otherwise, or if nothing on the stack fits it, the token is dropped. only the first error is
+	 * reported until a token is matched again, the rest are usually the same mistake, and an EOF right after
+	 * the scanner reported a comment not closed before it is not reported at all, it is the same mistake too
+	 * 
+	 * to always make progress, after dropping symbols for a token the stack has to get lower than it was
+	 * for symbols to be dropped for the same token again, otherwise the token is dropped, so a token can
+	 * only cost as many drops as the stack is deep, and every token is eventually matched or dropped
+	 * @param kind TerminalKind of the token
+	 * @param found the token, for the error
+	 * @return POPPED, SKIPPED or GAVE_UP
+	 */
+	private int recover(int kind, Token found) {
+		if(!recovering) {
+			recovering = true;
+			if(kind != TerminalKind.EOF || !endedInComment()) {
+				diagnostics.report(new Symbol.UnexpectedTokenException(found));
+			}
+		}
+		if(diagnostics.isFull()) {
+			return GAVE_UP;
+		}
+		int symbol = stack[stack_size - 1];
+		boolean synced = !table.isNonterminal(symbol) || (sync_masks[symbol] >>> kind & 1) != 0;
+		if(synced && (token_count != error_token || stack_size <= error_depth)) {
+			for(int depth = stack_size - 1; depth > 0; depth--) {
+				if(fits(stack[depth - 1], kind)) {
+					stack_size = depth;
+					error_token = token_count;
+					error_depth = stack_size;
+					return POPPED;
+				}
+			}
+		}
+		if(kind == TerminalKind.EOF) {
+			//nothing comes after EOF that the rest of the stack could sync on
+			return GAVE_UP;
+		}
+		reported_index = stack_size - 1;
+		return SKIPPED;
+	}
+	
+	/**
+	 * @return whether the last error reported is the scanner running into the end of the file inside a comment
+	 */
+	private boolean endedInComment() {
+		List<Exception> errors = diagnostics.getErrors();
+		return !errors.isEmpty() && errors.get(errors.size() - 1) instanceof Scanner.CommentNotClosedException;
+	}
+	
+	/**
+	 * @return whether the symbol can be the next thing parsed given a token of the kind
+	 */
+	private boolean fits(int symbol, int kind) {
+		return table.isNonterminal(symbol) ? table.getProductionId(symbol, kind) != ParseTable.NO_PRODUCTION : table.matches(symbol, kind);
+	}
+	
+	/**
+	 * scans the next token, with diagnostics lexical errors are reported and scanned past
+	 */
+	private void scan(Scanner scanner, SymbolTable symbol_table, TokenBuffer tokens) 
+			throws IOException, Scanner.ScannerException, Token.TokenException, LexemeTerminal.LexemeTerminalException 
+	{
+		while(true) {
+			try {
+				scanner.scanToken(symbol_table, tokens);
+				return;
+			} catch (Scanner.ScannerException|Token.TokenException|LexemeTerminal.LexemeTerminalException e) {
+				if(diagnostics == null) {
+					throw e;
+				}
+				diagnostics.report(e);
+				scanner.recover();
+			}
+		}
+	}
+	
+	/**
+	 * shift, counted and one in so many calls timed
+	 */
+	private int countedShift(int kind, DerivationListener listener, Terminal found) throws IOException {
+		if(!stats.count(CompilerStats.PARSE)) {
+			return shift(kind, listener, found);
+		}
+		long start = System.nanoTime();
+		int result = shift(kind, listener, found);
+		stats.addSample(CompilerStats.PARSE, System.nanoTime() - start);
+		return result;
+	}
+	
+	/**
+	 * pushes a single symbol
+	 */
+	private void push(int symbol) {
+		if(stack_size == stack.length) {
+			grow(stack_size + 1);
+		}
+		stack[stack_size++] = symbol;
+		max_stack_size = Math.max(max_stack_size, stack_size);
+	}
+	
+	/**
+	 * pushes a whole production, which is already in push order
+	 */
+	private void push(int[] production) {
+		if(stack_size + production.length > stack.length) {
+			grow(stack_size + production.length);
+		}
+		System.arraycopy(production, 0, stack, stack_size, production.length);
+		stack_size += production.length;
+		max_stack_size = Math.max(max_stack_size, stack_size);
+	}
+	
+	/**
+	 * makes the stack big enough for at least the given number of symbols
+	 */
+	private void grow(int minimum) {
+		int capacity = Math.max(stack.length * 2, minimum);
+		stack = Arrays.copyOf(stack, capacity);
+		nodes = Arrays.copyOf(nodes, capacity);
+	}
+}
@@ -4,7 +4,7 @@
 public class RealLiteralSymbol extends NumberSymbol {
 
 	public RealLiteralSymbol(String _lexeme, Double _value) {
-		super(_lexeme, _value);
+		super(_lexeme, _value, TerminalKind.REAL_LITERAL);
 	}
 
 }
@@ -0,0 +1,1034 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * lowers an analyzed syntax tree to a RegisterProgram, for RegisterMachine to run
+ *
+ * every variable and parameter of a subprogram is a register of its own, so an expression reads its variables
+ * where they are and an assignment computes its value straight into the variable's register, only what is in
+ * between goes in temporaries, which are handed out in order within a statement and all free again after it
+ *
+ * the language is the one BytecodeGenerator compiles, with the same meaning: comparisons are 1 or 0, conditions
+ * hold for anything but 0, and arrays are passed by value, the types of the expressions are the ones the analyzer
+ * worked out, and the tree is taken to have none of the mistakes it reports
+ *
+ * the tree is walked by hand, following the right recursive list tails in a loop, like BytecodeGenerator does,
+ * a generator can be reused, but only by one thread at a time
+ * @author Mike, Ryan
+ */
+public class RegisterCodeGenerator {
+
+	/**
+	 * kind of the IF keyword
+	 */
+	private static final int IF_KIND = TerminalKind.ofFixedLexeme("IF");
+
+	/**
+	 * kind of the WHILE keyword
+	 */
+	private static final int WHILE_KIND = TerminalKind.ofFixedLexeme("WHILE");
+
+	/**
+	 * kind of the NOT keyword
+	 */
+	private static final int NOT_KIND = TerminalKind.ofFixedLexeme("NOT");
+
+	/**
+	 * kind of the [ that starts an array element being assigned
+	 */
+	private static final int BRACKET_KIND = TerminalKind.ofFixedLexeme("[");
+
+	/**
+	 * comparisons in the order of their opcodes, each one's opposite is next to it
+	 */
+	private static final String[] COMPARISONS = {"=", "<>", "<", ">=", ">", "<="};
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * symbol ids of the nonterminals code is generated for
+	 */
+	private final int id_statement, compound_statement, variable_statement, term, sign;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor
+	 * @param table the grammar the trees are parsed with
+	 */
+	public RegisterCodeGenerator(ParseTable table) {
+		id_statement = table.getNonterminalId("IdStatement");
+		compound_statement = table.getNonterminalId("CompoundStatement");
+		variable_statement = table.getNonterminalId("VariableStatement");
+		term = table.getNonterminalId("Term");
+		sign = table.getNonterminalId("Sign");
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * lowers a program
+	 * @param tree a complete parse
+	 * @param tokens the parse's tokens
+	 * @param symbol_table the table the tokens were scanned with
+	 * @param analyzer what analyzed the tree, without errors
+	 * @return the program
+	 */
+	public RegisterProgram generate(SyntaxTree tree, TokenBuffer tokens, SymbolTable symbol_table, SemanticAnalyzer analyzer) {
+		return new Lowering(tree, tokens, symbol_table, analyzer).program();
+	}
+
+	/**
+	 * @param type a TYPE_ constant with a value
+	 * @return the BANK_ constant of the registers holding it
+	 */
+	static int bank(int type) {
+		if(type == ScopedSymbolTable.TYPE_REAL) {
+			return RegisterProgram.BANK_DOUBLE;
+		}
+		return ScopedSymbolTable.isArray(type) ? RegisterProgram.BANK_ARRAY : RegisterProgram.BANK_INT;
+	}
+
+	/*****************\
+	|* inner classes *|
+	\*****************/
+
+	/**
+	 * lowering one program, the state of the walk
+	 */
+	private class Lowering {
+
+		/**
+		 * the parse
+		 */
+		private final SyntaxTree tree;
+
+		/**
+		 * the parse's tokens
+		 */
+		private final TokenBuffer tokens;
+
+		/**
+		 * the table the tokens were scanned with
+		 */
+		private final SymbolTable symbol_table;
+
+		/**
+		 * what each identifier refers to
+		 */
+		private final SemanticAnalyzer analyzer;
+
+		/**
+		 * the declarations
+		 */
+		private final ScopedSymbolTable scopes;
+
+		/**
+		 * per declaration: register of a subprogram's parameter or variable, global of the program's variable,
+		 * function of a subprogram
+		 */
+		private final int[] places;
+
+		/**
+		 * the program being made
+		 */
+		private final RegisterProgram program = new RegisterProgram();
+
+		/**
+		 * the code so far
+		 */
+		private int[] code = new int[1024];
+
+		/**
+		 * ints of code
+		 */
+		private int length = 0;
+
+		/**
+		 * per label: where it was placed
+		 */
+		private int[] label_offsets = new int[64];
+
+		/**
+		 * number of labels
+		 */
+		private int label_count = 0;
+
+		/**
+		 * per jump: where its code offset goes, then its label
+		 */
+		private int[] jumps = new int[128];
+
+		/**
+		 * numbers in jumps
+		 */
+		private int jump_count = 0;
+
+		/**
+		 * code offsets where lines start, and the lines
+		 */
+		private int[] line_offsets = new int[64], line_numbers = new int[64];
+
+		/**
+		 * numbers in line_offsets
+		 */
+		private int line_count = 0;
+
+		/**
+		 * the constant pools, and where each value is in them
+		 */
+		private final List<Integer> int_constants = new ArrayList<Integer>();
+		private final List<Double> real_constants = new ArrayList<Double>();
+		private final Map<Integer, Integer> int_indexes = new HashMap<Integer, Integer>();
+		private final Map<Long, Integer> real_indexes = new HashMap<Long, Integer>();
+
+		/**
+		 * register of each literal in the function being lowered, by its symbol table entry
+		 */
+		private final Map<Integer, Integer> constant_registers = new HashMap<Integer, Integer>();
+
+		/**
+		 * per function: its entry, registers, parameter banks and name
+		 */
+		private final List<Integer> entries = new ArrayList<Integer>();
+		private final List<int[]> register_counts = new ArrayList<int[]>();
+		private final List<int[]> parameter_banks = new ArrayList<int[]>();
+		private final List<String> function_names = new ArrayList<String>();
+
+		/**
+		 * per bank: registers the function being lowered has for its parameters and variables
+		 */
+		private final int[] variables = new int[3];
+
+		/**
+		 * per bank: next free temporary
+		 */
+		private final int[] next = new int[3];
+
+		/**
+		 * per bank: registers the function being lowered needs
+		 */
+		private final int[] most = new int[3];
+
+		/**
+		 * register a value was left in by the last expression lowered
+		 */
+		private int result;
+
+		/**
+		 * register of the right side of the last compare, result is the left side's
+		 */
+		private int next_right;
+
+		/**
+		 * whether the last compare was of doubles
+		 */
+		private boolean compared_real;
+
+		/**
+		 * the subprogram being lowered, NONE for the program's body
+		 */
+		private int subprogram = ScopedSymbolTable.NONE;
+
+		/**
+		 * register that holds the result of the function being lowered
+		 */
+		private int result_register;
+
+		/**
+		 * line of the statement being lowered
+		 */
+		private int line;
+
+		Lowering(SyntaxTree _tree, TokenBuffer _tokens, SymbolTable _symbol_table, SemanticAnalyzer _analyzer) {
+			tree = _tree;
+			tokens = _tokens;
+			symbol_table = _symbol_table;
+			analyzer = _analyzer;
+			scopes = analyzer.getScopes();
+			places = new int[scopes.getDeclarationCount()];
+		}
+
+		/**
+		 * lowers the whole program
+		 * @return it
+		 */
+		RegisterProgram program() {
+			int root = tree.getRoot();
+			program.name = lexeme(tree.getToken(child(root, 1)));
+			globals();
+			//function 0 is the body, which is lowered last, the functions before it are in the order they are declared
+			entries.add(0);
+			register_counts.add(null);
+			parameter_banks.add(new int[0]);
+			function_names.add(program.name);
+			for(int list = child(root, 7); tree.getFirstChild(list) != SyntaxTree.NONE; list = child(list, 2)) {
+				subprogram(child(list, 0));
+			}
+
+			//the program's variables are the body's first registers
+			subprogram = ScopedSymbolTable.NONE;
+			System.arraycopy(program.global_counts, 0, variables, 0, 3);
+			int body = length;
+			constants(child(root, 8));
+			startFunction();
+			compoundStatement(child(root, 8));
+			emit(RegisterProgram.HALT);
+			entries.set(0, loadConstants(body));
+			register_counts.set(0, most.clone());
+			return finish();
+		}
+
+		/**
+		 * lays out the program's variables, the first registers of the body in each bank
+		 */
+		private void globals() {
+			List<Integer> declarations = new ArrayList<Integer>();
+			for(int declaration = 0; declaration < scopes.getDeclarationCount(); declaration++) {
+				if(scopes.getDepth(declaration) == 1 && scopes.getKind(declaration) == ScopedSymbolTable.KIND_VARIABLE) {
+					declarations.add(declaration);
+				}
+			}
+			int count = declarations.size();
+			program.global_names = new String[count];
+			program.global_types = new int[count];
+			program.global_slots = new int[count];
+			program.global_lengths = new int[count];
+			program.global_counts = new int[3];
+			for(int i = 0; i < count; i++) {
+				int declaration = declarations.get(i);
+				int type = scopes.getType(declaration);
+				program.global_names[i] = lexemeOf(scopes.getName(declaration));
+				program.global_types[i] = type;
+				program.global_slots[i] = program.global_counts[bank(type)]++;
+				if(ScopedSymbolTable.isArray(type)) {
+					program.global_lengths[i] = scopes.getHigh(declaration) - scopes.getLow(declaration) + 1;
+				}
+				places[declaration] = program.global_slots[i];
+			}
+		}
+
+		/**
+		 * lowers a SubprogramDeclaration to a function
+		 */
+		private void subprogram(int node) {
+			int head = child(node, 0);
+			int name_token = tree.getToken(child(head, 1));
+			subprogram = analyzer.getDeclaration(name_token);
+			boolean function = scopes.getKind(subprogram) == ScopedSymbolTable.KIND_FUNCTION;
+			int parameter_count = scopes.getParameterCount(subprogram);
+			places[subprogram] = entries.size();
+
+			//parameters first, then variables, then the result
+			Arrays.fill(variables, 0);
+			int[] banks = new int[parameter_count];
+			int last = subprogram + 1;
+			for(; last < scopes.getDeclarationCount() && scopes.getDepth(last) > 1; last++) {
+				int bank = bank(scopes.getType(last));
+				if(last <= subprogram + parameter_count) {
+					banks[last - subprogram - 1] = bank;
+				}
+				places[last] = variables[bank]++;
+			}
+			if(function) {
+				result_register = variables[bank(scopes.getType(subprogram))]++;
+			}
+			int body = length;
+			entries.add(body);
+			register_counts.add(null);
+			parameter_banks.add(banks);
+			function_names.add(lexeme(name_token));
+			constants(child(node, 2));
+			startFunction();
+
+			line = tokens.getLine(name_token);
+			lineNumber(line);
+			for(int declaration = subprogram + 1; declaration < last; declaration++) {
+				int type = scopes.getType(declaration);
+				boolean parameter = declaration <= subprogram + parameter_count;
+				if(parameter && ScopedSymbolTable.isArray(type)) {
+					//arrays are passed by value, the caller's is left alone
+					emit(RegisterProgram.COPYA, places[declaration]);
+				}
+				else if(!parameter && ScopedSymbolTable.isArray(type)) {
+					int size = scopes.getHigh(declaration) - scopes.getLow(declaration) + 1;
+					emit(type == ScopedSymbolTable.TYPE_REAL_ARRAY ? RegisterProgram.NEWDA : RegisterProgram.NEWIA, places[declaration], size);
+				}
+				else if(!parameter) {
+					zero(type, places[declaration]);
+				}
+			}
+			if(function) {
+				//a function that never sets its result returns 0
+				zero(scopes.getType(subprogram), result_register);
+			}
+
+			compoundStatement(child(node, 2));
+
+			if(!function) {
+				emit(RegisterProgram.RET);
+			}
+			else if(scopes.getType(subprogram) == ScopedSymbolTable.TYPE_REAL) {
+				emit(RegisterProgram.RETD, result_register);
+			}
+			else {
+				emit(RegisterProgram.RETI, result_register);
+			}
+			entries.set(places[subprogram], loadConstants(body));
+			register_counts.set(places[subprogram], most.clone());
+		}
+
+		/**
+		 * gives each literal in a function's body a register of its own, after the variables, so the body never
+		 * loads a constant, only the function's entry does
+		 */
+		private void constants(int body) {
+			constant_registers.clear();
+			int[] stack = new int[64];
+			int depth = 0;
+			stack[depth++] = body;
+			while(depth > 0) {
+				int node = stack[--depth];
+				if(tree.isNonterminal(node)) {
+					for(int at = tree.getFirstChild(node); at != SyntaxTree.NONE; at = tree.getNextSibling(at)) {
+						if(depth == stack.length) {
+							stack = Arrays.copyOf(stack, depth * 2);
+						}
+						stack[depth++] = at;
+					}
+					continue;
+				}
+				int token = tree.getToken(node);
+				int kind = tokens.getKind(token);
+				if(kind == TerminalKind.INTEGER_LITERAL || kind == TerminalKind.REAL_LITERAL) {
+					int symbol = tokens.getSymbolIndex(token);
+					if(!constant_registers.containsKey(symbol)) {
+						constant_registers.put(symbol, variables[kind == TerminalKind.REAL_LITERAL ? RegisterProgram.BANK_DOUBLE : RegisterProgram.BANK_INT]++);
+					}
+				}
+			}
+		}
+
+		/**
+		 * appends the loads of the constants' registers, and a jump to the body
+		 * @param body offset of the function's first instruction
+		 * @return offset the function is entered at
+		 */
+		private int loadConstants(int body) {
+			if(constant_registers.isEmpty()) {
+				return body;
+			}
+			int entry = length;
+			for(Map.Entry<Integer, Integer> constant : constant_registers.entrySet()) {
+				NumberSymbol literal = (NumberSymbol) symbol_table.getSymbol(constant.getKey());
+				if(literal instanceof RealLiteralSymbol) {
+					emit(RegisterProgram.DCONST, constant.getValue(), realConstant(literal.value.doubleValue()));
+				}
+				else {
+					emit(RegisterProgram.ICONST, constant.getValue(), intConstant(literal.value.intValue()));
+				}
+			}
+			emit(RegisterProgram.JUMP, body);
+			return entry;
+		}
+
+		/**
+		 * starts counting the registers of a function whose variables are laid out
+		 */
+		private void startFunction() {
+			System.arraycopy(variables, 0, next, 0, 3);
+			System.arraycopy(variables, 0, most, 0, 3);
+		}
+
+		/**
+		 * sets a scalar register to 0, registers are left over from earlier calls
+		 */
+		private void zero(int type, int register) {
+			if(type == ScopedSymbolTable.TYPE_REAL) {
+				emit(RegisterProgram.DCONST, register, realConstant(0));
+			}
+			else {
+				emit(RegisterProgram.ICONST, register, intConstant(0));
+			}
+		}
+
+		/**
+		 * lowers the statements of a CompoundStatement
+		 */
+		private void compoundStatement(int node) {
+			int list = tree.getFirstChild(child(node, 1));
+			if(list == SyntaxTree.NONE) {
+				return;
+			}
+			statement(child(list, 0));
+			for(int tail = child(list, 1); tree.getFirstChild(tail) != SyntaxTree.NONE; tail = child(tail, 2)) {
+				statement(child(tail, 1));
+			}
+		}
+
+		/**
+		 * lowers a Statement
+		 */
+		private void statement(int node) {
+			//nothing a statement leaves in a temporary is needed after it
+			System.arraycopy(variables, 0, next, 0, 3);
+			int first = tree.getFirstChild(node);
+			int symbol = tree.getSymbol(first);
+			if(symbol == id_statement) {
+				idStatement(first);
+			}
+			else if(symbol == compound_statement) {
+				compoundStatement(first);
+			}
+			else if(tokens.getKind(tree.getToken(first)) == IF_KIND) {
+				line = tokens.getLine(tree.getToken(first));
+				lineNumber(line);
+				int otherwise = newLabel();
+				int end = newLabel();
+				condition(child(node, 1), otherwise, false);
+				statement(child(node, 3));
+				emit(RegisterProgram.JUMP);
+				jumpTo(end);
+				placeLabel(otherwise);
+				statement(child(node, 5));
+				placeLabel(end);
+			}
+			else if(tokens.getKind(tree.getToken(first)) == WHILE_KIND) {
+				//the test is at the bottom, so each time around takes one jump
+				int while_line = tokens.getLine(tree.getToken(first));
+				int body = newLabel();
+				int test = newLabel();
+				lineNumber(while_line);
+				emit(RegisterProgram.JUMP);
+				jumpTo(test);
+				placeLabel(body);
+				statement(child(node, 3));
+				placeLabel(test);
+				System.arraycopy(variables, 0, next, 0, 3);
+				line = while_line;
+				lineNumber(line);
+				condition(child(node, 1), body, true);
+			}
+		}
+
+		/**
+		 * lowers an assignment or procedure call
+		 */
+		private void idStatement(int node) {
+			int token = tree.getToken(child(node, 0));
+			line = tokens.getLine(token);
+			lineNumber(line);
+			int declaration = analyzer.getDeclaration(token);
+			int type = scopes.getType(declaration);
+			int rest = tree.getFirstChild(child(node, 1));
+			if(tree.getSymbol(rest) != variable_statement) {
+				//ProcedureStatement, ( ExpressionList ) or nothing
+				call(declaration, tree.getFirstChild(rest) == SyntaxTree.NONE ? SyntaxTree.NONE : child(rest, 1), -1, ScopedSymbolTable.TYPE_NONE);
+				return;
+			}
+
+			if(tokens.getKind(tree.getToken(child(rest, 0))) == BRACKET_KIND) {
+				int array = loadVariable(declaration, -1);
+				int index = index(child(rest, 1));
+				int element_type = ScopedSymbolTable.elementType(type);
+				int value = value(child(rest, 4), element_type, -1);
+				emit(element_type == ScopedSymbolTable.TYPE_REAL ? RegisterProgram.DASTORE : RegisterProgram.IASTORE, array, index, scopes.getLow(declaration), value);
+			}
+			else if(declaration == subprogram) {
+				//a function's result is set by assigning to its name
+				move(type, result_register, value(child(rest, 1), type, result_register));
+			}
+			else if(isOutside(declaration)) {
+				int value = value(child(rest, 1), type, -1);
+				emit(type == ScopedSymbolTable.TYPE_REAL ? RegisterProgram.PUTD : RegisterProgram.PUTI, places[declaration], value);
+			}
+			else {
+				move(type, places[declaration], value(child(rest, 1), type, places[declaration]));
+			}
+		}
+
+		/**
+		 * lowers an expression to a value of the type it is assigned to
+		 * @param target register the value should end up in, -1 for any
+		 * @return register holding the value
+		 */
+		private int value(int node, int type, int target) {
+			expression(node, target, type);
+			return type == ScopedSymbolTable.TYPE_REAL ? toReal(analyzer.getType(node), result, target) : result;
+		}
+
+		/**
+		 * copies a register, unless it is the same one
+		 */
+		private void move(int type, int target, int source) {
+			if(target != source) {
+				emit(type == ScopedSymbolTable.TYPE_REAL ? RegisterProgram.DMOVE : RegisterProgram.IMOVE, target, source);
+			}
+		}
+
+		/**
+		 * @param target register the value should end up in if it has to be loaded, -1 for any
+		 * @return register holding a variable's value, or its array
+		 */
+		private int loadVariable(int declaration, int target) {
+			if(!isOutside(declaration)) {
+				return places[declaration];
+			}
+			int type = scopes.getType(declaration);
+			int register = destination(type, target, type);
+			int opcode = type == ScopedSymbolTable.TYPE_REAL ? RegisterProgram.GETD
+				: ScopedSymbolTable.isArray(type) ? RegisterProgram.GETA : RegisterProgram.GETI;
+			emit(opcode, register, places[declaration]);
+			return register;
+		}
+
+		/**
+		 * lowers an array index
+		 * @return register holding it
+		 */
+		private int index(int node) {
+			expression(node, -1, ScopedSymbolTable.TYPE_NONE);
+			return result;
+		}
+
+		/**
+		 * calls a function or procedure
+		 * @param arguments ExpressionList, NONE for no arguments
+		 * @param target register the result should end up in, -1 for any
+		 * @param target_type TYPE_ constant of target
+		 */
+		private void call(int declaration, int arguments, int target, int target_type) {
+			int parameter_count = scopes.getParameterCount(declaration);
+			int[] registers = new int[parameter_count];
+			if(arguments != SyntaxTree.NONE) {
+				int position = 0;
+				registers[position] = argument(declaration, position, child(arguments, 0));
+				for(int tail = child(arguments, 1); tree.getFirstChild(tail) != SyntaxTree.NONE; tail = child(tail, 2)) {
+					position++;
+					registers[position] = argument(declaration, position, child(tail, 1));
+				}
+			}
+			boolean function = scopes.getKind(declaration) == ScopedSymbolTable.KIND_FUNCTION;
+			result = function ? destination(scopes.getType(declaration), target, target_type) : 0;
+			emit(RegisterProgram.CALL, places[declaration], result);
+			for(int i = 0; i < parameter_count; i++) {
+				emit(registers[i]);
+			}
+		}
+
+		/**
+		 * lowers one argument of a call to its parameter's type
+		 * @return register holding it
+		 */
+		private int argument(int declaration, int position, int node) {
+			expression(node, -1, ScopedSymbolTable.TYPE_NONE);
+			if(scopes.getType(declaration + 1 + position) == ScopedSymbolTable.TYPE_REAL) {
+				return toReal(analyzer.getType(node), result, -1);
+			}
+			return result;
+		}
+
+		/**
+		 * lowers an Expression, result is the register
+		 * @param target register the value should end up in, -1 for any
+		 * @param target_type TYPE_ constant of target
+		 */
+		private void expression(int node, int target, int target_type) {
+			int tail = child(node, 1);
+			if(tree.getFirstChild(tail) == SyntaxTree.NONE) {
+				simpleExpression(child(node, 0), target, target_type);
+				return;
+			}
+			//a comparison is made into 0 or 1
+			int comparison = compare(node);
+			int left = result;
+			int right = next_right;
+			int register = destination(ScopedSymbolTable.TYPE_INTEGER, target, target_type);
+			emit((compared_real ? RegisterProgram.DEQ : RegisterProgram.IEQ) + comparison, register, left, right);
+			result = register;
+		}
+
+		/**
+		 * lowers both sides of a comparison, made the same type
+		 * @return which of COMPARISONS it is
+		 */
+		private int compare(int node) {
+			int tail = child(node, 1);
+			int comparison = Arrays.asList(COMPARISONS).indexOf(lexeme(tree.getToken(child(tail, 0))));
+			simpleExpression(child(node, 0), -1, ScopedSymbolTable.TYPE_NONE);
+			int left = result;
+			simpleExpression(child(tail, 1), -1, ScopedSymbolTable.TYPE_NONE);
+			int right = result;
+			int left_type = analyzer.getType(child(node, 0));
+			int right_type = analyzer.getType(child(tail, 1));
+			compared_real = left_type == ScopedSymbolTable.TYPE_REAL || right_type == ScopedSymbolTable.TYPE_REAL;
+			if(compared_real) {
+				left = toReal(left_type, left, -1);
+				right = toReal(right_type, right, -1);
+			}
+			result = left;
+			next_right = right;
+			return comparison;
+		}
+
+		/**
+		 * jumps if an Expression holds, or if it does not
+		 * @param label where to
+		 * @param when whether to jump when it holds
+		 */
+		private void condition(int node, int label, boolean when) {
+			if(tree.getFirstChild(child(node, 1)) == SyntaxTree.NONE) {
+				simpleExpression(child(node, 0), -1, ScopedSymbolTable.TYPE_NONE);
+				emit(when ? RegisterProgram.JNZ : RegisterProgram.JZ, result);
+				jumpTo(label);
+				return;
+			}
+			int comparison = compare(node);
+			int left = result;
+			int right = next_right;
+			if(when || !compared_real) {
+				emit((compared_real ? RegisterProgram.JDEQ : RegisterProgram.JIEQ) + (when ? comparison : comparison ^ 1), left, right);
+				jumpTo(label);
+			}
+			else {
+				//the opposite of a comparison of doubles is not the opposite comparison, which NaN fails too
+				int holds = newLabel();
+				emit(RegisterProgram.JDEQ + comparison, left, right);
+				jumpTo(holds);
+				emit(RegisterProgram.JUMP);
+				jumpTo(label);
+				placeLabel(holds);
+			}
+		}
+
+		/**
+		 * lowers a SimpleExpression, result is the register
+		 */
+		private void simpleExpression(int node, int target, int target_type) {
+			int at = tree.getFirstChild(node);
+			boolean negated = false;
+			if(tree.getSymbol(at) == sign) {
+				negated = lexeme(tree.getToken(tree.getFirstChild(at))).equals("-");
+				at = tree.getNextSibling(at);
+			}
+			int tail = tree.getNextSibling(at);
+			boolean last = tree.getFirstChild(tail) == SyntaxTree.NONE;
+			//only the last operation gets to use the target
+			if(last && !negated) {
+				term(at, target, target_type);
+			}
+			else {
+				term(at, -1, ScopedSymbolTable.TYPE_NONE);
+			}
+			int type = analyzer.getType(at);
+			if(negated) {
+				int register = last ? destination(type, target, target_type) : temporary(type);
+				emit(type == ScopedSymbolTable.TYPE_REAL ? RegisterProgram.DNEG : RegisterProgram.INEG, register, result);
+				result = register;
+			}
+			for(; !last; tail = child(tail, 2)) {
+				last = tree.getFirstChild(child(tail, 2)) == SyntaxTree.NONE;
+				operation(type, tail, last ? target : -1, target_type);
+				type = analyzer.getType(tail);
+			}
+		}
+
+		/**
+		 * lowers a Term, result is the register
+		 */
+		private void term(int node, int target, int target_type) {
+			int tail = child(node, 1);
+			if(tree.getFirstChild(tail) == SyntaxTree.NONE) {
+				factor(child(node, 0), target, target_type);
+				return;
+			}
+			factor(child(node, 0), -1, ScopedSymbolTable.TYPE_NONE);
+			int type = analyzer.getType(child(node, 0));
+			for(; tree.getFirstChild(tail) != SyntaxTree.NONE; tail = child(tail, 2)) {
+				boolean last = tree.getFirstChild(child(tail, 2)) == SyntaxTree.NONE;
+				operation(type, tail, last ? target : -1, target_type);
+				type = analyzer.getType(tail);
+			}
+		}
+
+		/**
+		 * applies the operator of a SimpleExpression or Term tail to the last value lowered and the tail's right side,
+		 * result is the register
+		 * @param left TYPE_ constant of the last value, result is its register
+		 */
+		private void operation(int left, int tail, int target, int target_type) {
+			int left_register = result;
+			int right = child(tail, 1);
+			if(tree.getSymbol(right) == term) {
+				term(right, -1, ScopedSymbolTable.TYPE_NONE);
+			}
+			else {
+				factor(right, -1, ScopedSymbolTable.TYPE_NONE);
+			}
+			int right_register = result;
+			String text = lexeme(tree.getToken(child(tail, 0)));
+			int type = analyzer.getType(tail);
+			if(text.equals("DIV") || text.equals("MOD")) {
+				result = destination(ScopedSymbolTable.TYPE_INTEGER, target, target_type);
+				emit(text.equals("DIV") ? RegisterProgram.IDIV : RegisterProgram.IMOD, result, left_register, right_register);
+				return;
+			}
+			boolean real = type == ScopedSymbolTable.TYPE_REAL;
+			if(real) {
+				left_register = toReal(left, left_register, -1);
+				right_register = toReal(analyzer.getType(right), right_register, -1);
+			}
+			int opcode;
+			switch(text) {
+			case "+":
+				opcode = real ? RegisterProgram.DADD : RegisterProgram.IADD;
+				break;
+			case "-":
+				opcode = real ? RegisterProgram.DSUB : RegisterProgram.ISUB;
+				break;
+			case "*":
+				opcode = real ? RegisterProgram.DMUL : RegisterProgram.IMUL;
+				break;
+			default:
+				opcode = RegisterProgram.DDIV;
+				break;
+			}
+			result = destination(type, target, target_type);
+			emit(opcode, result, left_register, right_register);
+		}
+
+		/**
+		 * lowers a Factor, result is the register
+		 */
+		private void factor(int node, int target, int target_type) {
+			int token = tree.getToken(tree.getFirstChild(node));
+			int kind = tokens.getKind(token);
+			if(kind == TerminalKind.INTEGER_LITERAL || kind == TerminalKind.REAL_LITERAL) {
+				result = constant_registers.get(tokens.getSymbolIndex(token));
+				return;
+			}
+			if(kind == NOT_KIND) {
+				factor(child(node, 1), -1, ScopedSymbolTable.TYPE_NONE);
+				int operand = result;
+				result = destination(ScopedSymbolTable.TYPE_INTEGER, target, target_type);
+				emit(RegisterProgram.INOT, result, operand);
+				return;
+			}
+			if(kind != TerminalKind.IDENTIFIER) {
+				//( Expression )
+				expression(child(node, 1), target, target_type);
+				return;
+			}
+
+			int declaration = analyzer.getDeclaration(token);
+			int rest = child(node, 1);
+			int arguments = tree.getFirstChild(rest) == SyntaxTree.NONE ? SyntaxTree.NONE : child(rest, 1);
+			if(scopes.getKind(declaration) == ScopedSymbolTable.KIND_FUNCTION) {
+				//in its own body too, where the name alone calls it again
+				call(declaration, arguments, target, target_type);
+				return;
+			}
+			if(arguments == SyntaxTree.NONE) {
+				result = loadVariable(declaration, target);
+				return;
+			}
+			int array = loadVariable(declaration, -1);
+			int index = index(child(arguments, 0));
+			int element_type = ScopedSymbolTable.elementType(scopes.getType(declaration));
+			result = destination(element_type, target, target_type);
+			emit(element_type == ScopedSymbolTable.TYPE_REAL ? RegisterProgram.DALOAD : RegisterProgram.IALOAD, result, array, index, scopes.getLow(declaration));
+		}
+
+		/**
+		 * makes an int register's value a double, doubles are left as they are
+		 * @param target register for the double, -1 for a temporary
+		 * @return register holding the double
+		 */
+		private int toReal(int type, int register, int target) {
+			if(type != ScopedSymbolTable.TYPE_INTEGER) {
+				return register;
+			}
+			int real = target == -1 ? temporary(ScopedSymbolTable.TYPE_REAL) : target;
+			emit(RegisterProgram.I2D, real, register);
+			return real;
+		}
+
+		/**
+		 * @return the target if it is of the type, a new temporary if not
+		 */
+		private int destination(int type, int target, int target_type) {
+			return target != -1 && target_type == type ? target : temporary(type);
+		}
+
+		/**
+		 * @return a register for a value of the type that nothing else in the statement uses
+		 */
+		private int temporary(int type) {
+			int bank = bank(type);
+			int register = next[bank]++;
+			most[bank] = Math.max(most[bank], next[bank]);
+			return register;
+		}
+
+		/**
+		 * @return whether a declaration is one of the program's variables used in a subprogram, which has to get
+		 * and put it, the program's body has them in its own registers
+		 */
+		private boolean isOutside(int declaration) {
+			return subprogram != ScopedSymbolTable.NONE && scopes.getDepth(declaration) == 1
+				&& scopes.getKind(declaration) == ScopedSymbolTable.KIND_VARIABLE;
+		}
+
+		/**
+		 * @return index of an int in the constant pool, added if it is not there yet
+		 */
+		private int intConstant(int value) {
+			Integer index = int_indexes.get(value);
+			if(index == null) {
+				index = int_constants.size();
+				int_constants.add(value);
+				int_indexes.put(value, index);
+			}
+			return index;
+		}
+
+		/**
+		 * @return index of a double in the constant pool, added if it is not there yet
+		 */
+		private int realConstant(double value) {
+			Long bits = Double.doubleToRawLongBits(value);
+			Integer index = real_indexes.get(bits);
+			if(index == null) {
+				index = real_constants.size();
+				real_constants.add(value);
+				real_indexes.put(bits, index);
+			}
+			return index;
+		}
+
+		/**
+		 * appends ints to the code
+		 */
+		private void emit(int... words) {
+			if(length + words.length > code.length) {
+				code = Arrays.copyOf(code, Math.max(code.length * 2, length + words.length));
+			}
+			for(int word : words) {
+				code[length++] = word;
+			}
+		}
+
+		/**
+		 * @return a label to jump to, placed later with placeLabel
+		 */
+		private int newLabel() {
+			if(label_count == label_offsets.length) {
+				label_offsets = Arrays.copyOf(label_offsets, label_count * 2);
+			}
+			label_offsets[label_count] = -1;
+			return label_count++;
+		}
+
+		/**
+		 * places a label at the next instruction
+		 */
+		private void placeLabel(int label) {
+			label_offsets[label] = length;
+		}
+
+		/**
+		 * appends the code offset of a label, which is patched in once it is placed
+		 */
+		private void jumpTo(int label) {
+			if(jump_count + 2 > jumps.length) {
+				jumps = Arrays.copyOf(jumps, jumps.length * 2);
+			}
+			jumps[jump_count++] = length;
+			jumps[jump_count++] = label;
+			emit(-1);
+		}
+
+		/**
+		 * marks the next instruction as the start of a source line
+		 */
+		private void lineNumber(int number) {
+			if(line_count > 0 && line_offsets[line_count-1] == length) {
+				line_numbers[line_count-1] = number;
+				return;
+			}
+			if(line_count > 0 && line_numbers[line_count-1] == number) {
+				return;
+			}
+			if(line_count == line_offsets.length) {
+				line_offsets = Arrays.copyOf(line_offsets, line_count * 2);
+				line_numbers = Arrays.copyOf(line_numbers, line_count * 2);
+			}
+			line_offsets[line_count] = length;
+			line_numbers[line_count] = number;
+			line_count++;
+		}
+
+		/**
+		 * patches the jumps and fills in the program
+		 */
+		private RegisterProgram finish() {
+			for(int i = 0; i < jump_count; i += 2) {
+				code[jumps[i]] = label_offsets[jumps[i+1]];
+			}
+			program.code = Arrays.copyOf(code, length);
+			program.int_constants = new int[int_constants.size()];
+			for(int i = 0; i < program.int_constants.length; i++) {
+				program.int_constants[i] = int_constants.get(i);
+			}
+			program.real_constants = new double[real_constants.size()];
+			for(int i = 0; i < program.real_constants.length; i++) {
+				program.real_constants[i] = real_constants.get(i);
+			}
+			int function_count = entries.size();
+			program.entries = new int[function_count];
+			for(int i = 0; i < function_count; i++) {
+				program.entries[i] = entries.get(i);
+			}
+			program.register_counts = register_counts.toArray(new int[function_count][]);
+			program.parameter_banks = parameter_banks.toArray(new int[function_count][]);
+			program.function_names = function_names.toArray(new String[function_count]);
+			program.line_offsets = Arrays.copyOf(line_offsets, line_count);
+			program.line_numbers = Arrays.copyOf(line_numbers, line_count);
+			return program;
+		}
+
+		/**
+		 * @return a node's child by position
+		 */
+		private int child(int node, int position) {
+			int at = tree.getFirstChild(node);
+			for(int i = 0; i < position; i++) {
+				at = tree.getNextSibling(at);
+			}
+			return at;
+		}
+
+		/**
+		 * @return the text of a token
+		 */
+		private String lexeme(int token) {
+			return lexemeOf(tokens.getSymbolIndex(token));
+		}
+
+		/**
+		 * @return the text of a symbol table entry
+		 */
+		private String lexemeOf(int symbol) {
+			return symbol_table.getSymbol(symbol).getLexeme();
+		}
+	}
+}
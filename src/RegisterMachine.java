@@ -0,0 +1,491 @@
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * runs a RegisterProgram
+ *
+ * the registers of every call live in one int[], one double[] and one Object[], each call's from a base past its
+ * caller's, so a call only moves three bases and copies its arguments, the files grow when a call would not fit,
+ * the globals are the registers of the program's body, at the bottom, and none of it boxes a number
+ *
+ * a run counts the instructions it executes and times itself, a machine can be run again, but only by one thread
+ * at a time
+ * @author Mike, Ryan
+ */
+public class RegisterMachine {
+
+	/**
+	 * registers in each bank to start with, they double whenever a call does not fit
+	 */
+	private static final int INITIAL_REGISTERS = 256;
+
+	/**
+	 * ints each call keeps on the call stack: where to return to, the function, the caller's three bases, and
+	 * the register the result goes in
+	 */
+	private static final int FRAME_SIZE = 6;
+
+	/**
+	 * most calls in progress at once, a program recursing deeper than this is stopped
+	 */
+	private static final int MAX_CALL_DEPTH = 1 << 20;
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * what is run
+	 */
+	private final RegisterProgram program;
+
+	/**
+	 * register files of the last run, the globals are at the bottom
+	 */
+	private int[] int_registers;
+	private double[] double_registers;
+	private Object[] array_registers;
+
+	/**
+	 * instructions the last run executed
+	 */
+	private long instruction_count;
+
+	/**
+	 * how long the last run took
+	 */
+	private long run_nanos;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor
+	 * @param _program what to run
+	 */
+	public RegisterMachine(RegisterProgram _program) {
+		program = _program;
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * runs the program, then prints its variables and what the run cost
+	 * @param out where to print them, or what stopped the program
+	 * @return whether it ran to the end
+	 */
+	public boolean run(PrintWriter out) {
+		int[] counts = program.register_counts[0];
+		int_registers = new int[Math.max(INITIAL_REGISTERS, counts[RegisterProgram.BANK_INT])];
+		double_registers = new double[Math.max(INITIAL_REGISTERS, counts[RegisterProgram.BANK_DOUBLE])];
+		array_registers = new Object[Math.max(INITIAL_REGISTERS, counts[RegisterProgram.BANK_ARRAY])];
+		for(int i = 0; i < program.global_names.length; i++) {
+			if(program.global_types[i] == ScopedSymbolTable.TYPE_INTEGER_ARRAY) {
+				array_registers[program.global_slots[i]] = new int[program.global_lengths[i]];
+			}
+			else if(program.global_types[i] == ScopedSymbolTable.TYPE_REAL_ARRAY) {
+				array_registers[program.global_slots[i]] = new double[program.global_lengths[i]];
+			}
+		}
+
+		long start = System.nanoTime();
+		try {
+			execute();
+		} catch (RuntimeException e) {
+			out.println("error running "+program.getName());
+			out.println(e.getMessage());
+			return false;
+		} finally {
+			run_nanos = System.nanoTime() - start;
+		}
+		printGlobals(out);
+		out.println("ran "+instruction_count+" instructions in "+String.format("%.3f", run_nanos / 1e6)+" ms");
+		return true;
+	}
+
+	/**
+	 * @return instructions the last run executed
+	 */
+	public long getInstructionCount() {
+		return instruction_count;
+	}
+
+	/**
+	 * @return how long the last run took, in nanoseconds
+	 */
+	public long getRunNanos() {
+		return run_nanos;
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * the interpreter loop, everything it touches is in locals, and pc is only moved once an instruction is done,
+	 * so it is still on the one that went wrong
+	 * @throws RuntimeException with the message to print, if the program went wrong
+	 */
+	private void execute() {
+		final int[] code = program.code;
+		final int[] int_constants = program.int_constants;
+		final double[] real_constants = program.real_constants;
+		int[] counts = program.register_counts[0];
+		int[] ir = int_registers;
+		double[] dr = double_registers;
+		Object[] ar = array_registers;
+		int[] frames = new int[FRAME_SIZE * 64];
+		int depth = 0;
+		int function = 0;
+		int ib = 0, db = 0, ab = 0;
+		int pc = program.entries[0];
+		long count = 0;
+		try {
+			while(true) {
+				count++;
+				switch(code[pc]) {
+				case RegisterProgram.ICONST:
+					ir[ib + code[pc+1]] = int_constants[code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.DCONST:
+					dr[db + code[pc+1]] = real_constants[code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.IMOVE:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.DMOVE:
+					dr[db + code[pc+1]] = dr[db + code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.I2D:
+					dr[db + code[pc+1]] = ir[ib + code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.IADD:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]] + ir[ib + code[pc+3]];
+					pc += 4;
+					break;
+				case RegisterProgram.ISUB:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]] - ir[ib + code[pc+3]];
+					pc += 4;
+					break;
+				case RegisterProgram.IMUL:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]] * ir[ib + code[pc+3]];
+					pc += 4;
+					break;
+				case RegisterProgram.IDIV:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]] / ir[ib + code[pc+3]];
+					pc += 4;
+					break;
+				case RegisterProgram.IMOD:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]] % ir[ib + code[pc+3]];
+					pc += 4;
+					break;
+				case RegisterProgram.DADD:
+					dr[db + code[pc+1]] = dr[db + code[pc+2]] + dr[db + code[pc+3]];
+					pc += 4;
+					break;
+				case RegisterProgram.DSUB:
+					dr[db + code[pc+1]] = dr[db + code[pc+2]] - dr[db + code[pc+3]];
+					pc += 4;
+					break;
+				case RegisterProgram.DMUL:
+					dr[db + code[pc+1]] = dr[db + code[pc+2]] * dr[db + code[pc+3]];
+					pc += 4;
+					break;
+				case RegisterProgram.DDIV:
+					dr[db + code[pc+1]] = dr[db + code[pc+2]] / dr[db + code[pc+3]];
+					pc += 4;
+					break;
+				case RegisterProgram.INEG:
+					ir[ib + code[pc+1]] = -ir[ib + code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.DNEG:
+					dr[db + code[pc+1]] = -dr[db + code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.INOT:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]] == 0 ? 1 : 0;
+					pc += 3;
+					break;
+				case RegisterProgram.IEQ:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]] == ir[ib + code[pc+3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case RegisterProgram.IEQ + 1:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]] != ir[ib + code[pc+3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case RegisterProgram.IEQ + 2:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]] < ir[ib + code[pc+3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case RegisterProgram.IEQ + 3:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]] >= ir[ib + code[pc+3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case RegisterProgram.IEQ + 4:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]] > ir[ib + code[pc+3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case RegisterProgram.ILE:
+					ir[ib + code[pc+1]] = ir[ib + code[pc+2]] <= ir[ib + code[pc+3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case RegisterProgram.DEQ:
+					ir[ib + code[pc+1]] = dr[db + code[pc+2]] == dr[db + code[pc+3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case RegisterProgram.DEQ + 1:
+					ir[ib + code[pc+1]] = dr[db + code[pc+2]] != dr[db + code[pc+3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case RegisterProgram.DEQ + 2:
+					ir[ib + code[pc+1]] = dr[db + code[pc+2]] < dr[db + code[pc+3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case RegisterProgram.DEQ + 3:
+					ir[ib + code[pc+1]] = dr[db + code[pc+2]] >= dr[db + code[pc+3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case RegisterProgram.DEQ + 4:
+					ir[ib + code[pc+1]] = dr[db + code[pc+2]] > dr[db + code[pc+3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case RegisterProgram.DLE:
+					ir[ib + code[pc+1]] = dr[db + code[pc+2]] <= dr[db + code[pc+3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case RegisterProgram.JUMP:
+					pc = code[pc+1];
+					break;
+				case RegisterProgram.JZ:
+					pc = ir[ib + code[pc+1]] == 0 ? code[pc+2] : pc + 3;
+					break;
+				case RegisterProgram.JNZ:
+					pc = ir[ib + code[pc+1]] != 0 ? code[pc+2] : pc + 3;
+					break;
+				case RegisterProgram.JIEQ:
+					pc = ir[ib + code[pc+1]] == ir[ib + code[pc+2]] ? code[pc+3] : pc + 4;
+					break;
+				case RegisterProgram.JIEQ + 1:
+					pc = ir[ib + code[pc+1]] != ir[ib + code[pc+2]] ? code[pc+3] : pc + 4;
+					break;
+				case RegisterProgram.JIEQ + 2:
+					pc = ir[ib + code[pc+1]] < ir[ib + code[pc+2]] ? code[pc+3] : pc + 4;
+					break;
+				case RegisterProgram.JIEQ + 3:
+					pc = ir[ib + code[pc+1]] >= ir[ib + code[pc+2]] ? code[pc+3] : pc + 4;
+					break;
+				case RegisterProgram.JIEQ + 4:
+					pc = ir[ib + code[pc+1]] > ir[ib + code[pc+2]] ? code[pc+3] : pc + 4;
+					break;
+				case RegisterProgram.JILE:
+					pc = ir[ib + code[pc+1]] <= ir[ib + code[pc+2]] ? code[pc+3] : pc + 4;
+					break;
+				case RegisterProgram.JDEQ:
+					pc = dr[db + code[pc+1]] == dr[db + code[pc+2]] ? code[pc+3] : pc + 4;
+					break;
+				case RegisterProgram.JDEQ + 1:
+					pc = dr[db + code[pc+1]] != dr[db + code[pc+2]] ? code[pc+3] : pc + 4;
+					break;
+				case RegisterProgram.JDEQ + 2:
+					pc = dr[db + code[pc+1]] < dr[db + code[pc+2]] ? code[pc+3] : pc + 4;
+					break;
+				case RegisterProgram.JDEQ + 3:
+					pc = dr[db + code[pc+1]] >= dr[db + code[pc+2]] ? code[pc+3] : pc + 4;
+					break;
+				case RegisterProgram.JDEQ + 4:
+					pc = dr[db + code[pc+1]] > dr[db + code[pc+2]] ? code[pc+3] : pc + 4;
+					break;
+				case RegisterProgram.JDLE:
+					pc = dr[db + code[pc+1]] <= dr[db + code[pc+2]] ? code[pc+3] : pc + 4;
+					break;
+				case RegisterProgram.GETI:
+					ir[ib + code[pc+1]] = ir[code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.PUTI:
+					ir[code[pc+1]] = ir[ib + code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.GETD:
+					dr[db + code[pc+1]] = dr[code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.PUTD:
+					dr[code[pc+1]] = dr[db + code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.GETA:
+					ar[ab + code[pc+1]] = ar[code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.IALOAD:
+					ir[ib + code[pc+1]] = ((int[]) ar[ab + code[pc+2]])[ir[ib + code[pc+3]] - code[pc+4]];
+					pc += 5;
+					break;
+				case RegisterProgram.IASTORE:
+					((int[]) ar[ab + code[pc+1]])[ir[ib + code[pc+2]] - code[pc+3]] = ir[ib + code[pc+4]];
+					pc += 5;
+					break;
+				case RegisterProgram.DALOAD:
+					dr[db + code[pc+1]] = ((double[]) ar[ab + code[pc+2]])[ir[ib + code[pc+3]] - code[pc+4]];
+					pc += 5;
+					break;
+				case RegisterProgram.DASTORE:
+					((double[]) ar[ab + code[pc+1]])[ir[ib + code[pc+2]] - code[pc+3]] = dr[db + code[pc+4]];
+					pc += 5;
+					break;
+				case RegisterProgram.NEWIA:
+					ar[ab + code[pc+1]] = new int[code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.NEWDA:
+					ar[ab + code[pc+1]] = new double[code[pc+2]];
+					pc += 3;
+					break;
+				case RegisterProgram.COPYA: {
+					Object array = ar[ab + code[pc+1]];
+					ar[ab + code[pc+1]] = array instanceof int[] ? ((int[]) array).clone() : ((double[]) array).clone();
+					pc += 2;
+					break;
+				}
+				case RegisterProgram.CALL: {
+					int callee = code[pc+1];
+					int[] banks = program.parameter_banks[callee];
+					int[] callee_counts = program.register_counts[callee];
+					//the callee's registers start past the caller's
+					int new_ib = ib + counts[RegisterProgram.BANK_INT];
+					int new_db = db + counts[RegisterProgram.BANK_DOUBLE];
+					int new_ab = ab + counts[RegisterProgram.BANK_ARRAY];
+					if(new_ib + callee_counts[RegisterProgram.BANK_INT] > ir.length) {
+						ir = Arrays.copyOf(ir, Math.max(ir.length * 2, new_ib + callee_counts[RegisterProgram.BANK_INT]));
+					}
+					if(new_db + callee_counts[RegisterProgram.BANK_DOUBLE] > dr.length) {
+						dr = Arrays.copyOf(dr, Math.max(dr.length * 2, new_db + callee_counts[RegisterProgram.BANK_DOUBLE]));
+					}
+					if(new_ab + callee_counts[RegisterProgram.BANK_ARRAY] > ar.length) {
+						ar = Arrays.copyOf(ar, Math.max(ar.length * 2, new_ab + callee_counts[RegisterProgram.BANK_ARRAY]));
+					}
+					int ints = 0, doubles = 0, arrays = 0;
+					for(int i = 0; i < banks.length; i++) {
+						int argument = code[pc+3+i];
+						switch(banks[i]) {
+						case RegisterProgram.BANK_INT:
+							ir[new_ib + ints++] = ir[ib + argument];
+							break;
+						case RegisterProgram.BANK_DOUBLE:
+							dr[new_db + doubles++] = dr[db + argument];
+							break;
+						default:
+							ar[new_ab + arrays++] = ar[ab + argument];
+							break;
+						}
+					}
+					if(depth == MAX_CALL_DEPTH) {
+						throw new IllegalStateException("Too many calls in progress, on line: #"+program.lineAt(pc));
+					}
+					if((depth + 1) * FRAME_SIZE > frames.length) {
+						frames = Arrays.copyOf(frames, frames.length * 2);
+					}
+					int frame = depth++ * FRAME_SIZE;
+					frames[frame] = pc + 3 + banks.length;
+					frames[frame+1] = function;
+					frames[frame+2] = ib;
+					frames[frame+3] = db;
+					frames[frame+4] = ab;
+					frames[frame+5] = code[pc+2];
+					function = callee;
+					counts = callee_counts;
+					ib = new_ib;
+					db = new_db;
+					ab = new_ab;
+					pc = program.entries[callee];
+					break;
+				}
+				case RegisterProgram.RETI: {
+					int value = ir[ib + code[pc+1]];
+					int frame = --depth * FRAME_SIZE;
+					pc = frames[frame];
+					function = frames[frame+1];
+					counts = program.register_counts[function];
+					ib = frames[frame+2];
+					db = frames[frame+3];
+					ab = frames[frame+4];
+					ir[ib + frames[frame+5]] = value;
+					break;
+				}
+				case RegisterProgram.RETD: {
+					double value = dr[db + code[pc+1]];
+					int frame = --depth * FRAME_SIZE;
+					pc = frames[frame];
+					function = frames[frame+1];
+					counts = program.register_counts[function];
+					ib = frames[frame+2];
+					db = frames[frame+3];
+					ab = frames[frame+4];
+					dr[db + frames[frame+5]] = value;
+					break;
+				}
+				case RegisterProgram.RET: {
+					int frame = --depth * FRAME_SIZE;
+					pc = frames[frame];
+					function = frames[frame+1];
+					counts = program.register_counts[function];
+					ib = frames[frame+2];
+					db = frames[frame+3];
+					ab = frames[frame+4];
+					break;
+				}
+				case RegisterProgram.HALT:
+					return;
+				default:
+					throw new IllegalStateException("Unknown opcode "+code[pc]+" at "+pc+" in "+program.function_names[function]);
+				}
+			}
+		} catch (ArithmeticException e) {
+			throw new IllegalStateException("Division by zero on line: #"+program.lineAt(pc), e);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalStateException("Array index out of bounds on line: #"+program.lineAt(pc), e);
+		} finally {
+			instruction_count = count;
+			//a call may have grown them, and the globals are printed from them
+			int_registers = ir;
+			double_registers = dr;
+			array_registers = ar;
+		}
+	}
+
+	/**
+	 * prints each of the program's variables, like the program's class does
+	 */
+	private void printGlobals(PrintWriter out) {
+		for(int i = 0; i < program.global_names.length; i++) {
+			int slot = program.global_slots[i];
+			String value;
+			switch(program.global_types[i]) {
+			case ScopedSymbolTable.TYPE_INTEGER:
+				value = String.valueOf(int_registers[slot]);
+				break;
+			case ScopedSymbolTable.TYPE_REAL:
+				value = String.valueOf(double_registers[slot]);
+				break;
+			case ScopedSymbolTable.TYPE_INTEGER_ARRAY:
+				value = Arrays.toString((int[]) array_registers[slot]);
+				break;
+			default:
+				value = Arrays.toString((double[]) array_registers[slot]);
+				break;
+			}
+			out.println(program.global_names[i]+" = "+value);
+		}
+	}
+}
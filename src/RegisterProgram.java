@@ -0,0 +1,224 @@
+import java.util.Arrays;
+
+/**
+ * a program lowered to the instruction set of RegisterMachine, made by RegisterCodeGenerator
+ *
+ * every instruction is an opcode followed by its operands, all of them ints in one code array, so running the
+ * program never touches an object it did not make itself, operands are register numbers, constant pool
+ * indexes, global indexes, code offsets or plain numbers, as listed with each opcode below
+ *
+ * registers are per call, in three banks: ints, doubles, and arrays, which are int[] or double[], a function's
+ * parameters are the first registers of their banks, its variables come next, then the temporaries its
+ * expressions need, the program's own variables are the first registers of its body, the globals, which
+ * subprograms get and put by their index
+ *
+ * function 0 is the program's body, it ends in HALT, every other function is a FUNCTION or PROCEDURE
+ * @author Mike, Ryan
+ */
+public class RegisterProgram {
+
+	/*
+	 * operands: i int register, d double register, a array register, k constant, g global, L code offset,
+	 * n plain number, f function, and lo the low bound of an array
+	 */
+
+	/** i k: i = int constant k */
+	public static final int ICONST = 0;
+	/** d k: d = double constant k */
+	public static final int DCONST = 1;
+	/** i i2: i = i2 */
+	public static final int IMOVE = 2;
+	/** d d2: d = d2 */
+	public static final int DMOVE = 3;
+	/** d i: d = i */
+	public static final int I2D = 4;
+	/** i i2 i3: i = i2 + i3, and so on through IMOD */
+	public static final int IADD = 5;
+	public static final int ISUB = 6;
+	public static final int IMUL = 7;
+	public static final int IDIV = 8;
+	public static final int IMOD = 9;
+	/** d d2 d3: d = d2 + d3, and so on through DDIV */
+	public static final int DADD = 10;
+	public static final int DSUB = 11;
+	public static final int DMUL = 12;
+	public static final int DDIV = 13;
+	/** i i2: i = -i2 */
+	public static final int INEG = 14;
+	/** d d2: d = -d2 */
+	public static final int DNEG = 15;
+	/** i i2: i = 1 if i2 is 0, 0 if not */
+	public static final int INOT = 16;
+	/** i i2 i3: i = 1 if i2 = i3, 0 if not, then <>, <, >=, >, <= in that order through ILE */
+	public static final int IEQ = 17;
+	public static final int ILE = IEQ + 5;
+	/** i d d2: i = 1 if d = d2, 0 if not, then like IEQ through DLE */
+	public static final int DEQ = 23;
+	public static final int DLE = DEQ + 5;
+	/** L: jumps */
+	public static final int JUMP = 29;
+	/** i L: jumps if i is 0 */
+	public static final int JZ = 30;
+	/** i L: jumps if i is not 0 */
+	public static final int JNZ = 31;
+	/** i i2 L: jumps if i = i2, then like IEQ through JILE */
+	public static final int JIEQ = 32;
+	public static final int JILE = JIEQ + 5;
+	/** d d2 L: jumps if d = d2, then like IEQ through JDLE */
+	public static final int JDEQ = 38;
+	public static final int JDLE = JDEQ + 5;
+	/** i g: i = int global g */
+	public static final int GETI = 44;
+	/** g i: int global g = i */
+	public static final int PUTI = 45;
+	/** d g: d = double global g */
+	public static final int GETD = 46;
+	/** g d: double global g = d */
+	public static final int PUTD = 47;
+	/** a g: a = array global g */
+	public static final int GETA = 48;
+	/** i a i2 lo: i = a[i2], the array's elements are from lo */
+	public static final int IALOAD = 49;
+	/** a i lo i2: a[i] = i2 */
+	public static final int IASTORE = 50;
+	/** d a i lo: d = a[i] */
+	public static final int DALOAD = 51;
+	/** a i lo d: a[i] = d */
+	public static final int DASTORE = 52;
+	/** a n: a = new int[n] */
+	public static final int NEWIA = 53;
+	/** a n: a = new double[n] */
+	public static final int NEWDA = 54;
+	/** a: a = a copy of a */
+	public static final int COPYA = 55;
+	/** f r r1 .. rn: calls f with the registers r1 .. rn as its arguments, the result goes in r, of the bank of what f returns */
+	public static final int CALL = 56;
+	/** i: returns i */
+	public static final int RETI = 57;
+	/** d: returns d */
+	public static final int RETD = 58;
+	/** returns nothing */
+	public static final int RET = 59;
+	/** stops the program */
+	public static final int HALT = 60;
+
+	/**
+	 * register banks
+	 */
+	public static final int BANK_INT = 0;
+	public static final int BANK_DOUBLE = 1;
+	public static final int BANK_ARRAY = 2;
+
+	/**********************\
+	|* package properties *|
+	\**********************/
+
+	/*
+	 * filled in by RegisterCodeGenerator, read by RegisterMachine
+	 */
+
+	/**
+	 * every function's instructions
+	 */
+	int[] code;
+
+	/**
+	 * values of the integer literals, and of the 0 variables start at
+	 */
+	int[] int_constants;
+
+	/**
+	 * values of the real literals, and of 0
+	 */
+	double[] real_constants;
+
+	/**
+	 * per function: offset of its first instruction
+	 */
+	int[] entries;
+
+	/**
+	 * per function: registers a call takes in each bank, indexed by BANK_
+	 */
+	int[][] register_counts;
+
+	/**
+	 * per function: bank of each parameter
+	 */
+	int[][] parameter_banks;
+
+	/**
+	 * per function: name, for errors
+	 */
+	String[] function_names;
+
+	/**
+	 * per global: name, for printing
+	 */
+	String[] global_names;
+
+	/**
+	 * per global: ScopedSymbolTable TYPE_ constant
+	 */
+	int[] global_types;
+
+	/**
+	 * per global: index in its bank
+	 */
+	int[] global_slots;
+
+	/**
+	 * per global: elements of an array, 0 for the rest
+	 */
+	int[] global_lengths;
+
+	/**
+	 * globals in each bank, indexed by BANK_
+	 */
+	int[] global_counts;
+
+	/**
+	 * code offsets where source lines start, ascending
+	 */
+	int[] line_offsets;
+
+	/**
+	 * the line starting at each of line_offsets
+	 */
+	int[] line_numbers;
+
+	/**
+	 * name of the program
+	 */
+	String name;
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * @return name of the program
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return ints of code, the program's size
+	 */
+	public int getCodeSize() {
+		return code.length;
+	}
+
+	/**
+	 * @param offset of an instruction
+	 * @return the source line it is on, 0 if none is known
+	 */
+	public int lineAt(int offset) {
+		int at = Arrays.binarySearch(line_offsets, offset);
+		if(at < 0) {
+			at = -at - 2;
+		}
+		return at < 0 ? 0 : line_numbers[at];
+	}
+}
@@ -6,7 +6,7 @@
 public class RelationalOperatorSymbol extends LexemeTerminal {
 
 	public RelationalOperatorSymbol(String _lexeme) {
-		super(_lexeme);
+		super(_lexeme, TerminalKind.RELATIONAL_OPERATOR);
 	}
 
 }
@@ -1,4 +1,9 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Class for interpreting file as lexemes
@@ -63,11 +68,54 @@ public class Scanner {
 	|* private properties *|
 	\**********************/
 	
+	/**
+	 * number of bits of a source offset that address within a single mapped window
+	 * a MappedByteBuffer can only hold 2GB, so larger files are mapped as several windows
+	 */
+	private static final int MAPPED_WINDOW_BITS = 30;
+	
+	/**
+	 * mask for the offset within a single mapped window
+	 */
+	private static final long MAPPED_WINDOW_MASK = (1L << MAPPED_WINDOW_BITS) - 1;
+	
+	/**
+	 * every byte of a long with only the low 7 bits set, used to test 8 bytes at a time
+	 */
+	private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+	
+	/**
+	 * every byte of a long with only the high bit set
+	 */
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	
 	/**
 	 * input giving us the source code
+	 * null when we are scanning a memory mapped file
 	 */
 	private PushbackReader source;
 	
+	/**
+	 * memory mapped or in memory input giving us the source code, one buffer per window
+	 * null when we are scanning from a reader
+	 */
+	private ByteBuffer[] mapped_source;
+	
+	/**
+	 * bytes of the text passed to reset, kept so the next reset can reuse them, null until then
+	 */
+	private ByteBuffer text_bytes;
+	
+	/**
+	 * offset of the next character to read from the source
+	 */
+	private long position;
+	
+	/**
+	 * total length in bytes of mapped_source, 0 when scanning from a reader
+	 */
+	private long source_length;
+	
 	/**
 	 * the line in the file we are currently on
 	 */
@@ -81,14 +129,35 @@ public class Scanner {
 	/**
 	 * current block of lexemes
 	 * this is a set of consecutive lexemes, i.e. not whitespace/comments
+	 * a StringBuilder when scanning a reader, a MappedBlock view when scanning a mapped file
+	 */
+	private CharSequence lexeme_block;
+	
+	/**
+	 * offset in the source of the first character of lexeme_block
+	 */
+	private long block_start;
+	
+	/**
+	 * offset in lexeme_block of the first character not yet turned into a token
 	 */
-	private StringBuilder lexeme_block;
+	private int block_position;
+	
+	/**
+	 * whether the last token scanned was the first one in its lexeme block
+	 */
+	private boolean block_started;
 	
 	/**
 	 * we have read past the end of the file
 	 */
 	private boolean eof;
 	
+	/**
+	 * where scanning is counted and timed, null if it is not
+	 */
+	private CompilerStats stats;
+	
 	
 	/****************\
 	|* constructors *|
@@ -101,11 +170,69 @@ public class Scanner {
 	public Scanner(PushbackReader _source) {
 		source = _source;
 		line_number = 1; //starting at 0 is less intuitive
+		position = 0;
 		last_char = '\0'; //null byte default
 		lexeme_block = new StringBuilder();
+		block_position = 0;
 		eof = false;
 	}
 	
+	/**
+	 * memory mapped constructor, scans the file directly by byte offset
+	 * the language is pure ASCII so every byte is treated as one character
+	 * @param file_path source code file
+	 * @throws IOException
+	 */
+	public Scanner(Path file_path) throws IOException {
+		this((PushbackReader) null);
+		try(FileChannel channel = FileChannel.open(file_path, StandardOpenOption.READ)) {
+			source_length = channel.size();
+			int window_count = (int) ((source_length + MAPPED_WINDOW_MASK) >>> MAPPED_WINDOW_BITS);
+			mapped_source = new ByteBuffer[window_count];
+			for(int i = 0; i < window_count; i++) {
+				long window_start = (long) i << MAPPED_WINDOW_BITS;
+				long window_size = Math.min(MAPPED_WINDOW_MASK + 1, source_length - window_start);
+				//the mapping stays valid after the channel is closed
+				mapped_source[i] = channel.map(FileChannel.MapMode.READ_ONLY, window_start, window_size);
+				//the bulk skipper reads 8 bytes at a time and wants the first byte in the low bits
+				mapped_source[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+		lexeme_block = new MappedBlock(mapped_source);
+	}
+	
+	/**
+	 * in memory constructor, scans text starting part way through it
+	 * the start has to be somewhere the scanner could have stopped between lexeme blocks, i.e. outside a comment
+	 * and not in the middle of a block, token offsets are still offsets into the whole text
+	 * @param text source code
+	 * @param start offset to start scanning at
+	 * @param line line number at the start offset
+	 */
+	public Scanner(CharSequence text, int start, int line) {
+		this(new PushbackReader(new CharSequenceReader(text, start)));
+		position = start;
+		line_number = line;
+	}
+	
+	/**
+	 * in memory constructor, scans text the same way as a mapped file, see reset(CharSequence)
+	 * @param text source code
+	 */
+	public Scanner(CharSequence text) {
+		this((PushbackReader) null);
+		reset(text);
+	}
+	
+	/**
+	 * in memory constructor, scans the bytes from the buffer's position to its limit the same way as a mapped file
+	 * @param bytes source code
+	 */
+	public Scanner(ByteBuffer bytes) {
+		this((PushbackReader) null);
+		reset(bytes);
+	}
+	
 	
 	/******************\
 	|* public methods *|
@@ -120,31 +247,244 @@ public class Scanner {
 	 * @throws LexemeTerminal.LexemeTerminalException 
 	 */
 	public Token getNextToken(SymbolTable symbol_table) throws IOException, ScannerException, Token.TokenException, LexemeTerminal.LexemeTerminalException{
-		//if our current block is exhausted get a new one
-		if(lexeme_block.length()==0){
-			if(eof){
-				//special case token for EOF
-				return new Token(new EofSymbol(), line_number);
-			}
-			//skip past comments, whitespace, and newlines
-			skipNonlexeme();
-			//get the next block of interesting text from the file
-			getNextLexemeBlock();
+		if(!fillLexemeBlock()){
+			//special case token for EOF
+			return new Token(EofSymbol.EOF, line_number);
 		}
 		
-		//call the Token class' factory method on this block
-		Token found_token = Token.makeToken(lexeme_block.toString(), line_number, symbol_table);
-		//consume the characters found by the token factory
-		lexeme_block.delete(0, found_token.getLexeme().length());
+		//call the Token class' factory method on the rest of this block
+		Token found_token = Token.makeToken(lexeme_block, block_position, line_number, symbol_table);
+		//consume the characters found by the token factory, the block itself is left untouched
+		block_position += found_token.getLexeme().length();
 		//return the found token
 		return found_token;
 	}
 	
+	/**
+	 * Scans the next token from file and appends it to a TokenBuffer instead of making a Token object
+	 * @param symbol_table
+	 * @param tokens buffer to add the token to
+	 * @throws IOException
+	 * @throws ScannerException 
+	 * @throws TokenException 
+	 * @throws LexemeTerminal.LexemeTerminalException 
+	 */
+	public void scanToken(SymbolTable symbol_table, TokenBuffer tokens) throws IOException, ScannerException, Token.TokenException, LexemeTerminal.LexemeTerminalException{
+		if(!fillLexemeBlock()){
+			block_started = false;
+			tokens.add(TerminalKind.EOF, position, 0, line_number, TokenBuffer.NO_SYMBOL);
+			if(stats != null){
+				stats.countToken(TerminalKind.EOF);
+			}
+			return;
+		}
+		
+		int symbol;
+		if(stats == null){
+			symbol = Token.findSymbolId(lexeme_block, block_position, line_number, symbol_table);
+		}
+		else{
+			symbol = countedSymbolId(symbol_table);
+		}
+		LexemeTerminal terminal = symbol_table.getSymbol(symbol);
+		int length = terminal.getLexeme().length();
+		block_started = block_position == 0;
+		tokens.add(terminal.getKind(), block_start + block_position, length, line_number, symbol);
+		block_position += length;
+		if(stats != null){
+			stats.countToken(terminal.getKind());
+		}
+	}
+	
+	
+	/**
+	 * gets the scanner going again after scanToken threw, so the next call carries on past the error
+	 * a bad lexeme is dropped along with anything after it that cannot start a lexeme, so a run of junk is
+	 * one error, an error in a comment leaves the scanner in front of the rest of the file, and at least one
+	 * character is always dropped, so scanning after an error always gets further through the file
+	 */
+	public void recover() {
+		if(block_position < lexeme_block.length()) {
+			block_position += Math.max(1, Token.lexemeLength(lexeme_block, block_position));
+			while(block_position < lexeme_block.length() && Token.lexemeLength(lexeme_block, block_position) == 0) {
+				block_position++;
+			}
+		}
+	}
+	
+	/**
+	 * starts over on new source bytes, from the buffer's position to its limit, which are left alone
+	 * the buffer is scanned in place, like a mapped file, and is not copied
+	 * @param bytes source code
+	 */
+	public void reset(ByteBuffer bytes) {
+		source_length = bytes.remaining();
+		int window_count = (int) Math.max(1, (source_length + MAPPED_WINDOW_MASK) >>> MAPPED_WINDOW_BITS);
+		ByteBuffer[] windows = windowsFor(window_count);
+		for(int i = 0; i < window_count; i++) {
+			long window_start = (long) i << MAPPED_WINDOW_BITS;
+			int window_size = (int) Math.min(MAPPED_WINDOW_MASK + 1, source_length - window_start);
+			//a slice of our own, so the byte order can be set without touching the caller's buffer
+			windows[i] = bytes.slice(bytes.position() + (int) window_start, window_size).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		restart();
+	}
+	
+	/**
+	 * starts over on new source bytes cut out of a bigger text, numbering lines on from where they were cut
+	 * offsets are still from the buffer's position, the cut has to be somewhere the scanner could have stopped
+	 * between lexeme blocks, i.e. outside a comment
+	 * @param bytes source code
+	 * @param line line number of the first byte
+	 */
+	public void reset(ByteBuffer bytes, int line) {
+		reset(bytes);
+		line_number = line;
+	}
+	
+	/**
+	 * starts over on new source text, which is copied into bytes the scanner keeps, so a reused scanner only
+	 * allocates when it is given more text than ever before
+	 * the language is pure ASCII, chars past 0xFF become 0xFF, which can not be part of a lexeme either
+	 * @param text source code
+	 */
+	public void reset(CharSequence text) {
+		int length = text.length();
+		if(text_bytes == null || text_bytes.capacity() < length) {
+			text_bytes = ByteBuffer.allocate(Math.max(length, text_bytes == null ? 0 : text_bytes.capacity() * 2));
+			text_bytes.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		text_bytes.clear();
+		for(int i = 0; i < length; i++) {
+			text_bytes.put((byte) Math.min(text.charAt(i), 0xFF));
+		}
+		text_bytes.flip();
+		source_length = length;
+		windowsFor(1)[0] = text_bytes;
+		restart();
+	}
+	
+	/**
+	 * counts and times scanning from now on
+	 * @param _stats where to, null to stop
+	 */
+	public void setStats(CompilerStats _stats) {
+		stats = _stats;
+	}
+	
+	/**
+	 * @return offset of the next character the scanner will read, i.e. how much of the source it has been through
+	 */
+	public long getOffset() {
+		return position;
+	}
+	
+	/**
+	 * @return size of the mapped source file or bytes, 0 when scanning a reader
+	 */
+	public long getSourceLength() {
+		return source_length;
+	}
+	
+	/**
+	 * the scanner can always be restarted in front of a token that starts a block
+	 * @return whether the last token scanToken added was the first one in its lexeme block
+	 */
+	public boolean startedBlock() {
+		return block_started;
+	}
+	
 	
 	/*******************\
 	|* private methods *|
 	\*******************/
 
+	/**
+	 * gets mapped_source ready to hold a number of windows, reusing it when it is already the right size
+	 * @return mapped_source
+	 */
+	private ByteBuffer[] windowsFor(int window_count) {
+		if(mapped_source == null || mapped_source.length != window_count) {
+			mapped_source = new ByteBuffer[window_count];
+			lexeme_block = new MappedBlock(mapped_source);
+		}
+		return mapped_source;
+	}
+	
+	/**
+	 * puts the scanner back at the start of mapped_source
+	 */
+	private void restart() {
+		source = null;
+		position = 0;
+		line_number = 1;
+		last_char = '\0';
+		block_start = 0;
+		block_position = 0;
+		block_started = false;
+		eof = false;
+		((MappedBlock) lexeme_block).reset(0, 0);
+	}
+	
+	/**
+	 * makes sure there is something left in the current lexeme block
+	 * @return false if we are at the end of the file
+	 * @throws IOException
+	 * @throws ScannerException 
+	 */
+	private boolean fillLexemeBlock() throws IOException, ScannerException{
+		//if our current block is exhausted get a new one
+		if(block_position == lexeme_block.length()){
+			if(eof){
+				return false;
+			}
+			//skip past comments, whitespace, and newlines
+			long skip_start = position;
+			if(stats != null && stats.count(CompilerStats.SKIP_NONLEXEME)){
+				long start = System.nanoTime();
+				skipNonlexeme();
+				stats.addSample(CompilerStats.SKIP_NONLEXEME, System.nanoTime() - start);
+			}
+			else{
+				skipNonlexeme();
+			}
+			//get the next block of interesting text from the file
+			getNextLexemeBlock();
+			if(block_start - skip_start >= CompilerEvents.LONG_BLOCK_LENGTH){
+				CompilerEvents.longBlock(true, line_number, skip_start, block_start - skip_start);
+			}
+			if(lexeme_block.length() >= CompilerEvents.LONG_BLOCK_LENGTH){
+				CompilerEvents.longBlock(false, line_number, block_start, lexeme_block.length());
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * same as Token.findSymbolId, counting and timing recognizing the lexeme and looking it up
+	 * @return the id of the next lexeme's symbol
+	 * @throws Token.TokenException 
+	 * @throws LexemeTerminal.LexemeTerminalException 
+	 */
+	private int countedSymbolId(SymbolTable symbol_table) throws Token.TokenException, LexemeTerminal.LexemeTerminalException{
+		int length;
+		if(stats.count(CompilerStats.RECOGNIZE_LEXEME)){
+			long start = System.nanoTime();
+			length = Token.lexemeLength(lexeme_block, block_position);
+			stats.addSample(CompilerStats.RECOGNIZE_LEXEME, System.nanoTime() - start);
+		}
+		else{
+			length = Token.lexemeLength(lexeme_block, block_position);
+		}
+		if(stats.count(CompilerStats.LOOKUP_SYMBOL)){
+			long start = System.nanoTime();
+			int symbol = Token.lookupSymbolId(lexeme_block, block_position, length, line_number, symbol_table);
+			stats.addSample(CompilerStats.LOOKUP_SYMBOL, System.nanoTime() - start);
+			return symbol;
+		}
+		return Token.lookupSymbolId(lexeme_block, block_position, length, line_number, symbol_table);
+	}
+	
 	/**
 	 * Builds the next lexeme block and assigns to global lexeme_block
 	 * "block" here means there may be multiple lexemes in the result
@@ -153,8 +493,21 @@ public class Scanner {
 	 */
 	private void getNextLexemeBlock() throws IOException{
 		char new_char;
+		block_position = 0;
+		block_start = position;
+		if(mapped_source != null){
+			//lexeme characters never include newlines, so the block is a contiguous run of the mapped file
+			while(isLexemeChar(new_char = getChar()) && !eof);
+			if(!eof){
+				backOut(new_char);
+			}
+			((MappedBlock) lexeme_block).reset(block_start, (int) (position - block_start));
+			return;
+		}
+		StringBuilder block_builder = (StringBuilder) lexeme_block;
+		block_builder.setLength(0);
 		while(isLexemeChar(new_char = getChar()) && !eof){
-			lexeme_block.append(new_char);
+			block_builder.append(new_char);
 		}
 		if(!eof){
 			backOut(new_char);
@@ -181,6 +534,10 @@ public class Scanner {
 	 * @throws ScannerException 
 	 */
 	private void skipNonlexeme() throws IOException, ScannerException {
+		if(mapped_source != null){
+			skipMappedNonlexeme();
+			return;
+		}
 		boolean skip = false;
 		do{
 			skip = 
@@ -194,6 +551,108 @@ public class Scanner {
 	}
 	
 	
+	/**
+	 * moves past everything that is not part of the next useful lexeme in a mapped file
+	 * same results as skipWhiteSpace/skipNewlines/skipComments, but looks at 8 bytes at a time
+	 * @throws ScannerException 
+	 */
+	private void skipMappedNonlexeme() throws ScannerException {
+		//we always stop in front of a lexeme character, so the byte before us is never a \r
+		position = skipMappedRun(position, false, false);
+		while(position < source_length && byteAt(position) == '{'){
+			int starting_line = line_number;
+			position = skipMappedRun(position+1, true, false);
+			if(position < source_length && byteAt(position) == '{'){
+				//you cannot start another comment inside a comment
+				throw new RecursiveCommentException("comment started on line "+starting_line+" has another comment starting on line "+line_number);
+			}
+			if(position < source_length){
+				//step over the closing }
+				position = skipMappedRun(position+1, false, false);
+			}
+		}
+		if(position >= source_length){
+			//running out of file while skipping is reported the same way skipComments reports it
+			eof = true;
+			throw new CommentNotClosedException("comment started on line "+line_number+" not closed before end of file");
+		}
+		if(position > 0){
+			last_char = (char) byteAt(position-1);
+		}
+	}
+	
+	/**
+	 * moves through the mapped file until a stop byte, counting newlines on the way
+	 * a \r\n pair only counts as one newline, exactly like getChar
+	 * @param start offset to start at
+	 * @param in_comment true to stop at { or }, false to stop at anything that is not whitespace or a newline
+	 * @param previous_cr true if the byte before start was a \r
+	 * @return offset of the stop byte, or source_length if there was none
+	 */
+	private long skipMappedRun(long start, boolean in_comment, boolean previous_cr) {
+		long offset = start;
+		while(offset < source_length){
+			ByteBuffer window = mapped_source[(int) (offset >>> MAPPED_WINDOW_BITS)];
+			int index = (int) (offset & MAPPED_WINDOW_MASK);
+			int limit = window.limit();
+			//8 bytes at a time while a whole long fits in this window
+			while(index + Long.BYTES <= limit){
+				long word = window.getLong(index);
+				long cr = matchBytes(word, '\r');
+				long lf = matchBytes(word, '\n');
+				long stop;
+				if(in_comment){
+					stop = matchBytes(word, '{') | matchBytes(word, '}');
+				}
+				else{
+					stop = ~(matchBytes(word, ' ') | matchBytes(word, '\t') | cr | lf) & HIGH_BITS;
+				}
+				//only count newlines in front of the stop byte
+				long before_stop = stop == 0 ? -1L : Long.lowestOneBit(stop) - 1;
+				cr &= before_stop;
+				lf &= before_stop;
+				long swallowed_lf = lf & ((cr << 8) | (previous_cr ? 0x80L : 0L));
+				line_number += Long.bitCount(cr) + Long.bitCount(lf) - Long.bitCount(swallowed_lf);
+				if(stop != 0){
+					return (offset & ~MAPPED_WINDOW_MASK) + index + (Long.numberOfTrailingZeros(stop) >>> 3);
+				}
+				previous_cr = (word >>> 56) == '\r';
+				index += Long.BYTES;
+			}
+			//scalar for the tail of the window
+			while(index < limit){
+				byte next_byte = window.get(index);
+				if(in_comment ? (next_byte == '{' || next_byte == '}') : !(isWhiteSpace((char) next_byte) || isNewline((char) next_byte))){
+					return (offset & ~MAPPED_WINDOW_MASK) + index;
+				}
+				if(next_byte == '\r' || (next_byte == '\n' && !previous_cr)){
+					line_number++;
+				}
+				previous_cr = next_byte == '\r';
+				index++;
+			}
+			offset = (offset & ~MAPPED_WINDOW_MASK) + limit;
+		}
+		return source_length;
+	}
+	
+	/**
+	 * finds every byte of the word equal to the passed value
+	 * @return the word with the high bit set in each matching byte and every other bit clear
+	 */
+	private static long matchBytes(long word, char value) {
+		long difference = word ^ (HIGH_BITS >>> 7) * value;
+		//high bit ends up set only for bytes that were exactly zero, no carries between bytes
+		return ~(((difference & LOW_BITS) + LOW_BITS) | difference | LOW_BITS);
+	}
+	
+	/**
+	 * reads a single byte from the mapped file
+	 */
+	private int byteAt(long offset) {
+		return mapped_source[(int) (offset >>> MAPPED_WINDOW_BITS)].get((int) (offset & MAPPED_WINDOW_MASK)) & 0xFF;
+	}
+	
 	/**
 	 * moves past comments
 	 * @return true if any comment was skipped
@@ -212,7 +671,8 @@ public class Scanner {
 			//skip everything until we find a close something
 			while((new_char = getChar()) != '}' && !eof){
 				if(new_char == '{'){
-					//you cannot start another comment inside a comment
+					//you cannot start another comment inside a comment, after recovering it starts one of its own
+					backOut(new_char);
 					throw new RecursiveCommentException("comment started on line "+starting_line+" has another comment starting on line "+line_number);
 				}
 			}
@@ -292,7 +752,7 @@ public class Scanner {
 	private char getChar() throws IOException {
 		int next_char;
 		//get the next char
-		next_char = source.read();
+		next_char = readSource();
 		//we check for end of file
 		if(next_char == -1){
 			eof = true;
@@ -303,7 +763,12 @@ public class Scanner {
 		//now we check for windows' messed up newlines
 		if(next_char == '\n' && last_char == '\r'){
 			//\r\n should be treated as a single character so we just swallow one of them
-			next_char = (char) source.read();
+			next_char = readSource();
+			//the file may end right after the windows newline
+			if(next_char == -1){
+				eof = true;
+				return '\0';
+			}
 		}
 		
 		//now we record the old char so next time we can find out if it's a windows newline
@@ -316,17 +781,160 @@ public class Scanner {
 		return last_char;
 	}
 	
+	/**
+	 * reads the next raw character from whichever input we are scanning
+	 * @return the character, or -1 at the end of the input
+	 * @throws IOException
+	 */
+	private int readSource() throws IOException {
+		if(mapped_source == null){
+			int next_char = source.read();
+			if(next_char != -1){
+				position++;
+			}
+			return next_char;
+		}
+		if(position >= source_length){
+			return -1;
+		}
+		byte next_byte = mapped_source[(int) (position >>> MAPPED_WINDOW_BITS)].get((int) (position & MAPPED_WINDOW_MASK));
+		position++;
+		return next_byte & 0xFF;
+	}
+	
 	/**
 	 * Pushes character back onto the reader
 	 * @throws IOException
 	 */
 	private void backOut(char c) throws IOException{
-		//cast back to int for consistency
-		source.unread((int) c);
+		position--;
+		if(mapped_source == null){
+			//cast back to int for consistency
+			source.unread((int) c);
+		}
 		
 		//if we are pushing back a newline then we need to move the line count back
 		if(isNewline(c)){
 			line_number--;
 		}
 	}
-}
\ No newline at end of file
+	
+	
+	/*****************\
+	|* inner classes *|
+	\*****************/
+	
+	/**
+	 * read only view of a run of bytes in the mapped source as characters
+	 * lets tokens be recognized directly out of the mapped file without copying the block
+	 */
+	private static class MappedBlock implements CharSequence {
+		
+		/**
+		 * the windows of the source
+		 */
+		private final ByteBuffer[] windows;
+		
+		/**
+		 * offset in the source file of the first character of the block
+		 */
+		private long start;
+		
+		/**
+		 * number of characters in the block
+		 */
+		private int length;
+		
+		/**
+		 * constructor, the view starts out empty
+		 * @param _windows
+		 */
+		public MappedBlock(ByteBuffer[] _windows) {
+			windows = _windows;
+			start = 0;
+			length = 0;
+		}
+		
+		/**
+		 * points the view at a new run of the source
+		 * @param _start offset of the first character
+		 * @param _length number of characters
+		 */
+		public void reset(long _start, int _length) {
+			start = _start;
+			length = _length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			long offset = start + index;
+			return (char) (windows[(int) (offset >>> MAPPED_WINDOW_BITS)].get((int) (offset & MAPPED_WINDOW_MASK)) & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int begin, int end) {
+			StringBuilder sub_sequence = new StringBuilder(end - begin);
+			for(int i = begin; i < end; i++) {
+				sub_sequence.append(charAt(i));
+			}
+			return sub_sequence.toString();
+		}
+
+		@Override
+		public String toString() {
+			return subSequence(0, length).toString();
+		}
+	}
+	
+	/**
+	 * reader over a CharSequence, from some offset to the end
+	 */
+	private static class CharSequenceReader extends Reader {
+		
+		/**
+		 * what is being read
+		 */
+		private final CharSequence text;
+		
+		/**
+		 * offset of the next character to read
+		 */
+		private int next;
+		
+		/**
+		 * constructor
+		 * @param _text
+		 * @param start offset of the first character to read
+		 */
+		public CharSequenceReader(CharSequence _text, int start) {
+			text = _text;
+			next = start;
+		}
+		
+		@Override
+		public int read() {
+			return next < text.length() ? text.charAt(next++) : -1;
+		}
+		
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			if(next >= text.length()) {
+				return -1;
+			}
+			int count = Math.min(length, text.length() - next);
+			for(int i = 0; i < count; i++) {
+				buffer[offset + i] = text.charAt(next++);
+			}
+			return count;
+		}
+		
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,511 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * runs a scanner on its own thread, so lexing and parsing can overlap on two cores
+ *
+ * the scanner thread writes tokens into a ring buffer and publishes them a batch at a time, one reader
+ * takes them out in order, either through advance and the getters or as a Flow.Publisher of Tokens,
+ * not both, when the ring is full the scanner thread waits, so a slow reader holds it back
+ *
+ * the scanner thread resolves each token's terminal itself, so the reader never touches the symbol table
+ * while it is being added to, a scan error is handed to the reader when it gets to where the error was,
+ * given Diagnostics, the scanner thread recovers from lexical errors instead and the reader reports them
+ * as it passes them, so they are reported in order with the parser's
+ * @author Mike, Ryan
+ */
+public class ScannerPipeline implements Flow.Publisher<Token>, Closeable {
+
+	/**
+	 * ring size when none is given, a power of two
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * the scanner thread publishes after this many tokens, a power of two, and the reader frees slots as often
+	 */
+	private static final int BATCH_SIZE = 64;
+
+	/**
+	 * times a waiting thread spins before it starts parking
+	 */
+	private static final int SPIN_LIMIT = 128;
+
+	/**
+	 * longest a waiting thread parks before looking again
+	 */
+	private static final long PARK_NANOS = 50_000;
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * where the tokens come from, only used by the scanner thread once it is started
+	 */
+	private final Scanner scanner;
+
+	/**
+	 * the scanner's symbol table, only used by the scanner thread once it is started
+	 */
+	private final SymbolTable symbol_table;
+
+	/**
+	 * ring slot columns, token n is in slot n & mask
+	 */
+	private final int mask;
+	private final int[] kinds;
+	private final int[] lines;
+	private final Terminal[] terminals;
+	private final long[] starts;
+	private final int[] lengths;
+	private final int[] symbols;
+
+	/**
+	 * lexical error of each slot the scanner thread recovered from instead of a token, null for tokens
+	 */
+	private final Exception[] errors;
+
+	/**
+	 * number of tokens the scanner thread has made visible to the reader
+	 */
+	private final AtomicLong published;
+
+	/**
+	 * number of tokens the reader is done with, whose slots can be reused
+	 */
+	private final AtomicLong consumed;
+
+	/**
+	 * set once the scanner thread has published its last token
+	 */
+	private volatile boolean finished;
+
+	/**
+	 * what stopped the scanner thread, if it was not EOF
+	 */
+	private volatile Exception failure;
+
+	/**
+	 * set by close to stop the scanner thread early
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * the scanner thread, null until started
+	 */
+	private Thread scanner_thread;
+
+	/**
+	 * reader side, index of the current token, -1 before the first advance
+	 */
+	private long position;
+
+	/**
+	 * reader side, last value of published it saw
+	 */
+	private long available;
+
+	/**
+	 * whether a subscriber has taken over reading
+	 */
+	private boolean subscribed;
+
+	/**
+	 * where the reader reports lexical errors, null to stop at the first one, the scanner thread only
+	 * looks at whether it is set
+	 */
+	private Diagnostics diagnostics;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor
+	 * @param _scanner scanner that nothing else uses from now on
+	 * @param _symbol_table the scanner's symbol table
+	 * @param capacity number of tokens the ring holds, a power of two of at least twice the batch size
+	 */
+	public ScannerPipeline(Scanner _scanner, SymbolTable _symbol_table, int capacity) {
+		if(Integer.bitCount(capacity) != 1 || capacity < 2 * BATCH_SIZE) {
+			throw new IllegalArgumentException("ring capacity "+capacity+" is not a power of two of at least "+(2 * BATCH_SIZE));
+		}
+		scanner = _scanner;
+		symbol_table = _symbol_table;
+		mask = capacity - 1;
+		kinds = new int[capacity];
+		lines = new int[capacity];
+		terminals = new Terminal[capacity];
+		starts = new long[capacity];
+		lengths = new int[capacity];
+		symbols = new int[capacity];
+		errors = new Exception[capacity];
+		published = new AtomicLong();
+		consumed = new AtomicLong();
+		position = -1;
+		available = 0;
+	}
+
+	/**
+	 * constructor with the default ring size
+	 * @param _scanner scanner that nothing else uses from now on
+	 * @param _symbol_table the scanner's symbol table
+	 */
+	public ScannerPipeline(Scanner _scanner, SymbolTable _symbol_table) {
+		this(_scanner, _symbol_table, DEFAULT_CAPACITY);
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * starts the scanner thread, does nothing if it is already running
+	 */
+	public synchronized void start() {
+		if(scanner_thread == null) {
+			scanner_thread = new Thread(this::produce, "scanner-pipeline");
+			scanner_thread.setDaemon(true);
+			scanner_thread.start();
+		}
+	}
+
+	/**
+	 * recover from lexical errors and report them instead of stopping at the first one
+	 * @param _diagnostics where to report them, null to stop, only takes effect if set before start
+	 */
+	public void setDiagnostics(Diagnostics _diagnostics) {
+		diagnostics = _diagnostics;
+	}
+
+	/**
+	 * moves on to the next token, waiting for the scanner thread if it is not there yet
+	 * lexical errors the scanner thread recovered from are reported on the way
+	 * @throws IOException
+	 * @throws Scanner.ScannerException
+	 * @throws Token.TokenException
+	 * @throws LexemeTerminal.LexemeTerminalException if scanning the next token failed with it
+	 */
+	public void advance() throws IOException, Scanner.ScannerException, Token.TokenException, LexemeTerminal.LexemeTerminalException {
+		advanceSlot();
+		//a slot the scanner thread recovered from an error in holds the error instead of a token
+		while(errors[(int) position & mask] != null) {
+			diagnostics.report(errors[(int) position & mask]);
+			advanceSlot();
+		}
+	}
+
+	/**
+	 * @return TerminalKind of the current token
+	 */
+	public int getKind() {
+		return kinds[(int) position & mask];
+	}
+
+	/**
+	 * @return line of the current token
+	 */
+	public int getLine() {
+		return lines[(int) position & mask];
+	}
+
+	/**
+	 * @return terminal of the current token
+	 */
+	public Terminal getTerminal() {
+		return terminals[(int) position & mask];
+	}
+
+	/**
+	 * adds the current token to a buffer, its symbol index is into the scanner's symbol table
+	 * @param tokens
+	 */
+	public void addTo(TokenBuffer tokens) {
+		int slot = (int) position & mask;
+		tokens.add(kinds[slot], starts[slot], lengths[slot], lines[slot], symbols[slot]);
+	}
+	
+	/**
+	 * @return the current token as a Token object
+	 */
+	public Token getToken() {
+		return new Token(getTerminal(), getLine());
+	}
+
+	/**
+	 * delivers the tokens, up to and including EOF, on a thread of their own
+	 * the subscriber is the reader, nothing else may call advance afterwards
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super Token> subscriber) {
+		synchronized(this) {
+			if(subscribed) {
+				subscriber.onSubscribe(new TokenSubscription(null));
+				subscriber.onError(new IllegalStateException("the pipeline already has a subscriber"));
+				return;
+			}
+			subscribed = true;
+		}
+		TokenSubscription subscription = new TokenSubscription(subscriber);
+		Thread delivery_thread = new Thread(subscription::deliver, "scanner-pipeline-delivery");
+		delivery_thread.setDaemon(true);
+		subscription.delivery_thread = delivery_thread;
+		delivery_thread.start();
+	}
+
+	/**
+	 * stops the scanner thread and waits for it, the scanner is not touched after this returns
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		Thread thread;
+		synchronized(this) {
+			thread = scanner_thread;
+		}
+		if(thread != null) {
+			LockSupport.unpark(thread);
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * moves on to the next slot, waiting for the scanner thread if it is not there yet
+	 */
+	private void advanceSlot() throws IOException, Scanner.ScannerException, Token.TokenException, LexemeTerminal.LexemeTerminalException {
+		position++;
+		//slots behind the current token go back to the scanner thread a batch at a time
+		if((position & (BATCH_SIZE - 1)) == 0) {
+			consumed.lazySet(position);
+		}
+		int spins = 0;
+		while(position >= available) {
+			available = published.get();
+			if(position < available) {
+				break;
+			}
+			if(finished) {
+				//the last publish happens before finished is set, so this is the final count
+				available = published.get();
+				if(position < available) {
+					break;
+				}
+				throwFailure();
+			}
+			consumed.lazySet(position);
+			spins = backOff(spins);
+		}
+	}
+
+	/**
+	 * body of the scanner thread
+	 */
+	private void produce() {
+		TokenBuffer scanned = new TokenBuffer(1, false);
+		long tail = 0;
+		long free_until = kinds.length;
+		try {
+			while(!closed) {
+				scanned.clear();
+				Exception error = null;
+				try {
+					scanner.scanToken(symbol_table, scanned);
+				} catch (Scanner.ScannerException|Token.TokenException|LexemeTerminal.LexemeTerminalException e) {
+					if(diagnostics == null) {
+						throw e;
+					}
+					//the error takes a slot of its own, so the reader reports it where it was found
+					scanner.recover();
+					error = e;
+				}
+				int spins = 0;
+				while(tail >= free_until && !closed) {
+					//the reader may be waiting for the tokens we are sitting on
+					published.lazySet(tail);
+					free_until = consumed.get() + kinds.length;
+					if(tail >= free_until) {
+						spins = backOff(spins);
+					}
+				}
+				int slot = (int) tail & mask;
+				errors[slot] = error;
+				int kind = TerminalKind.UNKNOWN;
+				if(error == null) {
+					kind = scanned.getKind(0);
+					int symbol = scanned.getSymbolIndex(0);
+					kinds[slot] = kind;
+					lines[slot] = scanned.getLine(0);
+					terminals[slot] = symbol == TokenBuffer.NO_SYMBOL ? EofSymbol.EOF : symbol_table.getSymbol(symbol);
+					starts[slot] = scanned.getStart(0);
+					lengths[slot] = scanned.getLength(0);
+					symbols[slot] = symbol;
+				}
+				tail++;
+				if(kind == TerminalKind.EOF) {
+					break;
+				}
+				if((tail & (BATCH_SIZE - 1)) == 0) {
+					published.lazySet(tail);
+				}
+			}
+		} catch (IOException|Scanner.ScannerException|Token.TokenException|LexemeTerminal.LexemeTerminalException|RuntimeException e) {
+			failure = e;
+		}
+		published.set(tail);
+		finished = true;
+	}
+
+	/**
+	 * rethrows what stopped the scanner thread, for a reader that has used up every token
+	 */
+	private void throwFailure() throws IOException, Scanner.ScannerException, Token.TokenException, LexemeTerminal.LexemeTerminalException {
+		Exception e = failure;
+		if(e instanceof IOException) {
+			throw (IOException) e;
+		}
+		if(e instanceof Scanner.ScannerException) {
+			throw (Scanner.ScannerException) e;
+		}
+		if(e instanceof Token.TokenException) {
+			throw (Token.TokenException) e;
+		}
+		if(e instanceof LexemeTerminal.LexemeTerminalException) {
+			throw (LexemeTerminal.LexemeTerminalException) e;
+		}
+		if(e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		}
+		throw new IllegalStateException("read past EOF, or the pipeline was closed");
+	}
+
+	/**
+	 * waits a little, spinning at first and then parking
+	 * @param spins number of times we have waited so far
+	 * @return spins for next time
+	 */
+	private static int backOff(int spins) {
+		if(spins < SPIN_LIMIT) {
+			Thread.onSpinWait();
+		}
+		else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+		return spins + 1;
+	}
+
+
+	/*****************\
+	|* inner classes *|
+	\*****************/
+
+	/**
+	 * the one subscription of the pipeline, delivers tokens as they are requested
+	 */
+	private class TokenSubscription implements Flow.Subscription {
+
+		/**
+		 * who gets the tokens, null for the subscription given to a subscriber that was turned away
+		 */
+		private final Flow.Subscriber<? super Token> subscriber;
+
+		/**
+		 * number of tokens requested and not yet delivered
+		 */
+		private final AtomicLong demand;
+
+		/**
+		 * set when the subscriber does not want any more
+		 */
+		private volatile boolean cancelled;
+
+		/**
+		 * set if request was called with a bad count
+		 */
+		private volatile boolean bad_request;
+
+		/**
+		 * thread calling the subscriber
+		 */
+		private volatile Thread delivery_thread;
+
+		/**
+		 * constructor
+		 * @param _subscriber
+		 */
+		public TokenSubscription(Flow.Subscriber<? super Token> _subscriber) {
+			subscriber = _subscriber;
+			demand = new AtomicLong();
+		}
+
+		@Override
+		public void request(long count) {
+			if(count <= 0) {
+				bad_request = true;
+			}
+			else {
+				//demand is capped at Long.MAX_VALUE, which means unbounded
+				demand.getAndUpdate(current -> current + count < 0 ? Long.MAX_VALUE : current + count);
+			}
+			wake();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			wake();
+		}
+
+		/**
+		 * body of the delivery thread
+		 */
+		private void deliver() {
+			subscriber.onSubscribe(this);
+			start();
+			try {
+				while(!cancelled) {
+					if(bad_request) {
+						subscriber.onError(new IllegalArgumentException("requested a non positive number of tokens"));
+						break;
+					}
+					if(demand.get() == 0) {
+						LockSupport.park(this);
+						continue;
+					}
+					advance();
+					demand.decrementAndGet();
+					int kind = getKind();
+					subscriber.onNext(getToken());
+					if(kind == TerminalKind.EOF) {
+						subscriber.onComplete();
+						break;
+					}
+				}
+			} catch (IOException|Scanner.ScannerException|Token.TokenException|LexemeTerminal.LexemeTerminalException|RuntimeException e) {
+				subscriber.onError(e);
+			}
+			close();
+		}
+
+		/**
+		 * gets the delivery thread to look at the demand again
+		 */
+		private void wake() {
+			Thread thread = delivery_thread;
+			if(thread != null) {
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+}
@@ -0,0 +1,422 @@
+import java.util.Arrays;
+
+/**
+ * names in scope during semantic analysis, and every declaration seen so far
+ *
+ * names are the ids the SymbolTable gave their lexemes, so the hash table the names live in is a plain array
+ * indexed by id, each entry the newest binding of the name, and each binding points at the one it shadows,
+ * the bindings are kept in the order they were made, which is also the undo log, so closing a scope just
+ * pops the scope's bindings and puts back what each one shadowed, i.e. opening and closing a scope costs time
+ * in proportion to its declarations, and once a scope is closed its locals are no longer bindings, so the
+ * binding columns only ever hold the names in scope
+ *
+ * declarations outlive their scopes, they are what later phases read, by index, a subprogram's parameters are
+ * the declarations right after it and its locals follow, so none are ever reclaimed and the declaration columns
+ * grow with every declaration in the program, until the table is cleared, each is a row of parallel int columns
+ * like a SyntaxTree node, and each gets a slot, dense within its frame, the program's variables are frame 0,
+ * a subprogram's parameters then locals are its own frame, starting at slot 0 again
+ *
+ * a table is only for one thread at a time and can be cleared to reuse it
+ * @author Mike, Ryan
+ */
+public class ScopedSymbolTable {
+
+	/**
+	 * no declaration, or no binding
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * the program's own name
+	 */
+	public static final int KIND_PROGRAM = 0;
+
+	/**
+	 * a variable of the program or of a subprogram
+	 */
+	public static final int KIND_VARIABLE = 1;
+
+	/**
+	 * a parameter of a subprogram, or one of the program's
+	 */
+	public static final int KIND_PARAMETER = 2;
+
+	/**
+	 * a function, its type is the type it returns
+	 */
+	public static final int KIND_FUNCTION = 3;
+
+	/**
+	 * a procedure
+	 */
+	public static final int KIND_PROCEDURE = 4;
+
+	/**
+	 * no type, for the program, procedures and the program's parameters
+	 */
+	public static final int TYPE_NONE = 0;
+
+	/**
+	 * integer
+	 */
+	public static final int TYPE_INTEGER = 1;
+
+	/**
+	 * real
+	 */
+	public static final int TYPE_REAL = 2;
+
+	/**
+	 * array of integer, the bounds are the declaration's
+	 */
+	public static final int TYPE_INTEGER_ARRAY = 3;
+
+	/**
+	 * array of real, the bounds are the declaration's
+	 */
+	public static final int TYPE_REAL_ARRAY = 4;
+
+	/**
+	 * capacity used by the default constructor
+	 */
+	private static final int DEFAULT_CAPACITY = 256;
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * per name: newest binding + 1, 0 if the name is not in scope
+	 */
+	private int[] heads;
+
+	/**
+	 * per binding: the name it binds
+	 */
+	private int[] binding_names;
+
+	/**
+	 * per binding: the declaration it binds the name to
+	 */
+	private int[] binding_declarations;
+
+	/**
+	 * per binding: the binding of the same name it shadows + 1, 0 if none
+	 */
+	private int[] binding_shadowed;
+
+	/**
+	 * number of bindings, i.e. of names in scope
+	 */
+	private int binding_count;
+
+	/**
+	 * per open scope: binding_count when it was opened
+	 */
+	private int[] scope_marks;
+
+	/**
+	 * per open scope: slots handed out in its frame so far
+	 */
+	private int[] scope_slots;
+
+	/**
+	 * number of open scopes
+	 */
+	private int depth;
+
+	/**
+	 * per declaration: the name
+	 */
+	private int[] names;
+
+	/**
+	 * per declaration: KIND_ constant
+	 */
+	private int[] kinds;
+
+	/**
+	 * per declaration: TYPE_ constant
+	 */
+	private int[] types;
+
+	/**
+	 * per declaration: depth of the scope it was made in, 1 for the program's
+	 */
+	private int[] depths;
+
+	/**
+	 * per declaration: slot in its frame, NONE for the program and subprograms
+	 */
+	private int[] slots;
+
+	/**
+	 * per declaration: lower bound of an array, parameter count of a subprogram
+	 */
+	private int[] lows;
+
+	/**
+	 * per declaration: upper bound of an array, frame size of a subprogram once its scope is closed
+	 */
+	private int[] highs;
+
+	/**
+	 * number of declarations
+	 */
+	private int declaration_count;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor
+	 * @param initial_capacity declarations, and names, to make room for up front
+	 */
+	public ScopedSymbolTable(int initial_capacity) {
+		int capacity = Math.max(1, initial_capacity);
+		heads = new int[capacity];
+		binding_names = new int[capacity];
+		binding_declarations = new int[capacity];
+		binding_shadowed = new int[capacity];
+		scope_marks = new int[8];
+		scope_slots = new int[8];
+		names = new int[capacity];
+		kinds = new int[capacity];
+		types = new int[capacity];
+		depths = new int[capacity];
+		slots = new int[capacity];
+		lows = new int[capacity];
+		highs = new int[capacity];
+	}
+
+	/**
+	 * constructor with the default capacity
+	 */
+	public ScopedSymbolTable() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * forgets every scope and declaration, keeping the room they took
+	 */
+	public void clear() {
+		while(binding_count > 0) {
+			heads[binding_names[--binding_count]] = 0;
+		}
+		depth = 0;
+		declaration_count = 0;
+	}
+
+	/**
+	 * opens a scope, with a frame of its own
+	 */
+	public void openScope() {
+		if(depth == scope_marks.length) {
+			scope_marks = Arrays.copyOf(scope_marks, depth * 2);
+			scope_slots = Arrays.copyOf(scope_slots, depth * 2);
+		}
+		scope_marks[depth] = binding_count;
+		scope_slots[depth] = 0;
+		depth++;
+	}
+
+	/**
+	 * closes the innermost scope, every name declared in it goes back to what it was before
+	 * @return number of slots its frame used
+	 */
+	public int closeScope() {
+		if(depth == 0) {
+			throw new IllegalStateException("no scope to close");
+		}
+		depth--;
+		int mark = scope_marks[depth];
+		while(binding_count > mark) {
+			binding_count--;
+			heads[binding_names[binding_count]] = binding_shadowed[binding_count];
+		}
+		return scope_slots[depth];
+	}
+
+	/**
+	 * @return number of open scopes
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * declares a name in the innermost scope, shadowing any outer declaration of it
+	 * @param name SymbolTable id of the name
+	 * @param kind KIND_ constant
+	 * @param type TYPE_ constant
+	 * @return the new declaration, NONE if the name is already declared in this scope
+	 */
+	public int declare(int name, int kind, int type) {
+		if(depth == 0) {
+			throw new IllegalStateException("no scope to declare in");
+		}
+		if(name >= heads.length) {
+			heads = Arrays.copyOf(heads, Math.max(heads.length * 2, name + 1));
+		}
+		int head = heads[name];
+		if(head != 0 && head - 1 >= scope_marks[depth - 1]) {
+			return NONE;
+		}
+
+		if(declaration_count == names.length) {
+			int capacity = declaration_count * 2;
+			names = Arrays.copyOf(names, capacity);
+			kinds = Arrays.copyOf(kinds, capacity);
+			types = Arrays.copyOf(types, capacity);
+			depths = Arrays.copyOf(depths, capacity);
+			slots = Arrays.copyOf(slots, capacity);
+			lows = Arrays.copyOf(lows, capacity);
+			highs = Arrays.copyOf(highs, capacity);
+		}
+		int declaration = declaration_count++;
+		names[declaration] = name;
+		kinds[declaration] = kind;
+		types[declaration] = type;
+		depths[declaration] = depth;
+		//the program and subprograms are not stored in a frame
+		slots[declaration] = kind == KIND_VARIABLE || kind == KIND_PARAMETER ? scope_slots[depth - 1]++ : NONE;
+		lows[declaration] = 0;
+		highs[declaration] = 0;
+
+		if(binding_count == binding_names.length) {
+			int capacity = binding_count * 2;
+			binding_names = Arrays.copyOf(binding_names, capacity);
+			binding_declarations = Arrays.copyOf(binding_declarations, capacity);
+			binding_shadowed = Arrays.copyOf(binding_shadowed, capacity);
+		}
+		binding_names[binding_count] = name;
+		binding_declarations[binding_count] = declaration;
+		binding_shadowed[binding_count] = head;
+		binding_count++;
+		heads[name] = binding_count;
+		return declaration;
+	}
+
+	/**
+	 * finds the declaration a name refers to from the innermost scope
+	 * @param name SymbolTable id of the name
+	 * @return the declaration, NONE if the name is not in scope
+	 */
+	public int lookup(int name) {
+		if(name < 0 || name >= heads.length || heads[name] == 0) {
+			return NONE;
+		}
+		return binding_declarations[heads[name] - 1];
+	}
+
+	/**
+	 * @return number of declarations, which are [0, count)
+	 */
+	public int getDeclarationCount() {
+		return declaration_count;
+	}
+
+	public int getName(int declaration) {
+		return names[declaration];
+	}
+
+	public int getKind(int declaration) {
+		return kinds[declaration];
+	}
+
+	public int getType(int declaration) {
+		return types[declaration];
+	}
+
+	/**
+	 * @return depth of the scope the declaration was made in, 1 for the program's
+	 */
+	public int getDepth(int declaration) {
+		return depths[declaration];
+	}
+
+	/**
+	 * @return slot of a variable or parameter in its frame, NONE for the program and subprograms
+	 */
+	public int getSlot(int declaration) {
+		return slots[declaration];
+	}
+
+	/**
+	 * sets the type of a declaration, for names whose type comes after them
+	 */
+	public void setType(int declaration, int type) {
+		types[declaration] = type;
+	}
+
+	/**
+	 * @return lower bound of an array
+	 */
+	public int getLow(int declaration) {
+		return lows[declaration];
+	}
+
+	/**
+	 * @return upper bound of an array
+	 */
+	public int getHigh(int declaration) {
+		return highs[declaration];
+	}
+
+	/**
+	 * sets the bounds of an array
+	 */
+	public void setBounds(int declaration, int low, int high) {
+		lows[declaration] = low;
+		highs[declaration] = high;
+	}
+
+	/**
+	 * @return number of parameters of a subprogram, which are the declarations right after it
+	 */
+	public int getParameterCount(int declaration) {
+		return lows[declaration];
+	}
+
+	/**
+	 * sets the number of parameters of a subprogram
+	 */
+	public void setParameterCount(int declaration, int count) {
+		lows[declaration] = count;
+	}
+
+	/**
+	 * @return slots in the frame of a subprogram, parameters included, set when its scope is closed
+	 */
+	public int getFrameSize(int declaration) {
+		return highs[declaration];
+	}
+
+	/**
+	 * sets the frame size of a subprogram
+	 */
+	public void setFrameSize(int declaration, int size) {
+		highs[declaration] = size;
+	}
+
+	/**
+	 * @param type TYPE_ constant
+	 * @return whether it is one of the array types
+	 */
+	public static boolean isArray(int type) {
+		return type == TYPE_INTEGER_ARRAY || type == TYPE_REAL_ARRAY;
+	}
+
+	/**
+	 * @param type an array type
+	 * @return the type of its elements
+	 */
+	public static int elementType(int type) {
+		return type == TYPE_REAL_ARRAY ? TYPE_REAL : TYPE_INTEGER;
+	}
+}
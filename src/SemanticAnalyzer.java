@@ -0,0 +1,904 @@
+import java.util.Arrays;
+
+/**
+ * the semantic passes, works out what every identifier in a syntax tree refers to and checks the types
+ *
+ * the tree is walked once, in order, declarations go into a ScopedSymbolTable as they are passed, a scope is
+ * opened for the program and for each subprogram, and every other identifier is looked up in the scopes open
+ * where it is, so a subprogram's locals shadow the program's variables and are gone once its body is done
+ *
+ * what each identifier token refers to is kept per token, for later phases, along with the table, whose
+ * declarations outlive their scopes, an identifier that is not declared, or declared twice in one scope,
+ * is reported to the Diagnostics, the tree has to be a complete parse, i.e. one without syntax errors
+ *
+ * if every identifier is declared the statements are walked again, by hand like the code generators walk them,
+ * to work out the type of every expression and check it fits where it is used, e.g. no real is assigned to an
+ * integer and a call has as many arguments as its subprogram has parameters, the types are kept per node so the
+ * code generators never work them out again, and a tree they are given has none of these mistakes
+ *
+ * an analyzer can be reused for any number of trees, but only by one thread at a time
+ * @author Mike, Ryan
+ */
+public class SemanticAnalyzer {
+
+	/*********************\
+	|* custom exceptions *|
+	\*********************/
+
+	/**
+	 * something the grammar allows but the language does not
+	 */
+	public static class SemanticException extends Exception {
+		private static final long serialVersionUID = 3088710582604931774L;
+
+		public SemanticException(String message){
+			super(message);
+		}
+	}
+
+	/**
+	 * kind of the ARRAY keyword
+	 */
+	private static final int ARRAY_KIND = TerminalKind.ofFixedLexeme("ARRAY");
+
+	/**
+	 * kind of the INTEGER keyword
+	 */
+	private static final int INTEGER_KIND = TerminalKind.ofFixedLexeme("INTEGER");
+
+	/**
+	 * kind of the REAL keyword
+	 */
+	private static final int REAL_KIND = TerminalKind.ofFixedLexeme("REAL");
+
+	/**
+	 * kind of the FUNCTION keyword
+	 */
+	private static final int FUNCTION_KIND = TerminalKind.ofFixedLexeme("FUNCTION");
+
+	/**
+	 * kind of the IF keyword
+	 */
+	private static final int IF_KIND = TerminalKind.ofFixedLexeme("IF");
+
+	/**
+	 * kind of the WHILE keyword
+	 */
+	private static final int WHILE_KIND = TerminalKind.ofFixedLexeme("WHILE");
+
+	/**
+	 * kind of the NOT keyword
+	 */
+	private static final int NOT_KIND = TerminalKind.ofFixedLexeme("NOT");
+
+	/**
+	 * kind of the [ that starts an array element being assigned
+	 */
+	private static final int BRACKET_KIND = TerminalKind.ofFixedLexeme("[");
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * declarations and scopes of the last tree
+	 */
+	private final ScopedSymbolTable scopes;
+
+	/**
+	 * symbol ids of the nonterminals the walk cares about
+	 */
+	private final int program, id_list, declarations, type, standard_type, subprogram_declaration,
+		subprogram_head, arguments, id_statement, factor, compound_statement, variable_statement, term, sign;
+
+	/**
+	 * per token of the last tree: the declaration it refers to, NONE if it is not an identifier
+	 */
+	private int[] token_declarations;
+
+	/**
+	 * per node of the last tree: TYPE_ constant of an expression, see getType
+	 */
+	private int[] node_types;
+
+	/**
+	 * slots the program's own frame used in the last tree
+	 */
+	private int program_frame_size;
+
+	/**
+	 * where errors go, null to not report any
+	 */
+	private Diagnostics diagnostics;
+
+	/**
+	 * errors found in the last tree so far
+	 */
+	private int error_count;
+
+	/**
+	 * set once the diagnostics are full, nothing more gets looked at
+	 */
+	private boolean stopped;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor
+	 * @param table the grammar the trees are parsed with
+	 */
+	public SemanticAnalyzer(ParseTable table) {
+		scopes = new ScopedSymbolTable();
+		program = table.getNonterminalId("Program");
+		id_list = table.getNonterminalId("IdList");
+		declarations = table.getNonterminalId("Declarations");
+		type = table.getNonterminalId("Type");
+		standard_type = table.getNonterminalId("StandardType");
+		subprogram_declaration = table.getNonterminalId("SubprogramDeclaration");
+		subprogram_head = table.getNonterminalId("SubprogramHead");
+		arguments = table.getNonterminalId("Arguments");
+		id_statement = table.getNonterminalId("IdStatement");
+		factor = table.getNonterminalId("Factor");
+		compound_statement = table.getNonterminalId("CompoundStatement");
+		variable_statement = table.getNonterminalId("VariableStatement");
+		term = table.getNonterminalId("Term");
+		sign = table.getNonterminalId("Sign");
+		token_declarations = new int[0];
+		node_types = new int[0];
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * report errors from now on
+	 * @param _diagnostics where to, null to stop
+	 */
+	public void setDiagnostics(Diagnostics _diagnostics) {
+		diagnostics = _diagnostics;
+	}
+
+	/**
+	 * works out what every identifier in a tree refers to, then the type of every expression
+	 * @param tree a complete parse
+	 * @param tokens the parse's tokens
+	 * @param symbol_table the table the tokens were scanned with
+	 * @return whether there were no errors
+	 */
+	public boolean analyze(SyntaxTree tree, TokenBuffer tokens, SymbolTable symbol_table) {
+		scopes.clear();
+		error_count = 0;
+		stopped = false;
+		if(token_declarations.length < tokens.size()) {
+			token_declarations = new int[tokens.size()];
+		}
+		Arrays.fill(token_declarations, ScopedSymbolTable.NONE);
+		if(node_types.length < tree.size()) {
+			node_types = new int[tree.size()];
+		}
+		Arrays.fill(node_types, ScopedSymbolTable.TYPE_NONE);
+		tree.walk(new Walk(tokens, symbol_table));
+		//types can only be worked out once every identifier refers to something
+		if(error_count == 0) {
+			new Check(tree, tokens, symbol_table).program();
+		}
+		return error_count == 0;
+	}
+
+	/**
+	 * @return declarations and scopes of the last tree, every scope is closed again by the end
+	 */
+	public ScopedSymbolTable getScopes() {
+		return scopes;
+	}
+
+	/**
+	 * @param token index of a token in the last tree's TokenBuffer
+	 * @return the declaration the token refers to, NONE if it is not an identifier or not declared
+	 */
+	public int getDeclaration(int token) {
+		return token < token_declarations.length ? token_declarations[token] : ScopedSymbolTable.NONE;
+	}
+
+	/**
+	 * @param node an Expression, SimpleExpression, Term or Factor of the last tree, or the tail of a SimpleExpression
+	 * or Term, which has the type of everything up to and including its operation
+	 * @return its TYPE_ constant, an array type for a bare array variable, TYPE_NONE if it has no value, only
+	 * meaningful if the tree had no errors
+	 */
+	public int getType(int node) {
+		return node < node_types.length ? node_types[node] : ScopedSymbolTable.TYPE_NONE;
+	}
+
+	/**
+	 * @return slots the program's variables and parameters take in its frame
+	 */
+	public int getProgramFrameSize() {
+		return program_frame_size;
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * reports an error, stopping the walk once the diagnostics are full
+	 */
+	private void error(String message) {
+		error_count++;
+		if(diagnostics != null && !diagnostics.report(new SemanticException(message))) {
+			stopped = true;
+		}
+	}
+
+	/*****************\
+	|* inner classes *|
+	\*****************/
+
+	/**
+	 * one walk over a tree, a nonterminal is recognized on the way down and finished on the way back up
+	 */
+	private class Walk implements SyntaxTree.Visitor {
+
+		/**
+		 * the parse's tokens
+		 */
+		private final TokenBuffer tokens;
+
+		/**
+		 * the table the tokens were scanned with
+		 */
+		private final SymbolTable symbol_table;
+
+		/**
+		 * symbol of each nonterminal from the root down to where the walk is
+		 */
+		private int[] path = new int[64];
+
+		/**
+		 * number of nonterminals in path
+		 */
+		private int path_size = 0;
+
+		/**
+		 * kind the names of the IdList being walked are declared as
+		 */
+		private int declare_kind = ScopedSymbolTable.KIND_VARIABLE;
+
+		/**
+		 * whether the names of the IdList being walked get the type after it, all but the program's do
+		 */
+		private boolean typed_names;
+
+		/**
+		 * declarations waiting for the type after them
+		 */
+		private int[] pending = new int[16];
+
+		/**
+		 * number of declarations in pending
+		 */
+		private int pending_count = 0;
+
+		/**
+		 * the type being walked is an array
+		 */
+		private boolean array;
+
+		/**
+		 * integer or real, from the last StandardType
+		 */
+		private int base_type = ScopedSymbolTable.TYPE_NONE;
+
+		/**
+		 * bounds of the array being walked
+		 */
+		private final int[] bounds = new int[2];
+
+		/**
+		 * number of bounds walked
+		 */
+		private int bound_count;
+
+		/**
+		 * whether the subprogram whose head is being walked is a function
+		 */
+		private boolean function;
+
+		/**
+		 * the subprogram whose head or body is being walked, NONE in the program's
+		 */
+		private int subprogram = ScopedSymbolTable.NONE;
+
+		/**
+		 * first declaration after the subprogram's own, i.e. its first parameter
+		 */
+		private int first_parameter;
+
+		Walk(TokenBuffer _tokens, SymbolTable _symbol_table) {
+			tokens = _tokens;
+			symbol_table = _symbol_table;
+		}
+
+		@Override
+		public boolean enter(SyntaxTree tree, int node) {
+			if(stopped) {
+				return false;
+			}
+			if(tree.isNonterminal(node)) {
+				int symbol = tree.getSymbol(node);
+				enterNonterminal(symbol);
+				if(path_size == path.length) {
+					path = Arrays.copyOf(path, path_size * 2);
+				}
+				path[path_size++] = symbol;
+				return true;
+			}
+			int token = tree.getToken(node);
+			if(token != SyntaxTree.NONE) {
+				terminal(token);
+			}
+			return false;
+		}
+
+		@Override
+		public void leave(SyntaxTree tree, int node) {
+			if(stopped || !tree.isNonterminal(node)) {
+				return;
+			}
+			int symbol = path[--path_size];
+			int parent = path_size == 0 ? -1 : path[path_size-1];
+			if(symbol == type) {
+				int declared_type = array
+					? (base_type == ScopedSymbolTable.TYPE_REAL ? ScopedSymbolTable.TYPE_REAL_ARRAY : ScopedSymbolTable.TYPE_INTEGER_ARRAY)
+					: base_type;
+				for(int i = 0; i < pending_count; i++) {
+					scopes.setType(pending[i], declared_type);
+					if(array) {
+						scopes.setBounds(pending[i], bounds[0], bounds[1]);
+					}
+				}
+				pending_count = 0;
+			}
+			else if(symbol == standard_type && parent == subprogram_head && subprogram != ScopedSymbolTable.NONE) {
+				//a function's return type
+				scopes.setType(subprogram, base_type);
+			}
+			else if(symbol == arguments && subprogram != ScopedSymbolTable.NONE) {
+				scopes.setParameterCount(subprogram, scopes.getDeclarationCount() - first_parameter);
+			}
+			else if(symbol == subprogram_declaration) {
+				int frame_size = scopes.closeScope();
+				if(subprogram != ScopedSymbolTable.NONE) {
+					scopes.setFrameSize(subprogram, frame_size);
+				}
+				subprogram = ScopedSymbolTable.NONE;
+			}
+			else if(symbol == program) {
+				program_frame_size = scopes.closeScope();
+			}
+		}
+
+		/**
+		 * sets up for a nonterminal on the way down
+		 */
+		private void enterNonterminal(int symbol) {
+			int parent = path_size == 0 ? -1 : path[path_size-1];
+			if(symbol == program) {
+				scopes.openScope();
+			}
+			else if(symbol == id_list) {
+				//variables under Declarations, parameters of the program or under a ParameterList
+				declare_kind = parent == declarations ? ScopedSymbolTable.KIND_VARIABLE : ScopedSymbolTable.KIND_PARAMETER;
+				//the only IdList not followed by a type is the program's
+				typed_names = parent != program;
+			}
+			else if(symbol == type) {
+				array = false;
+				bound_count = 0;
+			}
+			else if(symbol == subprogram_declaration) {
+				subprogram = ScopedSymbolTable.NONE;
+				function = false;
+			}
+		}
+
+		/**
+		 * handles an identifier, keyword or literal, by where in the tree it is
+		 */
+		private void terminal(int token) {
+			int kind = tokens.getKind(token);
+			int parent = path[path_size-1];
+			if(kind == TerminalKind.IDENTIFIER) {
+				identifier(token, parent);
+			}
+			else if(kind == INTEGER_KIND) {
+				base_type = ScopedSymbolTable.TYPE_INTEGER;
+			}
+			else if(kind == REAL_KIND) {
+				base_type = ScopedSymbolTable.TYPE_REAL;
+			}
+			else if(kind == ARRAY_KIND) {
+				array = true;
+			}
+			else if(kind == FUNCTION_KIND) {
+				function = true;
+			}
+			else if(parent == type && (kind == TerminalKind.INTEGER_LITERAL || kind == TerminalKind.REAL_LITERAL)) {
+				LexemeTerminal bound = symbol_table.getSymbol(tokens.getSymbolIndex(token));
+				if(kind != TerminalKind.INTEGER_LITERAL) {
+					error("Array bound '"+bound.getLexeme()+"' is not an integer on line: #"+tokens.getLine(token));
+				}
+				else if(bound_count < bounds.length) {
+					bounds[bound_count++] = ((NumberSymbol) bound).value.intValue();
+					if(bound_count == 2 && bounds[0] > bounds[1]) {
+						error("Array bounds "+bounds[0]+" .. "+bounds[1]+" are empty on line: #"+tokens.getLine(token));
+					}
+				}
+			}
+		}
+
+		/**
+		 * declares or looks up an identifier
+		 */
+		private void identifier(int token, int parent) {
+			int name = tokens.getSymbolIndex(token);
+			if(parent == id_statement || parent == factor) {
+				int declaration = scopes.lookup(name);
+				if(declaration == ScopedSymbolTable.NONE) {
+					error("Undeclared identifier '"+lexeme(token)+"' on line: #"+tokens.getLine(token));
+				}
+				token_declarations[token] = declaration;
+			}
+			else if(parent == program) {
+				token_declarations[token] = declare(token, name, ScopedSymbolTable.KIND_PROGRAM);
+			}
+			else if(parent == subprogram_head) {
+				subprogram = declare(token, name, function ? ScopedSymbolTable.KIND_FUNCTION : ScopedSymbolTable.KIND_PROCEDURE);
+				token_declarations[token] = subprogram;
+				//the subprogram's own name is in the enclosing scope, so it can call itself, and a function set its result
+				scopes.openScope();
+				first_parameter = scopes.getDeclarationCount();
+			}
+			else {
+				//IdList or its tail, the program's parameters have no type, everything else gets the one after it
+				int declaration = declare(token, name, declare_kind);
+				token_declarations[token] = declaration;
+				if(declaration != ScopedSymbolTable.NONE && typed_names) {
+					if(pending_count == pending.length) {
+						pending = Arrays.copyOf(pending, pending_count * 2);
+					}
+					pending[pending_count++] = declaration;
+				}
+			}
+		}
+
+		/**
+		 * declares a name in the innermost scope, reporting it if it is already declared there
+		 * @return the declaration, NONE if it was already declared
+		 */
+		private int declare(int token, int name, int kind) {
+			int declaration = scopes.declare(name, kind, ScopedSymbolTable.TYPE_NONE);
+			if(declaration == ScopedSymbolTable.NONE) {
+				error("Identifier '"+lexeme(token)+"' already declared on line: #"+tokens.getLine(token));
+			}
+			return declaration;
+		}
+
+		/**
+		 * @return the text of a token
+		 */
+		private String lexeme(int token) {
+			return symbol_table.getSymbol(tokens.getSymbolIndex(token)).getLexeme();
+		}
+	}
+
+	/**
+	 * the type check of one tree, walked by hand, every list tail is followed in a loop
+	 */
+	private class Check {
+
+		/**
+		 * the parse
+		 */
+		private final SyntaxTree tree;
+
+		/**
+		 * the parse's tokens
+		 */
+		private final TokenBuffer tokens;
+
+		/**
+		 * the table the tokens were scanned with
+		 */
+		private final SymbolTable symbol_table;
+
+		/**
+		 * the subprogram whose body is being checked, NONE for the program's
+		 */
+		private int subprogram = ScopedSymbolTable.NONE;
+
+		/**
+		 * line of the statement being checked, errors are reported on it
+		 */
+		private int line;
+
+		Check(SyntaxTree _tree, TokenBuffer _tokens, SymbolTable _symbol_table) {
+			tree = _tree;
+			tokens = _tokens;
+			symbol_table = _symbol_table;
+		}
+
+		/**
+		 * checks every subprogram's body, then the program's
+		 */
+		void program() {
+			int root = tree.getRoot();
+			for(int list = child(root, 7); tree.getFirstChild(list) != SyntaxTree.NONE; list = child(list, 2)) {
+				int declaration = child(list, 0);
+				subprogram = getDeclaration(tree.getToken(child(child(declaration, 0), 1)));
+				compoundStatement(child(declaration, 2));
+			}
+			subprogram = ScopedSymbolTable.NONE;
+			compoundStatement(child(root, 8));
+		}
+
+		/**
+		 * checks the statements of a CompoundStatement
+		 */
+		private void compoundStatement(int node) {
+			int list = tree.getFirstChild(child(node, 1));
+			if(list == SyntaxTree.NONE) {
+				return;
+			}
+			statement(child(list, 0));
+			for(int tail = child(list, 1); tree.getFirstChild(tail) != SyntaxTree.NONE; tail = child(tail, 2)) {
+				statement(child(tail, 1));
+			}
+		}
+
+		/**
+		 * checks a Statement
+		 */
+		private void statement(int node) {
+			if(stopped) {
+				return;
+			}
+			int first = tree.getFirstChild(node);
+			int symbol = tree.getSymbol(first);
+			if(symbol == id_statement) {
+				idStatement(first);
+			}
+			else if(symbol == compound_statement) {
+				compoundStatement(first);
+			}
+			else {
+				//IF or WHILE, a condition holds for any integer but 0
+				int kind = tokens.getKind(tree.getToken(first));
+				line = tokens.getLine(tree.getToken(first));
+				int condition = expression(child(node, 1));
+				if(condition != ScopedSymbolTable.TYPE_INTEGER && condition != ScopedSymbolTable.TYPE_NONE) {
+					error("Condition is not an integer on line: #"+line);
+				}
+				statement(child(node, 3));
+				if(kind == IF_KIND) {
+					statement(child(node, 5));
+				}
+				else if(kind != WHILE_KIND) {
+					//cannot happen, the grammar has no other statement
+					throw new IllegalStateException("unexpected statement");
+				}
+			}
+		}
+
+		/**
+		 * checks an assignment or procedure call
+		 */
+		private void idStatement(int node) {
+			int token = tree.getToken(child(node, 0));
+			line = tokens.getLine(token);
+			int declaration = getDeclaration(token);
+			int kind = scopes.getKind(declaration);
+			int type = scopes.getType(declaration);
+			int rest = tree.getFirstChild(child(node, 1));
+			if(tree.getSymbol(rest) != variable_statement) {
+				//ProcedureStatement, ( ExpressionList ) or nothing, a function can be called for what it does
+				if(kind != ScopedSymbolTable.KIND_PROCEDURE && kind != ScopedSymbolTable.KIND_FUNCTION) {
+					error("'"+lexeme(token)+"' is not a procedure on line: #"+line);
+					return;
+				}
+				call(declaration, token, tree.getFirstChild(rest) == SyntaxTree.NONE ? SyntaxTree.NONE : child(rest, 1));
+				return;
+			}
+
+			if(tokens.getKind(tree.getToken(child(rest, 0))) == BRACKET_KIND) {
+				if(!isVariable(kind) || !ScopedSymbolTable.isArray(type)) {
+					error("'"+lexeme(token)+"' is not an array on line: #"+line);
+					return;
+				}
+				index(child(rest, 1));
+				value(child(rest, 4), ScopedSymbolTable.elementType(type), token);
+			}
+			else if((declaration == subprogram && kind == ScopedSymbolTable.KIND_FUNCTION)
+					|| (isVariable(kind) && number(type))) {
+				//a function's result is set by assigning to its name
+				value(child(rest, 1), type, token);
+			}
+			else {
+				error("Can not assign to '"+lexeme(token)+"' on line: #"+line);
+			}
+		}
+
+		/**
+		 * checks an expression can be assigned to something of a type, an integer can be made a real
+		 * @param token what it is assigned to, for errors
+		 */
+		private void value(int node, int type, int token) {
+			int value_type = expression(node);
+			if(type == ScopedSymbolTable.TYPE_REAL && value_type == ScopedSymbolTable.TYPE_INTEGER) {
+				return;
+			}
+			if(ScopedSymbolTable.isArray(value_type)) {
+				error("Expected a number, not an array, on line: #"+line);
+			}
+			else if(type != value_type && value_type != ScopedSymbolTable.TYPE_NONE) {
+				error("Can not assign a real to integer '"+lexeme(token)+"' on line: #"+line);
+			}
+		}
+
+		/**
+		 * checks an array index is an integer
+		 */
+		private void index(int node) {
+			int type = expression(node);
+			if(type != ScopedSymbolTable.TYPE_INTEGER && type != ScopedSymbolTable.TYPE_NONE) {
+				error("Array index is not an integer on line: #"+line);
+			}
+		}
+
+		/**
+		 * checks a call of a function or procedure
+		 * @param arguments ExpressionList, NONE for no arguments
+		 * @return TYPE_ constant of what it returns, TYPE_NONE for a procedure
+		 */
+		private int call(int declaration, int token, int arguments) {
+			int parameter_count = scopes.getParameterCount(declaration);
+			int argument_count = 0;
+			if(arguments != SyntaxTree.NONE) {
+				argument(declaration, argument_count++, child(arguments, 0), token);
+				for(int tail = child(arguments, 1); tree.getFirstChild(tail) != SyntaxTree.NONE; tail = child(tail, 2)) {
+					argument(declaration, argument_count++, child(tail, 1), token);
+				}
+			}
+			if(argument_count != parameter_count) {
+				error("'"+lexeme(token)+"' takes "+parameter_count+" arguments, not "+argument_count+", on line: #"+line);
+			}
+			return scopes.getKind(declaration) == ScopedSymbolTable.KIND_FUNCTION ? scopes.getType(declaration) : ScopedSymbolTable.TYPE_NONE;
+		}
+
+		/**
+		 * checks one argument of a call fits its parameter, an integer can be made a real, an array has to
+		 * have the parameter's bounds
+		 */
+		private void argument(int declaration, int position, int node, int token) {
+			int type = expression(node);
+			if(position >= scopes.getParameterCount(declaration) || type == ScopedSymbolTable.TYPE_NONE) {
+				return;
+			}
+			int parameter = declaration + 1 + position;
+			int parameter_type = scopes.getType(parameter);
+			if(parameter_type == ScopedSymbolTable.TYPE_REAL && type == ScopedSymbolTable.TYPE_INTEGER) {
+				return;
+			}
+			if(type != parameter_type) {
+				error("Argument "+(position+1)+" of '"+lexeme(token)+"' has the wrong type on line: #"+line);
+			}
+			else if(ScopedSymbolTable.isArray(type) && !sameBounds(parameter, node)) {
+				error("Argument "+(position+1)+" of '"+lexeme(token)+"' has the wrong bounds on line: #"+line);
+			}
+		}
+
+		/**
+		 * @param parameter an array parameter
+		 * @param node an expression of the same array type, which can only be an array variable, maybe in parentheses
+		 * @return whether the variable's bounds are the parameter's
+		 */
+		private boolean sameBounds(int parameter, int node) {
+			int at = node;
+			while(tree.getSymbol(at) != factor || tokens.getKind(tree.getToken(tree.getFirstChild(at))) != TerminalKind.IDENTIFIER) {
+				//down to the Factor, and from ( Expression ) to the Expression
+				at = tree.getSymbol(at) == factor ? child(at, 1) : tree.getFirstChild(at);
+			}
+			int declaration = getDeclaration(tree.getToken(tree.getFirstChild(at)));
+			return scopes.getLow(declaration) == scopes.getLow(parameter) && scopes.getHigh(declaration) == scopes.getHigh(parameter);
+		}
+
+		/**
+		 * works out the type of an Expression, a comparison is an integer, 1 if it holds and 0 if not
+		 * @return its TYPE_ constant
+		 */
+		private int expression(int node) {
+			int tail = child(node, 1);
+			int type = simpleExpression(child(node, 0));
+			if(tree.getFirstChild(tail) != SyntaxTree.NONE) {
+				int right = simpleExpression(child(tail, 1));
+				checkNumber(type);
+				checkNumber(right);
+				type = ScopedSymbolTable.TYPE_INTEGER;
+			}
+			node_types[node] = type;
+			return type;
+		}
+
+		/**
+		 * works out the type of a SimpleExpression
+		 * @return its TYPE_ constant
+		 */
+		private int simpleExpression(int node) {
+			int at = tree.getFirstChild(node);
+			boolean signed = tree.getSymbol(at) == sign;
+			if(signed) {
+				at = tree.getNextSibling(at);
+			}
+			int type = term(at);
+			if(signed && !number(type)) {
+				if(type != ScopedSymbolTable.TYPE_NONE) {
+					error("Sign of something that is not a number on line: #"+line);
+				}
+				type = ScopedSymbolTable.TYPE_NONE;
+			}
+			for(int tail = tree.getNextSibling(at); tree.getFirstChild(tail) != SyntaxTree.NONE; tail = child(tail, 2)) {
+				type = operation(type, tail);
+			}
+			node_types[node] = type;
+			return type;
+		}
+
+		/**
+		 * works out the type of a Term
+		 * @return its TYPE_ constant
+		 */
+		private int term(int node) {
+			int type = factor(child(node, 0));
+			for(int tail = child(node, 1); tree.getFirstChild(tail) != SyntaxTree.NONE; tail = child(tail, 2)) {
+				type = operation(type, tail);
+			}
+			node_types[node] = type;
+			return type;
+		}
+
+		/**
+		 * works out the type of an operation, / always gives a real, DIV and MOD take and give integers, and
+		 * the rest give a real if either side is one
+		 * @param left TYPE_ constant of what is left of the operator
+		 * @param tail the SimpleExpression or Term tail with the operator and its right side
+		 * @return TYPE_ constant of the result
+		 */
+		private int operation(int left, int tail) {
+			int right = child(tail, 1);
+			int right_type = tree.getSymbol(right) == term ? term(right) : factor(right);
+			String text = lexeme(tree.getToken(child(tail, 0)));
+			int type;
+			if(!number(left) || !number(right_type)) {
+				checkNumber(left);
+				checkNumber(right_type);
+				type = ScopedSymbolTable.TYPE_NONE;
+			}
+			else if(text.equals("DIV") || text.equals("MOD")) {
+				if(left != ScopedSymbolTable.TYPE_INTEGER || right_type != ScopedSymbolTable.TYPE_INTEGER) {
+					error(text+" of something that is not an integer on line: #"+line);
+				}
+				type = ScopedSymbolTable.TYPE_INTEGER;
+			}
+			else if(text.equals("/") || left == ScopedSymbolTable.TYPE_REAL || right_type == ScopedSymbolTable.TYPE_REAL) {
+				type = ScopedSymbolTable.TYPE_REAL;
+			}
+			else {
+				type = ScopedSymbolTable.TYPE_INTEGER;
+			}
+			node_types[tail] = type;
+			return type;
+		}
+
+		/**
+		 * works out the type of a Factor
+		 * @return its TYPE_ constant
+		 */
+		private int factor(int node) {
+			node_types[node] = factorType(node);
+			return node_types[node];
+		}
+
+		/**
+		 * @return the TYPE_ constant of a Factor
+		 */
+		private int factorType(int node) {
+			int token = tree.getToken(tree.getFirstChild(node));
+			int kind = tokens.getKind(token);
+			if(kind == TerminalKind.INTEGER_LITERAL) {
+				return ScopedSymbolTable.TYPE_INTEGER;
+			}
+			if(kind == TerminalKind.REAL_LITERAL) {
+				return ScopedSymbolTable.TYPE_REAL;
+			}
+			if(kind == NOT_KIND) {
+				int type = factor(child(node, 1));
+				if(type != ScopedSymbolTable.TYPE_INTEGER && type != ScopedSymbolTable.TYPE_NONE) {
+					error("NOT of something that is not an integer on line: #"+line);
+				}
+				return ScopedSymbolTable.TYPE_INTEGER;
+			}
+			if(kind != TerminalKind.IDENTIFIER) {
+				//( Expression )
+				return expression(child(node, 1));
+			}
+
+			int declaration = getDeclaration(token);
+			int rest = child(node, 1);
+			int arguments = tree.getFirstChild(rest) == SyntaxTree.NONE ? SyntaxTree.NONE : child(rest, 1);
+			int declaration_kind = scopes.getKind(declaration);
+			int type = scopes.getType(declaration);
+			if(declaration_kind == ScopedSymbolTable.KIND_FUNCTION) {
+				//in its own body too, where the name alone calls it again
+				return call(declaration, token, arguments);
+			}
+			if(!isVariable(declaration_kind) || type == ScopedSymbolTable.TYPE_NONE) {
+				error("'"+lexeme(token)+"' has no value on line: #"+line);
+				return ScopedSymbolTable.TYPE_NONE;
+			}
+			if(arguments == SyntaxTree.NONE) {
+				return type;
+			}
+			if(!ScopedSymbolTable.isArray(type) || tree.getFirstChild(child(arguments, 1)) != SyntaxTree.NONE) {
+				error("'"+lexeme(token)+"' is not an array of one dimension on line: #"+line);
+				return ScopedSymbolTable.TYPE_NONE;
+			}
+			index(child(arguments, 0));
+			return ScopedSymbolTable.elementType(type);
+		}
+
+		/**
+		 * reports an array used where a number has to be, nothing is reported for TYPE_NONE, which already was
+		 */
+		private void checkNumber(int type) {
+			if(ScopedSymbolTable.isArray(type)) {
+				error("Expected a number, not an array, on line: #"+line);
+			}
+		}
+
+		/**
+		 * @return whether a declaration kind holds a value
+		 */
+		private boolean isVariable(int kind) {
+			return kind == ScopedSymbolTable.KIND_VARIABLE || kind == ScopedSymbolTable.KIND_PARAMETER;
+		}
+
+		/**
+		 * @return whether a type is a number, i.e. not an array or nothing
+		 */
+		private boolean number(int type) {
+			return type == ScopedSymbolTable.TYPE_INTEGER || type == ScopedSymbolTable.TYPE_REAL;
+		}
+
+		/**
+		 * @return a node's child by position
+		 */
+		private int child(int node, int position) {
+			int at = tree.getFirstChild(node);
+			for(int i = 0; i < position; i++) {
+				at = tree.getNextSibling(at);
+			}
+			return at;
+		}
+
+		/**
+		 * @return the text of a token
+		 */
+		private String lexeme(int token) {
+			return symbol_table.getSymbol(tokens.getSymbolIndex(token)).getLexeme();
+		}
+	}
+}
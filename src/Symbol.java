@@ -29,11 +29,13 @@ public abstract class Symbol {
 	}
 	
 	/**
-	 * returns a list of Symbols that this Symbol can be replaced with if the passed token is found
-	 * throws an exception when the passed token is unexpected (not in non-terminal parse table or does not match for terminals)
-	 * @param next_token -- the token we just pulled out of the source code
+	 * returns a list of Symbols that this Symbol can be replaced with if the passed terminal is found
+	 * throws an exception when the passed terminal is unexpected (not in non-terminal parse table or does not match for terminals)
+	 * takes the terminal and line rather than a Token so the parse loop never has to allocate one
+	 * @param next_terminal -- the terminal of the token we just pulled out of the source code
+	 * @param line_number -- line the token was on, only used for the error
 	 */
-	public abstract List<Symbol> getProduction(Token next_token) throws UnexpectedTokenException;
+	public abstract List<Symbol> getProduction(Terminal next_terminal, int line_number) throws UnexpectedTokenException;
 	
 
 	/**
@@ -46,10 +48,10 @@ public abstract class Symbol {
 
 	/**
 	 * Print appropriate name/value for the symbol
-	 * given an optional found token
+	 * given an optional found terminal
 	 * @return
 	 */
-	public abstract String print(Token found);
+	public abstract String print(Terminal found);
 	
 	
 	/**
@@ -74,6 +76,7 @@ public abstract class Symbol {
 	 * so we do this to force HashMap into it's conflict resolution mode full time, this is acceptable because the hash map being used with
 	 * Symbols as keys will only have at most half a dozen positions, and will typically only have 2. we are basically just using HashMap
 	 * in this instance as a convenience interface for a linear search
+	 * parsing does not go through these maps any more, productions are looked up in the dense ParseTable
 	 */
 	@Override
 	public int hashCode(){
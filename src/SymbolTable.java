@@ -1,71 +1,157 @@
-import java.util.Hashtable;
+import java.util.Arrays;
 
 /**
  * Represents the symbol table
  * assumes anything not already in symbol table is an identifier and adds it on first discovery
+ * 
+ * lookups are case insensitive and work directly on a range of characters, so finding a symbol that
+ * is already in the table never allocates. keywords and operators are found with a fixed perfect hash,
+ * everything else lives in an open addressing hash table whose text is kept in one char arena.
+ * every symbol gets a dense int id, keywords and operators first.
+ * 
+ * not thread safe, every compile gets its own table
  * @author Mike, Ryan
  */
-public class SymbolTable extends Hashtable<String, LexemeTerminal> {
-
+public class SymbolTable {
+	
+	/**
+	 * keywords, operators and punctuation, shared by every table since LexemeTerminals are immutable
+	 * a symbol's position here is its id
+	 */
+	private static final LexemeTerminal[] FIXED_SYMBOLS = {
+		new LexemeTerminal("("),
+		new LexemeTerminal(")"),
+		new LexemeTerminal("["),
+		new LexemeTerminal("]"),
+		new LexemeTerminal(":"),
+		new LexemeTerminal(";"),
+		new LexemeTerminal("."),
+		new LexemeTerminal(","),
+		new RelationalOperatorSymbol("<>"),
+		new RelationalOperatorSymbol("<="),
+		new RelationalOperatorSymbol(">="),
+		new RelationalOperatorSymbol("="),
+		new RelationalOperatorSymbol("<"),
+		new LexemeTerminal(">"),
+		new AdditionOperatorSymbol("+"),
+		new AdditionOperatorSymbol("-"),
+		new MultiplicationOperatorSymbol("DIV"),
+		new MultiplicationOperatorSymbol("MOD"),
+		new MultiplicationOperatorSymbol("/"),
+		new MultiplicationOperatorSymbol("*"),
+		new AssignmentOperatorSymbol(":="),
+		new LexemeTerminal("NOT"),
+		new LexemeTerminal("IF"),
+		new LexemeTerminal("THEN"),
+		new LexemeTerminal("ELSE"),
+		new LexemeTerminal("WHILE"),
+		new LexemeTerminal("DO"),
+		new LexemeTerminal("VAR"),
+		new LexemeTerminal("FUNCTION"),
+		new LexemeTerminal("PROCEDURE"),
+		new LexemeTerminal("ARRAY"),
+		new LexemeTerminal("OF"),
+		new LexemeTerminal("BEGIN"),
+		new LexemeTerminal("END"),
+		new LexemeTerminal("INTEGER"),
+		new LexemeTerminal("REAL"),
+		new LexemeTerminal("PROGRAM")
+	};
+	
+	/**
+	 * number of hash slots a new table starts with, must be a power of two
+	 */
+	private static final int INITIAL_SLOTS = 256;
+	
+	/**
+	 * number of characters the arena starts with
+	 */
+	private static final int INITIAL_ARENA = 4096;
+	
+	/**********************\
+	|* private properties *|
+	\**********************/
+	
+	/**
+	 * open addressing hash table, each slot holds a symbol id + 1, 0 means empty
+	 */
+	private int[] slots;
+	
+	/**
+	 * upper case text of every symbol that is not a fixed symbol, back to back
+	 */
+	private char[] arena;
+	
+	/**
+	 * number of characters of arena in use
+	 */
+	private int arena_size;
+	
+	/**
+	 * per id: offset of the symbol's text in the arena
+	 */
+	private int[] text_starts;
+	
+	/**
+	 * per id: length of the symbol's text
+	 */
+	private int[] text_lengths;
+	
 	/**
-	 * For Hashtable throws
+	 * per id: hash of the symbol's text
 	 */
-	private static final long serialVersionUID = -2427108052657869701L;
+	private int[] hashes;
 	
 	/**
-	 * overloading put() to work cleanly with symbols
-	 * @param symbol
+	 * per id: the symbol its self
 	 */
-	private void put(LexemeTerminal symbol) {
-		super.put(symbol.getLexeme(), symbol);
+	private LexemeTerminal[] symbols;
+	
+	/**
+	 * number of ids handed out
+	 */
+	private int size;
+	
+	/****************\
+	|* constructors *|
+	\****************/
+	
+	/**
+	 * constructor, the table starts with only the fixed symbols
+	 */
+	public SymbolTable() {
+		slots = new int[INITIAL_SLOTS];
+		arena = new char[INITIAL_ARENA];
+		arena_size = 0;
+		text_starts = new int[INITIAL_SLOTS];
+		text_lengths = new int[INITIAL_SLOTS];
+		hashes = new int[INITIAL_SLOTS];
+		symbols = new LexemeTerminal[INITIAL_SLOTS];
+		System.arraycopy(FIXED_SYMBOLS, 0, symbols, 0, FIXED_SYMBOLS.length);
+		size = FIXED_SYMBOLS.length;
 	}
 	
+	/******************\
+	|* public methods *|
+	\******************/
+	
 	/**
 	 * Initialize symbol table to its default state with all keywords/operators set
 	 * @return
 	 */
 	public static SymbolTable initializeSymbolTable() {
-		SymbolTable symbol_table = new SymbolTable();
-		symbol_table.put(new LexemeTerminal("("));
-		symbol_table.put(new LexemeTerminal(")"));
-		symbol_table.put(new LexemeTerminal("["));
-		symbol_table.put(new LexemeTerminal("]"));
-		symbol_table.put(new LexemeTerminal(":"));
-		symbol_table.put(new LexemeTerminal(";"));
-		symbol_table.put(new LexemeTerminal("."));
-		symbol_table.put(new LexemeTerminal(","));
-		symbol_table.put(new RelationalOperatorSymbol("<>"));
-		symbol_table.put(new RelationalOperatorSymbol("<="));
-		symbol_table.put(new RelationalOperatorSymbol(">="));
-		symbol_table.put(new RelationalOperatorSymbol("="));
-		symbol_table.put(new RelationalOperatorSymbol("<"));
-		symbol_table.put(new LexemeTerminal(">"));
-		symbol_table.put(new AdditionOperatorSymbol("+"));
-		symbol_table.put(new AdditionOperatorSymbol("-"));
-		symbol_table.put(new MultiplicationOperatorSymbol("DIV"));
-		symbol_table.put(new MultiplicationOperatorSymbol("MOD"));
-		symbol_table.put(new MultiplicationOperatorSymbol("/"));
-		symbol_table.put(new MultiplicationOperatorSymbol("*"));
-		symbol_table.put(new AssignmentOperatorSymbol(":="));
-		symbol_table.put(new LexemeTerminal("NOT"));
-		symbol_table.put(new LexemeTerminal("IF"));
-		symbol_table.put(new LexemeTerminal("THEN"));
-		symbol_table.put(new LexemeTerminal("ELSE"));
-		symbol_table.put(new LexemeTerminal("WHILE"));
-		symbol_table.put(new LexemeTerminal("DO"));
-		symbol_table.put(new LexemeTerminal("VAR"));
-		symbol_table.put(new LexemeTerminal("FUNCTION"));
-		symbol_table.put(new LexemeTerminal("PROCEDURE"));
-		symbol_table.put(new LexemeTerminal("ARRAY"));
-		symbol_table.put(new LexemeTerminal("OF"));
-		symbol_table.put(new LexemeTerminal("BEGIN"));
-		symbol_table.put(new LexemeTerminal("END"));
-		symbol_table.put(new LexemeTerminal("INTEGER"));
-		symbol_table.put(new LexemeTerminal("REAL"));
-		symbol_table.put(new LexemeTerminal("PROGRAM"));
-		symbol_table.put(new LexemeTerminal("."));
-		
-		return symbol_table;
+		return new SymbolTable();
+	}
+	
+	/**
+	 * forgets every symbol but the fixed ones, keeping the space they took, so a reused table only
+	 * allocates the LexemeTerminal of each new symbol, until it is given more symbols than ever before
+	 */
+	public void reset() {
+		Arrays.fill(slots, 0);
+		Arrays.fill(symbols, FIXED_SYMBOLS.length, size, null);
+		arena_size = 0;
+		size = FIXED_SYMBOLS.length;
 	}
 	
 	/**
@@ -75,11 +161,259 @@ public class SymbolTable extends Hashtable<String, LexemeTerminal> {
 	 * @throws LexemeTerminal.LexemeTerminalException 
 	 */
 	public LexemeTerminal getSymbol(String lexeme) throws LexemeTerminal.LexemeTerminalException {
-		LexemeTerminal fetched_symbol = this.get(lexeme.toUpperCase());
-		if(fetched_symbol == null) {
-			fetched_symbol = LexemeTerminal.makeLexemeTerminal(lexeme);
-			this.put(lexeme, fetched_symbol);
+		return symbols[lookup(lexeme, 0, lexeme.length())];
+	}
+	
+	/**
+	 * Get an existing symbol, or create a new one and return that
+	 * @param chars characters holding the lexeme
+	 * @param start offset of the lexeme
+	 * @param end offset just past the lexeme
+	 * @return
+	 * @throws LexemeTerminal.LexemeTerminalException 
+	 */
+	public LexemeTerminal getSymbol(CharSequence chars, int start, int end) throws LexemeTerminal.LexemeTerminalException {
+		return symbols[lookup(chars, start, end)];
+	}
+	
+	/**
+	 * gets a symbol by its id
+	 * @param id
+	 * @return
+	 */
+	public LexemeTerminal getSymbol(int id) {
+		return symbols[id];
+	}
+	
+	/**
+	 * @return number of symbols in the table, ids are in [0, size)
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * finds the id of the symbol for a lexeme, adding a new symbol if there is none yet
+	 * only allocates when the symbol is new
+	 * @param chars characters holding the lexeme
+	 * @param start offset of the lexeme
+	 * @param end offset just past the lexeme
+	 * @return the symbol's id
+	 * @throws LexemeTerminal.LexemeTerminalException if a new lexeme is not a valid identifier or number
+	 */
+	public int lookup(CharSequence chars, int start, int end) throws LexemeTerminal.LexemeTerminalException {
+		int length = end - start;
+		int fixed_id = fixedSymbolId(chars, start, length);
+		if(fixed_id != -1) {
+			return fixed_id;
+		}
+		
+		int hash = hash(chars, start, end);
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		while(slots[slot] != 0) {
+			int id = slots[slot] - 1;
+			if(hashes[id] == hash && matches(id, chars, start, length)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return add(chars, start, length, hash, slot);
+	}
+	
+	/*******************\
+	|* private methods *|
+	\*******************/
+	
+	/**
+	 * adds a new symbol to the table
+	 * @param slot the empty slot the lookup stopped at
+	 * @return the new symbol's id
+	 * @throws LexemeTerminal.LexemeTerminalException 
+	 */
+	private int add(CharSequence chars, int start, int length, int hash, int slot) throws LexemeTerminal.LexemeTerminalException {
+		if(arena_size + length > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arena_size + length));
+		}
+		for(int i = 0; i < length; i++) {
+			arena[arena_size+i] = upperCase(chars.charAt(start+i));
+		}
+		//the only String made for a symbol, and only the first time it is seen
+		LexemeTerminal symbol = LexemeTerminal.makeLexemeTerminal(new String(arena, arena_size, length));
+		
+		if(size == symbols.length) {
+			text_starts = Arrays.copyOf(text_starts, size * 2);
+			text_lengths = Arrays.copyOf(text_lengths, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+			symbols = Arrays.copyOf(symbols, size * 2);
+		}
+		int id = size++;
+		text_starts[id] = arena_size;
+		text_lengths[id] = length;
+		hashes[id] = hash;
+		symbols[id] = symbol;
+		arena_size += length;
+		slots[slot] = id + 1;
+		
+		//keep the load factor under a half
+		if((size - FIXED_SYMBOLS.length) * 2 > slots.length) {
+			rehash();
+		}
+		return id;
+	}
+	
+	/**
+	 * doubles the hash table and puts every non fixed symbol back in
+	 */
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for(int id = FIXED_SYMBOLS.length; id < size; id++) {
+			int slot = hashes[id] & mask;
+			while(slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = id + 1;
+		}
+	}
+	
+	/**
+	 * case insensitive check of a range of characters against a symbol in the arena
+	 */
+	private boolean matches(int id, CharSequence chars, int start, int length) {
+		if(text_lengths[id] != length) {
+			return false;
+		}
+		int text_start = text_starts[id];
+		for(int i = 0; i < length; i++) {
+			if(arena[text_start+i] != upperCase(chars.charAt(start+i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * case insensitive hash of a range of characters
+	 */
+	private static int hash(CharSequence chars, int start, int end) {
+		int hash = 0;
+		for(int i = start; i < end; i++) {
+			hash = hash * 31 + upperCase(chars.charAt(i));
+		}
+		//spread the high bits down since the table only looks at the low ones
+		return hash ^ (hash >>> 16);
+	}
+	
+	/**
+	 * ASCII upper case, the language has no other letters
+	 */
+	private static char upperCase(char c) {
+		return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+	}
+	
+	/**
+	 * perfect hash over the fixed symbols: picks the only possible candidate by length and first character
+	 * (and last character where two symbols share those) then checks it
+	 * @return id of the fixed symbol, or -1 if the lexeme is not one
+	 */
+	private static int fixedSymbolId(CharSequence chars, int start, int length) {
+		if(length == 0) {
+			return -1;
+		}
+		int candidate = fixedSymbolCandidate(chars, start, length, upperCase(chars.charAt(start)));
+		if(candidate == -1) {
+			return -1;
+		}
+		String lexeme = FIXED_SYMBOLS[candidate].getLexeme();
+		for(int i = 1; i < length; i++) {
+			if(lexeme.charAt(i) != upperCase(chars.charAt(start+i))) {
+				return -1;
+			}
+		}
+		return candidate;
+	}
+	
+	/**
+	 * the switch half of fixedSymbolId
+	 * @return id of the only fixed symbol the lexeme could be, or -1
+	 */
+	private static int fixedSymbolCandidate(CharSequence chars, int start, int length, char first) {
+		switch(length) {
+		case 1:
+			switch(first) {
+			case '(': return 0; // (
+			case ')': return 1; // )
+			case '[': return 2; // [
+			case ']': return 3; // ]
+			case ':': return 4; // :
+			case ';': return 5; // ;
+			case '.': return 6; // .
+			case ',': return 7; // ,
+			case '=': return 11; // =
+			case '<': return 12; // <
+			case '>': return 13; // >
+			case '+': return 14; // +
+			case '-': return 15; // -
+			case '/': return 18; // /
+			case '*': return 19; // *
+			}
+			return -1;
+		case 2:
+			switch(first) {
+			case '<': // <> <=
+				switch(upperCase(chars.charAt(start+1))) {
+				case '>': return 8; // <>
+				case '=': return 9; // <=
+				}
+				return -1;
+			case '>': return 10; // >=
+			case ':': return 20; // :=
+			case 'I': return 22; // IF
+			case 'D': return 26; // DO
+			case 'O': return 31; // OF
+			}
+			return -1;
+		case 3:
+			switch(first) {
+			case 'D': return 16; // DIV
+			case 'M': return 17; // MOD
+			case 'N': return 21; // NOT
+			case 'V': return 27; // VAR
+			case 'E': return 33; // END
+			}
+			return -1;
+		case 4:
+			switch(first) {
+			case 'T': return 23; // THEN
+			case 'E': return 24; // ELSE
+			case 'R': return 35; // REAL
+			}
+			return -1;
+		case 5:
+			switch(first) {
+			case 'W': return 25; // WHILE
+			case 'A': return 30; // ARRAY
+			case 'B': return 32; // BEGIN
+			}
+			return -1;
+		case 7:
+			switch(first) {
+			case 'I': return 34; // INTEGER
+			case 'P': return 36; // PROGRAM
+			}
+			return -1;
+		case 8:
+			switch(first) {
+			case 'F': return 28; // FUNCTION
+			}
+			return -1;
+		case 9:
+			switch(first) {
+			case 'P': return 29; // PROCEDURE
+			}
+			return -1;
 		}
-		return fetched_symbol;
+		return -1;
 	}
-}
+}
\ No newline at end of file
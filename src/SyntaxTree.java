@@ -0,0 +1,419 @@
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * syntax tree the parser builds as it applies productions, stored as parallel int columns instead of one
+ * object per node, each node is a row: symbol, first child, next sibling and token
+ *
+ * a nonterminal's children are the symbols of the production it was expanded with, in order, and are
+ * always added together, so they are consecutive rows, a terminal's token is its index in the parse's
+ * TokenBuffer, i.e. the number of tokens read before it, the root is node 0
+ *
+ * nodes are never removed, a tree is built once per parse and can be cleared to reuse its storage
+ * @author Mike, Ryan
+ */
+public class SyntaxTree {
+
+	/**
+	 * no node, or no token
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * capacity used by the default constructor
+	 */
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * source bytes per node the parser ends up with on typical programs, rounded up so a file's tree
+	 * usually fits without growing, see forSource
+	 */
+	private static final int BYTES_PER_NODE = 1;
+
+	/**
+	 * largest capacity forSource presizes to, bigger trees grow as they go
+	 */
+	private static final int MAX_PRESIZE = 1 << 26;
+
+	/**
+	 * gets walked over the tree by walk
+	 */
+	public interface Visitor {
+
+		/**
+		 * called on the way down
+		 * @param tree
+		 * @param node
+		 * @return whether to go into the node's children
+		 */
+		boolean enter(SyntaxTree tree, int node);
+
+		/**
+		 * called on the way back up, after the children, also for nodes whose children were skipped
+		 * @param tree
+		 * @param node
+		 */
+		void leave(SyntaxTree tree, int node);
+	}
+
+	/**********************\
+	|* private properties *|
+	\**********************/
+
+	/**
+	 * the grammar the symbols are from
+	 */
+	private final ParseTable table;
+
+	/**
+	 * ParseTable symbol id of each node
+	 */
+	private int[] symbols;
+
+	/**
+	 * first child of each node, NONE for terminals and empty productions
+	 */
+	private int[] first_children;
+
+	/**
+	 * next sibling of each node, NONE for the last child
+	 */
+	private int[] next_siblings;
+
+	/**
+	 * token of each terminal node, NONE for nonterminals and terminals never reached
+	 */
+	private int[] tokens;
+
+	/**
+	 * number of nodes
+	 */
+	private int size;
+
+	/****************\
+	|* constructors *|
+	\****************/
+
+	/**
+	 * constructor
+	 * @param _table grammar the tree is parsed with
+	 * @param initial_capacity number of nodes to make room for up front
+	 */
+	public SyntaxTree(ParseTable _table, int initial_capacity) {
+		table = _table;
+		int capacity = Math.max(initial_capacity, 1);
+		symbols = new int[capacity];
+		first_children = new int[capacity];
+		next_siblings = new int[capacity];
+		tokens = new int[capacity];
+		size = 0;
+	}
+
+	/**
+	 * constructor with a default capacity
+	 * @param _table grammar the tree is parsed with
+	 */
+	public SyntaxTree(ParseTable _table) {
+		this(_table, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * makes a tree presized for a source file, so building it does not copy its columns as it grows
+	 * @param _table grammar the tree is parsed with
+	 * @param source_length bytes in the source, 0 if not known
+	 * @return the tree
+	 */
+	public static SyntaxTree forSource(ParseTable _table, long source_length) {
+		long capacity = source_length / BYTES_PER_NODE;
+		return new SyntaxTree(_table, (int) Math.max(DEFAULT_CAPACITY, Math.min(capacity, MAX_PRESIZE)));
+	}
+
+	/******************\
+	|* public methods *|
+	\******************/
+
+	/**
+	 * forgets every node, keeping the storage for reuse
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * adds a node with no children
+	 * @param symbol ParseTable symbol id
+	 * @return the node
+	 */
+	public int addNode(int symbol) {
+		if(size == symbols.length) {
+			grow(size + 1);
+		}
+		symbols[size] = symbol;
+		first_children[size] = NONE;
+		next_siblings[size] = NONE;
+		tokens[size] = NONE;
+		return size++;
+	}
+
+	/**
+	 * gives a node the symbols of a production as children
+	 * @param parent node that has no children yet
+	 * @param production symbols in push order, as ParseTable has them, i.e. the last child first
+	 * @return node of the first child, the rest follow it, NONE for an empty production
+	 */
+	public int addChildren(int parent, int[] production) {
+		int count = production.length;
+		if(count == 0) {
+			return NONE;
+		}
+		if(size + count > symbols.length) {
+			grow(size + count);
+		}
+		int first = size;
+		for(int i = 0; i < count; i++) {
+			int node = first + i;
+			symbols[node] = production[count - 1 - i];
+			first_children[node] = NONE;
+			next_siblings[node] = i + 1 < count ? node + 1 : NONE;
+			tokens[node] = NONE;
+		}
+		size += count;
+		first_children[parent] = first;
+		return first;
+	}
+
+	/**
+	 * @param node a terminal node
+	 * @param token index of the token it matched
+	 */
+	public void setToken(int node, int token) {
+		tokens[node] = token;
+	}
+
+	/**
+	 * @return number of nodes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the root, NONE if the tree is empty
+	 */
+	public int getRoot() {
+		return size == 0 ? NONE : 0;
+	}
+
+	public int getSymbol(int node) {
+		return symbols[node];
+	}
+
+	public int getFirstChild(int node) {
+		return first_children[node];
+	}
+
+	public int getNextSibling(int node) {
+		return next_siblings[node];
+	}
+
+	public int getToken(int node) {
+		return tokens[node];
+	}
+
+	/**
+	 * @return whether the node is a nonterminal
+	 */
+	public boolean isNonterminal(int node) {
+		return table.isNonterminal(symbols[node]);
+	}
+
+	/**
+	 * @return the grammar symbol of the node, for printing
+	 */
+	public Symbol getGrammarSymbol(int node) {
+		return table.getSymbol(symbols[node]);
+	}
+
+	/**
+	 * @return the grammar the tree was parsed with
+	 */
+	public ParseTable getTable() {
+		return table;
+	}
+
+	/**
+	 * walks the tree depth first, children in order, without recursion so deep trees are fine
+	 * @param visitor
+	 */
+	public void walk(Visitor visitor) {
+		if(size == 0) {
+			return;
+		}
+		Cursor cursor = cursor();
+		boolean descend = visitor.enter(this, cursor.getNode());
+		while(true) {
+			if(descend && cursor.gotoFirstChild()) {
+				descend = visitor.enter(this, cursor.getNode());
+				continue;
+			}
+			visitor.leave(this, cursor.getNode());
+			if(cursor.gotoNextSibling()) {
+				descend = visitor.enter(this, cursor.getNode());
+				continue;
+			}
+			//no more siblings, leave the parents until one has a next sibling
+			while(true) {
+				if(!cursor.gotoParent()) {
+					return;
+				}
+				visitor.leave(this, cursor.getNode());
+				if(cursor.gotoNextSibling()) {
+					break;
+				}
+			}
+			descend = visitor.enter(this, cursor.getNode());
+		}
+	}
+
+	/**
+	 * @return a cursor on the root
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * prints the tree, one node per line indented by depth, terminals with their lexeme
+	 * @param out
+	 * @param token_buffer the parse's tokens
+	 * @param symbol_table the table the tokens were scanned with
+	 */
+	public void print(PrintWriter out, TokenBuffer token_buffer, SymbolTable symbol_table) {
+		StringBuilder line = new StringBuilder();
+		walk(new Visitor() {
+			private int depth = 0;
+
+			@Override
+			public boolean enter(SyntaxTree tree, int node) {
+				line.setLength(0);
+				for(int i = 0; i < depth; i++) {
+					line.append("  ");
+				}
+				if(isNonterminal(node)) {
+					line.append(((NonTerminal) getGrammarSymbol(node)).getType());
+				}
+				else if(tokens[node] != NONE && tokens[node] < token_buffer.size()) {
+					line.append(token_buffer.getTerminal(tokens[node], symbol_table).getLexeme());
+				}
+				else {
+					line.append(getGrammarSymbol(node).print());
+				}
+				out.println(line);
+				depth++;
+				return true;
+			}
+
+			@Override
+			public void leave(SyntaxTree tree, int node) {
+				depth--;
+			}
+		});
+	}
+
+	/*******************\
+	|* private methods *|
+	\*******************/
+
+	/**
+	 * makes every column big enough for at least the given number of nodes
+	 */
+	private void grow(int minimum) {
+		int capacity = Math.max(symbols.length * 2, minimum);
+		symbols = Arrays.copyOf(symbols, capacity);
+		first_children = Arrays.copyOf(first_children, capacity);
+		next_siblings = Arrays.copyOf(next_siblings, capacity);
+		tokens = Arrays.copyOf(tokens, capacity);
+	}
+
+	/*****************\
+	|* inner classes *|
+	\*****************/
+
+	/**
+	 * position in the tree that can move down, across and back up, moving never allocates once the
+	 * cursor's path has grown to the depth of the tree
+	 */
+	public class Cursor {
+
+		/**
+		 * nodes from the root down to the current one
+		 */
+		private int[] path;
+
+		/**
+		 * number of nodes on the path, the current node is path[depth-1]
+		 */
+		private int depth;
+
+		/**
+		 * constructor, on the root
+		 */
+		private Cursor() {
+			path = new int[64];
+			path[0] = 0;
+			depth = 1;
+		}
+
+		/**
+		 * @return the node the cursor is on
+		 */
+		public int getNode() {
+			return path[depth - 1];
+		}
+
+		/**
+		 * @return how far below the root the cursor is, 0 on the root
+		 */
+		public int getDepth() {
+			return depth - 1;
+		}
+
+		/**
+		 * @return false, without moving, if the node has no children
+		 */
+		public boolean gotoFirstChild() {
+			int child = first_children[getNode()];
+			if(child == NONE) {
+				return false;
+			}
+			if(depth == path.length) {
+				path = Arrays.copyOf(path, depth * 2);
+			}
+			path[depth++] = child;
+			return true;
+		}
+
+		/**
+		 * @return false, without moving, if the node is the last child
+		 */
+		public boolean gotoNextSibling() {
+			int sibling = next_siblings[getNode()];
+			if(sibling == NONE || depth == 1) {
+				return false;
+			}
+			path[depth - 1] = sibling;
+			return true;
+		}
+
+		/**
+		 * @return false, without moving, on the root
+		 */
+		public boolean gotoParent() {
+			if(depth == 1) {
+				return false;
+			}
+			depth--;
+			return true;
+		}
+	}
+}
@@ -1,4 +1,4 @@
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -13,6 +13,12 @@ public abstract class Terminal extends Symbol {
 	 * @return
 	 */
 	public abstract String getLexeme();
+	
+	/**
+	 * gets the dense id of what kind of terminal this is
+	 * @return one of the TerminalKind constants
+	 */
+	public abstract int getKind();
 
 	/**
 	 * Equivalence
@@ -33,23 +39,24 @@ public abstract class Terminal extends Symbol {
 	/**
 	 * Print terminal lexeme
 	 */
-	public String print(Token found){
+	public String print(Terminal found){
 		//30 column aligned for prettification
 		return getLexeme();
 	}
 
 	/**
-	 * returns an empty list, throws an exception if the passed token does not match
-	 * @param next_token the token most recently pulled from the source file
+	 * returns an empty list, throws an exception if the passed terminal does not match
+	 * @param next_terminal the terminal most recently pulled from the source file
+	 * @param line_number the line it was found on
 	 */
 	@Override
-	public List<Symbol> getProduction(Token next_token)
+	public List<Symbol> getProduction(Terminal next_terminal, int line_number)
 			throws UnexpectedTokenException
 	{
-		if(!next_token.getTerminalClass().equals(getClass()) || !next_token.getLexeme().equals(getLexeme())){
-			throw new UnexpectedTokenException(next_token);
+		if(!next_terminal.getClass().equals(getClass()) || !next_terminal.getLexeme().equals(getLexeme())){
+			throw new UnexpectedTokenException(new Token(next_terminal, line_number));
 		}
-		return new LinkedList<Symbol>();
+		return Collections.emptyList();
 	}
 
 	/**
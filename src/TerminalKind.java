@@ -0,0 +1,102 @@
+/**
+ * dense integer ids for the kinds of terminal the scanner can produce
+ * operator and literal terminals are grouped by class, the rest (keywords and punctuation) get one kind per lexeme
+ * used wherever a terminal needs to be stored as a primitive, e.g. in a TokenBuffer
+ */
+public class TerminalKind {
+	
+	/**
+	 * kind used for lexemes that are not any of the known kinds
+	 */
+	public static final int UNKNOWN = -1;
+	
+	public static final int EOF = 0;
+	public static final int IDENTIFIER = 1;
+	public static final int INTEGER_LITERAL = 2;
+	public static final int REAL_LITERAL = 3;
+	public static final int RELATIONAL_OPERATOR = 4;
+	public static final int ADDITION_OPERATOR = 5;
+	public static final int MULTIPLICATION_OPERATOR = 6;
+	public static final int ASSIGNMENT_OPERATOR = 7;
+	
+	/**
+	 * kind of the first entry in FIXED_LEXEMES, the rest follow in order
+	 */
+	public static final int FIRST_FIXED_LEXEME = 8;
+	
+	/**
+	 * keywords and punctuation that are plain LexemeTerminals in the symbol table
+	 * NOTE: '>' is here and not a relational operator because that is how the symbol table has it
+	 */
+	private static final String[] FIXED_LEXEMES = {
+		"(", ")", "[", "]", ":", ";", ".", ",", ">",
+		"NOT", "IF", "THEN", "ELSE", "WHILE", "DO", "VAR", "FUNCTION", "PROCEDURE",
+		"ARRAY", "OF", "BEGIN", "END", "INTEGER", "REAL", "PROGRAM"
+	};
+	
+	/**
+	 * total number of kinds, every kind is in [0, COUNT)
+	 */
+	public static final int COUNT = FIRST_FIXED_LEXEME + FIXED_LEXEMES.length;
+	
+	/**
+	 * names of the grouped kinds, for printing
+	 */
+	private static final String[] GROUP_NAMES = {
+		"EOF", "Identifier", "IntegerLiteral", "RealLiteral",
+		"RelationalOperator", "AdditionOperator", "MultiplicationOperator", "AssignmentOperator"
+	};
+	
+	/**
+	 * class of the terminals of each grouped kind, fixed lexemes are all plain LexemeTerminals
+	 */
+	private static final Class<?>[] GROUP_CLASSES = {
+		EofSymbol.class, IdentifierSymbol.class, IntegerLiteralSymbol.class, RealLiteralSymbol.class,
+		RelationalOperatorSymbol.class, AdditionOperatorSymbol.class, MultiplicationOperatorSymbol.class, AssignmentOperatorSymbol.class
+	};
+	
+	/**
+	 * works out which kinds are terminals of a class (or its subclasses)
+	 * @param symbol_class
+	 * @return a bit per kind whose terminals are instances of the class
+	 */
+	public static long maskOfClass(Class<?> symbol_class) {
+		long mask = 0;
+		for(int kind = 0; kind < COUNT; kind++) {
+			Class<?> kind_class = kind < FIRST_FIXED_LEXEME ? GROUP_CLASSES[kind] : LexemeTerminal.class;
+			if(symbol_class.isAssignableFrom(kind_class)) {
+				mask |= 1L << kind;
+			}
+		}
+		return mask;
+	}
+	
+	/**
+	 * finds the kind of a keyword or punctuation lexeme
+	 * @param lexeme upper case lexeme
+	 * @return the kind, or UNKNOWN if this is not a fixed lexeme
+	 */
+	public static int ofFixedLexeme(String lexeme) {
+		for(int i = 0; i < FIXED_LEXEMES.length; i++) {
+			if(FIXED_LEXEMES[i].equals(lexeme)) {
+				return FIRST_FIXED_LEXEME + i;
+			}
+		}
+		return UNKNOWN;
+	}
+	
+	/**
+	 * printable name of a kind
+	 * @param kind
+	 * @return
+	 */
+	public static String name(int kind) {
+		if(kind >= FIRST_FIXED_LEXEME && kind < COUNT) {
+			return FIXED_LEXEMES[kind - FIRST_FIXED_LEXEME];
+		}
+		if(kind >= 0 && kind < FIRST_FIXED_LEXEME) {
+			return GROUP_NAMES[kind];
+		}
+		return "Unknown";
+	}
+}
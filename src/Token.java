@@ -1,6 +1,3 @@
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * class that represents a token of code
  * the smallest atomic chunk that might have any meaning
@@ -43,20 +40,10 @@ public class Token {
 	\**************/
 
 	/**
-	 * pattern that matches parentheses and brackets
-	 * longer patterns must be listed first
+	 * word operators, these win over an identifier that merely starts with them
+	 * (e.g. "ORDER" is the lexemes "OR" and "DER") just like the old regex alternation did
 	 */
-	public static final Pattern TOKEN_LEXEME_PATTERN = Pattern.compile("^("+
-			"(<>)|(<=)|(>=)|(:=)|(DIV)|(MOD)|(OR)|(AND)|([-+/*=<>])"
-			+"|"+
-			"(\\()|(\\))|(\\[)|(\\])"
-			+"|"+
-			"(\\,)|(\\.)|(\\;)|(\\:)"
-			+"|"+
-			"([a-z]\\w*)"
-			+"|"+
-			"(\\d+(\\.\\d+)?(E[+-]?\\d+)?)"
-		+")", Pattern.CASE_INSENSITIVE);
+	private static final String[] WORD_OPERATORS = {"DIV", "MOD", "OR", "AND"};
 	
 	
 	/**
@@ -105,27 +92,127 @@ public class Token {
 
 	/**
 	 * factory that makes Tokens from a block
-	 * @param lexeme_block string that should contain one or more lexemes
-	 * @param line_number where in the file the string was from
+	 * @param lexeme_block characters that should contain one or more lexemes
+	 * @param start offset in the block of the next lexeme
+	 * @param line_number where in the file the block was from
 	 * @return Token
 	 * @throws TokenException 
 	 * @throws LexemeTerminal.LexemeTerminalException 
 	 */
-	public static Token makeToken(String lexeme_block, int line_number, SymbolTable symbol_table) throws TokenException, LexemeTerminal.LexemeTerminalException{
-		Matcher lexeme_matcher = TOKEN_LEXEME_PATTERN.matcher(lexeme_block);
-		
-		if(lexeme_matcher.find()){
+	public static Token makeToken(CharSequence lexeme_block, int start, int line_number, SymbolTable symbol_table) throws TokenException, LexemeTerminal.LexemeTerminalException{
+		return new Token(findTerminal(lexeme_block, start, line_number, symbol_table), line_number);
+	}
+	
+	/**
+	 * finds the terminal for the next lexeme in a block without wrapping it in a Token
+	 * @param lexeme_block characters that should contain one or more lexemes
+	 * @param start offset in the block of the next lexeme
+	 * @param line_number where in the file the block was from
+	 * @return the terminal, its lexeme is as long as the characters it was found from
+	 * @throws TokenException 
+	 * @throws LexemeTerminal.LexemeTerminalException 
+	 */
+	public static LexemeTerminal findTerminal(CharSequence lexeme_block, int start, int line_number, SymbolTable symbol_table) throws TokenException, LexemeTerminal.LexemeTerminalException{
+		return symbol_table.getSymbol(findSymbolId(lexeme_block, start, line_number, symbol_table));
+	}
+	
+	/**
+	 * finds the symbol table id for the next lexeme in a block, without allocating unless the symbol is new
+	 * @param lexeme_block characters that should contain one or more lexemes
+	 * @param start offset in the block of the next lexeme
+	 * @param line_number where in the file the block was from
+	 * @return the id, the symbol's lexeme is as long as the characters it was found from
+	 * @throws TokenException 
+	 * @throws LexemeTerminal.LexemeTerminalException 
+	 */
+	public static int findSymbolId(CharSequence lexeme_block, int start, int line_number, SymbolTable symbol_table) throws TokenException, LexemeTerminal.LexemeTerminalException{
+		return lookupSymbolId(lexeme_block, start, lexemeLength(lexeme_block, start), line_number, symbol_table);
+	}
+	
+	/**
+	 * second half of findSymbolId, for a lexeme whose length is already known
+	 * @param lexeme_block characters that should contain one or more lexemes
+	 * @param start offset in the block of the next lexeme
+	 * @param length what lexemeLength found for it
+	 * @param line_number where in the file the block was from
+	 * @return the id
+	 * @throws TokenException 
+	 * @throws LexemeTerminal.LexemeTerminalException 
+	 */
+	public static int lookupSymbolId(CharSequence lexeme_block, int start, int length, int line_number, SymbolTable symbol_table) throws TokenException, LexemeTerminal.LexemeTerminalException{
+		if(length > 0){
 			try {
-				return new Token(symbol_table.getSymbol(lexeme_matcher.group(0)), line_number);
+				return symbol_table.lookup(lexeme_block, start, start+length);
 			} catch (LexemeTerminal.UnexpectedSymbolException e) {
 				throw new LexemeTerminal.UnexpectedSymbolException(e.getMessage()+" on line "+line_number);
 			}
 		}
 		else{
-			throw new Token.LexemeNotFoundException("could not find the next lexeme in the block on line #"+line_number+" : "+lexeme_block);
+			throw new Token.LexemeNotFoundException("could not find the next lexeme in the block on line #"+line_number+" : "+lexeme_block.subSequence(start, lexeme_block.length()));
 		}
 	}
 	
+	/**
+	 * hand written DFA that finds the lexeme at the start of the passed position in one pass
+	 * recognizes, in this order of preference:
+	 * two character operators (<> <= >= :=), word operators (DIV MOD OR AND),
+	 * single character operators and punctuation, identifiers, and integer/real literals with exponents
+	 * @param block characters that should contain one or more lexemes
+	 * @param start offset in the block to start matching at
+	 * @return length of the lexeme, 0 if no lexeme starts here
+	 */
+	public static int lexemeLength(CharSequence block, int start) {
+		int end = block.length();
+		if(start >= end){
+			return 0;
+		}
+		char first = block.charAt(start);
+		char second = start+1 < end ? block.charAt(start+1) : '\0';
+		switch(first){
+		case '<':
+			return second == '>' || second == '=' ? 2 : 1;
+		case '>':
+			return second == '=' ? 2 : 1;
+		case ':':
+			return second == '=' ? 2 : 1;
+		case '-': case '+': case '/': case '*': case '=':
+		case '(': case ')': case '[': case ']':
+		case ',': case '.': case ';':
+			return 1;
+		}
+		if(isLetter(first)){
+			for(String word_operator : WORD_OPERATORS){
+				if(startsWithIgnoreCase(block, start, end, word_operator)){
+					return word_operator.length();
+				}
+			}
+			int position = start+1;
+			while(position < end && isWordChar(block.charAt(position))){
+				position++;
+			}
+			return position - start;
+		}
+		if(isDigit(first)){
+			int position = skipDigits(block, start, end);
+			//fraction only counts if at least one digit follows the dot
+			if(position+1 < end && block.charAt(position) == '.' && isDigit(block.charAt(position+1))){
+				position = skipDigits(block, position+1, end);
+			}
+			//exponent only counts if at least one digit follows the E and optional sign
+			if(position < end && (block.charAt(position) == 'E' || block.charAt(position) == 'e')){
+				int exponent = position+1;
+				if(exponent < end && (block.charAt(exponent) == '+' || block.charAt(exponent) == '-')){
+					exponent++;
+				}
+				if(exponent < end && isDigit(block.charAt(exponent))){
+					position = skipDigits(block, exponent, end);
+				}
+			}
+			return position - start;
+		}
+		return 0;
+	}
+	
 	/**
 	 * returns true if this is an eof token
 	 * this function is only going to be around for a short while until we refactor our Symbol hierarchy
@@ -159,4 +246,47 @@ public class Token {
 	public boolean equals(Symbol symbol) {
 		return terminal.equals(symbol);
 	}
-}
+	
+	/**
+	 * case insensitive check for an upper case word at a position in the block
+	 */
+	private static boolean startsWithIgnoreCase(CharSequence block, int start, int end, String word) {
+		if(end - start < word.length()){
+			return false;
+		}
+		for(int i = 0; i < word.length(); i++){
+			//ASCII only, clearing the lower case bit of a letter upper cases it
+			char c = block.charAt(start+i);
+			if(!isLetter(c) || (char)(c & ~0x20) != word.charAt(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * moves past a run of digits
+	 * @return offset of the first non digit
+	 */
+	private static int skipDigits(CharSequence block, int position, int end) {
+		while(position < end && isDigit(block.charAt(position))){
+			position++;
+		}
+		return position;
+	}
+	
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+	
+	/**
+	 * same characters as the regex \w
+	 */
+	private static boolean isWordChar(char c) {
+		return isLetter(c) || isDigit(c) || c == '_';
+	}
+}
\ No newline at end of file
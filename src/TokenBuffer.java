@@ -0,0 +1,284 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * stream of tokens stored as parallel primitive columns instead of one Token object per lexeme
+ * each token is a row: kind, start offset, length, line and symbol table index
+ * the columns can live on the heap or off heap in direct buffers
+ * @author Mike, Ryan
+ */
+public class TokenBuffer {
+	
+	/**
+	 * symbol table index of tokens that have no symbol (EOF)
+	 */
+	public static final int NO_SYMBOL = -1;
+	
+	/**
+	 * capacity used by the default constructor
+	 */
+	private static final int DEFAULT_CAPACITY = 1024;
+	
+	/**********************\
+	|* private properties *|
+	\**********************/
+	
+	/**
+	 * TerminalKind of each token
+	 */
+	private IntBuffer kinds;
+	
+	/**
+	 * offset in the source of the first character of each token
+	 */
+	private LongBuffer starts;
+	
+	/**
+	 * number of characters in each token
+	 */
+	private IntBuffer lengths;
+	
+	/**
+	 * line each token was found on
+	 */
+	private IntBuffer lines;
+	
+	/**
+	 * index in the SymbolTable of each token's terminal
+	 */
+	private IntBuffer symbols;
+	
+	/**
+	 * true if the columns are direct buffers
+	 */
+	private final boolean off_heap;
+	
+	/**
+	 * number of tokens in the buffer
+	 */
+	private int size;
+	
+	/****************\
+	|* constructors *|
+	\****************/
+	
+	/**
+	 * constructor
+	 * @param initial_capacity number of tokens to make room for up front
+	 * @param _off_heap true to keep the columns in direct buffers outside the java heap
+	 */
+	public TokenBuffer(int initial_capacity, boolean _off_heap) {
+		off_heap = _off_heap;
+		size = 0;
+		allocate(Math.max(initial_capacity, 1));
+	}
+	
+	/**
+	 * basic constructor, on heap with a default capacity
+	 */
+	public TokenBuffer() {
+		this(DEFAULT_CAPACITY, false);
+	}
+	
+	/******************\
+	|* public methods *|
+	\******************/
+	
+	/**
+	 * appends a token
+	 * @param kind TerminalKind
+	 * @param start offset of the first character in the source
+	 * @param length number of characters
+	 * @param line line the token was found on
+	 * @param symbol index in the SymbolTable, or NO_SYMBOL
+	 */
+	public void add(int kind, long start, int length, int line, int symbol) {
+		if(size == kinds.capacity()) {
+			allocate(size * 2);
+		}
+		kinds.put(size, kind);
+		starts.put(size, start);
+		lengths.put(size, length);
+		lines.put(size, line);
+		symbols.put(size, symbol);
+		size++;
+	}
+	
+	/**
+	 * @return number of tokens in the buffer
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * forgets every token, keeping the storage for reuse
+	 */
+	public void clear() {
+		size = 0;
+	}
+	
+	public int getKind(int index) {
+		return kinds.get(index);
+	}
+	
+	public long getStart(int index) {
+		return starts.get(index);
+	}
+	
+	public int getLength(int index) {
+		return lengths.get(index);
+	}
+	
+	public int getLine(int index) {
+		return lines.get(index);
+	}
+	
+	public int getSymbolIndex(int index) {
+		return symbols.get(index);
+	}
+	
+	/**
+	 * looks up the terminal of a token, no allocation
+	 * @param index which token
+	 * @param symbol_table the table the token was scanned with
+	 * @return
+	 */
+	public Terminal getTerminal(int index, SymbolTable symbol_table) {
+		int symbol = symbols.get(index);
+		if(symbol == NO_SYMBOL) {
+			return EofSymbol.EOF;
+		}
+		return symbol_table.getSymbol(symbol);
+	}
+	
+	/**
+	 * builds a full Token for a row, meant for diagnostics
+	 * @param index which token
+	 * @param symbol_table the table the token was scanned with
+	 * @return
+	 */
+	public Token getToken(int index, SymbolTable symbol_table) {
+		return new Token(getTerminal(index, symbol_table), lines.get(index));
+	}
+	
+	/**
+	 * makes a cursor that starts at the first token
+	 * @param symbol_table the table the tokens were scanned with
+	 * @return
+	 */
+	public Cursor cursor(SymbolTable symbol_table) {
+		return new Cursor(symbol_table);
+	}
+	
+	/*******************\
+	|* private methods *|
+	\*******************/
+	
+	/**
+	 * (re)allocates every column with the given capacity, keeping existing rows
+	 * @param capacity
+	 */
+	private void allocate(int capacity) {
+		kinds = copyOf(kinds, allocateInts(capacity));
+		starts = copyOf(starts, allocateLongs(capacity));
+		lengths = copyOf(lengths, allocateInts(capacity));
+		lines = copyOf(lines, allocateInts(capacity));
+		symbols = copyOf(symbols, allocateInts(capacity));
+	}
+	
+	private IntBuffer allocateInts(int capacity) {
+		return off_heap ? allocateBytes(capacity * Integer.BYTES).asIntBuffer() : IntBuffer.allocate(capacity);
+	}
+	
+	private LongBuffer allocateLongs(int capacity) {
+		return off_heap ? allocateBytes(capacity * Long.BYTES).asLongBuffer() : LongBuffer.allocate(capacity);
+	}
+	
+	private ByteBuffer allocateBytes(int bytes) {
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+	
+	private IntBuffer copyOf(IntBuffer old_column, IntBuffer new_column) {
+		for(int i = 0; old_column != null && i < size; i++) {
+			new_column.put(i, old_column.get(i));
+		}
+		return new_column;
+	}
+	
+	private LongBuffer copyOf(LongBuffer old_column, LongBuffer new_column) {
+		for(int i = 0; old_column != null && i < size; i++) {
+			new_column.put(i, old_column.get(i));
+		}
+		return new_column;
+	}
+	
+	/*****************\
+	|* inner classes *|
+	\*****************/
+	
+	/**
+	 * position in the token stream, reading a row through it never allocates
+	 * can still produce a Token when a diagnostic needs one
+	 */
+	public class Cursor {
+		
+		/**
+		 * table the tokens were scanned with, used to get at the terminals
+		 */
+		private final SymbolTable symbol_table;
+		
+		/**
+		 * row the cursor is on
+		 */
+		private int index;
+		
+		/**
+		 * constructor
+		 * @param _symbol_table
+		 */
+		private Cursor(SymbolTable _symbol_table) {
+			symbol_table = _symbol_table;
+			index = 0;
+		}
+		
+		/**
+		 * moves to the next token
+		 */
+		public void advance() {
+			index++;
+		}
+		
+		/**
+		 * @return true if the cursor is on a token that has been added
+		 */
+		public boolean isValid() {
+			return index < size;
+		}
+		
+		public int getIndex() {
+			return index;
+		}
+		
+		public int getKind() {
+			return TokenBuffer.this.getKind(index);
+		}
+		
+		public int getLine() {
+			return TokenBuffer.this.getLine(index);
+		}
+		
+		public Terminal getTerminal() {
+			return TokenBuffer.this.getTerminal(index, symbol_table);
+		}
+		
+		/**
+		 * @return a Token for the current row, for diagnostics
+		 */
+		public Token toToken() {
+			return TokenBuffer.this.getToken(index, symbol_table);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+
+/**
+ * how much the compiler reports about a file
+ * @author Mike, Ryan
+ */
+public enum TraceLevel {
+	
+	/**
+	 * no derivation, errors are still printed, the same as ERRORS
+	 */
+	NONE,
+	
+	/**
+	 * only errors
+	 */
+	ERRORS,
+	
+	/**
+	 * errors and every terminal as it is matched
+	 */
+	TERMINALS,
+	
+	/**
+	 * errors and every symbol popped off the parse stack, i.e. the whole derivation
+	 */
+	FULL;
+	
+	/**
+	 * @return whether any of the derivation gets printed
+	 */
+	public boolean tracesDerivation() {
+		return this == TERMINALS || this == FULL;
+	}
+	
+	/**
+	 * @param symbol symbol just popped off the parse stack
+	 * @return whether its line belongs in the trace
+	 */
+	public boolean traces(Symbol symbol) {
+		return this == FULL || (this == TERMINALS && symbol.shouldGetToken());
+	}
+	
+	/**
+	 * @param name level name as given on the command line, in any case
+	 * @return the matching level
+	 * @throws IllegalArgumentException if there is no such level
+	 */
+	public static TraceLevel fromName(String name) {
+		return valueOf(name.toUpperCase());
+	}
+}
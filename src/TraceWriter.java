@@ -0,0 +1,204 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * writes trace lines to any number of writers from a background thread
+ * 
+ * lines are collected into batches, full batches go through a bounded queue to the writer thread and
+ * come back empty to be reused, so the caller only ever waits if it gets a whole queue ahead of the output
+ * 
+ * closing waits for everything to be written and flushes the writers, but does not close them
+ * @author Mike, Ryan
+ */
+public class TraceWriter implements Closeable {
+	
+	/**
+	 * a batch is handed off once it holds this many chars
+	 */
+	private static final int BATCH_CHARS = 8192;
+	
+	/**
+	 * number of batches in circulation, bounds how far the caller can get ahead of the output
+	 */
+	private static final int BATCH_COUNT = 16;
+	
+	/**
+	 * put on the queue after the last batch to stop the writer thread
+	 */
+	private static final StringBuilder END = new StringBuilder(0);
+	
+	/**
+	 * ends every line
+	 */
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+	
+	/**********************\
+	|* private properties *|
+	\**********************/
+	
+	/**
+	 * where the lines end up
+	 */
+	private final Writer[] sinks;
+	
+	/**
+	 * batches waiting to be written
+	 */
+	private final BlockingQueue<StringBuilder> full_batches;
+	
+	/**
+	 * written batches waiting to be reused
+	 */
+	private final BlockingQueue<StringBuilder> empty_batches;
+	
+	/**
+	 * drains full_batches into the sinks
+	 */
+	private final Thread writer_thread;
+	
+	/**
+	 * batch the caller is currently adding lines to
+	 */
+	private StringBuilder batch;
+	
+	/**
+	 * first thing that went wrong on the writer thread, after which nothing more is written
+	 */
+	private volatile Exception failure;
+	
+	/**
+	 * whether close has been called
+	 */
+	private boolean closed;
+	
+	/****************\
+	|* constructors *|
+	\****************/
+	
+	/**
+	 * constructor, starts the writer thread
+	 * @param _sinks writers every line is written to, in order
+	 */
+	public TraceWriter(Writer... _sinks) {
+		sinks = _sinks;
+		full_batches = new ArrayBlockingQueue<StringBuilder>(BATCH_COUNT);
+		empty_batches = new ArrayBlockingQueue<StringBuilder>(BATCH_COUNT);
+		for(int i = 1; i < BATCH_COUNT; i++) {
+			empty_batches.add(newBatch());
+		}
+		batch = newBatch();
+		writer_thread = new Thread(this::drain, "trace-writer");
+		writer_thread.setDaemon(true);
+		writer_thread.start();
+	}
+	
+	/******************\
+	|* public methods *|
+	\******************/
+	
+	/**
+	 * adds a line to the output
+	 * @param line line without its line separator
+	 * @throws IOException if writing an earlier batch failed
+	 */
+	public void println(CharSequence line) throws IOException {
+		batch.append(line).append(LINE_SEPARATOR);
+		if(batch.length() >= BATCH_CHARS) {
+			checkFailure();
+			try {
+				full_batches.put(batch);
+				batch = empty_batches.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while handing off trace output");
+			}
+		}
+	}
+	
+	/**
+	 * writes out everything still buffered, flushes the sinks and stops the writer thread
+	 * @throws IOException if writing any of the output failed
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if(batch.length() > 0) {
+				full_batches.put(batch);
+			}
+			full_batches.put(END);
+			writer_thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while finishing trace output");
+		}
+		checkFailure();
+	}
+	
+	/*******************\
+	|* private methods *|
+	\*******************/
+	
+	/**
+	 * body of the writer thread
+	 */
+	private void drain() {
+		char[] chars = new char[BATCH_CHARS * 2];
+		try {
+			StringBuilder full;
+			while((full = full_batches.take()) != END) {
+				if(failure == null) {
+					int length = full.length();
+					if(length > chars.length) {
+						chars = new char[length];
+					}
+					//copied out once so every sink can take the chars without another copy
+					full.getChars(0, length, chars, 0);
+					try {
+						for(Writer sink : sinks) {
+							sink.write(chars, 0, length);
+						}
+					} catch (IOException|RuntimeException e) {
+						failure = e;
+					}
+				}
+				full.setLength(0);
+				empty_batches.put(full);
+			}
+			if(failure == null) {
+				for(Writer sink : sinks) {
+					sink.flush();
+				}
+			}
+		} catch (IOException|RuntimeException|InterruptedException e) {
+			failure = e;
+		}
+	}
+	
+	/**
+	 * @throws IOException if the writer thread has failed
+	 */
+	private void checkFailure() throws IOException {
+		Exception e = failure;
+		if(e instanceof IOException) {
+			throw (IOException)e;
+		}
+		if(e != null) {
+			throw new IOException("could not write trace output", e);
+		}
+	}
+	
+	/**
+	 * @return an empty batch with room for a full one plus a line
+	 */
+	private static StringBuilder newBatch() {
+		return new StringBuilder(BATCH_CHARS + 256);
+	}
+}